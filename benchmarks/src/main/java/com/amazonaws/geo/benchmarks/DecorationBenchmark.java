@@ -0,0 +1,68 @@
+package com.amazonaws.geo.benchmarks;
+
+import com.amazonaws.geo.Geo;
+import com.amazonaws.geo.GeoConfig;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of decorating batches of items with geo attributes through {@link Geo#updateAttributeValues}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DecorationBenchmark {
+
+    @Param({ "100", "10000" })
+    public int batchSize;
+
+    private Geo geo;
+
+    private List<GeoConfig> configs;
+
+    private List<Map<String, AttributeValue>> items;
+
+    private double[] latitudes;
+
+    private double[] longitudes;
+
+    @Setup
+    public void setUp() {
+        geo = new Geo();
+        configs = Collections.singletonList(new GeoConfig.Builder().geoIndexName("geo-index").geoHashKeyColumn("geoHashKey")
+                .geoHashColumn("geohash").geoHashKeyLength(6).build());
+        Random random = new Random(42);
+        items = new ArrayList<Map<String, AttributeValue>>(batchSize);
+        latitudes = new double[batchSize];
+        longitudes = new double[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            latitudes[i] = -60 + random.nextDouble() * 120;
+            longitudes[i] = -180 + random.nextDouble() * 360;
+            items.add(new HashMap<String, AttributeValue>());
+        }
+    }
+
+    @Benchmark
+    public List<Map<String, AttributeValue>> updateAttributeValues() {
+        for (int i = 0; i < batchSize; i++) {
+            geo.updateAttributeValues(items.get(i), latitudes[i], longitudes[i], configs);
+        }
+        return items;
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.amazonaws.geo.benchmarks;
+
+import com.amazonaws.geo.model.filters.GeoFilters;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.dashlabs.dash.geo.model.filters.ColumnarGeoFilter;
+import com.dashlabs.dash.geo.model.filters.GeoFilter;
+import com.google.common.geometry.S2LatLng;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of applying a radius filter to batches of DynamoDB items, and of the columnar filter on the same coordinates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class FilterBenchmark {
+
+    @Param({ "100", "10000", "100000" })
+    public int batchSize;
+
+    private List<Map<String, AttributeValue>> items;
+
+    private double[] latitudes;
+
+    private double[] longitudes;
+
+    private GeoFilter<Map<String, AttributeValue>> filter;
+
+    private ColumnarGeoFilter columnarFilter;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        items = new ArrayList<Map<String, AttributeValue>>(batchSize);
+        latitudes = new double[batchSize];
+        longitudes = new double[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            latitudes[i] = 40.70 + random.nextDouble() * 0.1;
+            longitudes[i] = -74.02 + random.nextDouble() * 0.1;
+            Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+            item.put(GeoFilter.LATITUDE_FIELD, new AttributeValue().withN(Double.toString(latitudes[i])));
+            item.put(GeoFilter.LONGITUDE_FIELD, new AttributeValue().withN(Double.toString(longitudes[i])));
+            items.add(item);
+        }
+        S2LatLng center = S2LatLng.fromDegrees(40.75, -73.97);
+        filter = GeoFilters.newRadiusFilter(center, 2000);
+        columnarFilter = com.dashlabs.dash.geo.model.filters.GeoFilters.newColumnarRadiusFilter(center, 2000);
+    }
+
+    @Benchmark
+    public List<Map<String, AttributeValue>> radiusFilter() {
+        return filter.filter(items);
+    }
+
+    @Benchmark
+    public BitSet columnarRadiusFilter() {
+        return columnarFilter.filter(latitudes, longitudes, 0, batchSize);
+    }
+
+}
@@ -0,0 +1,264 @@
+package com.amazonaws.geo.benchmarks;
+
+import com.amazonaws.geo.Geo;
+import com.amazonaws.geo.GeoConfig;
+import com.amazonaws.geo.local.InMemoryAmazonDynamoDB;
+import com.amazonaws.geo.model.GeoQueryRequest;
+import com.amazonaws.geo.s2.internal.GeoQueryClient;
+import com.amazonaws.geo.s2.internal.HedgingPolicy;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.base.Optional;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives {@link Geo} and {@link GeoQueryClient} against an {@link InMemoryAmazonDynamoDB} loaded with a synthetic
+ * dataset and reports throughput, latency percentiles and read units per query.
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.amazonaws.geo.benchmarks.GeoLoadHarness \
+ *     --dataset=clustered --items=100000 --queries=2000 --clients=8 --radius=2000 --latency=5 --throttle=0.01
+ * </pre>
+ */
+public class GeoLoadHarness {
+
+    private static final String TABLE = "geo-load";
+
+    private static final double CENTER_LATITUDE = 40.7;
+
+    private static final double CENTER_LONGITUDE = -74.0;
+
+    private static final double SPAN = 1.0;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || (separator < 0)) {
+                throw new IllegalArgumentException(String.format("Expected --name=value but was [ %s ]", arg));
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        String dataset = option(options, "dataset", "uniform");
+        int items = Integer.parseInt(option(options, "items", "100000"));
+        int queries = Integer.parseInt(option(options, "queries", "1000"));
+        int clients = Integer.parseInt(option(options, "clients", "4"));
+        int queryThreads = Integer.parseInt(option(options, "query-threads", "16"));
+        double radius = Double.parseDouble(option(options, "radius", "2000"));
+        int hashKeyLength = Integer.parseInt(option(options, "hash-key-length", "6"));
+        int limit = Integer.parseInt(option(options, "limit", "0"));
+        long latency = Long.parseLong(option(options, "latency", "0"));
+        long jitter = Long.parseLong(option(options, "jitter", "0"));
+        double throttle = Double.parseDouble(option(options, "throttle", "0"));
+        double partitionUnits = Double.parseDouble(option(options, "partition-read-units", "0"));
+        double hedgePercentile = Double.parseDouble(option(options, "hedge-percentile", "0"));
+
+        GeoConfig config = new GeoConfig.Builder().geoIndexName("geo-index").geoHashKeyColumn("geoHashKey")
+                .geoHashColumn("geohash").geoHashKeyLength(hashKeyLength).build();
+        InMemoryAmazonDynamoDB dynamoDB = new InMemoryAmazonDynamoDB(latency, jitter, throttle, partitionUnits);
+        createTable(dynamoDB);
+        Geo geo = new Geo();
+        Random random = new Random(42);
+        PointGenerator generator = ("clustered".equals(dataset) ? new ClusteredPointGenerator(random, 20, 0.01)
+                : new UniformPointGenerator(random));
+        load(dynamoDB, geo, config, generator, items);
+        System.out.printf("Loaded %d %s items (%d write units)%n", dynamoDB.getItemCount(TABLE), dataset,
+                dynamoDB.getConsumedWriteCapacityUnits());
+
+        List<double[]> centers = new ArrayList<double[]>(queries);
+        for (int i = 0; i < queries; i++) {
+            centers.add(generator.next());
+        }
+        HedgingPolicy hedgingPolicy = (hedgePercentile > 0 ? new HedgingPolicy.Builder().percentile(hedgePercentile).build() : null);
+        run(dynamoDB, geo, config, centers, clients, queryThreads, radius, limit, hedgingPolicy);
+    }
+
+    private static void run(final InMemoryAmazonDynamoDB dynamoDB, final Geo geo, final GeoConfig config, List<double[]> centers,
+                            int clients, int queryThreads, final double radius, final int limit, HedgingPolicy hedgingPolicy)
+            throws Exception {
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(clients);
+        ExecutorService queryExecutor = Executors.newFixedThreadPool(queryThreads);
+        ExecutorService hedgeExecutor = Executors.newCachedThreadPool();
+        final GeoQueryClient geoQueryClient = new GeoQueryClient(dynamoDB, queryExecutor, hedgeExecutor, hedgingPolicy);
+        final long[] latencies = new long[centers.size()];
+        final AtomicLong results = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong plannedQueries = new AtomicLong();
+        double readUnitsBefore = dynamoDB.getConsumedReadCapacityUnits();
+        long requestsBefore = dynamoDB.getRequestCount();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(centers.size());
+        for (int i = 0; i < centers.size(); i++) {
+            final int index = i;
+            final double[] center = centers.get(i);
+            tasks.add(new Callable<Void>() {
+                @Override public Void call() throws Exception {
+                    long start = System.nanoTime();
+                    QueryRequest query = new QueryRequest().withTableName(TABLE);
+                    if (limit > 0) {
+                        query.setLimit(limit);
+                    }
+                    GeoQueryRequest request = geo.radiusQuery(query, center[0], center[1], radius, config, Optional.<String>absent());
+                    plannedQueries.addAndGet(request.getQueryRequests().size());
+                    try {
+                        results.addAndGet(geoQueryClient.execute(request).size());
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    }
+                    latencies[index] = System.nanoTime() - start;
+                    return null;
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Future<Void> future : clientExecutor.invokeAll(tasks)) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        clientExecutor.shutdown();
+        queryExecutor.shutdown();
+        hedgeExecutor.shutdownNow();
+
+        Arrays.sort(latencies);
+        int count = latencies.length;
+        double seconds = elapsed / (double) TimeUnit.SECONDS.toNanos(1);
+        System.out.printf("Geo queries:         %d (%d failed)%n", count, failures.get());
+        System.out.printf("Throughput:          %.1f queries/s%n", count / seconds);
+        System.out.printf("Latency p50 / p99:   %.2f / %.2f ms%n", percentile(latencies, 0.50), percentile(latencies, 0.99));
+        System.out.printf("DynamoDB queries:    %.1f planned, %.1f sent per geo query%n", plannedQueries.get() / (double) count,
+                (dynamoDB.getRequestCount() - requestsBefore) / (double) count);
+        System.out.printf("Read units:          %.2f per geo query%n", (dynamoDB.getConsumedReadCapacityUnits() - readUnitsBefore) / count);
+        System.out.printf("Results:             %.1f items per geo query%n", results.get() / (double) count);
+        System.out.printf("Throttled requests:  %d%n", dynamoDB.getThrottledRequestCount());
+        if (hedgingPolicy != null) {
+            System.out.printf("Hedges:              %d (%.1f%% of pages, %.1f%% won)%n", hedgingPolicy.getHedgeCount(),
+                    hedgingPolicy.getHedgeRate() * 100, hedgingPolicy.getHedgeWinRate() * 100);
+        }
+    }
+
+    private static double percentile(long[] sortedLatencies, double percentile) {
+        int index = Math.min(sortedLatencies.length - 1, (int) Math.ceil(percentile * sortedLatencies.length) - 1);
+        return sortedLatencies[Math.max(0, index)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static void createTable(InMemoryAmazonDynamoDB dynamoDB) {
+        dynamoDB.createTable(new CreateTableRequest().withTableName(TABLE)
+                .withKeySchema(new KeySchemaElement("id", KeyType.HASH))
+                .withAttributeDefinitions(new AttributeDefinition("id", ScalarAttributeType.S),
+                        new AttributeDefinition("geoHashKey", ScalarAttributeType.N),
+                        new AttributeDefinition("geohash", ScalarAttributeType.N))
+                .withGlobalSecondaryIndexes(new GlobalSecondaryIndex().withIndexName("geo-index")
+                        .withKeySchema(new KeySchemaElement("geoHashKey", KeyType.HASH), new KeySchemaElement("geohash", KeyType.RANGE))
+                        .withProjection(new Projection().withProjectionType(ProjectionType.ALL))));
+    }
+
+    private static void load(InMemoryAmazonDynamoDB dynamoDB, Geo geo, GeoConfig config, PointGenerator generator, int items) {
+        List<GeoConfig> configs = Collections.singletonList(config);
+        List<WriteRequest> writes = new ArrayList<WriteRequest>(25);
+        for (int i = 0; i < items; i++) {
+            double[] point = generator.next();
+            Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+            item.put("id", new AttributeValue().withS("item-" + i));
+            item.put("latitude", new AttributeValue().withN(Double.toString(point[0])));
+            item.put("longitude", new AttributeValue().withN(Double.toString(point[1])));
+            geo.updateAttributeValues(item, point[0], point[1], configs);
+            writes.add(new WriteRequest().withPutRequest(new PutRequest().withItem(item)));
+            if ((writes.size() == 25) || (i == items - 1)) {
+                writeBatch(dynamoDB, writes);
+                writes = new ArrayList<WriteRequest>(25);
+            }
+        }
+    }
+
+    private static void writeBatch(InMemoryAmazonDynamoDB dynamoDB, List<WriteRequest> writes) {
+        // retry throttled batches, as the SDK client would
+        while (true) {
+            try {
+                dynamoDB.batchWriteItem(new BatchWriteItemRequest().addRequestItemsEntry(TABLE, writes));
+                return;
+            } catch (ProvisionedThroughputExceededException e) {
+                // retry
+            }
+        }
+    }
+
+    private static String option(Map<String, String> options, String name, String defaultValue) {
+        String value = options.get(name);
+        return (value == null ? defaultValue : value);
+    }
+
+    private interface PointGenerator {
+        double[] next();
+    }
+
+    /**
+     * Points uniformly distributed over a one degree square.
+     */
+    private static class UniformPointGenerator implements PointGenerator {
+
+        private final Random random;
+
+        private UniformPointGenerator(Random random) {
+            this.random = random;
+        }
+
+        @Override public double[] next() {
+            return new double[] { CENTER_LATITUDE + ((random.nextDouble() - 0.5) * SPAN),
+                    CENTER_LONGITUDE + ((random.nextDouble() - 0.5) * SPAN) };
+        }
+
+    }
+
+    /**
+     * Points normally distributed around a fixed set of cluster centers within a one degree square.
+     */
+    private static class ClusteredPointGenerator implements PointGenerator {
+
+        private final Random random;
+
+        private final double[][] clusters;
+
+        private final double deviation;
+
+        private ClusteredPointGenerator(Random random, int clusterCount, double deviation) {
+            this.random = random;
+            this.deviation = deviation;
+            this.clusters = new double[clusterCount][];
+            UniformPointGenerator uniform = new UniformPointGenerator(random);
+            for (int i = 0; i < clusterCount; i++) {
+                clusters[i] = uniform.next();
+            }
+        }
+
+        @Override public double[] next() {
+            double[] cluster = clusters[random.nextInt(clusters.length)];
+            return new double[] { cluster[0] + (random.nextGaussian() * deviation), cluster[1] + (random.nextGaussian() * deviation) };
+        }
+
+    }
+
+}
@@ -0,0 +1,16 @@
+package com.amazonaws.geo.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Reports the size of the plan produced by the last invocation of a planning benchmark alongside its throughput.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class PlanCounters {
+
+    public long ranges;
+
+}
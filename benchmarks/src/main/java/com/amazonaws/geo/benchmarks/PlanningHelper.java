@@ -0,0 +1,23 @@
+package com.amazonaws.geo.benchmarks;
+
+import com.dashlabs.dash.geo.AbstractGeoQueryHelper;
+import com.dashlabs.dash.geo.model.GeohashRange;
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+import com.google.common.geometry.S2CellUnion;
+
+import java.util.List;
+
+/**
+ * Exposes the protected planning steps of {@link AbstractGeoQueryHelper} to the benchmarks.
+ */
+public class PlanningHelper extends AbstractGeoQueryHelper {
+
+    public PlanningHelper(S2Manager s2Manager) {
+        super(s2Manager);
+    }
+
+    @Override public List<GeohashRange> mergeCells(S2CellUnion cellUnion) {
+        return super.mergeCells(cellUnion);
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.amazonaws.geo.benchmarks;
+
+import com.dashlabs.dash.geo.model.GeohashRange;
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+import com.dashlabs.dash.geo.s3.GeoQueryHelper;
+import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2LatLngRect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Planning cost of radius queries from 100m to 500km at the equator, mid and high latitudes, around the north pole
+ * and across the antimeridian.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RadiusPlanningBenchmark {
+
+    @Param({ "100", "1000", "10000", "100000", "500000" })
+    public double radius;
+
+    @Param({ "0", "60", "85", "89.95" })
+    public double latitude;
+
+    @Param({ "10", "179.95" })
+    public double longitude;
+
+    @Param({ "6" })
+    public int hashKeyLength;
+
+    private S2Manager s2Manager;
+
+    private PlanningHelper planningHelper;
+
+    private GeoQueryHelper geoQueryHelper;
+
+    private S2LatLngRect boundingBox;
+
+    private S2CellUnion cells;
+
+    @Setup
+    public void setUp() {
+        s2Manager = new S2Manager();
+        planningHelper = new PlanningHelper(s2Manager);
+        geoQueryHelper = new GeoQueryHelper(s2Manager);
+        boundingBox = s2Manager.getBoundingBoxForRadiusQuery(latitude, longitude, radius);
+        cells = s2Manager.findCellIds(boundingBox);
+    }
+
+    @Benchmark
+    public S2CellUnion findCellIds(PlanCounters counters) {
+        S2CellUnion union = s2Manager.findCellIds(boundingBox);
+        counters.ranges = union.size();
+        return union;
+    }
+
+    @Benchmark
+    public List<GeohashRange> mergeCells(PlanCounters counters) {
+        List<GeohashRange> ranges = planningHelper.mergeCells(cells);
+        counters.ranges = ranges.size();
+        return ranges;
+    }
+
+    @Benchmark
+    public List<GeohashRange> plan(PlanCounters counters) {
+        List<GeohashRange> ranges = geoQueryHelper.generateGeohashRanges(boundingBox, hashKeyLength);
+        counters.ranges = ranges.size();
+        return ranges;
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.amazonaws.geo.benchmarks;
+
+import com.dashlabs.dash.geo.model.GeohashRange;
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+import com.dashlabs.dash.geo.s3.GeoQueryHelper;
+import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2LatLngRect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Planning cost of city (0.2 degree), region (2 degree) and country (10 degree) rectangle queries at the equator, mid
+ * and high latitudes, reaching the north pole and centered on the antimeridian.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RectanglePlanningBenchmark {
+
+    @Param({ "0.2", "2", "10" })
+    public double span;
+
+    @Param({ "0", "60", "75", "89" })
+    public double latitude;
+
+    @Param({ "10", "180" })
+    public double longitude;
+
+    @Param({ "6" })
+    public int hashKeyLength;
+
+    private S2Manager s2Manager;
+
+    private ForkJoinPool forkJoinPool;
+
+    private S2Manager parallelS2Manager;
+
+    private GeoQueryHelper geoQueryHelper;
+
+    private S2LatLngRect boundingBox;
+
+    @Setup
+    public void setUp() {
+        s2Manager = new S2Manager();
+        geoQueryHelper = new GeoQueryHelper(s2Manager);
+        forkJoinPool = new ForkJoinPool();
+        parallelS2Manager = new S2Manager(forkJoinPool, 0.0d);
+        double half = span / 2;
+        boundingBox = s2Manager.getBoundingBoxForRectangleQuery(latitude - half, longitude - half, latitude + half, longitude + half);
+    }
+
+    @Benchmark
+    public S2CellUnion findCellIds(PlanCounters counters) {
+        S2CellUnion union = s2Manager.findCellIds(boundingBox);
+        counters.ranges = union.size();
+        return union;
+    }
+
+    @TearDown
+    public void tearDown() {
+        forkJoinPool.shutdown();
+    }
+
+    @Benchmark
+    public S2CellUnion findCellIdsInParallel(PlanCounters counters) {
+        S2CellUnion union = parallelS2Manager.findCellIdsInParallel(boundingBox);
+        counters.ranges = union.size();
+        return union;
+    }
+
+    @Benchmark
+    public List<GeohashRange> plan(PlanCounters counters) {
+        List<GeohashRange> ranges = geoQueryHelper.generateGeohashRanges(boundingBox, hashKeyLength);
+        counters.ranges = ranges.size();
+        return ranges;
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.amazonaws.geo.benchmarks;
+
+import com.dashlabs.dash.geo.model.GeohashRange;
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of splitting the merged ranges of a radius query by hash key, for several hash key lengths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TrySplitBenchmark {
+
+    @Param({ "1000", "100000" })
+    public double radius;
+
+    @Param({ "3", "6", "9" })
+    public int hashKeyLength;
+
+    private S2Manager s2Manager;
+
+    private List<GeohashRange> ranges;
+
+    @Setup
+    public void setUp() {
+        s2Manager = new S2Manager();
+        PlanningHelper helper = new PlanningHelper(s2Manager);
+        ranges = helper.mergeCells(s2Manager.findCellIds(s2Manager.getBoundingBoxForRadiusQuery(40.7, -74.0, radius)));
+    }
+
+    @Benchmark
+    public long trySplit(PlanCounters counters) {
+        long splits = 0;
+        for (GeohashRange range : ranges) {
+            splits += range.trySplit(hashKeyLength, s2Manager).size();
+        }
+        counters.ranges = splits;
+        return splits;
+    }
+
+}
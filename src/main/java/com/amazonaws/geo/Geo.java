@@ -3,15 +3,23 @@ package com.amazonaws.geo;
 import com.amazonaws.geo.model.*;
 import com.amazonaws.geo.model.filters.GeoFilters;
 import com.dashlabs.dash.geo.model.filters.GeoFilter;
+import com.dashlabs.dash.geo.s2.internal.CellOccupancyIndex;
 import com.dashlabs.dash.geo.s2.internal.S2Manager;
 import com.amazonaws.services.dynamodbv2.model.*;
 import com.google.common.base.Optional;
+import com.google.common.geometry.S2CellId;
 import com.google.common.geometry.S2LatLng;
 import com.google.common.geometry.S2LatLngRect;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
@@ -20,10 +28,29 @@ import static com.google.common.base.Preconditions.checkArgument;
  */
 public class Geo {
 
+    /**
+     * The default maximum geohash span fetched by a single query of a batched point lookup, which is roughly
+     * the span of a level 20 (~10m) cell.
+     */
+    public static final long DEFAULT_POINT_CLUSTER_SPAN = 1L << 21;
+
+    /**
+     * The default maximum number of cells a heatmap query may count items by.
+     */
+    public static final int DEFAULT_MAX_HEATMAP_CELLS = 4096;
+
+    /**
+     * The <code>SET</code> keyword of an update expression. It is a reserved word, hence it can only otherwise appear
+     * in <code>#name</code> and <code>:value</code> placeholders.
+     */
+    private static final Pattern SET_CLAUSE = Pattern.compile("(?<![#:\\w])SET(?!\\w)", Pattern.CASE_INSENSITIVE);
+
     private final S2Manager s2Manager;
 
     private final GeoQueryHelper geoQueryHelper;
 
+    private volatile CellOccupancyIndex occupancyIndex;
+
     public Geo() {
         this.s2Manager = new S2Manager();
         this.geoQueryHelper = new GeoQueryHelper(s2Manager);
@@ -34,6 +61,17 @@ public class Geo {
         this.geoQueryHelper = geoQueryHelper;
     }
 
+    /**
+     * Sets the index of occupied cells, or null for none. Every item decorated by
+     * {@link #updateAttributeValues(Map, double, double, List)} is recorded in it, and the queries generated for radius
+     * and rectangle queries skip the ranges it knows to be empty. The index has to be loaded with the existing items
+     * first, see {@link com.amazonaws.geo.s2.internal.OccupancyIndexLoader}, or queries will miss them.
+     */
+    public void setOccupancyIndex(CellOccupancyIndex occupancyIndex) {
+        this.occupancyIndex = occupancyIndex;
+        geoQueryHelper.setOccupancyIndex(occupancyIndex);
+    }
+
     /**
      * Decorates the given <code>putItemRequest</code> with attributes required for geo spatial querying.
      *
@@ -49,7 +87,8 @@ public class Geo {
     }
 
     /**
-     * Decorates the given <code>updateItemRequest</code> with attributes required for geo spatial querying.
+     * Decorates the given <code>updateItemRequest</code> with attributes required for geo spatial querying. For a time
+     * bucketed configuration, the item's timestamp has to be set first; an item without one is left out of the index.
      *
      * @param attributeValueMap the items that needs to be decorated with geo attributes
      * @param latitude          the latitude that needs to be attached with the item
@@ -61,6 +100,10 @@ public class Geo {
         if (configs == null) {
             throw new IllegalArgumentException("Geo configs should not be null");
         }
+        CellOccupancyIndex index = occupancyIndex;
+        if (index != null) {
+            index.add(s2Manager.generateGeohash(latitude, longitude));
+        }
         for (GeoConfig config : configs) {
             //Fail-fast if any of the preconditions fail
             checkConfigParams(config.getGeoIndexName(), config.getGeoHashKeyColumn(), config.getGeoHashColumn(),
@@ -87,10 +130,125 @@ public class Geo {
                 //Decorate the request with the geoHashKey (type Number)
                 geoHashKeyValue = new AttributeValue().withN(String.valueOf(geoHashKey));
             }
+            if (config.isTimeBucketed()) {
+                AttributeValue timestampValue = attributeValueMap.get(config.getTimestampColumn().get());
+                if ((timestampValue == null) || (timestampValue.getN() == null)) {
+                    continue;
+                }
+                long timeBucket = config.getTimeBucket(Long.parseLong(timestampValue.getN()));
+                String hashKey = (geoHashKeyValue.getS() != null ? geoHashKeyValue.getS() : geoHashKeyValue.getN());
+                //Decorate the request with the time bucketed geoHashKey (type String)
+                geoHashKeyValue = new AttributeValue().withS(config.getTimeBucketedHashKey(hashKey, timeBucket));
+            }
             attributeValueMap.put(config.getGeoHashKeyColumn(), geoHashKeyValue);
         }
     }
 
+    /**
+     * Decorates the given <code>updateItemRequest</code> with a <code>SET</code> of the latitude, longitude and
+     * <code>versionColumn</code> of a moving item, conditioned on <code>version</code> being newer than the stored one.
+     * The geohash is only rewritten when the item has left its cell at <code>cellLevel</code>, and the geoHashKey only
+     * when it has left its hash key, so that most updates leave the key attributes of the geo index untouched. The index
+     * is still written, as it projects the coordinates, but the item is updated in place in it rather than deleted from
+     * one key and put under another. As the item is indexed where it entered its cell, queries may miss it within the size of a
+     * <code>cellLevel</code> cell of their edge; <code>S2CellId.MAX_LEVEL</code> only skips updates of the exact same
+     * geohash.
+     * Configurations with a composite or time bucketed hash key are not supported.
+     *
+     * @param updateItemRequest the request, with the key of the item, that needs to be decorated with geo attributes.
+     *                          Its own update expression, if any, is extended: the geo attributes are added to its
+     *                          <code>SET</code> clause, or to a new one before its other clauses.
+     * @param latitude          the latitude that needs to be attached with the item
+     * @param longitude         the longitude that needs to be attached with the item
+     * @param previousGeohash   the geohash the item is currently indexed by, absent if unknown
+     * @param cellLevel         the level of the cells the item has to leave before its geohash is rewritten
+     * @param versionColumn     name of the column that stores the version of the item's location
+     * @param version           the version of this location, e.g. the time of the fix
+     * @param configs           the collection of configurations to be used for decorating the request with geo attributes
+     * @return the wrapper containing the decorated request and the geohash the item will be indexed by
+     */
+    public GeoUpdateItemRequest updateLocationRequest(UpdateItemRequest updateItemRequest, double latitude, double longitude,
+                                                      Optional<Long> previousGeohash, int cellLevel, String versionColumn,
+                                                      long version, List<GeoConfig> configs) {
+        if (configs == null) {
+            throw new IllegalArgumentException("Geo configs should not be null");
+        }
+        checkArgument((cellLevel >= 0) && (cellLevel <= S2CellId.MAX_LEVEL), "cellLevel must be between 0 and 30: %s",
+                String.valueOf(cellLevel));
+        checkArgument((versionColumn != null && versionColumn.length() > 0), "versionColumn cannot be empty: %s", versionColumn);
+        long newGeohash = s2Manager.generateGeohash(latitude, longitude);
+        boolean cellChanged = !previousGeohash.isPresent()
+                || !new S2CellId(previousGeohash.get()).parent(cellLevel).equals(new S2CellId(newGeohash).parent(cellLevel));
+        long geohash = (cellChanged ? newGeohash : previousGeohash.get());
+
+        Map<String, String> names = new HashMap<String, String>();
+        Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+        StringBuilder sets = new StringBuilder();
+        appendSet(sets, names, values, "geo_latitude", GeoFilter.LATITUDE_FIELD, new AttributeValue().withN(Double.toString(latitude)));
+        appendSet(sets, names, values, "geo_longitude", GeoFilter.LONGITUDE_FIELD, new AttributeValue().withN(Double.toString(longitude)));
+        appendSet(sets, names, values, "geo_version", versionColumn, new AttributeValue().withN(Long.toString(version)));
+        for (int i = 0; i < configs.size(); i++) {
+            GeoConfig config = configs.get(i);
+            //Fail-fast if any of the preconditions fail
+            checkConfigParams(config.getGeoIndexName(), config.getGeoHashKeyColumn(), config.getGeoHashColumn(),
+                    config.getGeoHashKeyLength());
+            checkArgument(!config.getHashKeyDecorator().isPresent() && !config.isTimeBucketed(),
+                    "Location updates do not support composite or time bucketed hash keys: %s", config.getGeoIndexName());
+            if (!cellChanged) {
+                continue;
+            }
+            appendSet(sets, names, values, "geo_hash" + i, config.getGeoHashColumn(), new AttributeValue().withN(Long.toString(geohash)));
+            long geoHashKey = s2Manager.generateHashKey(geohash, config.getGeoHashKeyLength());
+            if (!previousGeohash.isPresent()
+                    || (s2Manager.generateHashKey(previousGeohash.get(), config.getGeoHashKeyLength()) != geoHashKey)) {
+                appendSet(sets, names, values, "geo_hash_key" + i, config.getGeoHashKeyColumn(),
+                        new AttributeValue().withN(Long.toString(geoHashKey)));
+            }
+        }
+
+        String updateExpression = updateItemRequest.getUpdateExpression();
+        Matcher setClause = (updateExpression == null ? null : SET_CLAUSE.matcher(updateExpression));
+        if (updateExpression == null) {
+            updateItemRequest.setUpdateExpression("SET " + sets);
+        } else if (setClause.find()) {
+            // an update expression has at most one clause of each kind
+            updateItemRequest.setUpdateExpression(updateExpression.substring(0, setClause.end()) + " " + sets + ","
+                    + updateExpression.substring(setClause.end()));
+        } else {
+            updateItemRequest.setUpdateExpression("SET " + sets + " " + updateExpression);
+        }
+        String versionCondition = "(attribute_not_exists(#geo_version) OR #geo_version < :geo_version)";
+        updateItemRequest.setConditionExpression(updateItemRequest.getConditionExpression() == null ? versionCondition
+                : "(" + updateItemRequest.getConditionExpression() + ") AND " + versionCondition);
+        if (updateItemRequest.getExpressionAttributeNames() != null) {
+            names.putAll(updateItemRequest.getExpressionAttributeNames());
+        }
+        if (updateItemRequest.getExpressionAttributeValues() != null) {
+            values.putAll(updateItemRequest.getExpressionAttributeValues());
+        }
+        updateItemRequest.setExpressionAttributeNames(names);
+        updateItemRequest.setExpressionAttributeValues(values);
+
+        CellOccupancyIndex index = occupancyIndex;
+        if ((index != null) && cellChanged) {
+            index.add(geohash);
+        }
+        return new GeoUpdateItemRequest(updateItemRequest, geohash, cellChanged);
+    }
+
+    /**
+     * Appends <code>#placeholder = :placeholder</code> to the <code>SET</code> clause being built.
+     */
+    private static void appendSet(StringBuilder sets, Map<String, String> names, Map<String, AttributeValue> values,
+                                  String placeholder, String attributeName, AttributeValue value) {
+        if (sets.length() > 0) {
+            sets.append(", ");
+        }
+        sets.append('#').append(placeholder).append(" = :").append(placeholder);
+        names.put("#" + placeholder, attributeName);
+        values.put(":" + placeholder, value);
+    }
+
     /**
      * Decorates the given query request with attributes required for geo spatial querying.
      *
@@ -106,6 +264,8 @@ public class Geo {
     public QueryRequest getItemQuery(QueryRequest queryRequest, double latitude, double longitude, GeoConfig config,
                                      Optional<String> compositeKeyValue) {
         checkConfigParams(config.getGeoIndexName(), config.getGeoHashKeyColumn(), config.getGeoHashColumn(), config.getGeoHashKeyLength());
+        checkArgument(!config.isTimeBucketed(), "Geo index is time bucketed and has to be queried with a time range: %s",
+                config.getGeoIndexName());
 
         //Generate the geohash and geoHashKey to query by global secondary index
         long geohash = s2Manager.generateGeohash(latitude, longitude);
@@ -157,6 +317,112 @@ public class Geo {
         return getItemQuery(queryRequest, latitude, longitude, config, compositeKeyValue);
     }
 
+    /**
+     * Creates a wrapper that contains the queries needed to fetch the items at all of the given points.
+     * Points are grouped by their geoHashKey and nearby points within a group are fetched by a single <code>BETWEEN</code>
+     * query rather than by one query each.
+     *
+     * @param queryRequest the request that needs to be decorated with geo attributes
+     * @param points       the lat/long of the items that are being queried
+     * @param config       the configuration to be used for decorating the request with geo attributes
+     * @param compositeKeyValue the value of the column that is used in the construction of the composite hash key(geoHashKey + someOtherColumnValue).
+     *                          This is needed when constructing queries that need a composite hash key.
+     *                          For eg. Fetch an item where lat/long is 23.78787, -70.6767 AND category = 'restaurants'
+     * @return the wrapper containing the generated queries and the points keyed by geohash
+     */
+    public GeoPointQueryRequest getItemsQuery(QueryRequest queryRequest, List<S2LatLng> points, GeoConfig config,
+                                              Optional<String> compositeKeyValue) {
+        return getItemsQuery(queryRequest, points, config, compositeKeyValue, DEFAULT_POINT_CLUSTER_SPAN);
+    }
+
+    /**
+     * Creates a wrapper that contains the queries needed to fetch the items at all of the given points.
+     * Points are grouped by their geoHashKey and nearby points within a group are fetched by a single <code>BETWEEN</code>
+     * query rather than by one query each.
+     *
+     * @param queryRequest   the request that needs to be decorated with geo attributes
+     * @param points         the lat/long of the items that are being queried
+     * @param config         the configuration to be used for decorating the request with geo attributes
+     * @param compositeKeyValue the value of the column that is used in the construction of the composite hash key(geoHashKey + someOtherColumnValue).
+     *                          This is needed when constructing queries that need a composite hash key.
+     *                          For eg. Fetch an item where lat/long is 23.78787, -70.6767 AND category = 'restaurants'
+     * @param maxClusterSpan the maximum difference between the smallest and largest geohash fetched by a single query
+     * @return the wrapper containing the generated queries and the points keyed by geohash
+     */
+    public GeoPointQueryRequest getItemsQuery(QueryRequest queryRequest, List<S2LatLng> points, GeoConfig config,
+                                              Optional<String> compositeKeyValue, long maxClusterSpan) {
+        checkArgument(points != null && !points.isEmpty(), "points cannot be empty");
+        checkArgument(maxClusterSpan >= 0, "maxClusterSpan cannot be negative: %s", maxClusterSpan);
+        checkConfigParams(config.getGeoIndexName(), config.getGeoHashKeyColumn(), config.getGeoHashColumn(), config.getGeoHashKeyLength());
+        Map<Long, List<S2LatLng>> pointsByGeohash = new LinkedHashMap<Long, List<S2LatLng>>(points.size());
+        for (S2LatLng point : points) {
+            long geohash = s2Manager.generateGeohash(point.latDegrees(), point.lngDegrees());
+            List<S2LatLng> geohashPoints = pointsByGeohash.get(geohash);
+            if (geohashPoints == null) {
+                geohashPoints = new ArrayList<S2LatLng>(1);
+                pointsByGeohash.put(geohash, geohashPoints);
+            }
+            geohashPoints.add(point);
+        }
+        List<QueryRequest> geoQueries = geoQueryHelper.generatePointQueries(queryRequest, pointsByGeohash.keySet(), config,
+                compositeKeyValue, maxClusterSpan);
+        return new GeoPointQueryRequest(geoQueries, config.getGeoHashColumn(), pointsByGeohash);
+    }
+
+    /**
+     * Creates a wrapper that contains the queries counting the items of a rectangle per S2 cell of <code>level</code>,
+     * to be executed by {@link com.amazonaws.geo.s2.internal.GeoQueryClient}. Cells within the rectangle are counted
+     * with <code>Select.COUNT</code>; only the items of cells on its boundary are fetched, projected to their
+     * coordinates.
+     *
+     * @param queryRequest the request that needs to be decorated with geo attributes
+     * @param minLatitude  the latitude of the min point of the rectangle
+     * @param minLongitude the longitude of the min point of the rectangle
+     * @param maxLatitude  the latitude of the max point of the rectangle
+     * @param maxLongitude the longitude of the max point of the rectangle
+     * @param level        the level of the cells to count the items by
+     * @param config       the configuration to be used for decorating the request with geo attributes
+     * @param compositeKeyValue the value of the column that is used in the construction of the composite hash key(geoHashKey + someOtherColumnValue).
+     *                          This is needed when constructing queries that need a composite hash key.
+     *                          For eg. Fetch an item where lat/long is 23.78787, -70.6767 AND category = 'restaurants'
+     * @return the wrapper containing the count and boundary queries
+     * @throws IllegalArgumentException if the rectangle intersects more than {@link #DEFAULT_MAX_HEATMAP_CELLS} cells
+     */
+    public GeoHeatmapQueryRequest heatmapQuery(QueryRequest queryRequest, double minLatitude, double minLongitude,
+                                               double maxLatitude, double maxLongitude, int level, GeoConfig config,
+                                               Optional<String> compositeKeyValue) {
+        return heatmapQuery(queryRequest, minLatitude, minLongitude, maxLatitude, maxLongitude, level, DEFAULT_MAX_HEATMAP_CELLS,
+                config, compositeKeyValue);
+    }
+
+    /**
+     * Variant of {@link #heatmapQuery(QueryRequest, double, double, double, double, int, GeoConfig, Optional)} bounding
+     * the number of cells the rectangle may intersect by <code>maxCells</code>, e.g. to count a large rectangle by
+     * fine cells.
+     *
+     * @param queryRequest the request that needs to be decorated with geo attributes
+     * @param minLatitude  the latitude of the min point of the rectangle
+     * @param minLongitude the longitude of the min point of the rectangle
+     * @param maxLatitude  the latitude of the max point of the rectangle
+     * @param maxLongitude the longitude of the max point of the rectangle
+     * @param level        the level of the cells to count the items by
+     * @param maxCells     the maximum number of cells of <code>level</code> the rectangle may intersect
+     * @param config       the configuration to be used for decorating the request with geo attributes
+     * @param compositeKeyValue the value of the column that is used in the construction of the composite hash key(geoHashKey + someOtherColumnValue).
+     *                          This is needed when constructing queries that need a composite hash key.
+     *                          For eg. Fetch an item where lat/long is 23.78787, -70.6767 AND category = 'restaurants'
+     * @return the wrapper containing the count and boundary queries
+     * @throws IllegalArgumentException if the rectangle intersects more than <code>maxCells</code> cells
+     */
+    public GeoHeatmapQueryRequest heatmapQuery(QueryRequest queryRequest, double minLatitude, double minLongitude,
+                                               double maxLatitude, double maxLongitude, int level, int maxCells, GeoConfig config,
+                                               Optional<String> compositeKeyValue) {
+        checkConfigParams(config.getGeoIndexName(), config.getGeoHashKeyColumn(), config.getGeoHashColumn(), config.getGeoHashKeyLength());
+        checkArgument(maxCells >= 1, "maxCells must be positive: %s", maxCells);
+        S2LatLngRect boundingBox = s2Manager.getBoundingBoxForRectangleQuery(minLatitude, minLongitude, maxLatitude, maxLongitude);
+        return geoQueryHelper.generateHeatmapQueries(queryRequest, boundingBox, level, maxCells, config, compositeKeyValue);
+    }
+
     /**
      * Creates a wrapper that contains a collection of all queries that are generated as a result of the radius query.
      * It also contains a filter {@link com.dashlabs.dash.geo.model.filters.GeoFilter} that needs to be applied to the results of the query
@@ -185,6 +451,36 @@ public class Geo {
         return new GeoQueryRequest(geoQueries, filter);
     }
 
+    /**
+     * Time bounded variant of {@link #radiusQuery(QueryRequest, double, double, double, GeoConfig, Optional)} for a time
+     * bucketed <code>config</code>. Only the time buckets overlapping the time range are queried, and the items of
+     * partly covered buckets are filtered by their timestamp, so that older items are never read. The time range may
+     * span at most {@link GeoQueryHelper#MAX_TIME_BUCKETS} buckets.
+     *
+     * @param queryRequest the request that needs to be decorated with geo attributes
+     * @param latitude     the latitude of the center point for the radius query
+     * @param longitude    the longitude of the center point for the radius query
+     * @param radius       the radius (in metres)
+     * @param fromMillis   the earliest timestamp to fetch, inclusive
+     * @param toMillis     the latest timestamp to fetch, inclusive
+     * @param config       the configuration to be used for decorating the request with geo attributes
+     * @param compositeKeyValue the value of the column that is used in the construction of the composite hash key(geoHashKey + someOtherColumnValue).
+     *                          This is needed when constructing queries that need a composite hash key.
+     *                          For eg. Fetch an item where lat/long is 23.78787, -70.6767 AND category = 'restaurants'
+     * @return the wrapper containing the generated queries and the geo filter
+     */
+    public GeoQueryRequest radiusQuery(QueryRequest queryRequest, double latitude, double longitude, double radius, long fromMillis,
+                                       long toMillis, GeoConfig config, Optional<String> compositeKeyValue) {
+        checkArgument(radius >= 0.0d, "radius has to be a positive value: %s", radius);
+        checkConfigParams(config.getGeoIndexName(), config.getGeoHashKeyColumn(), config.getGeoHashColumn(), config.getGeoHashKeyLength());
+        S2LatLng centerLatLng = S2LatLng.fromDegrees(latitude, longitude);
+        GeoFilter<Map<String, AttributeValue>> filter = GeoFilters.newRadiusFilter(centerLatLng, radius);
+        S2LatLngRect boundingBox = s2Manager.getBoundingBoxForRadiusQuery(latitude, longitude, radius);
+        List<QueryRequest> geoQueries = geoQueryHelper.generateGeoQueries(queryRequest, boundingBox, fromMillis, toMillis, config,
+                compositeKeyValue);
+        return new GeoQueryRequest(geoQueries, filter);
+    }
+
     /**
      * Creates a wrapper that contains a collection of all queries that are generated as a result of the radius query.
      * It also contains a filter {@link com.dashlabs.dash.geo.model.filters.GeoFilter} that needs to be applied to the results of the query
@@ -212,6 +508,92 @@ public class Geo {
         return radiusQuery(queryRequest, latitude, longitude, radius, config, compositeKeyValue);
     }
 
+    /**
+     * Creates a wrapper like {@link #radiusQuery(QueryRequest, double, double, double, GeoConfig, Optional)} whose queries
+     * are ordered by the distance of their geohash range from the center, nearest first. Executing it with a result limit
+     * through {@link com.amazonaws.geo.s2.internal.GeoQueryClient#execute(GeoQueryRequest, int)} only reads the ranges
+     * near the center until enough items are found.
+     *
+     * @param queryRequest the request that needs to be decorated with geo attributes
+     * @param latitude     the latitude of the center point for the radius query
+     * @param longitude    the longitude of the center point for the radius query
+     * @param radius       the radius (in metres)
+     * @param config       the configuration to be used for decorating the request with geo attributes
+     * @param compositeKeyValue the value of the column that is used in the construction of the composite hash key(geoHashKey + someOtherColumnValue).
+     *                          This is needed when constructing queries that need a composite hash key.
+     *                          For eg. Fetch an item where lat/long is 23.78787, -70.6767 AND category = 'restaurants'
+     * @return the wrapper containing the generated queries, nearest first, and the geo filter
+     */
+    public GeoQueryRequest nearestRadiusQuery(QueryRequest queryRequest, double latitude, double longitude, double radius,
+                                              GeoConfig config, Optional<String> compositeKeyValue) {
+        checkArgument(radius >= 0.0d, "radius has to be a positive value: %s", radius);
+        checkConfigParams(config.getGeoIndexName(), config.getGeoHashKeyColumn(), config.getGeoHashColumn(), config.getGeoHashKeyLength());
+        S2LatLng centerLatLng = S2LatLng.fromDegrees(latitude, longitude);
+        GeoFilter<Map<String, AttributeValue>> filter = GeoFilters.newRadiusFilter(centerLatLng, radius);
+        S2LatLngRect boundingBox = s2Manager.getBoundingBoxForRadiusQuery(latitude, longitude, radius);
+        List<QueryRequest> geoQueries = geoQueryHelper.generateGeoQueriesByDistance(queryRequest, boundingBox, centerLatLng, config,
+                compositeKeyValue);
+        return new GeoQueryRequest(geoQueries, filter);
+    }
+
+    /**
+     * Streaming variant of {@link #radiusQuery(QueryRequest, double, double, double, GeoConfig, Optional)}. The queries
+     * are generated lazily while they are executed by {@link com.amazonaws.geo.s2.internal.GeoQueryClient}, so that the
+     * first results are requested before the whole plan exists.
+     *
+     * @param queryRequest the request that needs to be decorated with geo attributes
+     * @param latitude     the latitude of the center point for the radius query
+     * @param longitude    the longitude of the center point for the radius query
+     * @param radius       the radius (in metres)
+     * @param config       the configuration to be used for decorating the request with geo attributes
+     * @param compositeKeyValue the value of the column that is used in the construction of the composite hash key(geoHashKey + someOtherColumnValue).
+     *                          This is needed when constructing queries that need a composite hash key.
+     *                          For eg. Fetch an item where lat/long is 23.78787, -70.6767 AND category = 'restaurants'
+     * @return the wrapper containing the lazily generated queries and the geo filter
+     */
+    public StreamingGeoQueryRequest streamingRadiusQuery(QueryRequest queryRequest, double latitude, double longitude, double radius,
+                                                         GeoConfig config, Optional<String> compositeKeyValue) {
+        checkArgument(radius >= 0.0d, "radius has to be a positive value: %s", radius);
+        checkConfigParams(config.getGeoIndexName(), config.getGeoHashKeyColumn(), config.getGeoHashColumn(), config.getGeoHashKeyLength());
+        S2LatLng centerLatLng = S2LatLng.fromDegrees(latitude, longitude);
+        GeoFilter<Map<String, AttributeValue>> filter = GeoFilters.newRadiusFilter(centerLatLng, radius);
+        S2LatLngRect boundingBox = s2Manager.getBoundingBoxForRadiusQuery(latitude, longitude, radius);
+        Iterator<QueryRequest> geoQueries = geoQueryHelper.iterateGeoQueries(queryRequest, Collections.singletonList(boundingBox),
+                config, compositeKeyValue);
+        return new StreamingGeoQueryRequest(geoQueries, filter);
+    }
+
+    /**
+     * Creates a wrapper that contains a single de-duplicated collection of queries covering all the given radius queries.
+     * Cells shared by neighbouring centers are only queried once. It also contains one filter
+     * {@link com.dashlabs.dash.geo.model.filters.GeoFilter} per center, which is used to route the query results back to
+     * every center whose radius contains them.
+     *
+     * @param queryRequest  the request that needs to be decorated with geo attributes
+     * @param radiusQueries the centers and radii (in metres) of the batch
+     * @param config        the configuration to be used for decorating the request with geo attributes
+     * @param compositeKeyValue the value of the column that is used in the construction of the composite hash key(geoHashKey + someOtherColumnValue).
+     *                          This is needed when constructing queries that need a composite hash key.
+     *                          For eg. Fetch an item where lat/long is 23.78787, -70.6767 AND category = 'restaurants'
+     * @return the wrapper containing the generated queries and the geo filters, in the order of <code>radiusQueries</code>
+     */
+    public GeoBatchQueryRequest batchRadiusQuery(QueryRequest queryRequest, List<GeoRadiusQuery> radiusQueries, GeoConfig config,
+                                                 Optional<String> compositeKeyValue) {
+        checkArgument(radiusQueries != null && !radiusQueries.isEmpty(), "radiusQueries cannot be empty");
+        checkConfigParams(config.getGeoIndexName(), config.getGeoHashKeyColumn(), config.getGeoHashColumn(), config.getGeoHashKeyLength());
+        List<GeoFilter<Map<String, AttributeValue>>> filters = new ArrayList<GeoFilter<Map<String, AttributeValue>>>(radiusQueries.size());
+        List<S2LatLngRect> boundingBoxes = new ArrayList<S2LatLngRect>(radiusQueries.size());
+        for (GeoRadiusQuery radiusQuery : radiusQueries) {
+            checkArgument(radiusQuery.getRadius() >= 0.0d, "radius has to be a positive value: %s", radiusQuery.getRadius());
+            S2LatLng centerLatLng = S2LatLng.fromDegrees(radiusQuery.getLatitude(), radiusQuery.getLongitude());
+            filters.add(GeoFilters.newRadiusFilter(centerLatLng, radiusQuery.getRadius()));
+            boundingBoxes.add(s2Manager.getBoundingBoxForRadiusQuery(radiusQuery.getLatitude(), radiusQuery.getLongitude(),
+                    radiusQuery.getRadius()));
+        }
+        List<QueryRequest> geoQueries = geoQueryHelper.generateGeoQueries(queryRequest, boundingBoxes, config, compositeKeyValue);
+        return new GeoBatchQueryRequest(geoQueries, filters);
+    }
+
     /**
      * Creates a wrapper that contains a collection of all queries that are generated as a result of this rectangle query.
      * It also contains a filter {@link com.dashlabs.dash.geo.model.filters.GeoFilter} that needs to be applied to the results of the query
@@ -240,6 +622,37 @@ public class Geo {
         return new GeoQueryRequest(geoQueries, filter);
     }
 
+    /**
+     * Time bounded variant of
+     * {@link #rectangleQuery(QueryRequest, double, double, double, double, GeoConfig, Optional)} for a time bucketed
+     * <code>config</code>. Only the time buckets overlapping the time range are queried, and the items of partly covered
+     * buckets are filtered by their timestamp, so that older items are never read. The time range may span at most
+     * {@link GeoQueryHelper#MAX_TIME_BUCKETS} buckets.
+     *
+     * @param queryRequest the request that needs to be decorated with geo attributes
+     * @param minLatitude  the latitude of the min point of the rectangle
+     * @param minLongitude the longitude of the min point of the rectangle
+     * @param maxLatitude  the latitude of the max point of the rectangle
+     * @param maxLongitude the longitude of the max point of the rectangle
+     * @param fromMillis   the earliest timestamp to fetch, inclusive
+     * @param toMillis     the latest timestamp to fetch, inclusive
+     * @param config       the configuration to be used for decorating the request with geo attributes
+     * @param compositeKeyValue the value of the column that is used in the construction of the composite hash key(geoHashKey + someOtherColumnValue).
+     *                          This is needed when constructing queries that need a composite hash key.
+     *                          For eg. Fetch an item where lat/long is 23.78787, -70.6767 AND category = 'restaurants'
+     * @return the wrapper containing the generated queries and the geo filter
+     */
+    public GeoQueryRequest rectangleQuery(QueryRequest queryRequest, double minLatitude, double minLongitude, double maxLatitude,
+                                          double maxLongitude, long fromMillis, long toMillis, GeoConfig config,
+                                          Optional<String> compositeKeyValue) {
+        checkConfigParams(config.getGeoIndexName(), config.getGeoHashKeyColumn(), config.getGeoHashColumn(), config.getGeoHashKeyLength());
+        S2LatLngRect boundingBox = s2Manager.getBoundingBoxForRectangleQuery(minLatitude, minLongitude, maxLatitude, maxLongitude);
+        GeoFilter<Map<String, AttributeValue>> filter = GeoFilters.newRectangleFilter(boundingBox);
+        List<QueryRequest> geoQueries = geoQueryHelper.generateGeoQueries(queryRequest, boundingBox, fromMillis, toMillis, config,
+                compositeKeyValue);
+        return new GeoQueryRequest(geoQueries, filter);
+    }
+
     /**
      * Creates a wrapper that contains a collection of all queries that are generated as a result of this rectangle query.
      * It also contains a filter {@link com.dashlabs.dash.geo.model.filters.GeoFilter} that needs to be applied to the results of the query
@@ -268,6 +681,33 @@ public class Geo {
         return rectangleQuery(queryRequest, minLatitude, minLongitude, maxLatitude, maxLongitude, config, compositeKeyValue);
     }
 
+    /**
+     * Streaming variant of {@link #rectangleQuery(QueryRequest, double, double, double, double, GeoConfig, Optional)}. The
+     * queries are generated lazily while they are executed by {@link com.amazonaws.geo.s2.internal.GeoQueryClient}, so
+     * that the first results are requested before the whole plan exists.
+     *
+     * @param queryRequest the request that needs to be decorated with geo attributes
+     * @param minLatitude  the latitude of the min point of the rectangle
+     * @param minLongitude the longitude of the min point of the rectangle
+     * @param maxLatitude  the latitude of the max point of the rectangle
+     * @param maxLongitude the longitude of the max point of the rectangle
+     * @param config       the configuration to be used for decorating the request with geo attributes
+     * @param compositeKeyValue the value of the column that is used in the construction of the composite hash key(geoHashKey + someOtherColumnValue).
+     *                          This is needed when constructing queries that need a composite hash key.
+     *                          For eg. Fetch an item where lat/long is 23.78787, -70.6767 AND category = 'restaurants'
+     * @return the wrapper containing the lazily generated queries and the geo filter
+     */
+    public StreamingGeoQueryRequest streamingRectangleQuery(QueryRequest queryRequest, double minLatitude, double minLongitude,
+                                                            double maxLatitude, double maxLongitude, GeoConfig config,
+                                                            Optional<String> compositeKeyValue) {
+        checkConfigParams(config.getGeoIndexName(), config.getGeoHashKeyColumn(), config.getGeoHashColumn(), config.getGeoHashKeyLength());
+        S2LatLngRect boundingBox = s2Manager.getBoundingBoxForRectangleQuery(minLatitude, minLongitude, maxLatitude, maxLongitude);
+        GeoFilter<Map<String, AttributeValue>> filter = GeoFilters.newRectangleFilter(boundingBox);
+        Iterator<QueryRequest> geoQueries = geoQueryHelper.iterateGeoQueries(queryRequest, Collections.singletonList(boundingBox),
+                config, compositeKeyValue);
+        return new StreamingGeoQueryRequest(geoQueries, filter);
+    }
+
     /**
      * Checks the values of the geo config
      *
@@ -40,13 +40,38 @@ public class GeoConfig {
      */
     private final Optional<String> compositeHashKeyColumn;
 
+    /**
+     * An optional column containing the time of an item, in milliseconds since the epoch. Required by
+     * <code>timeBucketMillis</code>.
+     */
+    private final Optional<String> timestampColumn;
+
+    /**
+     * The width of the time buckets the geoHashKey is split by, in milliseconds, or 0 for a purely spatial geoHashKey.
+     * A time bucketed geoHashKey is a String combining the spatial geoHashKey and the bucket of the item's timestamp, so
+     * that a query for a time range only reads the buckets it overlaps.
+     */
+    private final long timeBucketMillis;
+
     public GeoConfig(String geoIndexName, String geoHashKeyColumn, String geoHashColumn, int geoHashKeyLength, Optional<HashKeyDecorator> hashKeyDecorator, Optional<String> compositeHashKeyColumn) {
+        this(geoIndexName, geoHashKeyColumn, geoHashColumn, geoHashKeyLength, hashKeyDecorator, compositeHashKeyColumn,
+                Optional.<String>absent(), 0L);
+    }
+
+    public GeoConfig(String geoIndexName, String geoHashKeyColumn, String geoHashColumn, int geoHashKeyLength,
+                     Optional<HashKeyDecorator> hashKeyDecorator, Optional<String> compositeHashKeyColumn,
+                     Optional<String> timestampColumn, long timeBucketMillis) {
         this.geoIndexName = geoIndexName;
         this.geoHashKeyColumn = geoHashKeyColumn;
         this.geoHashColumn = geoHashColumn;
         this.geoHashKeyLength = geoHashKeyLength;
         this.hashKeyDecorator = hashKeyDecorator == null ? Optional.<HashKeyDecorator>absent() : hashKeyDecorator;
         this.compositeHashKeyColumn = compositeHashKeyColumn == null ? Optional.<String>absent() : compositeHashKeyColumn;
+        this.timestampColumn = timestampColumn == null ? Optional.<String>absent() : timestampColumn;
+        if ((timeBucketMillis < 0) || ((timeBucketMillis > 0) && !this.timestampColumn.isPresent())) {
+            throw new IllegalArgumentException("timeBucketMillis must be 0, or positive with a timestampColumn");
+        }
+        this.timeBucketMillis = timeBucketMillis;
     }
 
     public String getGeoIndexName() {
@@ -73,6 +98,38 @@ public class GeoConfig {
         return compositeHashKeyColumn;
     }
 
+    public Optional<String> getTimestampColumn() {
+        return timestampColumn;
+    }
+
+    public long getTimeBucketMillis() {
+        return timeBucketMillis;
+    }
+
+    /**
+     * @return true if the geoHashKey is split by time buckets
+     */
+    public boolean isTimeBucketed() {
+        return timeBucketMillis > 0;
+    }
+
+    /**
+     * @param timestampMillis a time in milliseconds since the epoch
+     * @return the time bucket holding <code>timestampMillis</code>
+     */
+    public long getTimeBucket(long timestampMillis) {
+        return Math.floorDiv(timestampMillis, timeBucketMillis);
+    }
+
+    /**
+     * @param hashKey    the spatial geoHashKey, decorated or not
+     * @param timeBucket the time bucket of the item
+     * @return the time bucketed geoHashKey
+     */
+    public String getTimeBucketedHashKey(String hashKey, long timeBucket) {
+        return String.format("%s:%d", hashKey, timeBucket);
+    }
+
     /**
      * Builder to help with the construction of a <code>GeoConfig</code>
      */
@@ -83,6 +140,8 @@ public class GeoConfig {
         private int geoHashKeyLength;
         private Optional<HashKeyDecorator> hashKeyDecorator;
         private Optional<String> compositeHashKeyColumn;
+        private Optional<String> timestampColumn;
+        private long timeBucketMillis;
 
         public Builder() {
 
@@ -118,8 +177,19 @@ public class GeoConfig {
             return this;
         }
 
+        public Builder timestampColumn(Optional<String> value) {
+            this.timestampColumn = value;
+            return this;
+        }
+
+        public Builder timeBucketMillis(long timeBucketMillis) {
+            this.timeBucketMillis = timeBucketMillis;
+            return this;
+        }
+
         public GeoConfig build() {
-            return new GeoConfig(this.geoIndexName, this.geoHashKeyColumn, this.geoHashColumn, this.geoHashKeyLength, this.hashKeyDecorator, this.compositeHashKeyColumn);
+            return new GeoConfig(this.geoIndexName, this.geoHashKeyColumn, this.geoHashColumn, this.geoHashKeyLength, this.hashKeyDecorator,
+                    this.compositeHashKeyColumn, this.timestampColumn, this.timeBucketMillis);
         }
 
     }
@@ -150,6 +220,12 @@ public class GeoConfig {
         if (compositeHashKeyColumn != null ? !compositeHashKeyColumn.equals(geoConfig.compositeHashKeyColumn) : geoConfig.compositeHashKeyColumn != null) {
             return false;
         }
+        if (timeBucketMillis != geoConfig.timeBucketMillis) {
+            return false;
+        }
+        if (!timestampColumn.equals(geoConfig.timestampColumn)) {
+            return false;
+        }
 
         return true;
     }
@@ -161,6 +237,8 @@ public class GeoConfig {
         result = 31 * result + (geoHashColumn != null ? geoHashColumn.hashCode() : 0);
         result = 31 * result + geoHashKeyLength;
         result = 31 * result + (compositeHashKeyColumn != null ? compositeHashKeyColumn.hashCode() : 0);
+        result = 31 * result + timestampColumn.hashCode();
+        result = 31 * result + (int) (timeBucketMillis ^ (timeBucketMillis >>> 32));
         return result;
     }
 }
@@ -1,20 +1,38 @@
 package com.amazonaws.geo;
 
+import com.amazonaws.geo.model.GeoHeatmapQueryRequest;
+import com.amazonaws.geo.model.filters.GeoFilters;
 import com.dashlabs.dash.geo.AbstractGeoQueryHelper;
 import com.dashlabs.dash.geo.model.GeohashRange;
+import com.dashlabs.dash.geo.model.filters.GeoFilter;
 import com.dashlabs.dash.geo.s2.internal.S2Manager;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
 import com.amazonaws.services.dynamodbv2.model.Condition;
 import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.Select;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterators;
+import com.google.common.geometry.S2Cell;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2LatLng;
 import com.google.common.geometry.S2LatLngRect;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
 
 /**
  * Created by mpuri on 3/25/14
@@ -24,6 +42,21 @@ import java.util.Map;
  */
 public class GeoQueryHelper extends AbstractGeoQueryHelper {
 
+    /**
+     * The value placeholders of the key condition of queries which use expressions, see
+     * {@link #withKeyConditionExpression(QueryRequest, GeoConfig)}
+     */
+    public static final String HASH_KEY_VALUE = ":geo_hash_key";
+
+    public static final String RANGE_MIN_VALUE = ":geo_hash_min";
+
+    public static final String RANGE_MAX_VALUE = ":geo_hash_max";
+
+    /**
+     * The most time buckets a time bounded query may span, as every geohash range is queried in every bucket.
+     */
+    public static final int MAX_TIME_BUCKETS = 1000;
+
     public GeoQueryHelper(S2Manager s2Manager) {
         super(s2Manager);
     }
@@ -41,47 +74,450 @@ public class GeoQueryHelper extends AbstractGeoQueryHelper {
      * @return queryRequests an immutable collection of <code>QueryRequest</code> that are now "geo enabled"
      */
     public List<QueryRequest> generateGeoQueries(QueryRequest query, S2LatLngRect boundingBox, GeoConfig config, Optional<String> compositeKeyValue) {
-        List<GeohashRange> outerRanges = getGeoHashRanges(boundingBox);
-        List<QueryRequest> queryRequests = new ArrayList<QueryRequest>(outerRanges.size());
-        //Create multiple queries based on the geo ranges derived from the bounding box
-        for (GeohashRange outerRange : outerRanges) {
-            List<GeohashRange> geohashRanges = outerRange.trySplit(config.getGeoHashKeyLength(), s2Manager);
-            for (GeohashRange range : geohashRanges) {
-                //Make a copy of the query request to retain original query attributes like table name, etc.
-                QueryRequest queryRequest = copyQueryRequest(query);
+        return generateGeoQueries(query, getSplitGeoHashRanges(Collections.singletonList(boundingBox), config.getGeoHashKeyLength()),
+                config, compositeKeyValue);
+    }
 
-                //generate the hash key for the global secondary index
+    /**
+     * For the given <code>QueryRequest</code> query and the boundingBoxes, this method creates a single de-duplicated
+     * collection of queries covering the union of all the boundingBoxes. Ranges shared by overlapping boundingBoxes
+     * are only queried once.
+     *
+     * @param query         the original query request
+     * @param boundingBoxes the bounding lat long rectangles of the batch of geo queries
+     * @param config        the config containing caller's geo config, example index name, etc.
+     * @param compositeKeyValue the value of the column that is used in the construction of the composite hash key(geoHashKey + someOtherColumnValue).
+     *                          This is needed when constructing queries that need a composite hash key.
+     *                          For eg. Fetch an item where lat/long is 23.78787, -70.6767 AND category = 'restaurants'
+     * @return queryRequests an immutable collection of <code>QueryRequest</code> that are now "geo enabled"
+     */
+    public List<QueryRequest> generateGeoQueries(QueryRequest query, Collection<S2LatLngRect> boundingBoxes, GeoConfig config,
+                                                 Optional<String> compositeKeyValue) {
+        return generateGeoQueries(query, getSplitGeoHashRanges(boundingBoxes, config.getGeoHashKeyLength()), config, compositeKeyValue);
+    }
+
+    /**
+     * For the given <code>QueryRequest</code> query, the boundingBox and a time range, this method creates a collection
+     * of queries for a time bucketed <code>config</code>: every geohash range of the boundingBox is queried in every
+     * time bucket the range overlaps, newest bucket first, so that buckets outside the range are never read. Queries
+     * of the first and last buckets, which the time range may only partly cover, filter the items by their timestamp.
+     * The time range may span at most {@link #MAX_TIME_BUCKETS} buckets.
+     *
+     * @param query       the original query request
+     * @param boundingBox the bounding lat long rectangle of the geo query
+     * @param fromMillis  the earliest timestamp to fetch, inclusive
+     * @param toMillis    the latest timestamp to fetch, inclusive
+     * @param config      the config containing caller's geo config, example index name, etc.
+     * @param compositeKeyValue the value of the column that is used in the construction of the composite hash key(geoHashKey + someOtherColumnValue).
+     *                          This is needed when constructing queries that need a composite hash key.
+     *                          For eg. Fetch an item where lat/long is 23.78787, -70.6767 AND category = 'restaurants'
+     * @return queryRequests an immutable collection of <code>QueryRequest</code> that are now "geo enabled"
+     */
+    public List<QueryRequest> generateGeoQueries(QueryRequest query, S2LatLngRect boundingBox, long fromMillis, long toMillis,
+                                                 GeoConfig config, Optional<String> compositeKeyValue) {
+        checkArgument(config.isTimeBucketed(), "Geo index is not time bucketed: %s", config.getGeoIndexName());
+        checkArgument(fromMillis <= toMillis, "fromMillis is after toMillis: %s", fromMillis);
+        long firstBucket = config.getTimeBucket(fromMillis);
+        long lastBucket = config.getTimeBucket(toMillis);
+        // a difference which overflowed is negative
+        checkArgument((lastBucket - firstBucket >= 0) && (lastBucket - firstBucket < MAX_TIME_BUCKETS),
+                "Time range spans more than %s time buckets: %s to %s", MAX_TIME_BUCKETS, fromMillis, toMillis);
+        List<GeohashRange> geohashRanges = getSplitGeoHashRanges(Collections.singletonList(boundingBox), config.getGeoHashKeyLength());
+        List<QueryRequest> queryRequests = new ArrayList<QueryRequest>();
+        for (long bucket = lastBucket; bucket >= firstBucket; bucket--) {
+            boolean partial = (bucket * config.getTimeBucketMillis() < fromMillis)
+                    || ((bucket + 1) * config.getTimeBucketMillis() - 1 > toMillis);
+            for (GeohashRange range : geohashRanges) {
                 long geohashKey = s2Manager.generateHashKey(range.getRangeMin(), config.getGeoHashKeyLength());
-                Map<String, Condition> keyConditions = new HashMap<String, Condition>(2, 1.0f);
-
-                //Construct the hashKey condition
-                Condition geoHashKeyCondition;
-                if (config.getHashKeyDecorator().isPresent() && compositeKeyValue.isPresent()) {
-                    String compositeHashKey = config.getHashKeyDecorator().get().decorate(compositeKeyValue.get(), geohashKey);
-                    geoHashKeyCondition = new Condition().withComparisonOperator(ComparisonOperator.EQ)
-                            .withAttributeValueList(new AttributeValue().withS(compositeHashKey));
-                } else {
-                    geoHashKeyCondition = new Condition().withComparisonOperator(ComparisonOperator.EQ)
-                            .withAttributeValueList(new AttributeValue().withN(String.valueOf(geohashKey)));
-                }
-                keyConditions.put(config.getGeoHashKeyColumn(), geoHashKeyCondition);
+                QueryRequest queryRequest = createQueryRequest(query, geohashKey, range.getRangeMin(), range.getRangeMax(), config,
+                        compositeKeyValue, Optional.of(bucket));
+                queryRequests.add(partial ? withTimeFilter(queryRequest, fromMillis, toMillis, config) : queryRequest);
+            }
+        }
+        return ImmutableList.copyOf(queryRequests);
+    }
 
-                //generate the geo hash range
-                AttributeValue minRange = new AttributeValue().withN(Long.toString(range.getRangeMin()));
-                AttributeValue maxRange = new AttributeValue().withN(Long.toString(range.getRangeMax()));
+    /**
+     * For the given <code>QueryRequest</code> query and the boundingBox, this method creates the queries counting the
+     * items of the boundingBox per cell of <code>level</code>. The covering of the boundingBox is refined down to
+     * <code>level</code>; the ranges of cells contained in the boundingBox are counted with <code>Select.COUNT</code>
+     * and the ranges of the other cells fetch only the latitude and longitude of their items, which are filtered by the
+     * boundingBox. Counting saves the response bytes of the items, not the read units of scanning them. Contiguous cells
+     * contained in the boundingBox are counted by a single range per cell of <code>level</code>.
+     *
+     * @param query       the original query request
+     * @param boundingBox the bounding lat long rectangle to count the items of
+     * @param level       the level of the cells to count the items by
+     * @param maxCells    the maximum number of cells of <code>level</code> the boundingBox may intersect
+     * @param config      the config containing caller's geo config, example index name, etc.
+     * @param compositeKeyValue the value of the column that is used in the construction of the composite hash key(geoHashKey + someOtherColumnValue).
+     *                          This is needed when constructing queries that need a composite hash key.
+     *                          For eg. Fetch an item where lat/long is 23.78787, -70.6767 AND category = 'restaurants'
+     * @return the wrapper containing the count and boundary queries
+     */
+    public GeoHeatmapQueryRequest generateHeatmapQueries(QueryRequest query, S2LatLngRect boundingBox, int level, int maxCells,
+                                                         GeoConfig config, Optional<String> compositeKeyValue) {
+        checkArgument((level >= 0) && (level <= S2CellId.MAX_LEVEL), "level must be between 0 and 30: %s", level);
+        HeatmapPlan plan = new HeatmapPlan(query, boundingBox, level, maxCells, config, compositeKeyValue);
+        S2CellUnion cellUnion = s2Manager.findCellIds(boundingBox);
+        if (cellUnion != null) {
+            for (S2CellId cellId : cellUnion.cellIds()) {
+                plan.add(cellId);
+            }
+        }
+        plan.addCountRange();
+        return new GeoHeatmapQueryRequest(ImmutableList.copyOf(plan.countQueries), ImmutableList.copyOf(plan.countCellIds),
+                ImmutableList.copyOf(plan.boundaryQueries), GeoFilters.newRectangleFilter(boundingBox), level);
+    }
 
-                Condition geoHashCondition = new Condition().withComparisonOperator(ComparisonOperator.BETWEEN)
-                        .withAttributeValueList(minRange, maxRange);
-                keyConditions.put(config.getGeoHashColumn(), geoHashCondition);
+    /**
+     * For the given <code>QueryRequest</code> query and the boundingBox, this method creates the same queries as
+     * {@link #generateGeoQueries(QueryRequest, S2LatLngRect, GeoConfig, Optional)} ordered by the distance of their
+     * geohash range from <code>center</code>, nearest first.
+     *
+     * @param query       the original query request
+     * @param boundingBox the bounding lat long rectangle of the geo query
+     * @param center      the point to order the queries by
+     * @param config      the config containing caller's geo config, example index name, etc.
+     * @param compositeKeyValue the value of the column that is used in the construction of the composite hash key(geoHashKey + someOtherColumnValue).
+     *                          This is needed when constructing queries that need a composite hash key.
+     *                          For eg. Fetch an item where lat/long is 23.78787, -70.6767 AND category = 'restaurants'
+     * @return queryRequests an immutable collection of <code>QueryRequest</code> that are now "geo enabled", nearest first
+     */
+    public List<QueryRequest> generateGeoQueriesByDistance(QueryRequest query, S2LatLngRect boundingBox, S2LatLng center,
+                                                           GeoConfig config, Optional<String> compositeKeyValue) {
+        List<GeohashRange> ranges = getSplitGeoHashRanges(Collections.singletonList(boundingBox), config.getGeoHashKeyLength());
+        return generateGeoQueries(query, sortByDistance(ranges, center), config, compositeKeyValue);
+    }
 
-                queryRequest.withKeyConditions(keyConditions)
-                        .withIndexName(config.getGeoIndexName());
-                queryRequests.add(queryRequest);
+    /**
+     * Lazy variant of {@link #generateGeoQueries(QueryRequest, Collection, GeoConfig, Optional)}. Every query is created
+     * as the iterator reaches it, so that the first queries can be executed before the rest of the plan exists.
+     *
+     * @param query         the original query request
+     * @param boundingBoxes the bounding lat long rectangles of the geo query or batch of geo queries
+     * @param config        the config containing caller's geo config, example index name, etc.
+     * @param compositeKeyValue the value of the column that is used in the construction of the composite hash key(geoHashKey + someOtherColumnValue).
+     *                          This is needed when constructing queries that need a composite hash key.
+     *                          For eg. Fetch an item where lat/long is 23.78787, -70.6767 AND category = 'restaurants'
+     * @return queryRequests an iterator of <code>QueryRequest</code> that are now "geo enabled"
+     */
+    public Iterator<QueryRequest> iterateGeoQueries(final QueryRequest query, Collection<S2LatLngRect> boundingBoxes,
+                                                    final GeoConfig config, final Optional<String> compositeKeyValue) {
+        Iterator<GeohashRange> geohashRanges = iterateSplitGeoHashRanges(boundingBoxes, config.getGeoHashKeyLength());
+        return Iterators.transform(geohashRanges, new Function<GeohashRange, QueryRequest>() {
+            @Override public QueryRequest apply(GeohashRange range) {
+                return createQueryRequest(query, range, config, compositeKeyValue);
             }
+        });
+    }
+
+    private List<QueryRequest> generateGeoQueries(QueryRequest query, List<GeohashRange> geohashRanges, GeoConfig config,
+                                                  Optional<String> compositeKeyValue) {
+        List<QueryRequest> queryRequests = new ArrayList<QueryRequest>(geohashRanges.size());
+        //Create multiple queries based on the geo ranges derived from the bounding box
+        for (GeohashRange range : geohashRanges) {
+            queryRequests.add(createQueryRequest(query, range, config, compositeKeyValue));
         }
         return ImmutableList.copyOf(queryRequests);
     }
 
+    private QueryRequest createQueryRequest(QueryRequest query, GeohashRange range, GeoConfig config, Optional<String> compositeKeyValue) {
+        //generate the hash key for the global secondary index
+        long geohashKey = s2Manager.generateHashKey(range.getRangeMin(), config.getGeoHashKeyLength());
+        return createQueryRequest(query, geohashKey, range.getRangeMin(), range.getRangeMax(), config, compositeKeyValue);
+    }
+
+    /**
+     * For the given <code>QueryRequest</code> query and a collection of geohashes, this method creates a collection of
+     * queries fetching the items stored at those geohashes. The geohashes are grouped by their hash key and every group
+     * is sorted and split into clusters no wider than <code>maxClusterSpan</code>; each cluster is fetched with a single
+     * <code>BETWEEN</code> query instead of one query per geohash.
+     *
+     * @param query          the original query request
+     * @param geohashes      the geohashes to fetch
+     * @param config         the config containing caller's geo config, example index name, etc.
+     * @param compositeKeyValue the value of the column that is used in the construction of the composite hash key(geoHashKey + someOtherColumnValue).
+     *                          This is needed when constructing queries that need a composite hash key.
+     *                          For eg. Fetch an item where lat/long is 23.78787, -70.6767 AND category = 'restaurants'
+     * @param maxClusterSpan the maximum difference between the smallest and largest geohash fetched by a single query
+     * @return queryRequests an immutable collection of <code>QueryRequest</code> that are now "geo enabled"
+     */
+    public List<QueryRequest> generatePointQueries(QueryRequest query, Collection<Long> geohashes, GeoConfig config,
+                                                   Optional<String> compositeKeyValue, long maxClusterSpan) {
+        Map<Long, List<Long>> geohashesByKey = new TreeMap<Long, List<Long>>();
+        for (Long geohash : geohashes) {
+            long geohashKey = s2Manager.generateHashKey(geohash, config.getGeoHashKeyLength());
+            List<Long> keyGeohashes = geohashesByKey.get(geohashKey);
+            if (keyGeohashes == null) {
+                keyGeohashes = new ArrayList<Long>();
+                geohashesByKey.put(geohashKey, keyGeohashes);
+            }
+            keyGeohashes.add(geohash);
+        }
+        List<QueryRequest> queryRequests = new ArrayList<QueryRequest>(geohashesByKey.size());
+        for (Map.Entry<Long, List<Long>> entry : geohashesByKey.entrySet()) {
+            List<Long> keyGeohashes = entry.getValue();
+            Collections.sort(keyGeohashes);
+            long clusterMin = keyGeohashes.get(0);
+            long clusterMax = clusterMin;
+            for (int i = 1; i < keyGeohashes.size(); i++) {
+                long geohash = keyGeohashes.get(i);
+                if (geohash - clusterMin > maxClusterSpan) {
+                    queryRequests.add(createQueryRequest(query, entry.getKey(), clusterMin, clusterMax, config, compositeKeyValue));
+                    clusterMin = geohash;
+                }
+                clusterMax = geohash;
+            }
+            queryRequests.add(createQueryRequest(query, entry.getKey(), clusterMin, clusterMax, config, compositeKeyValue));
+        }
+        return ImmutableList.copyOf(queryRequests);
+    }
+
+    /**
+     * Creates a copy of the provided <code>QueryRequest</code> query restricted to a single range of a plan, e.g. one of
+     * a {@link com.dashlabs.dash.geo.s3.model.GeohashRangePlan}.
+     *
+     * @param query             the original query request
+     * @param geohashKey        the hash key of the range
+     * @param rangeMin          the smallest geohash of the range
+     * @param rangeMax          the largest geohash of the range
+     * @param config            the config containing caller's geo config, example index name, etc.
+     * @param compositeKeyValue the value of the column that is used in the construction of the composite hash key
+     * @return the "geo enabled" query of the range
+     */
+    public QueryRequest createQueryRequest(QueryRequest query, long geohashKey, long rangeMin, long rangeMax, GeoConfig config,
+                                           Optional<String> compositeKeyValue) {
+        checkArgument(!config.isTimeBucketed(), "Geo index is time bucketed and has to be queried with a time range: %s",
+                config.getGeoIndexName());
+        return createQueryRequest(query, geohashKey, rangeMin, rangeMax, config, compositeKeyValue, Optional.<Long>absent());
+    }
+
+    /**
+     * Creates a copy of the provided <code>QueryRequest</code> query restricted to the given hash key, time bucket (if
+     * present) and geohash range.
+     */
+    private QueryRequest createQueryRequest(QueryRequest query, long geohashKey, long rangeMin, long rangeMax, GeoConfig config,
+                                            Optional<String> compositeKeyValue, Optional<Long> timeBucket) {
+        //Make a copy of the query request to retain original query attributes like table name, etc.
+        QueryRequest queryRequest = copyQueryRequest(query);
+        Map<String, Condition> keyConditions = new HashMap<String, Condition>(2, 1.0f);
+
+        //Construct the hashKey condition
+        AttributeValue geoHashKeyValue;
+        if (config.getHashKeyDecorator().isPresent() && compositeKeyValue.isPresent()) {
+            String compositeHashKey = config.getHashKeyDecorator().get().decorate(compositeKeyValue.get(), geohashKey);
+            geoHashKeyValue = new AttributeValue().withS(compositeHashKey);
+        } else {
+            geoHashKeyValue = new AttributeValue().withN(String.valueOf(geohashKey));
+        }
+        if (timeBucket.isPresent()) {
+            String hashKey = (geoHashKeyValue.getS() != null ? geoHashKeyValue.getS() : geoHashKeyValue.getN());
+            geoHashKeyValue = new AttributeValue().withS(config.getTimeBucketedHashKey(hashKey, timeBucket.get()));
+        }
+        Condition geoHashKeyCondition = new Condition().withComparisonOperator(ComparisonOperator.EQ)
+                .withAttributeValueList(geoHashKeyValue);
+        keyConditions.put(config.getGeoHashKeyColumn(), geoHashKeyCondition);
+
+        //generate the geo hash range
+        Condition geoHashCondition;
+        if (rangeMin == rangeMax) {
+            geoHashCondition = new Condition().withComparisonOperator(ComparisonOperator.EQ)
+                    .withAttributeValueList(new AttributeValue().withN(Long.toString(rangeMin)));
+        } else {
+            AttributeValue minRange = new AttributeValue().withN(Long.toString(rangeMin));
+            AttributeValue maxRange = new AttributeValue().withN(Long.toString(rangeMax));
+            geoHashCondition = new Condition().withComparisonOperator(ComparisonOperator.BETWEEN)
+                    .withAttributeValueList(minRange, maxRange);
+        }
+        keyConditions.put(config.getGeoHashColumn(), geoHashCondition);
+
+        queryRequest.withKeyConditions(keyConditions).withIndexName(config.getGeoIndexName());
+        return (usesExpressions(queryRequest) ? withKeyConditionExpression(queryRequest, config) : queryRequest);
+    }
+
+    /**
+     * @return true if the <code>queryRequest</code> has any expression parameter, which DynamoDB rejects together with
+     *         legacy parameters such as <code>KeyConditions</code>
+     */
+    private static boolean usesExpressions(QueryRequest queryRequest) {
+        return (queryRequest.getFilterExpression() != null) || (queryRequest.getProjectionExpression() != null)
+                || (queryRequest.getExpressionAttributeNames() != null) || (queryRequest.getExpressionAttributeValues() != null);
+    }
+
+    /**
+     * Replaces the geo <code>KeyConditions</code> of the <code>queryRequest</code> by the equivalent
+     * <code>KeyConditionExpression</code>, with <code>#geo_*</code> and <code>:geo_*</code> placeholders merged with the
+     * caller's own, so that it can be combined with expression parameters.
+     */
+    private static QueryRequest withKeyConditionExpression(QueryRequest queryRequest, GeoConfig config) {
+        Map<String, Condition> keyConditions = queryRequest.getKeyConditions();
+        if (keyConditions == null) {
+            return queryRequest;
+        }
+        checkArgument((queryRequest.getAttributesToGet() == null) && (queryRequest.getQueryFilter() == null)
+                        && (queryRequest.getConditionalOperator() == null),
+                "Query mixes legacy parameters with expressions: %s", queryRequest);
+        Map<String, String> names = new HashMap<String, String>();
+        if (queryRequest.getExpressionAttributeNames() != null) {
+            names.putAll(queryRequest.getExpressionAttributeNames());
+        }
+        names.put("#geo_hash_key", config.getGeoHashKeyColumn());
+        names.put("#geo_hash", config.getGeoHashColumn());
+        Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+        if (queryRequest.getExpressionAttributeValues() != null) {
+            values.putAll(queryRequest.getExpressionAttributeValues());
+        }
+        values.put(HASH_KEY_VALUE, keyConditions.get(config.getGeoHashKeyColumn()).getAttributeValueList().get(0));
+        Condition geoHashCondition = keyConditions.get(config.getGeoHashColumn());
+        values.put(RANGE_MIN_VALUE, geoHashCondition.getAttributeValueList().get(0));
+        String rangeCondition;
+        if (ComparisonOperator.BETWEEN.toString().equals(geoHashCondition.getComparisonOperator())) {
+            values.put(RANGE_MAX_VALUE, geoHashCondition.getAttributeValueList().get(1));
+            rangeCondition = "#geo_hash BETWEEN " + RANGE_MIN_VALUE + " AND " + RANGE_MAX_VALUE;
+        } else {
+            rangeCondition = "#geo_hash = " + RANGE_MIN_VALUE;
+        }
+        queryRequest.setKeyConditions(null);
+        return queryRequest.withKeyConditionExpression("#geo_hash_key = " + HASH_KEY_VALUE + " AND " + rangeCondition)
+                .withExpressionAttributeNames(names)
+                .withExpressionAttributeValues(values);
+    }
+
+    /**
+     * The queries of a heatmap, built while refining the covering of its bounding box.
+     */
+    private final class HeatmapPlan {
+
+        private final QueryRequest query;
+
+        private final S2LatLngRect boundingBox;
+
+        private final int level;
+
+        private final int maxCells;
+
+        private final GeoConfig config;
+
+        private final Optional<String> compositeKeyValue;
+
+        private final Set<Long> cellIds = new HashSet<Long>();
+
+        private final List<QueryRequest> countQueries = new ArrayList<QueryRequest>();
+
+        private final List<Long> countCellIds = new ArrayList<Long>();
+
+        private final List<QueryRequest> boundaryQueries = new ArrayList<QueryRequest>();
+
+        // the range of contained cells not counted yet, extended by the contained cells following it in the same cell
+        private long countCellId;
+
+        private S2CellId countRangeMin;
+
+        private S2CellId countRangeMax;
+
+        private HeatmapPlan(QueryRequest query, S2LatLngRect boundingBox, int level, int maxCells, GeoConfig config,
+                            Optional<String> compositeKeyValue) {
+            this.query = query;
+            this.boundingBox = boundingBox;
+            this.level = level;
+            this.maxCells = maxCells;
+            this.config = config;
+            this.compositeKeyValue = compositeKeyValue;
+        }
+
+        /**
+         * Adds the queries of the part of <code>cellId</code> within the bounding box.
+         */
+        private void add(S2CellId cellId) {
+            if (cellId.level() < level) {
+                for (S2CellId child = cellId.childBegin(); !child.equals(cellId.childEnd()); child = child.next()) {
+                    if (boundingBox.intersects(new S2Cell(child))) {
+                        add(child);
+                    }
+                }
+                return;
+            }
+            long cellOfLevel = cellId.parent(level).id();
+            if (cellIds.add(cellOfLevel) && (cellIds.size() > maxCells)) {
+                throw new IllegalArgumentException(String.format("The bounding box intersects more than %d cells of level %d",
+                        maxCells, level));
+            }
+            if (!boundingBox.contains(new S2Cell(cellId))) {
+                Iterator<GeohashRange> ranges = new GeohashRange(cellId.rangeMin().id(), cellId.rangeMax().id())
+                        .iterateSplit(config.getGeoHashKeyLength(), s2Manager);
+                while (ranges.hasNext()) {
+                    boundaryQueries.add(withCoordinatesProjection(createQueryRequest(query, ranges.next(), config, compositeKeyValue),
+                            config));
+                }
+            } else if ((countRangeMax != null) && (countCellId == cellOfLevel) && countRangeMax.next().equals(cellId.rangeMin())) {
+                countRangeMax = cellId.rangeMax();
+            } else {
+                addCountRange();
+                countCellId = cellOfLevel;
+                countRangeMin = cellId.rangeMin();
+                countRangeMax = cellId.rangeMax();
+            }
+        }
+
+        /**
+         * Adds the queries counting the range of contained cells not counted yet, if any.
+         */
+        private void addCountRange() {
+            if (countRangeMax == null) {
+                return;
+            }
+            Iterator<GeohashRange> ranges = new GeohashRange(countRangeMin.id(), countRangeMax.id())
+                    .iterateSplit(config.getGeoHashKeyLength(), s2Manager);
+            while (ranges.hasNext()) {
+                countQueries.add(createQueryRequest(query, ranges.next(), config, compositeKeyValue).withSelect(Select.COUNT)
+                        .withAttributesToGet((Collection<String>) null));
+                countCellIds.add(countCellId);
+            }
+            countRangeMax = null;
+        }
+
+    }
+
+    /**
+     * Restricts the items returned by the <code>queryRequest</code> to their latitude and longitude.
+     */
+    private static QueryRequest withCoordinatesProjection(QueryRequest queryRequest, GeoConfig config) {
+        Map<String, String> names = new HashMap<String, String>();
+        if (queryRequest.getExpressionAttributeNames() != null) {
+            names.putAll(queryRequest.getExpressionAttributeNames());
+        }
+        names.put("#geo_latitude", GeoFilter.LATITUDE_FIELD);
+        names.put("#geo_longitude", GeoFilter.LONGITUDE_FIELD);
+        return withKeyConditionExpression(queryRequest.withSelect(Select.SPECIFIC_ATTRIBUTES)
+                .withAttributesToGet((Collection<String>) null)
+                .withProjectionExpression("#geo_latitude, #geo_longitude")
+                .withExpressionAttributeNames(names), config);
+    }
+
+    /**
+     * Restricts the <code>queryRequest</code> to the items whose timestamp is within the time range, in addition to the
+     * caller's own filter if any.
+     */
+    private QueryRequest withTimeFilter(QueryRequest queryRequest, long fromMillis, long toMillis, GeoConfig config) {
+        String timeFilter = "#geo_time BETWEEN :geo_time_from AND :geo_time_to";
+        Map<String, String> names = new HashMap<String, String>();
+        if (queryRequest.getExpressionAttributeNames() != null) {
+            names.putAll(queryRequest.getExpressionAttributeNames());
+        }
+        names.put("#geo_time", config.getTimestampColumn().get());
+        Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+        if (queryRequest.getExpressionAttributeValues() != null) {
+            values.putAll(queryRequest.getExpressionAttributeValues());
+        }
+        values.put(":geo_time_from", new AttributeValue().withN(Long.toString(fromMillis)));
+        values.put(":geo_time_to", new AttributeValue().withN(Long.toString(toMillis)));
+        return withKeyConditionExpression(queryRequest.withFilterExpression(queryRequest.getFilterExpression() == null ? timeFilter
+                : "(" + queryRequest.getFilterExpression() + ") AND " + timeFilter)
+                .withExpressionAttributeNames(names)
+                .withExpressionAttributeValues(values), config);
+    }
+
     /**
      * Creates a copy of the provided <code>QueryRequest</code> queryRequest
      *
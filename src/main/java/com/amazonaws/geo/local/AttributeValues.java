@@ -0,0 +1,143 @@
+package com.amazonaws.geo.local;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Ordering and sizing of <code>AttributeValue</code>s as DynamoDB applies them to key attributes and capacity units.
+ */
+final class AttributeValues {
+
+    private AttributeValues() { }
+
+    /**
+     * Compares two scalar key values of the same type: numbers numerically, strings and binaries by their bytes.
+     *
+     * @throws IllegalArgumentException if the values are not scalars of the same type
+     */
+    static int compare(AttributeValue left, AttributeValue right) {
+        if ((left.getN() != null) && (right.getN() != null)) {
+            return new BigDecimal(left.getN()).compareTo(new BigDecimal(right.getN()));
+        }
+        if ((left.getS() != null) && (right.getS() != null)) {
+            return compare(left.getS().getBytes(StandardCharsets.UTF_8), right.getS().getBytes(StandardCharsets.UTF_8));
+        }
+        if ((left.getB() != null) && (right.getB() != null)) {
+            return compare(toBytes(left.getB()), toBytes(right.getB()));
+        }
+        throw new IllegalArgumentException(String.format("Cannot compare key values [ %s ] and [ %s ]", left, right));
+    }
+
+    /**
+     * @return true if <code>value</code> is a string or binary starting with <code>prefix</code>
+     */
+    static boolean beginsWith(AttributeValue value, AttributeValue prefix) {
+        if ((value.getS() != null) && (prefix.getS() != null)) {
+            return value.getS().startsWith(prefix.getS());
+        }
+        if ((value.getB() != null) && (prefix.getB() != null)) {
+            byte[] bytes = toBytes(value.getB());
+            byte[] prefixBytes = toBytes(prefix.getB());
+            return (bytes.length >= prefixBytes.length)
+                    && (compare(prefixBytes, Arrays.copyOf(bytes, prefixBytes.length)) == 0);
+        }
+        return false;
+    }
+
+    /**
+     * @return the size of an item as DynamoDB accounts it for capacity units, attribute names included
+     */
+    static int size(Map<String, AttributeValue> item) {
+        int size = 0;
+        for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+            size += utf8Length(attribute.getKey()) + size(attribute.getValue());
+        }
+        return size;
+    }
+
+    private static int size(AttributeValue value) {
+        if (value.getS() != null) {
+            return utf8Length(value.getS());
+        }
+        if (value.getN() != null) {
+            return numberSize(value.getN());
+        }
+        if (value.getB() != null) {
+            return value.getB().remaining();
+        }
+        if (value.getSS() != null) {
+            int size = 0;
+            for (String member : value.getSS()) {
+                size += utf8Length(member);
+            }
+            return size;
+        }
+        if (value.getNS() != null) {
+            int size = 0;
+            for (String member : value.getNS()) {
+                size += numberSize(member);
+            }
+            return size;
+        }
+        if (value.getBS() != null) {
+            int size = 0;
+            for (ByteBuffer member : value.getBS()) {
+                size += member.remaining();
+            }
+            return size;
+        }
+        if (value.getL() != null) {
+            int size = 3;
+            for (AttributeValue member : value.getL()) {
+                size += 1 + size(member);
+            }
+            return size;
+        }
+        if (value.getM() != null) {
+            return 3 + size(value.getM());
+        }
+        // BOOL and NULL
+        return 1;
+    }
+
+    private static int numberSize(String number) {
+        // up to 38 significant digits, two per byte, plus one byte of exponent and sign
+        int digits = 0;
+        for (int i = 0; i < number.length(); i++) {
+            if (Character.isDigit(number.charAt(i))) {
+                digits++;
+            } else if ((number.charAt(i) == 'e') || (number.charAt(i) == 'E')) {
+                break;
+            }
+        }
+        return ((digits + 1) / 2) + 1;
+    }
+
+    private static int utf8Length(String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        ByteBuffer duplicate = buffer.duplicate();
+        byte[] bytes = new byte[duplicate.remaining()];
+        duplicate.get(bytes);
+        return bytes;
+    }
+
+    private static int compare(byte[] left, byte[] right) {
+        int length = Math.min(left.length, right.length);
+        for (int i = 0; i < length; i++) {
+            int comparison = (left[i] & 0xff) - (right[i] & 0xff);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return left.length - right.length;
+    }
+
+}
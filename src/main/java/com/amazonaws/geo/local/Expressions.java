@@ -0,0 +1,357 @@
+package com.amazonaws.geo.local;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates the subset of DynamoDB expressions the in-memory stand-in supports, on top-level attributes only:
+ *
+ * <ul>
+ *     <li>conditions and filters made of <code>a = b</code>, <code>&lt;&gt;</code>, <code>&lt;</code>,
+ *     <code>&lt;=</code>, <code>&gt;</code>, <code>&gt;=</code>, <code>a BETWEEN b AND c</code>,
+ *     <code>attribute_exists(a)</code>, <code>attribute_not_exists(a)</code> and <code>begins_with(a, b)</code>,
+ *     combined with <code>AND</code>, <code>OR</code>, <code>NOT</code> and parentheses</li>
+ *     <li>update expressions made of a single <code>SET a = b, ...</code> clause</li>
+ *     <li>key condition expressions made of <code>a = b</code>, <code>&lt;</code>, <code>&lt;=</code>,
+ *     <code>&gt;</code>, <code>&gt;=</code>, <code>a BETWEEN b AND c</code> and <code>begins_with(a, b)</code> conditions
+ *     on distinct attributes, combined with <code>AND</code></li>
+ *     <li>projection expressions listing attributes</li>
+ * </ul>
+ *
+ * Operands are attribute names, <code>#name</code> placeholders or <code>:value</code> placeholders.
+ *
+ * @throws IllegalArgumentException for anything else
+ */
+final class Expressions {
+
+    private Expressions() { }
+
+    /**
+     * @return true if <code>item</code>, which may be empty, satisfies the condition <code>expression</code>
+     */
+    static boolean evaluate(String expression, Map<String, String> names, Map<String, AttributeValue> values,
+                            Map<String, AttributeValue> item) {
+        Parser parser = new Parser(expression, names, values);
+        boolean result = parser.condition(item);
+        parser.expectEnd();
+        return result;
+    }
+
+    /**
+     * Applies the update <code>expression</code> to <code>item</code>.
+     */
+    static void update(String expression, Map<String, String> names, Map<String, AttributeValue> values,
+                       Map<String, AttributeValue> item) {
+        Parser parser = new Parser(expression, names, values);
+        parser.expectKeyword("SET");
+        List<String> attributeNames = new ArrayList<String>();
+        List<AttributeValue> attributeValues = new ArrayList<AttributeValue>();
+        do {
+            attributeNames.add(parser.attributeName());
+            parser.expect("=");
+            attributeValues.add(parser.operand(item));
+        } while (parser.accept(","));
+        parser.expectEnd();
+        // every operand is evaluated against the item before the update, as DynamoDB does
+        for (int i = 0; i < attributeNames.size(); i++) {
+            item.put(attributeNames.get(i), attributeValues.get(i));
+        }
+    }
+
+    /**
+     * @return the names of the attributes of the projection <code>expression</code>
+     */
+    static List<String> projection(String expression, Map<String, String> names) {
+        Parser parser = new Parser(expression, names, null);
+        List<String> attributeNames = new ArrayList<String>();
+        do {
+            attributeNames.add(parser.attributeName());
+        } while (parser.accept(","));
+        parser.expectEnd();
+        return attributeNames;
+    }
+
+    /**
+     * @return the legacy <code>KeyConditions</code> equivalent to the key condition <code>expression</code>, by attribute name
+     */
+    static Map<String, Condition> keyConditions(String expression, Map<String, String> names, Map<String, AttributeValue> values) {
+        Parser parser = new Parser(expression, names, values);
+        Map<String, Condition> keyConditions = new HashMap<String, Condition>();
+        do {
+            String attributeName;
+            Condition condition;
+            if (parser.acceptKeyword("begins_with")) {
+                parser.expect("(");
+                attributeName = parser.attributeName();
+                parser.expect(",");
+                condition = new Condition().withComparisonOperator(ComparisonOperator.BEGINS_WITH)
+                        .withAttributeValueList(parser.value());
+                parser.expect(")");
+            } else {
+                attributeName = parser.attributeName();
+                if (parser.acceptKeyword("BETWEEN")) {
+                    AttributeValue low = parser.value();
+                    parser.expectKeyword("AND");
+                    condition = new Condition().withComparisonOperator(ComparisonOperator.BETWEEN)
+                            .withAttributeValueList(Arrays.asList(low, parser.value()));
+                } else {
+                    condition = new Condition().withComparisonOperator(keyComparisonOperator(parser.next()))
+                            .withAttributeValueList(parser.value());
+                }
+            }
+            if (keyConditions.put(attributeName, condition) != null) {
+                throw new IllegalArgumentException(String.format("Duplicate key condition on [ %s ]", attributeName));
+            }
+        } while (parser.acceptKeyword("AND"));
+        parser.expectEnd();
+        return keyConditions;
+    }
+
+    private static ComparisonOperator keyComparisonOperator(String comparator) {
+        if ("=".equals(comparator)) {
+            return ComparisonOperator.EQ;
+        } else if ("<".equals(comparator)) {
+            return ComparisonOperator.LT;
+        } else if ("<=".equals(comparator)) {
+            return ComparisonOperator.LE;
+        } else if (">".equals(comparator)) {
+            return ComparisonOperator.GT;
+        } else if (">=".equals(comparator)) {
+            return ComparisonOperator.GE;
+        }
+        throw new IllegalArgumentException(String.format("Unsupported key condition comparator [ %s ]", comparator));
+    }
+
+    private static final class Parser {
+
+        private final List<String> tokens;
+
+        private final Map<String, String> names;
+
+        private final Map<String, AttributeValue> values;
+
+        private int position;
+
+        private Parser(String expression, Map<String, String> names, Map<String, AttributeValue> values) {
+            this.tokens = tokenize(expression);
+            this.names = (names == null ? Collections.<String, String>emptyMap() : names);
+            this.values = (values == null ? Collections.<String, AttributeValue>emptyMap() : values);
+        }
+
+        private boolean condition(Map<String, AttributeValue> item) {
+            boolean result = conjunction(item);
+            while (acceptKeyword("OR")) {
+                // both sides are parsed, hence evaluated, to consume their tokens
+                boolean right = conjunction(item);
+                result = result || right;
+            }
+            return result;
+        }
+
+        private boolean conjunction(Map<String, AttributeValue> item) {
+            boolean result = factor(item);
+            while (acceptKeyword("AND")) {
+                boolean right = factor(item);
+                result = result && right;
+            }
+            return result;
+        }
+
+        private boolean factor(Map<String, AttributeValue> item) {
+            if (acceptKeyword("NOT")) {
+                return !factor(item);
+            }
+            if (accept("(")) {
+                boolean result = condition(item);
+                expect(")");
+                return result;
+            }
+            if (acceptKeyword("attribute_exists")) {
+                expect("(");
+                String attributeName = attributeName();
+                expect(")");
+                return item.containsKey(attributeName);
+            }
+            if (acceptKeyword("attribute_not_exists")) {
+                expect("(");
+                String attributeName = attributeName();
+                expect(")");
+                return !item.containsKey(attributeName);
+            }
+            if (acceptKeyword("begins_with")) {
+                expect("(");
+                AttributeValue value = operand(item);
+                expect(",");
+                AttributeValue prefix = operand(item);
+                expect(")");
+                return (value != null) && (prefix != null) && AttributeValues.beginsWith(value, prefix);
+            }
+            AttributeValue left = operand(item);
+            if (acceptKeyword("BETWEEN")) {
+                AttributeValue low = operand(item);
+                expectKeyword("AND");
+                AttributeValue high = operand(item);
+                return (left != null) && (compare(left, low) >= 0) && (compare(left, high) <= 0);
+            }
+            String comparator = next();
+            AttributeValue right = operand(item);
+            if ((left == null) || (right == null)) {
+                return "<>".equals(comparator) && ((left != null) || (right != null));
+            }
+            if ("=".equals(comparator)) {
+                return left.equals(right);
+            }
+            if ("<>".equals(comparator)) {
+                return !left.equals(right);
+            }
+            int comparison = compare(left, right);
+            if ("<".equals(comparator)) {
+                return comparison < 0;
+            } else if ("<=".equals(comparator)) {
+                return comparison <= 0;
+            } else if (">".equals(comparator)) {
+                return comparison > 0;
+            } else if (">=".equals(comparator)) {
+                return comparison >= 0;
+            }
+            throw new IllegalArgumentException(String.format("Unsupported comparator [ %s ]", comparator));
+        }
+
+        /**
+         * @return the value of the next operand, or null if it names an attribute <code>item</code> lacks
+         */
+        private AttributeValue operand(Map<String, AttributeValue> item) {
+            String token = peek();
+            if (token.startsWith(":")) {
+                position++;
+                AttributeValue value = values.get(token);
+                if (value == null) {
+                    throw new IllegalArgumentException(String.format("Undefined expression attribute value [ %s ]", token));
+                }
+                return value;
+            }
+            return item.get(attributeName());
+        }
+
+        /**
+         * @return the value of the next operand, which must be a <code>:value</code> placeholder
+         */
+        private AttributeValue value() {
+            if (!peek().startsWith(":")) {
+                throw new IllegalArgumentException(String.format("Expected an expression attribute value but was [ %s ]", peek()));
+            }
+            return operand(Collections.<String, AttributeValue>emptyMap());
+        }
+
+        private String attributeName() {
+            String token = next();
+            if (token.startsWith("#")) {
+                String name = names.get(token);
+                if (name == null) {
+                    throw new IllegalArgumentException(String.format("Undefined expression attribute name [ %s ]", token));
+                }
+                return name;
+            }
+            if (!Character.isLetter(token.charAt(0))) {
+                throw new IllegalArgumentException(String.format("Expected an attribute name but was [ %s ]", token));
+            }
+            return token;
+        }
+
+        private static int compare(AttributeValue left, AttributeValue right) {
+            return AttributeValues.compare(left, right);
+        }
+
+        private String peek() {
+            if (position >= tokens.size()) {
+                throw new IllegalArgumentException("Unexpected end of expression");
+            }
+            return tokens.get(position);
+        }
+
+        private String next() {
+            String token = peek();
+            position++;
+            return token;
+        }
+
+        private boolean accept(String token) {
+            if ((position < tokens.size()) && tokens.get(position).equals(token)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean acceptKeyword(String keyword) {
+            if ((position < tokens.size()) && tokens.get(position).equalsIgnoreCase(keyword)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String token) {
+            if (!accept(token)) {
+                throw new IllegalArgumentException(String.format("Expected [ %s ] but was [ %s ]", token,
+                        (position < tokens.size() ? tokens.get(position) : "end of expression")));
+            }
+        }
+
+        private void expectKeyword(String keyword) {
+            if (!acceptKeyword(keyword)) {
+                throw new IllegalArgumentException(String.format("Expected [ %s ] but was [ %s ]", keyword,
+                        (position < tokens.size() ? tokens.get(position) : "end of expression")));
+            }
+        }
+
+        private void expectEnd() {
+            if (position < tokens.size()) {
+                throw new IllegalArgumentException(String.format("Unexpected [ %s ]", tokens.get(position)));
+            }
+        }
+
+        private static List<String> tokenize(String expression) {
+            List<String> tokens = new ArrayList<String>();
+            int i = 0;
+            while (i < expression.length()) {
+                char c = expression.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if ((c == '(') || (c == ')') || (c == ',') || (c == '=')) {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                } else if ((c == '<') || (c == '>')) {
+                    int end = i + 1;
+                    if ((end < expression.length()) && ((expression.charAt(end) == '=') || ((c == '<') && (expression.charAt(end) == '>')))) {
+                        end++;
+                    }
+                    tokens.add(expression.substring(i, end));
+                    i = end;
+                } else {
+                    int end = i;
+                    while ((end < expression.length()) && (Character.isLetterOrDigit(expression.charAt(end))
+                            || (expression.charAt(end) == '_') || (expression.charAt(end) == '#') || (expression.charAt(end) == ':'))) {
+                        end++;
+                    }
+                    if (end == i) {
+                        throw new IllegalArgumentException(String.format("Unexpected [ %s ] in expression", c));
+                    }
+                    tokens.add(expression.substring(i, end));
+                    i = end;
+                }
+            }
+            return tokens;
+        }
+
+    }
+
+}
@@ -0,0 +1,720 @@
+package com.amazonaws.geo.local;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AmazonDynamoDBException;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.CreateTableResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.Select;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.TableStatus;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * An in-memory stand-in for DynamoDB, for exercising geo queries end to end without an AWS account.
+ *
+ * Supports <code>CreateTable</code> (with global and local secondary indexes), <code>PutItem</code>,
+ * <code>GetItem</code>, <code>DeleteItem</code>, <code>UpdateItem</code> with a <code>SET</code>
+ * <code>UpdateExpression</code> and a <code>ConditionExpression</code> (comparisons, <code>BETWEEN</code>,
+ * <code>attribute_exists</code>, <code>attribute_not_exists</code>, <code>begins_with</code>, <code>AND</code>,
+ * <code>OR</code>, <code>NOT</code>), <code>BatchWriteItem</code> and <code>Query</code> on the table or an
+ * index with <code>KeyConditions</code> or a <code>KeyConditionExpression</code> (EQ on the hash key; EQ, BETWEEN, LT,
+ * LE, GT, GE or BEGINS_WITH on the range key), <code>Limit</code>, <code>ExclusiveStartKey</code>/<code>LastEvaluatedKey</code>,
+ * <code>ScanIndexForward</code> and <code>Select.COUNT</code>, and <code>Scan</code> of the table or an index with
+ * <code>Limit</code>, <code>ExclusiveStartKey</code>, parallel <code>Segment</code>s and <code>Select.COUNT</code>.
+ * Queries and scans take a <code>FilterExpression</code> of the same form as conditions, applied after
+ * <code>Limit</code> like DynamoDB does, and project items by <code>AttributesToGet</code> or a
+ * <code>ProjectionExpression</code> of top-level attributes. Like DynamoDB, a query or scan page stops after 1MB of
+ * evaluated items, and a request which mixes legacy parameters such as <code>KeyConditions</code> or
+ * <code>AttributesToGet</code> with expression parameters is rejected with a <code>ValidationException</code>.
+ *
+ * Every request can be delayed by a configurable latency and rejected with a
+ * <code>ProvisionedThroughputExceededException</code>, either at random or when a partition exceeds a read rate. Read
+ * and write capacity units are accounted as DynamoDB would charge them. Unsupported operations throw
+ * <code>UnsupportedOperationException</code>.
+ */
+public class InMemoryAmazonDynamoDB extends AbstractAmazonDynamoDB {
+
+    /**
+     * The maximum size of the items evaluated by a single query page.
+     */
+    public static final int MAX_PAGE_SIZE = 1024 * 1024;
+
+    private static final int READ_UNIT_SIZE = 4096;
+
+    private static final int WRITE_UNIT_SIZE = 1024;
+
+    private static final int MAX_BATCH_WRITE_SIZE = 25;
+
+    private final ConcurrentMap<String, InMemoryTable> tables = new ConcurrentHashMap<String, InMemoryTable>();
+
+    private final ConcurrentMap<String, PartitionWindow> partitionWindows = new ConcurrentHashMap<String, PartitionWindow>();
+
+    private final long latencyMillis;
+
+    private final long latencyJitterMillis;
+
+    private final double throttleRate;
+
+    private final double partitionReadUnitsPerSecond;
+
+    /**
+     * Consumed read units, in halves as eventually consistent reads are charged half a unit per 4KB.
+     */
+    private final AtomicLong readHalfUnits = new AtomicLong();
+
+    private final AtomicLong writeUnits = new AtomicLong();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong throttledRequests = new AtomicLong();
+
+    public InMemoryAmazonDynamoDB() {
+        this(0L, 0L, 0.0d, 0.0d);
+    }
+
+    /**
+     * @param latencyMillis               the delay added to every request
+     * @param latencyJitterMillis         the maximum random delay added on top of <code>latencyMillis</code>
+     * @param throttleRate                the probability of rejecting a request with a throttling error
+     * @param partitionReadUnitsPerSecond the read units a single partition (hash key of a table or index) may consume per
+     *                                    second before its queries are throttled, or 0 for no limit
+     */
+    public InMemoryAmazonDynamoDB(long latencyMillis, long latencyJitterMillis, double throttleRate, double partitionReadUnitsPerSecond) {
+        checkArgument(latencyMillis >= 0, "latencyMillis must not be negative: %s", latencyMillis);
+        checkArgument(latencyJitterMillis >= 0, "latencyJitterMillis must not be negative: %s", latencyJitterMillis);
+        checkArgument((throttleRate >= 0) && (throttleRate <= 1), "throttleRate must be between 0 and 1: %s", throttleRate);
+        checkArgument(partitionReadUnitsPerSecond >= 0, "partitionReadUnitsPerSecond must not be negative: %s", partitionReadUnitsPerSecond);
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = latencyJitterMillis;
+        this.throttleRate = throttleRate;
+        this.partitionReadUnitsPerSecond = partitionReadUnitsPerSecond;
+    }
+
+    @Override public CreateTableResult createTable(CreateTableRequest request) {
+        InMemoryTable table = new InMemoryTable(request);
+        if (tables.putIfAbsent(request.getTableName(), table) != null) {
+            throw validationException(String.format("Table already exists: %s", request.getTableName()));
+        }
+        return new CreateTableResult().withTableDescription(new TableDescription().withTableName(request.getTableName())
+                .withKeySchema(request.getKeySchema()).withAttributeDefinitions(request.getAttributeDefinitions())
+                .withTableStatus(TableStatus.ACTIVE));
+    }
+
+    @Override public PutItemResult putItem(PutItemRequest request) {
+        beginRequest();
+        InMemoryTable table = getTable(request.getTableName());
+        Map<String, AttributeValue> previous;
+        table.getLock().writeLock().lock();
+        try {
+            checkKey(table, request.getItem());
+            previous = table.put(request.getItem());
+        } finally {
+            table.getLock().writeLock().unlock();
+        }
+        double units = consumeWrite(request.getItem(), previous);
+        PutItemResult result = new PutItemResult()
+                .withConsumedCapacity(consumedCapacity(request.getReturnConsumedCapacity(), table, units));
+        if ((previous != null) && ReturnValue.ALL_OLD.toString().equals(request.getReturnValues())) {
+            result.setAttributes(previous);
+        }
+        return result;
+    }
+
+    @Override public GetItemResult getItem(GetItemRequest request) {
+        beginRequest();
+        InMemoryTable table = getTable(request.getTableName());
+        Map<String, AttributeValue> item;
+        table.getLock().readLock().lock();
+        try {
+            checkKey(table, request.getKey());
+            item = table.get(request.getKey());
+        } finally {
+            table.getLock().readLock().unlock();
+        }
+        double units = consumeRead((item == null ? 0 : AttributeValues.size(item)), Boolean.TRUE.equals(request.getConsistentRead()));
+        return new GetItemResult().withItem(item == null ? null : new LinkedHashMap<String, AttributeValue>(item))
+                .withConsumedCapacity(consumedCapacity(request.getReturnConsumedCapacity(), table, units));
+    }
+
+    @Override public DeleteItemResult deleteItem(DeleteItemRequest request) {
+        beginRequest();
+        InMemoryTable table = getTable(request.getTableName());
+        Map<String, AttributeValue> previous;
+        table.getLock().writeLock().lock();
+        try {
+            checkKey(table, request.getKey());
+            previous = table.delete(request.getKey());
+        } finally {
+            table.getLock().writeLock().unlock();
+        }
+        double units = consumeWrite(request.getKey(), previous);
+        DeleteItemResult result = new DeleteItemResult()
+                .withConsumedCapacity(consumedCapacity(request.getReturnConsumedCapacity(), table, units));
+        if ((previous != null) && ReturnValue.ALL_OLD.toString().equals(request.getReturnValues())) {
+            result.setAttributes(previous);
+        }
+        return result;
+    }
+
+    @Override public UpdateItemResult updateItem(UpdateItemRequest request) {
+        checkNotMixed(presentParameters("AttributeUpdates", request.getAttributeUpdates(), "Expected", request.getExpected(),
+                "ConditionalOperator", request.getConditionalOperator()),
+                presentParameters("UpdateExpression", request.getUpdateExpression(), "ConditionExpression", request.getConditionExpression(),
+                        "ExpressionAttributeNames", request.getExpressionAttributeNames(),
+                        "ExpressionAttributeValues", request.getExpressionAttributeValues()));
+        if ((request.getAttributeUpdates() != null) || (request.getExpected() != null)) {
+            throw new UnsupportedOperationException("UpdateItem is only supported with expressions");
+        }
+        beginRequest();
+        InMemoryTable table = getTable(request.getTableName());
+        Map<String, AttributeValue> previous;
+        Map<String, AttributeValue> item;
+        boolean conditionFailed = false;
+        table.getLock().writeLock().lock();
+        try {
+            checkKey(table, request.getKey());
+            previous = table.get(request.getKey());
+            item = new LinkedHashMap<String, AttributeValue>(previous == null ? request.getKey() : previous);
+            try {
+                if (request.getConditionExpression() != null) {
+                    conditionFailed = !Expressions.evaluate(request.getConditionExpression(), request.getExpressionAttributeNames(),
+                            request.getExpressionAttributeValues(), (previous == null ? Collections.<String, AttributeValue>emptyMap() : previous));
+                }
+                if (!conditionFailed && (request.getUpdateExpression() != null)) {
+                    Expressions.update(request.getUpdateExpression(), request.getExpressionAttributeNames(),
+                            request.getExpressionAttributeValues(), item);
+                }
+            } catch (IllegalArgumentException e) {
+                throw validationException(e.getMessage());
+            }
+            if (!table.getPrimaryIndex().keyOf(item).equals(table.getPrimaryIndex().keyOf(request.getKey()))) {
+                throw validationException("Cannot update attribute of the key");
+            }
+            if (!conditionFailed) {
+                table.put(item);
+            }
+        } finally {
+            table.getLock().writeLock().unlock();
+        }
+        // like DynamoDB, a failed condition still consumes write capacity
+        double units = consumeWrite(item, previous);
+        if (conditionFailed) {
+            ConditionalCheckFailedException exception = new ConditionalCheckFailedException("The conditional request failed");
+            exception.setErrorCode("ConditionalCheckFailedException");
+            exception.setStatusCode(400);
+            throw exception;
+        }
+        UpdateItemResult result = new UpdateItemResult()
+                .withConsumedCapacity(consumedCapacity(request.getReturnConsumedCapacity(), table, units));
+        if (ReturnValue.ALL_NEW.toString().equals(request.getReturnValues())) {
+            result.setAttributes(new LinkedHashMap<String, AttributeValue>(item));
+        } else if ((previous != null) && ReturnValue.ALL_OLD.toString().equals(request.getReturnValues())) {
+            result.setAttributes(previous);
+        }
+        return result;
+    }
+
+    @Override public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+        beginRequest();
+        int size = 0;
+        for (List<WriteRequest> writeRequests : request.getRequestItems().values()) {
+            size += writeRequests.size();
+        }
+        if ((size == 0) || (size > MAX_BATCH_WRITE_SIZE)) {
+            throw validationException(String.format("Batch write of [ %d ] items, must be between 1 and %d", size, MAX_BATCH_WRITE_SIZE));
+        }
+        List<ConsumedCapacity> consumedCapacities = new ArrayList<ConsumedCapacity>();
+        for (Map.Entry<String, List<WriteRequest>> entry : request.getRequestItems().entrySet()) {
+            InMemoryTable table = getTable(entry.getKey());
+            double units = 0.0d;
+            table.getLock().writeLock().lock();
+            try {
+                for (WriteRequest writeRequest : entry.getValue()) {
+                    if (writeRequest.getPutRequest() != null) {
+                        Map<String, AttributeValue> item = writeRequest.getPutRequest().getItem();
+                        checkKey(table, item);
+                        units += consumeWrite(item, table.put(item));
+                    } else if (writeRequest.getDeleteRequest() != null) {
+                        Map<String, AttributeValue> key = writeRequest.getDeleteRequest().getKey();
+                        checkKey(table, key);
+                        units += consumeWrite(key, table.delete(key));
+                    }
+                }
+            } finally {
+                table.getLock().writeLock().unlock();
+            }
+            ConsumedCapacity consumedCapacity = consumedCapacity(request.getReturnConsumedCapacity(), table, units);
+            if (consumedCapacity != null) {
+                consumedCapacities.add(consumedCapacity);
+            }
+        }
+        return new BatchWriteItemResult().withUnprocessedItems(Collections.<String, List<WriteRequest>>emptyMap())
+                .withConsumedCapacity(consumedCapacities.isEmpty() ? null : consumedCapacities);
+    }
+
+    @Override public QueryResult query(QueryRequest request) {
+        beginRequest();
+        checkNotMixed(presentParameters("KeyConditions", request.getKeyConditions(), "QueryFilter", request.getQueryFilter(),
+                "AttributesToGet", request.getAttributesToGet(), "ConditionalOperator", request.getConditionalOperator()),
+                presentParameters("KeyConditionExpression", request.getKeyConditionExpression(),
+                        "FilterExpression", request.getFilterExpression(), "ProjectionExpression", request.getProjectionExpression(),
+                        "ExpressionAttributeNames", request.getExpressionAttributeNames(),
+                        "ExpressionAttributeValues", request.getExpressionAttributeValues()));
+        if (request.getQueryFilter() != null) {
+            throw new UnsupportedOperationException("QueryFilter is not supported by the in-memory stand-in");
+        }
+        InMemoryTable table = getTable(request.getTableName());
+        InMemoryTable.Index index = table.getIndex(request.getIndexName());
+        if (index == null) {
+            throw validationException(String.format("Table [ %s ] has no index [ %s ]", table.getName(), request.getIndexName()));
+        }
+        Map<String, Condition> keyConditions = (request.getKeyConditionExpression() != null
+                ? keyConditions(request.getKeyConditionExpression(), request.getExpressionAttributeNames(),
+                        request.getExpressionAttributeValues())
+                : (request.getKeyConditions() == null ? Collections.<String, Condition>emptyMap() : request.getKeyConditions()));
+        Condition hashCondition = keyConditions.get(index.getHashKeyName());
+        if ((hashCondition == null) || !ComparisonOperator.EQ.toString().equals(hashCondition.getComparisonOperator())) {
+            throw validationException(String.format("Query must have an EQ condition on [ %s ]", index.getHashKeyName()));
+        }
+        Condition rangeCondition = (index.getRangeKeyName() == null ? null : keyConditions.get(index.getRangeKeyName()));
+        if (keyConditions.size() != (rangeCondition == null ? 1 : 2)) {
+            throw validationException(String.format("Query key conditions %s do not match the key of the index", keyConditions.keySet()));
+        }
+        AttributeValue hashKey = hashCondition.getAttributeValueList().get(0);
+        String partition = table.getName() + '/' + index.getName() + '/' + hashKey;
+        checkPartitionThroughput(partition);
+
+        int limit = (request.getLimit() == null ? Integer.MAX_VALUE : request.getLimit());
+        if (limit < 1) {
+            throw validationException("Limit must be at least 1");
+        }
+        boolean forward = !Boolean.FALSE.equals(request.getScanIndexForward());
+        boolean count = Select.COUNT.toString().equals(request.getSelect());
+        boolean beginsWith = (rangeCondition != null)
+                && ComparisonOperator.BEGINS_WITH.toString().equals(rangeCondition.getComparisonOperator());
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        Map<String, AttributeValue> lastEvaluated = null;
+        int evaluated = 0;
+        int scannedSize = 0;
+        table.getLock().readLock().lock();
+        try {
+            NavigableMap<InMemoryTable.Key, Map<String, AttributeValue>> entries = index.select(hashKey, rangeCondition);
+            if (request.getExclusiveStartKey() != null) {
+                InMemoryTable.Key startKey = index.keyOf(request.getExclusiveStartKey());
+                if (startKey == null) {
+                    throw validationException("ExclusiveStartKey does not contain the key of the index and table");
+                }
+                entries = (forward ? entries.tailMap(startKey, false) : entries.headMap(startKey, false));
+            }
+            if (!forward) {
+                entries = entries.descendingMap();
+            }
+            for (Map<String, AttributeValue> item : entries.values()) {
+                if ((evaluated >= limit) || (scannedSize >= MAX_PAGE_SIZE)) {
+                    lastEvaluatedKey = keyOf(index, lastEvaluated);
+                    break;
+                }
+                if (beginsWith && !AttributeValues.beginsWith(item.get(index.getRangeKeyName()),
+                        rangeCondition.getAttributeValueList().get(0))) {
+                    continue;
+                }
+                evaluated++;
+                scannedSize += AttributeValues.size(item);
+                lastEvaluated = item;
+                if (matches(request.getFilterExpression(), request.getExpressionAttributeNames(),
+                        request.getExpressionAttributeValues(), item)) {
+                    items.add(item);
+                }
+            }
+        } finally {
+            table.getLock().readLock().unlock();
+        }
+        double units = consumeRead(scannedSize, Boolean.TRUE.equals(request.getConsistentRead()));
+        addPartitionReadUnits(partition, units);
+
+        QueryResult result = new QueryResult().withCount(items.size()).withScannedCount(evaluated)
+                .withLastEvaluatedKey(lastEvaluatedKey)
+                .withConsumedCapacity(consumedCapacity(request.getReturnConsumedCapacity(), table, units));
+        if (!count) {
+            List<Map<String, AttributeValue>> copies = new ArrayList<Map<String, AttributeValue>>(items.size());
+            List<String> attributeNames = projectedAttributes(request.getAttributesToGet(), request.getProjectionExpression(),
+                    request.getExpressionAttributeNames());
+            for (Map<String, AttributeValue> item : items) {
+                copies.add(project(item, attributeNames));
+            }
+            result.setItems(copies);
+        }
+        return result;
+    }
+
+    @Override public ScanResult scan(ScanRequest request) {
+        beginRequest();
+        checkNotMixed(presentParameters("ScanFilter", request.getScanFilter(), "AttributesToGet", request.getAttributesToGet(),
+                "ConditionalOperator", request.getConditionalOperator()),
+                presentParameters("FilterExpression", request.getFilterExpression(), "ProjectionExpression", request.getProjectionExpression(),
+                        "ExpressionAttributeNames", request.getExpressionAttributeNames(),
+                        "ExpressionAttributeValues", request.getExpressionAttributeValues()));
+        if (request.getScanFilter() != null) {
+            throw new UnsupportedOperationException("Only filter expressions are supported by the in-memory stand-in");
+        }
+        InMemoryTable table = getTable(request.getTableName());
+        InMemoryTable.Index index = table.getIndex(request.getIndexName());
+        if (index == null) {
+            throw validationException(String.format("Table [ %s ] has no index [ %s ]", table.getName(), request.getIndexName()));
+        }
+        int limit = (request.getLimit() == null ? Integer.MAX_VALUE : request.getLimit());
+        if (limit < 1) {
+            throw validationException("Limit must be at least 1");
+        }
+        int totalSegments = (request.getTotalSegments() == null ? 1 : request.getTotalSegments());
+        int segment = (request.getSegment() == null ? 0 : request.getSegment());
+        if ((totalSegments < 1) || (segment < 0) || (segment >= totalSegments)) {
+            throw validationException(String.format("Segment [ %d ] must be between 0 and TotalSegments [ %d ]", segment, totalSegments));
+        }
+        boolean count = Select.COUNT.toString().equals(request.getSelect());
+        List<Map<String, AttributeValue>> items = new ArrayList<Map<String, AttributeValue>>();
+        Map<String, AttributeValue> lastEvaluatedKey = null;
+        Map<String, AttributeValue> lastEvaluated = null;
+        int evaluated = 0;
+        int scannedSize = 0;
+        table.getLock().readLock().lock();
+        try {
+            NavigableMap<InMemoryTable.Key, Map<String, AttributeValue>> entries = index.getEntries();
+            if (request.getExclusiveStartKey() != null) {
+                InMemoryTable.Key startKey = index.keyOf(request.getExclusiveStartKey());
+                if (startKey == null) {
+                    throw validationException("ExclusiveStartKey does not contain the key of the index and table");
+                }
+                entries = entries.tailMap(startKey, false);
+            }
+            for (Map<String, AttributeValue> item : entries.values()) {
+                // segments partition the items by hash key, as DynamoDB partitions them
+                if (Math.floorMod(item.get(index.getHashKeyName()).hashCode(), totalSegments) != segment) {
+                    continue;
+                }
+                if ((evaluated >= limit) || (scannedSize >= MAX_PAGE_SIZE)) {
+                    lastEvaluatedKey = keyOf(index, lastEvaluated);
+                    break;
+                }
+                evaluated++;
+                scannedSize += AttributeValues.size(item);
+                lastEvaluated = item;
+                if (matches(request.getFilterExpression(), request.getExpressionAttributeNames(),
+                        request.getExpressionAttributeValues(), item)) {
+                    items.add(item);
+                }
+            }
+        } finally {
+            table.getLock().readLock().unlock();
+        }
+        double units = consumeRead(scannedSize, Boolean.TRUE.equals(request.getConsistentRead()));
+
+        ScanResult result = new ScanResult().withCount(items.size()).withScannedCount(evaluated)
+                .withLastEvaluatedKey(lastEvaluatedKey)
+                .withConsumedCapacity(consumedCapacity(request.getReturnConsumedCapacity(), table, units));
+        if (!count) {
+            List<Map<String, AttributeValue>> copies = new ArrayList<Map<String, AttributeValue>>(items.size());
+            List<String> attributeNames = projectedAttributes(request.getAttributesToGet(), request.getProjectionExpression(),
+                    request.getExpressionAttributeNames());
+            for (Map<String, AttributeValue> item : items) {
+                copies.add(project(item, attributeNames));
+            }
+            result.setItems(copies);
+        }
+        return result;
+    }
+
+    /**
+     * @return the read capacity units consumed by all requests so far
+     */
+    public double getConsumedReadCapacityUnits() {
+        return readHalfUnits.get() / 2.0d;
+    }
+
+    /**
+     * @return the write capacity units consumed by all requests so far
+     */
+    public long getConsumedWriteCapacityUnits() {
+        return writeUnits.get();
+    }
+
+    /**
+     * @return the number of requests received so far, throttled ones included
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of requests rejected with a throttling error so far
+     */
+    public long getThrottledRequestCount() {
+        return throttledRequests.get();
+    }
+
+    /**
+     * @return the number of items of <code>tableName</code>
+     */
+    public int getItemCount(String tableName) {
+        InMemoryTable table = getTable(tableName);
+        table.getLock().readLock().lock();
+        try {
+            return table.size();
+        } finally {
+            table.getLock().readLock().unlock();
+        }
+    }
+
+    @Override public void shutdown() {
+        tables.clear();
+        partitionWindows.clear();
+    }
+
+    private void beginRequest() {
+        requests.incrementAndGet();
+        long delay = latencyMillis + (latencyJitterMillis == 0 ? 0L : ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1));
+        if (delay > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AbortedException(e);
+            }
+        }
+        if ((throttleRate > 0) && (ThreadLocalRandom.current().nextDouble() < throttleRate)) {
+            throw throttlingException();
+        }
+    }
+
+    private void checkPartitionThroughput(String partition) {
+        if (partitionReadUnitsPerSecond == 0) {
+            return;
+        }
+        PartitionWindow window = partitionWindows.get(partition);
+        if ((window != null) && (window.getUnits(currentSecond()) >= partitionReadUnitsPerSecond)) {
+            throw throttlingException();
+        }
+    }
+
+    private void addPartitionReadUnits(String partition, double units) {
+        if (partitionReadUnitsPerSecond == 0) {
+            return;
+        }
+        PartitionWindow window = partitionWindows.get(partition);
+        if (window == null) {
+            PartitionWindow created = new PartitionWindow();
+            window = partitionWindows.putIfAbsent(partition, created);
+            if (window == null) {
+                window = created;
+            }
+        }
+        window.add(currentSecond(), units);
+    }
+
+    private static long currentSecond() {
+        return TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+    }
+
+    private ProvisionedThroughputExceededException throttlingException() {
+        throttledRequests.incrementAndGet();
+        ProvisionedThroughputExceededException exception = new ProvisionedThroughputExceededException(
+                "The level of configured provisioned throughput for the table was exceeded");
+        exception.setErrorCode("ProvisionedThroughputExceededException");
+        exception.setStatusCode(400);
+        return exception;
+    }
+
+    private static AmazonDynamoDBException validationException(String message) {
+        AmazonDynamoDBException exception = new AmazonDynamoDBException(message);
+        exception.setErrorCode("ValidationException");
+        exception.setStatusCode(400);
+        return exception;
+    }
+
+    private InMemoryTable getTable(String tableName) {
+        InMemoryTable table = (tableName == null ? null : tables.get(tableName));
+        if (table == null) {
+            ResourceNotFoundException exception = new ResourceNotFoundException(String.format("Requested resource not found: Table: %s not found", tableName));
+            exception.setErrorCode("ResourceNotFoundException");
+            exception.setStatusCode(400);
+            throw exception;
+        }
+        return table;
+    }
+
+    private static void checkKey(InMemoryTable table, Map<String, AttributeValue> key) {
+        if (table.getPrimaryIndex().keyOf(key) == null) {
+            throw validationException(String.format("Missing key attributes %s", table.getPrimaryIndex().getKeyNames()));
+        }
+    }
+
+    /**
+     * @return true if <code>item</code> satisfies <code>filterExpression</code>, or if there is none
+     */
+    /**
+     * @return the names of the parameters, given as name and value pairs, which are set
+     */
+    private static List<String> presentParameters(Object... namesAndValues) {
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            if (namesAndValues[i + 1] != null) {
+                names.add((String) namesAndValues[i]);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Like DynamoDB, rejects a request which mixes legacy parameters with expression parameters.
+     */
+    private static void checkNotMixed(List<String> legacyParameters, List<String> expressionParameters) {
+        if (!legacyParameters.isEmpty() && !expressionParameters.isEmpty()) {
+            throw validationException(String.format("Can not use both expression and non-expression parameters in the same request: "
+                    + "Non-expression parameters: %s Expression parameters: %s", legacyParameters, expressionParameters));
+        }
+    }
+
+    private static Map<String, Condition> keyConditions(String keyConditionExpression, Map<String, String> names,
+                                                        Map<String, AttributeValue> values) {
+        try {
+            return Expressions.keyConditions(keyConditionExpression, names, values);
+        } catch (IllegalArgumentException e) {
+            throw validationException(e.getMessage());
+        }
+    }
+
+    private static boolean matches(String filterExpression, Map<String, String> names, Map<String, AttributeValue> values,
+                                   Map<String, AttributeValue> item) {
+        if (filterExpression == null) {
+            return true;
+        }
+        try {
+            return Expressions.evaluate(filterExpression, names, values, item);
+        } catch (IllegalArgumentException e) {
+            throw validationException(e.getMessage());
+        }
+    }
+
+    private static Map<String, AttributeValue> keyOf(InMemoryTable.Index index, Map<String, AttributeValue> item) {
+        Map<String, AttributeValue> key = new LinkedHashMap<String, AttributeValue>();
+        for (String keyName : index.getKeyNames()) {
+            key.put(keyName, item.get(keyName));
+        }
+        return key;
+    }
+
+    /**
+     * @return the attributes of <code>attributesToGet</code> or of the <code>projectionExpression</code>, or null for
+     * all attributes
+     */
+    private static List<String> projectedAttributes(List<String> attributesToGet, String projectionExpression,
+                                                    Map<String, String> names) {
+        if (projectionExpression == null) {
+            return attributesToGet;
+        }
+        try {
+            return Expressions.projection(projectionExpression, names);
+        } catch (IllegalArgumentException e) {
+            throw validationException(e.getMessage());
+        }
+    }
+
+    /**
+     * @return a copy of <code>item</code> with only the <code>attributesToGet</code>, or all attributes if null
+     */
+    private static Map<String, AttributeValue> project(Map<String, AttributeValue> item, List<String> attributesToGet) {
+        if (attributesToGet == null) {
+            return new LinkedHashMap<String, AttributeValue>(item);
+        }
+        Map<String, AttributeValue> projected = new LinkedHashMap<String, AttributeValue>();
+        for (String attributeName : attributesToGet) {
+            if (item.containsKey(attributeName)) {
+                projected.put(attributeName, item.get(attributeName));
+            }
+        }
+        return projected;
+    }
+
+    private double consumeRead(int size, boolean consistentRead) {
+        long halfUnits = Math.max(1, (size + READ_UNIT_SIZE - 1) / READ_UNIT_SIZE) * (consistentRead ? 2L : 1L);
+        readHalfUnits.addAndGet(halfUnits);
+        return halfUnits / 2.0d;
+    }
+
+    private double consumeWrite(Map<String, AttributeValue> item, Map<String, AttributeValue> previous) {
+        int size = Math.max(AttributeValues.size(item), (previous == null ? 0 : AttributeValues.size(previous)));
+        long units = Math.max(1, (size + WRITE_UNIT_SIZE - 1) / WRITE_UNIT_SIZE);
+        writeUnits.addAndGet(units);
+        return units;
+    }
+
+    private static ConsumedCapacity consumedCapacity(String returnConsumedCapacity, InMemoryTable table, double units) {
+        if ((returnConsumedCapacity == null) || ReturnConsumedCapacity.NONE.toString().equals(returnConsumedCapacity)) {
+            return null;
+        }
+        return new ConsumedCapacity().withTableName(table.getName()).withCapacityUnits(units);
+    }
+
+    /**
+     * The read units a partition consumed within the current second.
+     */
+    private static class PartitionWindow {
+
+        private long second;
+
+        private double units;
+
+        private synchronized double getUnits(long currentSecond) {
+            return (second == currentSecond ? units : 0.0d);
+        }
+
+        private synchronized void add(long currentSecond, double consumed) {
+            if (second != currentSecond) {
+                second = currentSecond;
+                units = 0.0d;
+            }
+            units += consumed;
+        }
+
+    }
+
+}
@@ -0,0 +1,306 @@
+package com.amazonaws.geo.local;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.LocalSecondaryIndex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The items of an {@link InMemoryAmazonDynamoDB} table, kept sorted by the key of the table and of each of its
+ * secondary indexes. Callers hold {@link #getLock()} while reading or writing.
+ */
+final class InMemoryTable {
+
+    private final String name;
+
+    private final Index primaryIndex;
+
+    private final Map<String, Index> secondaryIndexes = new HashMap<String, Index>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    InMemoryTable(CreateTableRequest request) {
+        this.name = request.getTableName();
+        this.primaryIndex = new Index(null, request.getKeySchema(), Collections.<String>emptyList());
+        if (request.getGlobalSecondaryIndexes() != null) {
+            for (GlobalSecondaryIndex index : request.getGlobalSecondaryIndexes()) {
+                secondaryIndexes.put(index.getIndexName(), new Index(index.getIndexName(), index.getKeySchema(), primaryIndex.keyNames));
+            }
+        }
+        if (request.getLocalSecondaryIndexes() != null) {
+            for (LocalSecondaryIndex index : request.getLocalSecondaryIndexes()) {
+                secondaryIndexes.put(index.getIndexName(), new Index(index.getIndexName(), index.getKeySchema(), primaryIndex.keyNames));
+            }
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    ReadWriteLock getLock() {
+        return lock;
+    }
+
+    Index getPrimaryIndex() {
+        return primaryIndex;
+    }
+
+    /**
+     * @return the index named <code>indexName</code>, the primary index if <code>indexName</code> is null, or null if the
+     * table has no such index
+     */
+    Index getIndex(String indexName) {
+        return (indexName == null ? primaryIndex : secondaryIndexes.get(indexName));
+    }
+
+    /**
+     * @return the item with the given primary key, or null
+     */
+    Map<String, AttributeValue> get(Map<String, AttributeValue> key) {
+        return primaryIndex.entries.get(primaryIndex.keyOf(key));
+    }
+
+    /**
+     * Stores <code>item</code>, replacing the item with the same primary key.
+     *
+     * @return the replaced item, or null
+     */
+    Map<String, AttributeValue> put(Map<String, AttributeValue> item) {
+        Map<String, AttributeValue> copy = new LinkedHashMap<String, AttributeValue>(item);
+        Map<String, AttributeValue> previous = delete(copy);
+        for (Index index : allIndexes()) {
+            Key key = index.keyOf(copy);
+            if (key != null) {
+                index.entries.put(key, copy);
+            }
+        }
+        return previous;
+    }
+
+    /**
+     * Removes the item with the primary key of <code>key</code>.
+     *
+     * @return the removed item, or null
+     */
+    Map<String, AttributeValue> delete(Map<String, AttributeValue> key) {
+        Map<String, AttributeValue> previous = primaryIndex.entries.remove(primaryIndex.keyOf(key));
+        if (previous != null) {
+            for (Index index : secondaryIndexes.values()) {
+                Key indexKey = index.keyOf(previous);
+                if (indexKey != null) {
+                    index.entries.remove(indexKey);
+                }
+            }
+        }
+        return previous;
+    }
+
+    int size() {
+        return primaryIndex.entries.size();
+    }
+
+    private Collection<Index> allIndexes() {
+        List<Index> indexes = new ArrayList<Index>(secondaryIndexes.size() + 1);
+        indexes.add(primaryIndex);
+        indexes.addAll(secondaryIndexes.values());
+        return indexes;
+    }
+
+    /**
+     * The items of a table sorted by an index key followed by the primary key attributes the index key lacks, so that
+     * items sharing an index key have distinct entries.
+     */
+    static final class Index {
+
+        private final String name;
+
+        private final String hashKeyName;
+
+        private final String rangeKeyName;
+
+        private final List<String> keyNames;
+
+        private final NavigableMap<Key, Map<String, AttributeValue>> entries = new TreeMap<Key, Map<String, AttributeValue>>();
+
+        private Index(String name, List<KeySchemaElement> keySchema, List<String> primaryKeyNames) {
+            String hashKey = null;
+            String rangeKey = null;
+            for (KeySchemaElement element : keySchema) {
+                if (KeyType.HASH.toString().equals(element.getKeyType())) {
+                    hashKey = element.getAttributeName();
+                } else {
+                    rangeKey = element.getAttributeName();
+                }
+            }
+            if (hashKey == null) {
+                throw new IllegalArgumentException(String.format("Key schema of [ %s ] has no hash key", name));
+            }
+            this.name = name;
+            this.hashKeyName = hashKey;
+            this.rangeKeyName = rangeKey;
+            List<String> names = new ArrayList<String>(4);
+            names.add(hashKey);
+            if (rangeKey != null) {
+                names.add(rangeKey);
+            }
+            for (String primaryKeyName : primaryKeyNames) {
+                if (!names.contains(primaryKeyName)) {
+                    names.add(primaryKeyName);
+                }
+            }
+            this.keyNames = Collections.unmodifiableList(names);
+        }
+
+        String getName() {
+            return name;
+        }
+
+        String getHashKeyName() {
+            return hashKeyName;
+        }
+
+        String getRangeKeyName() {
+            return rangeKeyName;
+        }
+
+        /**
+         * @return the names of the attributes making up an entry key, index key first
+         */
+        List<String> getKeyNames() {
+            return keyNames;
+        }
+
+        /**
+         * @return the entry key of an item, or null if the item lacks any of the key attributes (sparse index)
+         */
+        Key keyOf(Map<String, AttributeValue> item) {
+            AttributeValue[] values = new AttributeValue[keyNames.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = item.get(keyNames.get(i));
+                if (values[i] == null) {
+                    return null;
+                }
+            }
+            return new Key(values, 0);
+        }
+
+        /**
+         * @return the entries of the partition <code>hashKey</code> whose range key satisfies <code>rangeCondition</code>
+         * (any range key if null), in ascending order. BEGINS_WITH conditions are only bounded below; callers check
+         * them with {@link AttributeValues#beginsWith}.
+         */
+        NavigableMap<Key, Map<String, AttributeValue>> select(AttributeValue hashKey, Condition rangeCondition) {
+            Key low = Key.below(hashKey);
+            Key high = Key.above(hashKey);
+            if (rangeCondition != null) {
+                List<AttributeValue> values = rangeCondition.getAttributeValueList();
+                switch (ComparisonOperator.fromValue(rangeCondition.getComparisonOperator())) {
+                    case EQ:
+                        low = Key.below(hashKey, values.get(0));
+                        high = Key.above(hashKey, values.get(0));
+                        break;
+                    case BETWEEN:
+                        low = Key.below(hashKey, values.get(0));
+                        high = Key.above(hashKey, values.get(1));
+                        break;
+                    case LT:
+                        high = Key.below(hashKey, values.get(0));
+                        break;
+                    case LE:
+                        high = Key.above(hashKey, values.get(0));
+                        break;
+                    case GT:
+                        low = Key.above(hashKey, values.get(0));
+                        break;
+                    case GE:
+                    case BEGINS_WITH:
+                        low = Key.below(hashKey, values.get(0));
+                        break;
+                    default:
+                        throw new IllegalArgumentException(String.format("Unsupported key condition [ %s ]",
+                                rangeCondition.getComparisonOperator()));
+                }
+            }
+            if (low.compareTo(high) > 0) {
+                return Collections.unmodifiableNavigableMap(new TreeMap<Key, Map<String, AttributeValue>>());
+            }
+            return entries.subMap(low, true, high, true);
+        }
+
+        /**
+         * @return all entries of the index, in ascending order
+         */
+        NavigableMap<Key, Map<String, AttributeValue>> getEntries() {
+            return entries;
+        }
+
+    }
+
+    /**
+     * An entry key, or a bound sorting below (<code>bound</code> &lt; 0) or above (<code>bound</code> &gt; 0) every key
+     * it is a prefix of.
+     */
+    static final class Key implements Comparable<Key> {
+
+        private final AttributeValue[] values;
+
+        private final int bound;
+
+        private Key(AttributeValue[] values, int bound) {
+            this.values = values;
+            this.bound = bound;
+        }
+
+        static Key below(AttributeValue... values) {
+            return new Key(values, -1);
+        }
+
+        static Key above(AttributeValue... values) {
+            return new Key(values, 1);
+        }
+
+        @Override public int compareTo(Key other) {
+            int length = Math.min(values.length, other.values.length);
+            for (int i = 0; i < length; i++) {
+                int comparison = AttributeValues.compare(values[i], other.values[i]);
+                if (comparison != 0) {
+                    return comparison;
+                }
+            }
+            if (values.length == other.values.length) {
+                return Integer.compare(bound, other.bound);
+            }
+            if (values.length < other.values.length) {
+                return (bound > 0 ? 1 : -1);
+            }
+            return (other.bound > 0 ? -1 : 1);
+        }
+
+        @Override public boolean equals(Object o) {
+            return (o instanceof Key) && (compareTo((Key) o) == 0);
+        }
+
+        @Override public int hashCode() {
+            return values.length;
+        }
+
+    }
+
+}
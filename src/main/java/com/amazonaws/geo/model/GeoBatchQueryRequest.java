@@ -0,0 +1,37 @@
+package com.amazonaws.geo.model;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.dashlabs.dash.geo.model.filters.GeoFilter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A wrapper that encapsulates the de-duplicated collection of queries that are generated for a batch of radius queries
+ * and the filters, one per center of the batch, that have to be applied to the query results.
+ * Every query result is routed to each of the filters, so an item is returned for every center whose filter accepts it.
+ */
+public class GeoBatchQueryRequest {
+
+    private final List<QueryRequest> queryRequests;
+
+    private final List<GeoFilter<Map<String, AttributeValue>>> resultFilters;
+
+    public GeoBatchQueryRequest(List<QueryRequest> queryRequests, List<GeoFilter<Map<String, AttributeValue>>> resultFilters) {
+        this.queryRequests = queryRequests;
+        this.resultFilters = resultFilters;
+    }
+
+    public List<QueryRequest> getQueryRequests() {
+        return queryRequests;
+    }
+
+    /**
+     * @return the filters of the batch, in the same order as the centers the batch was created from
+     */
+    public List<GeoFilter<Map<String, AttributeValue>>> getResultFilters() {
+        return resultFilters;
+    }
+
+}
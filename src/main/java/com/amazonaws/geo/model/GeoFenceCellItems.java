@@ -0,0 +1,61 @@
+package com.amazonaws.geo.model;
+
+import com.amazonaws.geo.GeoConfig;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.dashlabs.dash.geo.fence.GeoFenceCell;
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Converts {@link GeoFenceCell}s to and from DynamoDB items. A fence cell is stored as one item per cell, keyed like any
+ * other geo item of the <code>GeoConfig</code>: the cell id is stored in the geohash column and its hash key in the
+ * geoHashKey column, so fence cells can be loaded with the regular geo index.
+ */
+public class GeoFenceCellItems {
+
+    /**
+     * Column of the flag marking cells that are entirely inside their fence
+     */
+    public static final String INTERIOR_FIELD = "interior";
+
+    /**
+     * Creates the item for the given fence cell.
+     *
+     * @param cell          the fence cell
+     * @param config        the configuration of the geo index the cell is stored in
+     * @param fenceIdColumn name of the column that stores the fence id
+     * @param s2Manager     used to derive the hash key
+     * @return the item
+     */
+    public static Map<String, AttributeValue> toItem(GeoFenceCell cell, GeoConfig config, String fenceIdColumn, S2Manager s2Manager) {
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>(4, 1.0f);
+        item.put(fenceIdColumn, new AttributeValue().withS(cell.getFenceId()));
+        item.put(config.getGeoHashColumn(), new AttributeValue().withN(Long.toString(cell.getCellId())));
+        item.put(config.getGeoHashKeyColumn(),
+                new AttributeValue().withN(Long.toString(cell.getGeoHashKey(s2Manager, config.getGeoHashKeyLength()))));
+        item.put(INTERIOR_FIELD, new AttributeValue().withBOOL(cell.isInterior()));
+        return item;
+    }
+
+    /**
+     * Reads the fence cell stored in the given item.
+     *
+     * @param item          the item
+     * @param config        the configuration of the geo index the cell is stored in
+     * @param fenceIdColumn name of the column that stores the fence id
+     * @return the fence cell
+     */
+    public static GeoFenceCell fromItem(Map<String, AttributeValue> item, GeoConfig config, String fenceIdColumn) {
+        AttributeValue fenceId = item.get(fenceIdColumn);
+        AttributeValue cellId = item.get(config.getGeoHashColumn());
+        if ((fenceId == null) || (fenceId.getS() == null) || (cellId == null) || (cellId.getN() == null)) {
+            throw new IllegalArgumentException("Item is not a fence cell");
+        }
+        AttributeValue interior = item.get(INTERIOR_FIELD);
+        return new GeoFenceCell(fenceId.getS(), Long.parseLong(cellId.getN()),
+                (interior != null) && Boolean.TRUE.equals(interior.getBOOL()));
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.amazonaws.geo.model;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.dashlabs.dash.geo.model.filters.GeoFilter;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A wrapper that encapsulates the queries generated to count the items of a region per cell of a level: the
+ * <code>Select.COUNT</code> queries of ranges within both the region and a single cell, with the id of that cell, and
+ * the queries of the ranges on the region's boundary, which fetch the coordinates of their items to be filtered and
+ * counted one by one.
+ */
+public class GeoHeatmapQueryRequest {
+
+    private final List<QueryRequest> countQueryRequests;
+
+    private final List<Long> countCellIds;
+
+    private final List<QueryRequest> boundaryQueryRequests;
+
+    private final GeoFilter<Map<String, AttributeValue>> resultFilter;
+
+    private final int level;
+
+    public GeoHeatmapQueryRequest(List<QueryRequest> countQueryRequests, List<Long> countCellIds,
+                                  List<QueryRequest> boundaryQueryRequests, GeoFilter<Map<String, AttributeValue>> resultFilter,
+                                  int level) {
+        this.countQueryRequests = countQueryRequests;
+        this.countCellIds = countCellIds;
+        this.boundaryQueryRequests = boundaryQueryRequests;
+        this.resultFilter = resultFilter;
+        this.level = level;
+    }
+
+    public List<QueryRequest> getCountQueryRequests() {
+        return countQueryRequests;
+    }
+
+    /**
+     * @return the id of the cell counted by each of the count queries, in the same order
+     */
+    public List<Long> getCountCellIds() {
+        return countCellIds;
+    }
+
+    public List<QueryRequest> getBoundaryQueryRequests() {
+        return boundaryQueryRequests;
+    }
+
+    public GeoFilter<Map<String, AttributeValue>> getResultFilter() {
+        return resultFilter;
+    }
+
+    /**
+     * @return the level of the cells counted
+     */
+    public int getLevel() {
+        return level;
+    }
+
+}
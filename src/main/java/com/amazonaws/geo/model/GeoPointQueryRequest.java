@@ -0,0 +1,42 @@
+package com.amazonaws.geo.model;
+
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.google.common.geometry.S2LatLng;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A wrapper that encapsulates the collection of queries that are generated for a batch of point lookups
+ * and the requested points keyed by their geohash, which is used to match the query results back to the points.
+ */
+public class GeoPointQueryRequest {
+
+    private final List<QueryRequest> queryRequests;
+
+    /**
+     * Name of the column that stores the item's geohash.
+     */
+    private final String geoHashColumn;
+
+    private final Map<Long, List<S2LatLng>> pointsByGeohash;
+
+    public GeoPointQueryRequest(List<QueryRequest> queryRequests, String geoHashColumn, Map<Long, List<S2LatLng>> pointsByGeohash) {
+        this.queryRequests = queryRequests;
+        this.geoHashColumn = geoHashColumn;
+        this.pointsByGeohash = pointsByGeohash;
+    }
+
+    public List<QueryRequest> getQueryRequests() {
+        return queryRequests;
+    }
+
+    public String getGeoHashColumn() {
+        return geoHashColumn;
+    }
+
+    public Map<Long, List<S2LatLng>> getPointsByGeohash() {
+        return pointsByGeohash;
+    }
+
+}
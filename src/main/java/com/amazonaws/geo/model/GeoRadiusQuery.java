@@ -0,0 +1,35 @@
+package com.amazonaws.geo.model;
+
+/**
+ * A single center/radius pair of a batched radius query.
+ */
+public class GeoRadiusQuery {
+
+    private final double latitude;
+
+    private final double longitude;
+
+    /**
+     * Radius(in metres)
+     */
+    private final double radius;
+
+    public GeoRadiusQuery(double latitude, double longitude, double radius) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.radius = radius;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+}
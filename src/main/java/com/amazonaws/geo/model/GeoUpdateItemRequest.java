@@ -0,0 +1,40 @@
+package com.amazonaws.geo.model;
+
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+
+/**
+ * A wrapper that encapsulates a location update generated by
+ * {@link com.amazonaws.geo.Geo#updateLocationRequest(UpdateItemRequest, double, double, com.google.common.base.Optional, int, String, long, java.util.List)}
+ * and the geohash the item will be indexed by once it succeeds, which is the previous geohash when the item has not
+ * left its cell.
+ */
+public class GeoUpdateItemRequest {
+
+    private final UpdateItemRequest updateItemRequest;
+
+    private final long geohash;
+
+    private final boolean geoKeysUpdated;
+
+    public GeoUpdateItemRequest(UpdateItemRequest updateItemRequest, long geohash, boolean geoKeysUpdated) {
+        this.updateItemRequest = updateItemRequest;
+        this.geohash = geohash;
+        this.geoKeysUpdated = geoKeysUpdated;
+    }
+
+    public UpdateItemRequest getUpdateItemRequest() {
+        return updateItemRequest;
+    }
+
+    public long getGeohash() {
+        return geohash;
+    }
+
+    /**
+     * @return true if the update rewrites the geohash, and possibly the geoHashKey, of the item
+     */
+    public boolean isGeoKeysUpdated() {
+        return geoKeysUpdated;
+    }
+
+}
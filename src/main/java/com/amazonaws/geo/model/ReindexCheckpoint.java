@@ -0,0 +1,54 @@
+package com.amazonaws.geo.model;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The progress of one segment of a {@link com.amazonaws.geo.s2.internal.GeoReindexer} run: the key its scan resumes
+ * after, or whether it is complete.
+ */
+public class ReindexCheckpoint {
+
+    private final int segment;
+
+    private final int totalSegments;
+
+    private final Map<String, AttributeValue> exclusiveStartKey;
+
+    private final boolean complete;
+
+    public ReindexCheckpoint(int segment, int totalSegments, Map<String, AttributeValue> exclusiveStartKey, boolean complete) {
+        checkArgument(totalSegments >= 1, "totalSegments must be positive: %s", totalSegments);
+        checkArgument((segment >= 0) && (segment < totalSegments), "segment must be between 0 and totalSegments: %s", segment);
+        this.segment = segment;
+        this.totalSegments = totalSegments;
+        this.exclusiveStartKey = exclusiveStartKey;
+        this.complete = complete;
+    }
+
+    public int getSegment() {
+        return segment;
+    }
+
+    public int getTotalSegments() {
+        return totalSegments;
+    }
+
+    /**
+     * @return the last key evaluated by the segment's scan, or null to start from the beginning of the segment
+     */
+    public Map<String, AttributeValue> getExclusiveStartKey() {
+        return exclusiveStartKey;
+    }
+
+    /**
+     * @return true if every item of the segment has been reindexed
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.amazonaws.geo.model;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.dashlabs.dash.geo.model.filters.GeoFilter;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A wrapper that encapsulates the lazily generated queries of a radius or a rectangle query and the filter that has to
+ * be applied to the query results. Unlike a {@link GeoQueryRequest} the queries can only be iterated once, so an
+ * instance can only be executed once.
+ */
+public class StreamingGeoQueryRequest {
+
+    private final Iterator<QueryRequest> queryRequests;
+
+    private final GeoFilter<Map<String, AttributeValue>> resultFilter;
+
+    public StreamingGeoQueryRequest(Iterator<QueryRequest> queryRequests, GeoFilter<Map<String, AttributeValue>> resultFilter) {
+        this.queryRequests = queryRequests;
+        this.resultFilter = resultFilter;
+    }
+
+    public Iterator<QueryRequest> getQueryRequests() {
+        return queryRequests;
+    }
+
+    public GeoFilter<Map<String, AttributeValue>> getResultFilter() {
+        return resultFilter;
+    }
+
+}
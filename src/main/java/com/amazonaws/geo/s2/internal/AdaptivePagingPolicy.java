@@ -0,0 +1,241 @@
+package com.amazonaws.geo.s2.internal;
+
+import com.amazonaws.geo.GeoConfig;
+import com.amazonaws.geo.GeoQueryHelper;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.primitives.UnsignedLong;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Sets the <code>Limit</code> of every query page sent by {@link GeoQueryClient} from the density of items observed in
+ * the page's hash key, so that a sparse range is read in a single page and a dense one in pages of about
+ * <code>maxPageItems</code> items rather than of 1MB.
+ *
+ * The density of a hash key is the number of items read from a range of it per geohash of the range, averaged over
+ * the ranges read with exponentially decaying weights. The limit of a page is the number of items the rest of its range
+ * is expected to hold plus <code>headroom</code>, bounded by <code>minPageItems</code> and <code>maxPageItems</code>.
+ * Pages of hash keys without observations use <code>maxPageItems</code>. The limit is set on a copy of each page, which
+ * overrides the caller's own <code>Limit</code> without changing the caller's request, and <code>Select.COUNT</code>
+ * pages are sent with their own <code>Limit</code>.
+ */
+public class AdaptivePagingPolicy {
+
+    private final String geoHashKeyColumn;
+
+    private final String geoHashColumn;
+
+    private final int minPageItems;
+
+    private final int maxPageItems;
+
+    private final double headroom;
+
+    private final double decay;
+
+    private final Cache<String, Density> densities;
+
+    private AdaptivePagingPolicy(GeoConfig config, int minPageItems, int maxPageItems, double headroom, double decay,
+                                 int maxHashKeys) {
+        checkArgument(config != null, "config must not be null");
+        checkArgument(minPageItems >= 1, "minPageItems must be positive: %s", minPageItems);
+        checkArgument(maxPageItems >= minPageItems, "maxPageItems must not be less than minPageItems: %s", maxPageItems);
+        checkArgument(headroom >= 1.0d, "headroom must be at least 1: %s", headroom);
+        checkArgument((decay > 0.0d) && (decay <= 1.0d), "decay must be in (0, 1]: %s", decay);
+        checkArgument(maxHashKeys >= 1, "maxHashKeys must be positive: %s", maxHashKeys);
+        this.geoHashKeyColumn = config.getGeoHashKeyColumn();
+        this.geoHashColumn = config.getGeoHashColumn();
+        this.minPageItems = minPageItems;
+        this.maxPageItems = maxPageItems;
+        this.headroom = headroom;
+        this.decay = decay;
+        this.densities = CacheBuilder.newBuilder().maximumSize(maxHashKeys).build();
+    }
+
+    /**
+     * @param queryRequest the page to send
+     * @param readItems    the number of items read by the previous pages of the query
+     * @return the <code>Limit</code> of the page
+     */
+    int getLimit(QueryRequest queryRequest, int readItems) {
+        String hashKey = getHashKey(queryRequest);
+        Density density = (hashKey == null ? null : densities.getIfPresent(hashKey));
+        if (density == null) {
+            return maxPageItems;
+        }
+        double remaining = (density.get() * getSpan(queryRequest)) - readItems;
+        double limit = Math.ceil(Math.max(0.0d, remaining) * headroom);
+        return (int) Math.max(minPageItems, Math.min(maxPageItems, limit));
+    }
+
+    /**
+     * Records the number of items read by all pages of a query.
+     */
+    void record(QueryRequest queryRequest, int readItems) {
+        String hashKey = getHashKey(queryRequest);
+        if (hashKey == null) {
+            return;
+        }
+        double observed = readItems / getSpan(queryRequest);
+        Density density = densities.getIfPresent(hashKey);
+        if (density == null) {
+            densities.put(hashKey, new Density(observed));
+        } else {
+            density.update(observed, decay);
+        }
+    }
+
+    /**
+     * @return the estimated number of items per geohash of <code>hashKey</code>, or -1 if none were observed
+     */
+    public double getDensity(String hashKey) {
+        Density density = densities.getIfPresent(hashKey);
+        return (density == null ? -1.0d : density.get());
+    }
+
+    private String getHashKey(QueryRequest queryRequest) {
+        AttributeValue value;
+        if (queryRequest.getKeyConditions() == null) {
+            value = getExpressionValue(queryRequest, GeoQueryHelper.HASH_KEY_VALUE);
+        } else {
+            Condition condition = queryRequest.getKeyConditions().get(geoHashKeyColumn);
+            if ((condition == null) || !ComparisonOperator.EQ.toString().equals(condition.getComparisonOperator())) {
+                return null;
+            }
+            value = condition.getAttributeValueList().get(0);
+        }
+        return (value == null ? null : (value.getN() != null ? value.getN() : value.getS()));
+    }
+
+    /**
+     * @return the number of geohashes the range condition of the query spans, at least 1
+     */
+    private double getSpan(QueryRequest queryRequest) {
+        AttributeValue min;
+        AttributeValue max;
+        if (queryRequest.getKeyConditions() == null) {
+            min = getExpressionValue(queryRequest, GeoQueryHelper.RANGE_MIN_VALUE);
+            max = getExpressionValue(queryRequest, GeoQueryHelper.RANGE_MAX_VALUE);
+        } else {
+            Condition condition = queryRequest.getKeyConditions().get(geoHashColumn);
+            if ((condition == null) || !ComparisonOperator.BETWEEN.toString().equals(condition.getComparisonOperator())) {
+                return 1.0d;
+            }
+            List<AttributeValue> values = condition.getAttributeValueList();
+            min = values.get(0);
+            max = values.get(1);
+        }
+        if ((min == null) || (max == null)) {
+            return 1.0d;
+        }
+        long minValue = Long.parseLong(min.getN());
+        long maxValue = Long.parseLong(max.getN());
+        if (maxValue < minValue) {
+            return 1.0d;
+        }
+        // geohashes are cell ids using all 64 bits, so the difference only fits an unsigned long
+        return UnsignedLong.fromLongBits(maxValue - minValue).doubleValue() + 1.0d;
+    }
+
+    /**
+     * @return the value of a placeholder of the <code>KeyConditionExpression</code> built by {@link GeoQueryHelper}, if any
+     */
+    private static AttributeValue getExpressionValue(QueryRequest queryRequest, String placeholder) {
+        return ((queryRequest.getKeyConditionExpression() == null) || (queryRequest.getExpressionAttributeValues() == null)
+                ? null : queryRequest.getExpressionAttributeValues().get(placeholder));
+    }
+
+    /**
+     * An exponentially weighted moving average of the items per geohash of a hash key.
+     */
+    private static final class Density {
+
+        private double value;
+
+        private Density(double value) {
+            this.value = value;
+        }
+
+        private synchronized double get() {
+            return value;
+        }
+
+        private synchronized void update(double observed, double decay) {
+            value = (decay * observed) + ((1.0d - decay) * value);
+        }
+
+    }
+
+    /**
+     * Builder to help with the construction of an <code>AdaptivePagingPolicy</code>
+     */
+    public static class Builder {
+        private final GeoConfig config;
+        private int minPageItems = 10;
+        private int maxPageItems = 500;
+        private double headroom = 1.25d;
+        private double decay = 0.3d;
+        private int maxHashKeys = 100000;
+
+        /**
+         * @param config the configuration the queries were generated with, naming their hash key and range key columns
+         */
+        public Builder(GeoConfig config) {
+            this.config = config;
+        }
+
+        /**
+         * @param minPageItems the smallest <code>Limit</code> to set
+         */
+        public Builder minPageItems(int minPageItems) {
+            this.minPageItems = minPageItems;
+            return this;
+        }
+
+        /**
+         * @param maxPageItems the largest <code>Limit</code> to set, i.e. the target size of a page of a dense range
+         */
+        public Builder maxPageItems(int maxPageItems) {
+            this.maxPageItems = maxPageItems;
+            return this;
+        }
+
+        /**
+         * @param headroom the factor the expected items of a range are scaled by, at least 1, so that a range holding a
+         *                 few more items than expected is still read in a single page
+         */
+        public Builder headroom(double headroom) {
+            this.headroom = headroom;
+            return this;
+        }
+
+        /**
+         * @param decay the weight of a new observation of a hash key's density, in (0, 1]
+         */
+        public Builder decay(double decay) {
+            this.decay = decay;
+            return this;
+        }
+
+        /**
+         * @param maxHashKeys the number of hash keys to keep densities of, the least recently used being evicted
+         */
+        public Builder maxHashKeys(int maxHashKeys) {
+            this.maxHashKeys = maxHashKeys;
+            return this;
+        }
+
+        public AdaptivePagingPolicy build() {
+            return new AdaptivePagingPolicy(config, minPageItems, maxPageItems, headroom, decay, maxHashKeys);
+        }
+
+    }
+
+}
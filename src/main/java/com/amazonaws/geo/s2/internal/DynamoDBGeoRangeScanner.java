@@ -0,0 +1,73 @@
+package com.amazonaws.geo.s2.internal;
+
+import com.amazonaws.geo.GeoConfig;
+import com.amazonaws.geo.GeoQueryHelper;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.dashlabs.dash.geo.model.filters.GeoFilter;
+import com.dashlabs.dash.geo.scan.GeoRangeScanner;
+import com.dashlabs.dash.geo.scan.GeoScanPage;
+import com.google.common.base.Optional;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A {@link GeoRangeScanner} reading the ranges of a plan from the geo index of a {@link GeoConfig} with one
+ * <code>QueryRequest</code> per page, the cursor being the <code>LastEvaluatedKey</code>. The coordinates of an item are
+ * read from its <code>latitude</code> and <code>longitude</code> attributes.
+ */
+public class DynamoDBGeoRangeScanner implements GeoRangeScanner<Map<String, AttributeValue>, Map<String, AttributeValue>> {
+
+    private final AmazonDynamoDB dbClient;
+
+    private final GeoQueryHelper helper;
+
+    private final QueryRequest query;
+
+    private final GeoConfig config;
+
+    private final Optional<String> compositeKeyValue;
+
+    /**
+     * @param query             the query every page is a copy of, holding the table name, projection, consistency, etc.
+     * @param config            the geo index to read, which must not be time bucketed
+     * @param compositeKeyValue the value of the column that is used in the construction of the composite hash key
+     */
+    public DynamoDBGeoRangeScanner(AmazonDynamoDB dbClient, GeoQueryHelper helper, QueryRequest query, GeoConfig config,
+                                   Optional<String> compositeKeyValue) {
+        checkArgument(!config.isTimeBucketed(), "Geo index is time bucketed and has to be queried with a time range: %s",
+                config.getGeoIndexName());
+        this.dbClient = dbClient;
+        this.helper = helper;
+        this.query = query;
+        this.config = config;
+        this.compositeKeyValue = compositeKeyValue;
+    }
+
+    @Override public GeoScanPage<Map<String, AttributeValue>, Map<String, AttributeValue>> scan(long geoHashKey, long rangeMin,
+            long rangeMax, Map<String, AttributeValue> cursor, int limit) {
+        QueryRequest queryRequest = helper.createQueryRequest(query, geoHashKey, rangeMin, rangeMax, config, compositeKeyValue)
+                .withLimit(limit).withExclusiveStartKey(cursor);
+        QueryResult queryResult = dbClient.query(queryRequest);
+        List<Map<String, AttributeValue>> items = queryResult.getItems();
+        double[] latitudes = new double[items.size()];
+        double[] longitudes = new double[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            latitudes[i] = getCoordinate(items.get(i), GeoFilter.LATITUDE_FIELD);
+            longitudes[i] = getCoordinate(items.get(i), GeoFilter.LONGITUDE_FIELD);
+        }
+        return new GeoScanPage<Map<String, AttributeValue>, Map<String, AttributeValue>>(items, latitudes, longitudes,
+                queryResult.getLastEvaluatedKey());
+    }
+
+    private static double getCoordinate(Map<String, AttributeValue> item, String column) {
+        AttributeValue value = item.get(column);
+        return ((value == null) || (value.getN() == null) ? Double.NaN : Double.parseDouble(value.getN()));
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.amazonaws.geo.s2.internal;
+
+import com.amazonaws.geo.model.ReindexCheckpoint;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.google.common.base.Optional;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Keeps checkpoints in a DynamoDB table with a String hash key <code>id</code>, one item per run and segment, so that
+ * a run resumes across processes. Checkpoints are read with consistent reads.
+ */
+public class DynamoDBReindexCheckpointStore implements ReindexCheckpointStore {
+
+    public static final String ID_COLUMN = "id";
+
+    private static final String START_KEY_COLUMN = "exclusiveStartKey";
+
+    private static final String COMPLETE_COLUMN = "complete";
+
+    private final AmazonDynamoDB dbClient;
+
+    private final String tableName;
+
+    private final String runId;
+
+    /**
+     * @param dbClient  the db client to read and write checkpoints with
+     * @param tableName the table storing the checkpoints
+     * @param runId     the name of the run, distinguishing its checkpoints from those of other runs in the table
+     */
+    public DynamoDBReindexCheckpointStore(AmazonDynamoDB dbClient, String tableName, String runId) {
+        checkArgument(dbClient != null, "dbClient must not be null");
+        checkArgument(tableName != null, "tableName must not be null");
+        checkArgument(runId != null, "runId must not be null");
+        this.dbClient = dbClient;
+        this.tableName = tableName;
+        this.runId = runId;
+    }
+
+    @Override public Optional<ReindexCheckpoint> load(int segment, int totalSegments) {
+        Map<String, AttributeValue> item = dbClient.getItem(new GetItemRequest().withTableName(tableName)
+                .withKey(Collections.singletonMap(ID_COLUMN, getId(segment, totalSegments))).withConsistentRead(true)).getItem();
+        if (item == null) {
+            return Optional.absent();
+        }
+        AttributeValue startKey = item.get(START_KEY_COLUMN);
+        return Optional.of(new ReindexCheckpoint(segment, totalSegments, (startKey == null ? null : startKey.getM()),
+                Boolean.TRUE.equals(item.get(COMPLETE_COLUMN).getBOOL())));
+    }
+
+    @Override public void save(ReindexCheckpoint checkpoint) {
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put(ID_COLUMN, getId(checkpoint.getSegment(), checkpoint.getTotalSegments()));
+        if (checkpoint.getExclusiveStartKey() != null) {
+            item.put(START_KEY_COLUMN, new AttributeValue().withM(checkpoint.getExclusiveStartKey()));
+        }
+        item.put(COMPLETE_COLUMN, new AttributeValue().withBOOL(checkpoint.isComplete()));
+        dbClient.putItem(new PutItemRequest().withTableName(tableName).withItem(item));
+    }
+
+    private AttributeValue getId(int segment, int totalSegments) {
+        return new AttributeValue().withS(String.format("%s/%d/%d", runId, segment, totalSegments));
+    }
+
+}
@@ -0,0 +1,484 @@
+package com.amazonaws.geo.s2.internal;
+
+import com.amazonaws.geo.Geo;
+import com.amazonaws.geo.GeoConfig;
+import com.amazonaws.geo.model.GeoQueryRequest;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Moves the reads of a table from one geo index to another without stopping writes, e.g. to change the
+ * <code>geoHashKeyLength</code> or the covering strategy.
+ *
+ * Writes decorated through the migration carry the attributes of both configs in every phase, so that the old index
+ * stays complete and a cutover can be rolled back. The migration starts in {@link Phase#DUAL_WRITE}, reading from the
+ * old index while the items written before dual writes began are backfilled, e.g. by a {@link GeoReindexer}. Once the
+ * backfill watermark reaches the start of dual writes every item has the new attributes and the migration moves to
+ * {@link Phase#SHADOW_READ}: reads are still answered from the old index, and every <code>shadowRate</code>-th one is
+ * repeated against the new index, comparing the results by primary key, the number of queries and the latency of
+ * both. {@link #cutover()} then atomically moves every later read to the new index.
+ */
+public class GeoIndexMigration {
+
+    public static final String METRIC_PREFIX = "geo.migration.";
+
+    /**
+     * The phases of a migration, in order.
+     */
+    public enum Phase {
+        /**
+         * Writes both indexes and reads the old one while the new one is backfilled.
+         */
+        DUAL_WRITE,
+        /**
+         * Writes both indexes, reads the old one and compares some reads against the new one.
+         */
+        SHADOW_READ,
+        /**
+         * Writes both indexes and reads the new one.
+         */
+        CUTOVER
+    }
+
+    private static final int LATENCY_WINDOW = 1024;
+
+    private static final double LATENCY_PERCENTILE = 0.99d;
+
+    private final Geo oldGeo;
+
+    private final Geo newGeo;
+
+    private final GeoConfig oldConfig;
+
+    private final GeoConfig newConfig;
+
+    private final List<GeoConfig> writeConfigs;
+
+    private final List<String> keyColumns;
+
+    private final GeoQueryClient geoQueryClient;
+
+    private final ExecutorService shadowExecutorService;
+
+    private final int shadowRate;
+
+    private final long dualWriteStartMillis;
+
+    private final AtomicReference<Phase> phase = new AtomicReference<Phase>(Phase.DUAL_WRITE);
+
+    private final AtomicLong backfillWatermarkMillis = new AtomicLong(Long.MIN_VALUE);
+
+    private final AtomicLong reads = new AtomicLong();
+
+    private final AtomicLong sampledReads = new AtomicLong();
+
+    private final AtomicLong shadowReads = new AtomicLong();
+
+    private final AtomicLong shadowFailures = new AtomicLong();
+
+    private final AtomicLong mismatches = new AtomicLong();
+
+    private final AtomicLong missingItems = new AtomicLong();
+
+    private final AtomicLong extraItems = new AtomicLong();
+
+    private final AtomicLong oldQueries = new AtomicLong();
+
+    private final AtomicLong newQueries = new AtomicLong();
+
+    private final AtomicLong oldLatencyNanos = new AtomicLong();
+
+    private final AtomicLong newLatencyNanos = new AtomicLong();
+
+    private final LatencyTracker oldLatencies = new LatencyTracker(LATENCY_WINDOW, LATENCY_PERCENTILE);
+
+    private final LatencyTracker newLatencies = new LatencyTracker(LATENCY_WINDOW, LATENCY_PERCENTILE);
+
+    private GeoIndexMigration(Geo oldGeo, Geo newGeo, GeoConfig oldConfig, GeoConfig newConfig, List<String> keyColumns,
+                              GeoQueryClient geoQueryClient, ExecutorService shadowExecutorService, int shadowRate,
+                              long dualWriteStartMillis) {
+        checkArgument(oldGeo != null, "oldGeo must not be null");
+        checkArgument(oldConfig != null, "oldConfig must not be null");
+        checkArgument(newConfig != null, "newConfig must not be null");
+        checkArgument(!oldConfig.equals(newConfig), "newConfig must differ from oldConfig: %s", newConfig.getGeoIndexName());
+        checkArgument((keyColumns != null) && !keyColumns.isEmpty(), "keyColumns must not be empty: %s", keyColumns);
+        checkArgument(geoQueryClient != null, "geoQueryClient must not be null");
+        checkArgument(shadowRate >= 1, "shadowRate must be positive: %s", shadowRate);
+        this.oldGeo = oldGeo;
+        this.newGeo = (newGeo == null ? oldGeo : newGeo);
+        this.oldConfig = oldConfig;
+        this.newConfig = newConfig;
+        this.writeConfigs = ImmutableList.of(oldConfig, newConfig);
+        this.keyColumns = ImmutableList.copyOf(keyColumns);
+        this.geoQueryClient = geoQueryClient;
+        this.shadowExecutorService = shadowExecutorService;
+        this.shadowRate = shadowRate;
+        this.dualWriteStartMillis = dualWriteStartMillis;
+    }
+
+    /**
+     * @return the current phase
+     */
+    public Phase getPhase() {
+        return phase.get();
+    }
+
+    /**
+     * @return the configs every write has to be decorated with, the old one first
+     */
+    public List<GeoConfig> getWriteConfigs() {
+        return writeConfigs;
+    }
+
+    /**
+     * Decorates an item with the geo attributes of both indexes.
+     */
+    public void updateAttributeValues(Map<String, AttributeValue> attributeValueMap, double latitude, double longitude) {
+        oldGeo.updateAttributeValues(attributeValueMap, latitude, longitude, writeConfigs);
+    }
+
+    /**
+     * Decorates a put with the geo attributes of both indexes.
+     */
+    public PutItemRequest putItemRequest(PutItemRequest putItemRequest, double latitude, double longitude) {
+        return oldGeo.putItemRequest(putItemRequest, latitude, longitude, writeConfigs);
+    }
+
+    /**
+     * Records that every item last written before <code>watermarkMillis</code> has been backfilled with the new
+     * attributes, e.g. the start time of a completed reindex run. Once the watermark reaches the start of dual writes,
+     * the migration moves from {@link Phase#DUAL_WRITE} to {@link Phase#SHADOW_READ}.
+     *
+     * @return the phase after the watermark was recorded
+     */
+    public Phase advanceBackfillWatermark(long watermarkMillis) {
+        long current;
+        do {
+            current = backfillWatermarkMillis.get();
+        } while ((watermarkMillis > current) && !backfillWatermarkMillis.compareAndSet(current, watermarkMillis));
+        if (backfillWatermarkMillis.get() >= dualWriteStartMillis) {
+            phase.compareAndSet(Phase.DUAL_WRITE, Phase.SHADOW_READ);
+        }
+        return phase.get();
+    }
+
+    /**
+     * @return the backfill watermark, <code>Long.MIN_VALUE</code> until one is recorded
+     */
+    public long getBackfillWatermarkMillis() {
+        return backfillWatermarkMillis.get();
+    }
+
+    /**
+     * Moves every later read to the new index.
+     *
+     * @throws IllegalStateException if the migration is not shadow reading, i.e. the backfill is incomplete
+     */
+    public void cutover() {
+        if (!phase.compareAndSet(Phase.SHADOW_READ, Phase.CUTOVER)) {
+            throw new IllegalStateException(String.format("Cannot cut over in phase [ %s ]", phase.get()));
+        }
+    }
+
+    /**
+     * Moves every later read back to the old index, which dual writes kept complete.
+     *
+     * @throws IllegalStateException if the migration has not cut over
+     */
+    public void rollback() {
+        if (!phase.compareAndSet(Phase.CUTOVER, Phase.SHADOW_READ)) {
+            throw new IllegalStateException(String.format("Cannot roll back in phase [ %s ]", phase.get()));
+        }
+    }
+
+    /**
+     * Executes a radius query against the index of the current phase, shadowing it against the new index if sampled.
+     *
+     * @see Geo#radiusQuery(QueryRequest, double, double, double, GeoConfig, Optional)
+     */
+    public List<Map<String, AttributeValue>> radiusQuery(final QueryRequest queryRequest, final double latitude,
+                                                         final double longitude, final double radius,
+                                                         final Optional<String> compositeKeyValue)
+            throws InterruptedException, ExecutionException {
+        return execute(new Planner() {
+            @Override public GeoQueryRequest plan(Geo geo, GeoConfig config) {
+                return geo.radiusQuery(queryRequest, latitude, longitude, radius, config, compositeKeyValue);
+            }
+        });
+    }
+
+    /**
+     * Executes a rectangle query against the index of the current phase, shadowing it against the new index if
+     * sampled.
+     *
+     * @see Geo#rectangleQuery(QueryRequest, double, double, double, double, GeoConfig, Optional)
+     */
+    public List<Map<String, AttributeValue>> rectangleQuery(final QueryRequest queryRequest, final double minLatitude,
+                                                            final double minLongitude, final double maxLatitude,
+                                                            final double maxLongitude, final Optional<String> compositeKeyValue)
+            throws InterruptedException, ExecutionException {
+        return execute(new Planner() {
+            @Override public GeoQueryRequest plan(Geo geo, GeoConfig config) {
+                return geo.rectangleQuery(queryRequest, minLatitude, minLongitude, maxLatitude, maxLongitude, config,
+                        compositeKeyValue);
+            }
+        });
+    }
+
+    private List<Map<String, AttributeValue>> execute(final Planner planner) throws InterruptedException, ExecutionException {
+        long read = reads.incrementAndGet();
+        Phase current = phase.get();
+        if (current == Phase.CUTOVER) {
+            return geoQueryClient.execute(planner.plan(newGeo, newConfig));
+        }
+        if ((current == Phase.DUAL_WRITE) || ((read % shadowRate) != 0)) {
+            return geoQueryClient.execute(planner.plan(oldGeo, oldConfig));
+        }
+        sampledReads.incrementAndGet();
+        final GeoQueryRequest oldRequest = planner.plan(oldGeo, oldConfig);
+        long start = System.nanoTime();
+        final List<Map<String, AttributeValue>> oldResults = geoQueryClient.execute(oldRequest);
+        final long oldLatency = System.nanoTime() - start;
+        if (shadowExecutorService == null) {
+            shadow(planner, oldRequest, oldResults, oldLatency);
+        } else {
+            shadowExecutorService.execute(new Runnable() {
+                @Override public void run() {
+                    try {
+                        shadow(planner, oldRequest, oldResults, oldLatency);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        return oldResults;
+    }
+
+    /**
+     * Repeats a read against the new index and compares its results to those of the old index. A failed shadow read
+     * is counted and never fails the read it shadows; the queries and latency of either side are only recorded for the
+     * reads actually compared, so that both sides cover the same reads.
+     */
+    private void shadow(Planner planner, GeoQueryRequest oldRequest, List<Map<String, AttributeValue>> oldResults, long oldLatency)
+            throws InterruptedException {
+        List<Map<String, AttributeValue>> newResults;
+        GeoQueryRequest newRequest = planner.plan(newGeo, newConfig);
+        long start = System.nanoTime();
+        try {
+            newResults = geoQueryClient.execute(newRequest);
+        } catch (ExecutionException e) {
+            shadowFailures.incrementAndGet();
+            return;
+        } catch (RuntimeException e) {
+            shadowFailures.incrementAndGet();
+            return;
+        }
+        record(newRequest, System.nanoTime() - start, newQueries, newLatencyNanos, newLatencies);
+        record(oldRequest, oldLatency, oldQueries, oldLatencyNanos, oldLatencies);
+        shadowReads.incrementAndGet();
+        Set<Map<String, AttributeValue>> oldKeys = getKeys(oldResults);
+        Set<Map<String, AttributeValue>> newKeys = getKeys(newResults);
+        int missing = 0;
+        for (Map<String, AttributeValue> key : oldKeys) {
+            if (!newKeys.contains(key)) {
+                missing++;
+            }
+        }
+        int extra = newKeys.size() - (oldKeys.size() - missing);
+        if ((missing > 0) || (extra > 0)) {
+            mismatches.incrementAndGet();
+            missingItems.addAndGet(missing);
+            extraItems.addAndGet(extra);
+        }
+    }
+
+    private static void record(GeoQueryRequest request, long latencyNanos, AtomicLong queries, AtomicLong totalLatencyNanos,
+                               LatencyTracker latencies) {
+        queries.addAndGet(request.getQueryRequests().size());
+        totalLatencyNanos.addAndGet(latencyNanos);
+        latencies.record(latencyNanos);
+    }
+
+    private Set<Map<String, AttributeValue>> getKeys(List<Map<String, AttributeValue>> items) {
+        Set<Map<String, AttributeValue>> keys = new HashSet<Map<String, AttributeValue>>(items.size() * 2);
+        for (Map<String, AttributeValue> item : items) {
+            Map<String, AttributeValue> key = new LinkedHashMap<String, AttributeValue>();
+            for (String keyColumn : keyColumns) {
+                key.put(keyColumn, item.get(keyColumn));
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    /**
+     * @return the number of shadow reads compared
+     */
+    public long getShadowReadCount() {
+        return shadowReads.get();
+    }
+
+    /**
+     * @return the number of shadow reads whose results differed from those of the old index
+     */
+    public long getMismatchCount() {
+        return mismatches.get();
+    }
+
+    /**
+     * @return the number of shadow reads which failed
+     */
+    public long getShadowFailureCount() {
+        return shadowFailures.get();
+    }
+
+    /**
+     * @return the counters of the migration, keyed by metric name. Queries and latencies of both indexes are those of
+     * the reads compared, so that both sides cover the same reads.
+     */
+    public Map<String, Double> toMetrics() {
+        long compared = shadowReads.get();
+        ImmutableMap.Builder<String, Double> metrics = ImmutableMap.builder();
+        metrics.put(METRIC_PREFIX + "phase", (double) phase.get().ordinal());
+        metrics.put(METRIC_PREFIX + "reads", (double) reads.get());
+        metrics.put(METRIC_PREFIX + "sampledReads", (double) sampledReads.get());
+        metrics.put(METRIC_PREFIX + "shadowReads", (double) compared);
+        metrics.put(METRIC_PREFIX + "shadowFailures", (double) shadowFailures.get());
+        metrics.put(METRIC_PREFIX + "mismatches", (double) mismatches.get());
+        metrics.put(METRIC_PREFIX + "missingItems", (double) missingItems.get());
+        metrics.put(METRIC_PREFIX + "extraItems", (double) extraItems.get());
+        metrics.put(METRIC_PREFIX + "old.queries", (double) oldQueries.get());
+        metrics.put(METRIC_PREFIX + "new.queries", (double) newQueries.get());
+        metrics.put(METRIC_PREFIX + "old.meanLatencyMillis", mean(oldLatencyNanos.get(), compared));
+        metrics.put(METRIC_PREFIX + "new.meanLatencyMillis", mean(newLatencyNanos.get(), compared));
+        metrics.put(METRIC_PREFIX + "old.p99LatencyMillis", oldLatencies.getPercentile() / 1.0e6);
+        metrics.put(METRIC_PREFIX + "new.p99LatencyMillis", newLatencies.getPercentile() / 1.0e6);
+        return metrics.build();
+    }
+
+    private static double mean(long totalNanos, long count) {
+        return (count == 0 ? 0.0d : totalNanos / 1.0e6 / count);
+    }
+
+    /**
+     * Plans a read for either index.
+     */
+    private interface Planner {
+
+        GeoQueryRequest plan(Geo geo, GeoConfig config);
+
+    }
+
+    /**
+     * Builder to help with the construction of a <code>GeoIndexMigration</code>
+     */
+    public static class Builder {
+        private Geo oldGeo;
+        private Geo newGeo;
+        private GeoConfig oldConfig;
+        private GeoConfig newConfig;
+        private List<String> keyColumns;
+        private GeoQueryClient geoQueryClient;
+        private ExecutorService shadowExecutorService;
+        private int shadowRate = 1;
+        private long dualWriteStartMillis = System.currentTimeMillis();
+
+        public Builder() {
+
+        }
+
+        /**
+         * @param geo the geo helper planning reads of the old index and decorating writes
+         */
+        public Builder geo(Geo geo) {
+            this.oldGeo = geo;
+            return this;
+        }
+
+        /**
+         * @param newGeo the geo helper planning reads of the new index, e.g. with another covering strategy; the old
+         *               one by default
+         */
+        public Builder newGeo(Geo newGeo) {
+            this.newGeo = newGeo;
+            return this;
+        }
+
+        public Builder oldConfig(GeoConfig oldConfig) {
+            this.oldConfig = oldConfig;
+            return this;
+        }
+
+        public Builder newConfig(GeoConfig newConfig) {
+            this.newConfig = newConfig;
+            return this;
+        }
+
+        /**
+         * @param keyColumns the hash key and, if any, range key columns of the table, which identify items when
+         *                   comparing results
+         */
+        public Builder keyColumns(List<String> keyColumns) {
+            this.keyColumns = keyColumns;
+            return this;
+        }
+
+        /**
+         * @param geoQueryClient the client executing the reads
+         */
+        public Builder geoQueryClient(GeoQueryClient geoQueryClient) {
+            this.geoQueryClient = geoQueryClient;
+            return this;
+        }
+
+        /**
+         * @param shadowExecutorService the executor running shadow reads after the read they shadow returns, or null to
+         *                              run them before it returns
+         */
+        public Builder shadowExecutorService(ExecutorService shadowExecutorService) {
+            this.shadowExecutorService = shadowExecutorService;
+            return this;
+        }
+
+        /**
+         * @param shadowRate one in how many reads is shadowed while in {@link Phase#SHADOW_READ}
+         */
+        public Builder shadowRate(int shadowRate) {
+            this.shadowRate = shadowRate;
+            return this;
+        }
+
+        /**
+         * @param dualWriteStartMillis the time from which every write carries both indexes' attributes; the time the
+         *                             migration is built by default
+         */
+        public Builder dualWriteStartMillis(long dualWriteStartMillis) {
+            this.dualWriteStartMillis = dualWriteStartMillis;
+            return this;
+        }
+
+        public GeoIndexMigration build() {
+            return new GeoIndexMigration(oldGeo, newGeo, oldConfig, newConfig, keyColumns, geoQueryClient, shadowExecutorService,
+                    shadowRate, dualWriteStartMillis);
+        }
+
+    }
+
+}
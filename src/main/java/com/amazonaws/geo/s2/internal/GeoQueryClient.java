@@ -1,39 +1,101 @@
 package com.amazonaws.geo.s2.internal;
 
+import com.amazonaws.geo.model.GeoBatchQueryRequest;
+import com.amazonaws.geo.model.GeoHeatmapQueryRequest;
+import com.amazonaws.geo.model.GeoPointQueryRequest;
 import com.amazonaws.geo.model.GeoQueryRequest;
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.amazonaws.geo.model.StreamingGeoQueryRequest;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.QueryRequest;
 import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.Select;
+import com.dashlabs.dash.geo.model.CellCountMap;
 import com.dashlabs.dash.geo.model.filters.GeoFilter;
+import com.dashlabs.dash.geo.scan.PlanOrderExecutor;
+import com.dashlabs.dash.geo.scan.PrefixCounts;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2LatLng;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
 
 /**
  * Created by mpuri on 3/28/14
  */
 public class GeoQueryClient {
 
+    /**
+     * The default maximum number of queries of a streaming request in flight at a time
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 32;
+
     /**
      * The db client to use when executing the queries
      */
-    private final AmazonDynamoDBClient dbClient;
+    private final AmazonDynamoDB dbClient;
 
     /**
      * The executor service to use to manage the queries workload
      */
     private final ExecutorService executorService;
 
-    public GeoQueryClient(AmazonDynamoDBClient dbClient, ExecutorService executorService) {
+    /**
+     * The executor service to send query pages on when hedging, or null
+     */
+    private final ExecutorService hedgeExecutorService;
+
+    /**
+     * The policy deciding when to hedge query pages, or null to never hedge
+     */
+    private final HedgingPolicy hedgingPolicy;
+
+    /**
+     * The policy setting the page limit of the queries, or null to keep the limit of the queries
+     */
+    private volatile AdaptivePagingPolicy pagingPolicy;
+
+    public GeoQueryClient(AmazonDynamoDB dbClient, ExecutorService executorService) {
+        this(dbClient, executorService, null, null);
+    }
+
+    /**
+     * @param hedgeExecutorService the executor service to send query pages and their hedges on, separate from
+     *                             <code>executorService</code> whose threads wait for them
+     * @param hedgingPolicy        the policy deciding when to hedge query pages, or null to never hedge
+     */
+    public GeoQueryClient(AmazonDynamoDB dbClient, ExecutorService executorService, ExecutorService hedgeExecutorService,
+                          HedgingPolicy hedgingPolicy) {
+        checkArgument((hedgingPolicy == null) || (hedgeExecutorService != null), "hedgeExecutorService must be set to hedge with: %s",
+                hedgingPolicy);
         this.dbClient = dbClient;
         this.executorService = executorService;
+        this.hedgeExecutorService = hedgeExecutorService;
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
+    /**
+     * Sets the policy setting the <code>Limit</code> of every query page, or null to keep the limit of the queries.
+     */
+    public void setPagingPolicy(AdaptivePagingPolicy pagingPolicy) {
+        this.pagingPolicy = pagingPolicy;
     }
 
     /**
@@ -63,24 +125,445 @@ public class GeoQueryClient {
         return ImmutableList.copyOf(results);
     }
 
+    /**
+     * Executes the <code>queryRequests</code> in order, with at most {@link #DEFAULT_MAX_IN_FLIGHT} in flight, until
+     * <code>limit</code> filtered items are found.
+     *
+     * @see #execute(GeoQueryRequest, int, int)
+     */
+    public List<Map<String, AttributeValue>> execute(GeoQueryRequest geoQueryRequest, int limit)
+            throws InterruptedException, ExecutionException {
+        return execute(geoQueryRequest, limit, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Executes the <code>queryRequests</code> in order and applies the <code>resultFilter</code> to the query results until
+     * the queries completed first in plan order hold <code>limit</code> filtered items. At most <code>maxInFlight</code>
+     * queries run at a time. A query stops paging, and one not yet started is skipped, once it and the queries before it
+     * have found <code>limit</code> items; the queries in flight after the completed prefix are then cancelled. A slow
+     * query near the start of the plan is thus read to the end even if later queries complete first. Together with a plan
+     * ordered nearest first, such as that of {@link com.amazonaws.geo.Geo#nearestRadiusQuery}, this reads the ranges near
+     * the center only.
+     *
+     * @param limit       the number of filtered items wanted
+     * @param maxInFlight the maximum number of queries run at a time
+     * @return an immutable collection of at most <code>limit</code> filtered items, the items of earlier queries first
+     */
+    public List<Map<String, AttributeValue>> execute(GeoQueryRequest geoQueryRequest, final int limit, int maxInFlight)
+            throws InterruptedException, ExecutionException {
+        final GeoFilter<Map<String, AttributeValue>> resultFilter = geoQueryRequest.getResultFilter();
+        final List<QueryRequest> queryRequests = geoQueryRequest.getQueryRequests();
+        return PlanOrderExecutor.execute(executorService, queryRequests.size(),
+                new PlanOrderExecutor.RangeReader<Map<String, AttributeValue>>() {
+                    @Override public List<Map<String, AttributeValue>> read(int index, PrefixCounts resultCounts) throws Exception {
+                        return executeQuery(queryRequests.get(index), resultFilter, resultCounts, index, limit);
+                    }
+                }, limit, maxInFlight);
+    }
+
+    /**
+     * Executes the lazily generated <code>queryRequests</code> of a streaming request with at most
+     * {@link #DEFAULT_MAX_IN_FLIGHT} queries in flight and applies the <code>resultFilter</code> to the query results.
+     *
+     * @return an immutable collection of filtered items
+     */
+    public List<Map<String, AttributeValue>> execute(StreamingGeoQueryRequest streamingGeoQueryRequest)
+            throws InterruptedException, ExecutionException {
+        return execute(streamingGeoQueryRequest, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Executes the lazily generated <code>queryRequests</code> of a streaming request and applies the
+     * <code>resultFilter</code> to the query results. The calling thread pulls queries from the plan and submits them
+     * until <code>maxInFlight</code> are outstanding, then collects a completed query before submitting the next, so the
+     * first queries are sent as soon as they are planned and only <code>maxInFlight</code> queries exist at a time. If a
+     * query fails the outstanding ones are cancelled and the rest of the plan is never generated.
+     *
+     * @param maxInFlight the maximum number of queries submitted to the executor service and not yet collected
+     * @return an immutable collection of filtered items
+     */
+    public List<Map<String, AttributeValue>> execute(StreamingGeoQueryRequest streamingGeoQueryRequest, int maxInFlight)
+            throws InterruptedException, ExecutionException {
+        checkArgument(maxInFlight >= 1, "maxInFlight must be positive: %s", maxInFlight);
+        final GeoFilter<Map<String, AttributeValue>> resultFilter = streamingGeoQueryRequest.getResultFilter();
+        Iterator<QueryRequest> queryRequests = streamingGeoQueryRequest.getQueryRequests();
+        CompletionService<List<Map<String, AttributeValue>>> completionService =
+                new ExecutorCompletionService<List<Map<String, AttributeValue>>>(executorService);
+        Set<Future<List<Map<String, AttributeValue>>>> inFlight = new HashSet<Future<List<Map<String, AttributeValue>>>>(maxInFlight);
+        List<Map<String, AttributeValue>> results = new ArrayList<Map<String, AttributeValue>>();
+        try {
+            while (queryRequests.hasNext() || !inFlight.isEmpty()) {
+                while ((inFlight.size() < maxInFlight) && queryRequests.hasNext()) {
+                    final QueryRequest query = queryRequests.next();
+                    inFlight.add(completionService.submit(new Callable<List<Map<String, AttributeValue>>>() {
+                        @Override public List<Map<String, AttributeValue>> call() throws Exception {
+                            return executeQuery(query, resultFilter);
+                        }
+                    }));
+                }
+                Future<List<Map<String, AttributeValue>>> completed = completionService.take();
+                inFlight.remove(completed);
+                results.addAll(completed.get());
+            }
+        } finally {
+            for (Future<List<Map<String, AttributeValue>>> future : inFlight) {
+                future.cancel(true);
+            }
+        }
+        return ImmutableList.copyOf(results);
+    }
+
+    /**
+     * Executes the de-duplicated <code>queryRequests</code> of a batch once each and routes every result item to each of
+     * the <code>resultFilters</code> which accepts it.
+     *
+     * @return an immutable collection of filtered items per filter, in the order of the batch's filters
+     */
+    public List<List<Map<String, AttributeValue>>> execute(final GeoBatchQueryRequest geoBatchQueryRequest)
+            throws InterruptedException, ExecutionException {
+        final List<GeoFilter<Map<String, AttributeValue>>> resultFilters = geoBatchQueryRequest.getResultFilters();
+        final List<Callable<List<List<Map<String, AttributeValue>>>>> queryCallables =
+                new ArrayList<Callable<List<List<Map<String, AttributeValue>>>>>(geoBatchQueryRequest.getQueryRequests().size());
+        for (final QueryRequest query : geoBatchQueryRequest.getQueryRequests()) {
+            queryCallables.add(new Callable<List<List<Map<String, AttributeValue>>>>() {
+                @Override public List<List<Map<String, AttributeValue>>> call() throws Exception {
+                    return executeQuery(query, resultFilters);
+                }
+            });
+        }
+        List<List<Map<String, AttributeValue>>> results = newResultLists(resultFilters.size());
+        List<Future<List<List<Map<String, AttributeValue>>>>> futures = executorService.invokeAll(queryCallables);
+        if (futures != null) {
+            for (Future<List<List<Map<String, AttributeValue>>>> future : futures) {
+                List<List<Map<String, AttributeValue>>> routed = future.get();
+                for (int i = 0; i < routed.size(); i++) {
+                    results.get(i).addAll(routed.get(i));
+                }
+            }
+        }
+        ImmutableList.Builder<List<Map<String, AttributeValue>>> immutableResults = ImmutableList.builder();
+        for (List<Map<String, AttributeValue>> result : results) {
+            immutableResults.add(ImmutableList.copyOf(result));
+        }
+        return immutableResults.build();
+    }
+
+    /**
+     * Executes the <code>queryRequests</code> of a batched point lookup and matches the returned items back to the
+     * requested points by their geohash. Items which were returned by a query but are not at any of the requested points
+     * are dropped.
+     *
+     * @return an immutable map of the requested points to the items found at them
+     */
+    public Map<S2LatLng, List<Map<String, AttributeValue>>> execute(final GeoPointQueryRequest geoPointQueryRequest)
+            throws InterruptedException, ExecutionException {
+        final List<Callable<List<Map<String, AttributeValue>>>> queryCallables =
+                new ArrayList<Callable<List<Map<String, AttributeValue>>>>(geoPointQueryRequest.getQueryRequests().size());
+        for (final QueryRequest query : geoPointQueryRequest.getQueryRequests()) {
+            queryCallables.add(new Callable<List<Map<String, AttributeValue>>>() {
+                @Override public List<Map<String, AttributeValue>> call() throws Exception {
+                    return executeQuery(query);
+                }
+            });
+        }
+        Map<S2LatLng, List<Map<String, AttributeValue>>> results = new LinkedHashMap<S2LatLng, List<Map<String, AttributeValue>>>();
+        List<Future<List<Map<String, AttributeValue>>>> futures = executorService.invokeAll(queryCallables);
+        if (futures != null) {
+            for (Future<List<Map<String, AttributeValue>>> future : futures) {
+                for (Map<String, AttributeValue> item : future.get()) {
+                    AttributeValue geohashValue = item.get(geoPointQueryRequest.getGeoHashColumn());
+                    if ((geohashValue == null) || (geohashValue.getN() == null)) {
+                        continue;
+                    }
+                    List<S2LatLng> points = geoPointQueryRequest.getPointsByGeohash().get(Long.valueOf(geohashValue.getN()));
+                    if (points == null) {
+                        continue;
+                    }
+                    for (S2LatLng point : points) {
+                        List<Map<String, AttributeValue>> pointItems = results.get(point);
+                        if (pointItems == null) {
+                            pointItems = new ArrayList<Map<String, AttributeValue>>(1);
+                            results.put(point, pointItems);
+                        }
+                        pointItems.add(item);
+                    }
+                }
+            }
+        }
+        ImmutableMap.Builder<S2LatLng, List<Map<String, AttributeValue>>> immutableResults = ImmutableMap.builder();
+        for (Map.Entry<S2LatLng, List<Map<String, AttributeValue>>> entry : results.entrySet()) {
+            immutableResults.put(entry.getKey(), ImmutableList.copyOf(entry.getValue()));
+        }
+        return immutableResults.build();
+    }
+
+    /**
+     * Executes the count and boundary queries of a heatmap. The counts of the count queries are added to their cell; the
+     * items of the boundary queries which pass the filter are counted in the cell of their coordinates.
+     *
+     * @return the item counts keyed by the id of their cell
+     */
+    public CellCountMap execute(final GeoHeatmapQueryRequest geoHeatmapQueryRequest)
+            throws InterruptedException, ExecutionException {
+        List<Callable<CellCountMap>> queryCallables = new ArrayList<Callable<CellCountMap>>(
+                geoHeatmapQueryRequest.getCountQueryRequests().size() + geoHeatmapQueryRequest.getBoundaryQueryRequests().size());
+        for (int i = 0; i < geoHeatmapQueryRequest.getCountQueryRequests().size(); i++) {
+            final QueryRequest query = geoHeatmapQueryRequest.getCountQueryRequests().get(i);
+            final long cellId = geoHeatmapQueryRequest.getCountCellIds().get(i);
+            queryCallables.add(new Callable<CellCountMap>() {
+                @Override public CellCountMap call() throws Exception {
+                    CellCountMap counts = new CellCountMap(1);
+                    counts.add(cellId, executeCountQuery(query));
+                    return counts;
+                }
+            });
+        }
+        for (final QueryRequest query : geoHeatmapQueryRequest.getBoundaryQueryRequests()) {
+            queryCallables.add(new Callable<CellCountMap>() {
+                @Override public CellCountMap call() throws Exception {
+                    return executeBoundaryQuery(query, geoHeatmapQueryRequest.getResultFilter(), geoHeatmapQueryRequest.getLevel());
+                }
+            });
+        }
+        CellCountMap counts = new CellCountMap();
+        List<Future<CellCountMap>> futures = executorService.invokeAll(queryCallables);
+        if (futures != null) {
+            for (Future<CellCountMap> future : futures) {
+                counts.addAll(future.get());
+            }
+        }
+        return counts;
+    }
+
     /**
      * Executes the  query using the provided db client. The geo filter is applied to the results of the query.
      *
      * @param queryRequest the query to execute
      * @return a collection of filtered result items
      */
-    private List<Map<String, AttributeValue>> executeQuery(QueryRequest queryRequest, GeoFilter<Map<String, AttributeValue>> resultFilter) {
+    private List<Map<String, AttributeValue>> executeQuery(QueryRequest queryRequest, GeoFilter<Map<String, AttributeValue>> resultFilter)
+            throws InterruptedException {
+        return executeQuery(queryRequest, resultFilter, new PrefixCounts(1), 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Executes the query using the provided db client. The geo filter is applied to the results of the query, whose
+     * number is recorded at <code>index</code> of <code>resultCounts</code>. No further pages are read once this and the
+     * queries before it have found <code>limit</code> items.
+     *
+     * @param queryRequest the query to execute
+     * @param resultCounts the number of filtered items found so far by each query of the plan
+     * @param index        the position of this query in the plan
+     * @param limit        the number of filtered items wanted
+     * @return a collection of filtered result items
+     */
+    private List<Map<String, AttributeValue>> executeQuery(QueryRequest queryRequest, GeoFilter<Map<String, AttributeValue>> resultFilter,
+                                                           PrefixCounts resultCounts, int index, int limit)
+            throws InterruptedException {
         QueryResult queryResult;
         List<Map<String, AttributeValue>> resultItems = new ArrayList<Map<String, AttributeValue>>();
+        int readItems = 0;
         do {
-            queryResult = dbClient.query(queryRequest);
+            queryResult = queryPage(queryRequest, readItems);
+            readItems += getReadItems(queryResult);
             List<Map<String, AttributeValue>> items = queryResult.getItems();
             // filter the results using the geo filter
             List<Map<String, AttributeValue>> filteredItems = resultFilter.filter(items);
             resultItems.addAll(filteredItems);
+            resultCounts.add(index, filteredItems.size());
+            queryRequest = queryRequest.withExclusiveStartKey(queryResult.getLastEvaluatedKey());
+        } while ((queryResult.getLastEvaluatedKey() != null) && !PlanOrderExecutor.isComplete(resultCounts, index, limit));
+
+        return resultItems;
+    }
+
+    /**
+     * Executes the query using the provided db client. Each of the geo filters is applied to the results of the query.
+     *
+     * @param queryRequest the query to execute
+     * @return a collection of filtered result items per filter
+     */
+    private List<List<Map<String, AttributeValue>>> executeQuery(QueryRequest queryRequest,
+                                                                 List<GeoFilter<Map<String, AttributeValue>>> resultFilters)
+            throws InterruptedException {
+        QueryResult queryResult;
+        List<List<Map<String, AttributeValue>>> resultItems = newResultLists(resultFilters.size());
+        int readItems = 0;
+        do {
+            queryResult = queryPage(queryRequest, readItems);
+            readItems += getReadItems(queryResult);
+            List<Map<String, AttributeValue>> items = queryResult.getItems();
+            // route the results to every geo filter accepting them
+            for (int i = 0; i < resultFilters.size(); i++) {
+                resultItems.get(i).addAll(resultFilters.get(i).filter(items));
+            }
             queryRequest = queryRequest.withExclusiveStartKey(queryResult.getLastEvaluatedKey());
         } while ((queryResult.getLastEvaluatedKey() != null));
 
         return resultItems;
     }
+
+    /**
+     * Executes the query using the provided db client without filtering its results.
+     *
+     * @param queryRequest the query to execute
+     * @return a collection of result items
+     */
+    private List<Map<String, AttributeValue>> executeQuery(QueryRequest queryRequest) throws InterruptedException {
+        QueryResult queryResult;
+        List<Map<String, AttributeValue>> resultItems = new ArrayList<Map<String, AttributeValue>>();
+        int readItems = 0;
+        do {
+            queryResult = queryPage(queryRequest, readItems);
+            readItems += getReadItems(queryResult);
+            resultItems.addAll(queryResult.getItems());
+            queryRequest = queryRequest.withExclusiveStartKey(queryResult.getLastEvaluatedKey());
+        } while ((queryResult.getLastEvaluatedKey() != null));
+
+        return resultItems;
+    }
+
+    /**
+     * Executes the <code>Select.COUNT</code> query using the provided db client.
+     *
+     * @return the number of items the query matched
+     */
+    private long executeCountQuery(QueryRequest queryRequest) throws InterruptedException {
+        QueryResult queryResult;
+        long count = 0L;
+        int readItems = 0;
+        do {
+            queryResult = queryPage(queryRequest, readItems);
+            readItems += getReadItems(queryResult);
+            count += queryResult.getCount();
+            queryRequest = queryRequest.withExclusiveStartKey(queryResult.getLastEvaluatedKey());
+        } while ((queryResult.getLastEvaluatedKey() != null));
+
+        return count;
+    }
+
+    /**
+     * Executes the query using the provided db client and counts the items which pass the geo filter in the cell of
+     * <code>level</code> of their coordinates, page by page.
+     *
+     * @return the counts keyed by cell id
+     */
+    private CellCountMap executeBoundaryQuery(QueryRequest queryRequest, GeoFilter<Map<String, AttributeValue>> resultFilter,
+                                              int level) throws InterruptedException {
+        QueryResult queryResult;
+        CellCountMap counts = new CellCountMap();
+        int readItems = 0;
+        do {
+            queryResult = queryPage(queryRequest, readItems);
+            readItems += getReadItems(queryResult);
+            for (Map<String, AttributeValue> item : resultFilter.filter(queryResult.getItems())) {
+                S2LatLng latLng = S2LatLng.fromDegrees(Double.parseDouble(item.get(GeoFilter.LATITUDE_FIELD).getN()),
+                        Double.parseDouble(item.get(GeoFilter.LONGITUDE_FIELD).getN()));
+                counts.add(S2CellId.fromLatLng(latLng).parent(level).id(), 1L);
+            }
+            queryRequest = queryRequest.withExclusiveStartKey(queryResult.getLastEvaluatedKey());
+        } while ((queryResult.getLastEvaluatedKey() != null));
+
+        return counts;
+    }
+
+    /**
+     * Sends a single query page with the limit of the paging policy, if any, which also observes the query once its last
+     * page returned. Count pages are sent as they are: they return no items, so a smaller limit would only cost round trips.
+     *
+     * @param readItems the number of items read by the previous pages of the query
+     */
+    private QueryResult queryPage(QueryRequest queryRequest, int readItems) throws InterruptedException {
+        AdaptivePagingPolicy policy = pagingPolicy;
+        if ((policy == null) || Select.COUNT.toString().equals(queryRequest.getSelect())) {
+            return query(queryRequest);
+        }
+        // the limit goes on a copy so as not to change the caller's request
+        QueryResult queryResult = query(queryRequest.clone().withLimit(policy.getLimit(queryRequest, readItems)));
+        if (queryResult.getLastEvaluatedKey() == null) {
+            policy.record(queryRequest, readItems + getReadItems(queryResult));
+        }
+        return queryResult;
+    }
+
+    /**
+     * Sends a single query page, hedging it if the hedging policy says so. The page is sent on the hedge executor while
+     * the calling thread waits for the hedge delay; if it has not returned by then and the budget allows, a copy is sent
+     * and the first of the two to succeed is used. The other one is cancelled.
+     */
+    private QueryResult query(QueryRequest queryRequest) throws InterruptedException {
+        HedgingPolicy policy = hedgingPolicy;
+        long delayNanos = (policy == null ? -1L : policy.getHedgeDelayNanos());
+        long start = System.nanoTime();
+        if (delayNanos < 0) {
+            QueryResult queryResult = dbClient.query(queryRequest);
+            if (policy != null) {
+                policy.recordRequest(System.nanoTime() - start, false);
+            }
+            return queryResult;
+        }
+        CompletionService<QueryResult> completionService = new ExecutorCompletionService<QueryResult>(hedgeExecutorService);
+        Future<QueryResult> primary = completionService.submit(newQueryCallable(queryRequest));
+        Future<QueryResult> hedge = null;
+        try {
+            Future<QueryResult> completed = completionService.poll(delayNanos, TimeUnit.NANOSECONDS);
+            if ((completed == null) && policy.tryAcquireHedge()) {
+                // the page itself is mutated once it returns, so the hedge sends a copy
+                hedge = completionService.submit(newQueryCallable(queryRequest.clone()));
+            }
+            if (completed == null) {
+                completed = completionService.take();
+            }
+            QueryResult queryResult;
+            try {
+                queryResult = completed.get();
+            } catch (ExecutionException e) {
+                if (hedge == null) {
+                    throw propagate(e);
+                }
+                // the other copy may still succeed
+                completed = completionService.take();
+                try {
+                    queryResult = completed.get();
+                } catch (ExecutionException hedgeException) {
+                    throw propagate(e);
+                }
+            }
+            policy.recordRequest(System.nanoTime() - start, completed == hedge);
+            return queryResult;
+        } finally {
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    private Callable<QueryResult> newQueryCallable(final QueryRequest queryRequest) {
+        return new Callable<QueryResult>() {
+            @Override public QueryResult call() throws Exception {
+                return dbClient.query(queryRequest);
+            }
+        };
+    }
+
+    /**
+     * @return the number of items a page read, which the <code>Limit</code> applies to, before any filter expression
+     */
+    private static int getReadItems(QueryResult queryResult) {
+        return (queryResult.getScannedCount() != null ? queryResult.getScannedCount() : queryResult.getItems().size());
+    }
+
+    private static RuntimeException propagate(ExecutionException e) {
+        Throwables.throwIfUnchecked(e.getCause());
+        return new RuntimeException(e.getCause());
+    }
+
+    private static List<List<Map<String, AttributeValue>>> newResultLists(int size) {
+        List<List<Map<String, AttributeValue>>> resultLists = new ArrayList<List<Map<String, AttributeValue>>>(size);
+        for (int i = 0; i < size; i++) {
+            resultLists.add(new ArrayList<Map<String, AttributeValue>>());
+        }
+        return resultLists;
+    }
 }
@@ -0,0 +1,433 @@
+package com.amazonaws.geo.s2.internal;
+
+import com.amazonaws.geo.Geo;
+import com.amazonaws.geo.GeoConfig;
+import com.amazonaws.geo.model.ReindexCheckpoint;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.dashlabs.dash.geo.model.filters.GeoFilter;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Recomputes the geo attributes of every item of a table for a new set of {@link GeoConfig}s, e.g. after changing the
+ * <code>geoHashKeyLength</code> or adding a geo index. The table is read by a parallel scan of
+ * <code>totalSegments</code> segments, each run as a task on the executor, and the attributes of every item with a
+ * location are recomputed with {@link Geo#updateAttributeValues(Map, double, double, List)}.
+ *
+ * Only the attributes which differ are written, with an <code>UpdateItem</code> conditioned on the item's location
+ * being the one it was scanned with; an item moved meanwhile is left to its writer, which must already use the new
+ * configs. Reads and writes are paced by token buckets of read and write capacity units, charged with the capacity
+ * each request consumed. Every segment saves a checkpoint after each page, so a run which failed or was interrupted
+ * resumes after the last page it completed; pages are re-read at most once and their items, already up to date, are
+ * not written again.
+ */
+public class GeoReindexer {
+
+    public static final String METRIC_PREFIX = "geo.reindex.";
+
+    public static final int DEFAULT_TOTAL_SEGMENTS = 4;
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    private final AmazonDynamoDB dbClient;
+
+    private final Geo geo;
+
+    private final String tableName;
+
+    private final List<String> keyColumns;
+
+    private final List<GeoConfig> configs;
+
+    private final int totalSegments;
+
+    private final int pageSize;
+
+    private final RateLimiter readLimiter;
+
+    private final RateLimiter writeLimiter;
+
+    private final ExecutorService executorService;
+
+    private final ReindexCheckpointStore checkpointStore;
+
+    private final String projectionExpression;
+
+    private final Map<String, String> projectionNames;
+
+    private final AtomicLong scanned = new AtomicLong();
+
+    private final AtomicLong updated = new AtomicLong();
+
+    private final AtomicLong unchanged = new AtomicLong();
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    private final AtomicLong conflicts = new AtomicLong();
+
+    private GeoReindexer(AmazonDynamoDB dbClient, Geo geo, String tableName, List<String> keyColumns, List<GeoConfig> configs,
+                         int totalSegments, int pageSize, double readUnitsPerSecond, double writeUnitsPerSecond,
+                         ExecutorService executorService, ReindexCheckpointStore checkpointStore) {
+        checkArgument(dbClient != null, "dbClient must not be null");
+        checkArgument(geo != null, "geo must not be null");
+        checkArgument(tableName != null, "tableName must not be null");
+        checkArgument((keyColumns != null) && !keyColumns.isEmpty(), "keyColumns must not be empty: %s", keyColumns);
+        checkArgument((configs != null) && !configs.isEmpty(), "configs must not be empty: %s", configs);
+        checkArgument(totalSegments >= 1, "totalSegments must be positive: %s", totalSegments);
+        checkArgument(pageSize >= 1, "pageSize must be positive: %s", pageSize);
+        checkArgument(readUnitsPerSecond >= 0, "readUnitsPerSecond must not be negative: %s", readUnitsPerSecond);
+        checkArgument(writeUnitsPerSecond >= 0, "writeUnitsPerSecond must not be negative: %s", writeUnitsPerSecond);
+        checkArgument(executorService != null, "executorService must not be null");
+        checkArgument(checkpointStore != null, "checkpointStore must not be null");
+        this.dbClient = dbClient;
+        this.geo = geo;
+        this.tableName = tableName;
+        this.keyColumns = ImmutableList.copyOf(keyColumns);
+        this.configs = ImmutableList.copyOf(configs);
+        this.totalSegments = totalSegments;
+        this.pageSize = pageSize;
+        this.readLimiter = (readUnitsPerSecond == 0 ? null : RateLimiter.create(readUnitsPerSecond));
+        this.writeLimiter = (writeUnitsPerSecond == 0 ? null : RateLimiter.create(writeUnitsPerSecond));
+        this.executorService = executorService;
+        this.checkpointStore = checkpointStore;
+
+        // only the attributes reindexing reads or compares are returned by the scan
+        Set<String> columns = new LinkedHashSet<String>(keyColumns);
+        columns.add(GeoFilter.LATITUDE_FIELD);
+        columns.add(GeoFilter.LONGITUDE_FIELD);
+        for (GeoConfig config : configs) {
+            columns.add(config.getGeoHashColumn());
+            columns.add(config.getGeoHashKeyColumn());
+            columns.addAll(config.getCompositeHashKeyColumn().asSet());
+            columns.addAll(config.getTimestampColumn().asSet());
+        }
+        Map<String, String> names = new HashMap<String, String>();
+        StringBuilder projection = new StringBuilder();
+        for (String column : columns) {
+            String name = "#geo_p" + names.size();
+            names.put(name, column);
+            projection.append(projection.length() == 0 ? "" : ", ").append(name);
+        }
+        this.projectionExpression = projection.toString();
+        this.projectionNames = ImmutableMap.copyOf(names);
+    }
+
+    /**
+     * Reindexes every segment not yet complete according to the checkpoint store, and waits for all of them.
+     *
+     * @return the number of items updated by this run
+     * @throws ExecutionException if a segment failed; the other segments still run to completion, and a new run resumes
+     *                            the failed one from its last checkpoint
+     */
+    public long run() throws InterruptedException, ExecutionException {
+        List<Callable<Long>> segmentCallables = new ArrayList<Callable<Long>>(totalSegments);
+        for (int i = 0; i < totalSegments; i++) {
+            final int segment = i;
+            segmentCallables.add(new Callable<Long>() {
+                @Override public Long call() throws Exception {
+                    return reindexSegment(segment);
+                }
+            });
+        }
+        List<Future<Long>> futures = executorService.invokeAll(segmentCallables);
+        long count = 0L;
+        ExecutionException failure = null;
+        for (Future<Long> future : futures) {
+            try {
+                count += future.get();
+            } catch (ExecutionException e) {
+                failure = (failure == null ? e : failure);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return count;
+    }
+
+    private long reindexSegment(int segment) throws InterruptedException {
+        Optional<ReindexCheckpoint> checkpoint = checkpointStore.load(segment, totalSegments);
+        if (checkpoint.isPresent() && checkpoint.get().isComplete()) {
+            return 0L;
+        }
+        ScanRequest scanRequest = new ScanRequest().withTableName(tableName).withSegment(segment).withTotalSegments(totalSegments)
+                .withLimit(pageSize).withProjectionExpression(projectionExpression).withExpressionAttributeNames(projectionNames)
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .withExclusiveStartKey(checkpoint.isPresent() ? checkpoint.get().getExclusiveStartKey() : null);
+        long count = 0L;
+        ScanResult scanResult;
+        do {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            scanResult = dbClient.scan(scanRequest);
+            acquire(readLimiter, scanResult.getConsumedCapacity());
+            scanned.addAndGet(scanResult.getItems().size());
+            for (Map<String, AttributeValue> item : scanResult.getItems()) {
+                if (reindex(item)) {
+                    count++;
+                }
+            }
+            checkpointStore.save(new ReindexCheckpoint(segment, totalSegments, scanResult.getLastEvaluatedKey(),
+                    scanResult.getLastEvaluatedKey() == null));
+            scanRequest = scanRequest.withExclusiveStartKey(scanResult.getLastEvaluatedKey());
+        } while (scanResult.getLastEvaluatedKey() != null);
+        return count;
+    }
+
+    /**
+     * @return true if the item was updated
+     */
+    private boolean reindex(Map<String, AttributeValue> item) {
+        AttributeValue latitude = item.get(GeoFilter.LATITUDE_FIELD);
+        AttributeValue longitude = item.get(GeoFilter.LONGITUDE_FIELD);
+        if ((latitude == null) || (latitude.getN() == null) || (longitude == null) || (longitude.getN() == null)) {
+            skipped.incrementAndGet();
+            return false;
+        }
+        Map<String, AttributeValue> decorated = new HashMap<String, AttributeValue>(item);
+        geo.updateAttributeValues(decorated, Double.parseDouble(latitude.getN()), Double.parseDouble(longitude.getN()), configs);
+
+        Map<String, String> names = new HashMap<String, String>();
+        Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+        StringBuilder updateExpression = new StringBuilder();
+        for (Map.Entry<String, AttributeValue> attribute : decorated.entrySet()) {
+            if (attribute.getValue().equals(item.get(attribute.getKey()))) {
+                continue;
+            }
+            String name = "#geo_attr" + names.size();
+            String value = ":geo_attr" + values.size();
+            names.put(name, attribute.getKey());
+            values.put(value, attribute.getValue());
+            updateExpression.append(updateExpression.length() == 0 ? "SET " : ", ").append(name).append(" = ").append(value);
+        }
+        if (names.isEmpty()) {
+            unchanged.incrementAndGet();
+            return false;
+        }
+        names.put("#geo_latitude", GeoFilter.LATITUDE_FIELD);
+        names.put("#geo_longitude", GeoFilter.LONGITUDE_FIELD);
+        values.put(":geo_latitude", latitude);
+        values.put(":geo_longitude", longitude);
+        Map<String, AttributeValue> key = new LinkedHashMap<String, AttributeValue>();
+        for (String keyColumn : keyColumns) {
+            key.put(keyColumn, item.get(keyColumn));
+        }
+        UpdateItemRequest updateItemRequest = new UpdateItemRequest().withTableName(tableName).withKey(key)
+                .withUpdateExpression(updateExpression.toString())
+                .withConditionExpression("#geo_latitude = :geo_latitude AND #geo_longitude = :geo_longitude")
+                .withExpressionAttributeNames(names).withExpressionAttributeValues(values)
+                .withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+        UpdateItemResult updateItemResult;
+        try {
+            updateItemResult = dbClient.updateItem(updateItemRequest);
+        } catch (ConditionalCheckFailedException e) {
+            // moved or deleted since it was scanned; a failed condition still consumes its write
+            acquire(writeLimiter, null);
+            conflicts.incrementAndGet();
+            return false;
+        }
+        acquire(writeLimiter, updateItemResult.getConsumedCapacity());
+        updated.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Charges the capacity a request consumed, at least one unit, to the limiter, if any. The next request waits for
+     * whatever the bucket could not cover.
+     */
+    private static void acquire(RateLimiter limiter, ConsumedCapacity consumedCapacity) {
+        if (limiter == null) {
+            return;
+        }
+        double units = ((consumedCapacity == null) || (consumedCapacity.getCapacityUnits() == null)
+                ? 1.0d : consumedCapacity.getCapacityUnits());
+        limiter.acquire(Math.max(1, (int) Math.ceil(units)));
+    }
+
+    /**
+     * @return the number of items scanned
+     */
+    public long getScannedCount() {
+        return scanned.get();
+    }
+
+    /**
+     * @return the number of items whose geo attributes were rewritten
+     */
+    public long getUpdatedCount() {
+        return updated.get();
+    }
+
+    /**
+     * @return the number of items whose geo attributes were already up to date
+     */
+    public long getUnchangedCount() {
+        return unchanged.get();
+    }
+
+    /**
+     * @return the number of items without a location
+     */
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    /**
+     * @return the number of items which moved or were deleted between being scanned and updated
+     */
+    public long getConflictCount() {
+        return conflicts.get();
+    }
+
+    /**
+     * @return the counters of the reindexer, keyed by metric name
+     */
+    public Map<String, Double> toMetrics() {
+        ImmutableMap.Builder<String, Double> metrics = ImmutableMap.builder();
+        metrics.put(METRIC_PREFIX + "scanned", (double) scanned.get());
+        metrics.put(METRIC_PREFIX + "updated", (double) updated.get());
+        metrics.put(METRIC_PREFIX + "unchanged", (double) unchanged.get());
+        metrics.put(METRIC_PREFIX + "skipped", (double) skipped.get());
+        metrics.put(METRIC_PREFIX + "conflicts", (double) conflicts.get());
+        return metrics.build();
+    }
+
+    /**
+     * Builder to help with the construction of a <code>GeoReindexer</code>
+     */
+    public static class Builder {
+        private AmazonDynamoDB dbClient;
+        private Geo geo;
+        private String tableName;
+        private List<String> keyColumns;
+        private List<GeoConfig> configs;
+        private int totalSegments = DEFAULT_TOTAL_SEGMENTS;
+        private int pageSize = DEFAULT_PAGE_SIZE;
+        private double readUnitsPerSecond;
+        private double writeUnitsPerSecond;
+        private ExecutorService executorService;
+        private ReindexCheckpointStore checkpointStore = new InMemoryReindexCheckpointStore();
+
+        public Builder() {
+
+        }
+
+        /**
+         * @param dbClient the db client to scan and update the table with
+         */
+        public Builder dbClient(AmazonDynamoDB dbClient) {
+            this.dbClient = dbClient;
+            return this;
+        }
+
+        /**
+         * @param geo the geo helper computing the attributes
+         */
+        public Builder geo(Geo geo) {
+            this.geo = geo;
+            return this;
+        }
+
+        public Builder tableName(String tableName) {
+            this.tableName = tableName;
+            return this;
+        }
+
+        /**
+         * @param keyColumns the hash key and, if any, range key columns of the table
+         */
+        public Builder keyColumns(List<String> keyColumns) {
+            this.keyColumns = keyColumns;
+            return this;
+        }
+
+        /**
+         * @param configs all geo indexes the items should be decorated for, existing ones included
+         */
+        public Builder configs(List<GeoConfig> configs) {
+            this.configs = configs;
+            return this;
+        }
+
+        /**
+         * @param totalSegments the number of segments of the parallel scan, each reindexed by its own task
+         */
+        public Builder totalSegments(int totalSegments) {
+            this.totalSegments = totalSegments;
+            return this;
+        }
+
+        /**
+         * @param pageSize the number of items per scan page, and so between checkpoints
+         */
+        public Builder pageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        /**
+         * @param readUnitsPerSecond the read capacity units the scans may consume per second, or 0 for no limit
+         */
+        public Builder readUnitsPerSecond(double readUnitsPerSecond) {
+            this.readUnitsPerSecond = readUnitsPerSecond;
+            return this;
+        }
+
+        /**
+         * @param writeUnitsPerSecond the write capacity units the updates may consume per second, or 0 for no limit
+         */
+        public Builder writeUnitsPerSecond(double writeUnitsPerSecond) {
+            this.writeUnitsPerSecond = writeUnitsPerSecond;
+            return this;
+        }
+
+        /**
+         * @param executorService the executor running the segments, with a thread per segment to run them all at once
+         */
+        public Builder executorService(ExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        /**
+         * @param checkpointStore the store of the segments' progress, in memory by default
+         */
+        public Builder checkpointStore(ReindexCheckpointStore checkpointStore) {
+            this.checkpointStore = checkpointStore;
+            return this;
+        }
+
+        public GeoReindexer build() {
+            return new GeoReindexer(dbClient, geo, tableName, keyColumns, configs, totalSegments, pageSize, readUnitsPerSecond,
+                    writeUnitsPerSecond, executorService, checkpointStore);
+        }
+
+    }
+
+}
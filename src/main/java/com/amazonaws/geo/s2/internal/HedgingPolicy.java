@@ -0,0 +1,200 @@
+package com.amazonaws.geo.s2.internal;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Decides when {@link GeoQueryClient} hedges a query page: a page which has not returned after the configured
+ * percentile of recent page latencies is sent a second time, and whichever copy returns first is used. Hedges are
+ * capped at <code>maxHedgeRatio</code> of the pages sent, so that a slow table is not loaded twice over.
+ *
+ * A policy keeps the latencies and counters of the pages it has seen; share one instance per client and table.
+ */
+public class HedgingPolicy {
+
+    public static final String METRIC_PREFIX = "geo.hedge.";
+
+    private final LatencyTracker latencies;
+
+    private final long minDelayNanos;
+
+    private final double maxHedgeRatio;
+
+    private final int minSamples;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong hedges = new AtomicLong();
+
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    private HedgingPolicy(double percentile, long minDelayNanos, double maxHedgeRatio, int windowSize, int minSamples) {
+        checkArgument(minDelayNanos >= 0, "minDelayNanos must not be negative: %s", minDelayNanos);
+        checkArgument(maxHedgeRatio >= 0.0d, "maxHedgeRatio must not be negative: %s", maxHedgeRatio);
+        checkArgument(minSamples >= 0, "minSamples must not be negative: %s", minSamples);
+        this.latencies = new LatencyTracker(windowSize, percentile);
+        this.minDelayNanos = minDelayNanos;
+        this.maxHedgeRatio = maxHedgeRatio;
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * @return the time to wait for a page before hedging it, in nanoseconds, or -1 if too few latencies were recorded
+     * to tell a slow page
+     */
+    long getHedgeDelayNanos() {
+        if (latencies.size() < minSamples) {
+            return -1L;
+        }
+        return Math.max(minDelayNanos, latencies.getPercentile());
+    }
+
+    /**
+     * Records a page sent and how long it took. The latency of a page won by its hedge is the time until the hedge
+     * returned, a lower bound of that of the original page; leaving such pages out would censor exactly the slowest
+     * pages and let the percentile, and with it the hedge delay, drift down.
+     *
+     * @param latencyNanos the time from sending the page until it, or its hedge, returned
+     */
+    void recordRequest(long latencyNanos, boolean hedgeWon) {
+        requests.incrementAndGet();
+        if (hedgeWon) {
+            hedgeWins.incrementAndGet();
+        }
+        latencies.record(latencyNanos);
+    }
+
+    /**
+     * Takes a hedge from the budget.
+     *
+     * @return true if the budget allowed the hedge
+     */
+    boolean tryAcquireHedge() {
+        while (true) {
+            long current = hedges.get();
+            if (current + 1 > maxHedgeRatio * (requests.get() + 1)) {
+                return false;
+            }
+            if (hedges.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the number of pages sent, not counting hedges
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return the number of hedges sent
+     */
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+
+    /**
+     * @return the number of pages for which the hedge returned first
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * @return the hedges sent per page
+     */
+    public double getHedgeRate() {
+        long requestCount = requests.get();
+        return (requestCount == 0 ? 0.0d : hedges.get() / (double) requestCount);
+    }
+
+    /**
+     * @return the share of hedges which returned first
+     */
+    public double getHedgeWinRate() {
+        long hedgeCount = hedges.get();
+        return (hedgeCount == 0 ? 0.0d : hedgeWins.get() / (double) hedgeCount);
+    }
+
+    /**
+     * @return the counters of the policy and its current hedge delay, keyed by metric name
+     */
+    public Map<String, Double> toMetrics() {
+        ImmutableMap.Builder<String, Double> metrics = ImmutableMap.builder();
+        metrics.put(METRIC_PREFIX + "requests", (double) requests.get());
+        metrics.put(METRIC_PREFIX + "hedges", (double) hedges.get());
+        metrics.put(METRIC_PREFIX + "wins", (double) hedgeWins.get());
+        metrics.put(METRIC_PREFIX + "hedgeRate", getHedgeRate());
+        metrics.put(METRIC_PREFIX + "winRate", getHedgeWinRate());
+        metrics.put(METRIC_PREFIX + "delayMillis", Math.max(0L, getHedgeDelayNanos()) / (double) TimeUnit.MILLISECONDS.toNanos(1));
+        return metrics.build();
+    }
+
+    /**
+     * Builder to help with the construction of a <code>HedgingPolicy</code>
+     */
+    public static class Builder {
+        private double percentile = 0.95d;
+        private long minDelayMillis = 5L;
+        private double maxHedgeRatio = 0.05d;
+        private int windowSize = 1024;
+        private int minSamples = 100;
+
+        public Builder() {
+
+        }
+
+        /**
+         * @param percentile the percentile of recent page latencies after which a page is hedged, in (0, 1]
+         */
+        public Builder percentile(double percentile) {
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * @param minDelayMillis the least time to wait for a page before hedging it
+         */
+        public Builder minDelayMillis(long minDelayMillis) {
+            this.minDelayMillis = minDelayMillis;
+            return this;
+        }
+
+        /**
+         * @param maxHedgeRatio the maximum number of hedges per page sent
+         */
+        public Builder maxHedgeRatio(double maxHedgeRatio) {
+            this.maxHedgeRatio = maxHedgeRatio;
+            return this;
+        }
+
+        /**
+         * @param windowSize the number of recent page latencies the percentile is estimated from
+         */
+        public Builder windowSize(int windowSize) {
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * @param minSamples the number of page latencies to record before hedging
+         */
+        public Builder minSamples(int minSamples) {
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        public HedgingPolicy build() {
+            return new HedgingPolicy(percentile, TimeUnit.MILLISECONDS.toNanos(minDelayMillis), maxHedgeRatio, windowSize, minSamples);
+        }
+
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.amazonaws.geo.s2.internal;
+
+import com.amazonaws.geo.model.ReindexCheckpoint;
+import com.google.common.base.Optional;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps checkpoints in memory, to resume a run interrupted by an error within the same process.
+ */
+public class InMemoryReindexCheckpointStore implements ReindexCheckpointStore {
+
+    private final ConcurrentMap<String, ReindexCheckpoint> checkpoints = new ConcurrentHashMap<String, ReindexCheckpoint>();
+
+    @Override public Optional<ReindexCheckpoint> load(int segment, int totalSegments) {
+        return Optional.fromNullable(checkpoints.get(getId(segment, totalSegments)));
+    }
+
+    @Override public void save(ReindexCheckpoint checkpoint) {
+        checkpoints.put(getId(checkpoint.getSegment(), checkpoint.getTotalSegments()), checkpoint);
+    }
+
+    private static String getId(int segment, int totalSegments) {
+        return String.format("%d/%d", segment, totalSegments);
+    }
+
+}
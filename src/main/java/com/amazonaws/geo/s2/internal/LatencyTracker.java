@@ -0,0 +1,74 @@
+package com.amazonaws.geo.s2.internal;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Keeps the most recent latencies in a ring buffer and estimates a percentile of them. The estimate is refreshed after
+ * every sixteenth of the window rather than on every read, as sorting the window is far more costly than recording.
+ */
+final class LatencyTracker {
+
+    private final long[] window;
+
+    private final double percentile;
+
+    private final int refreshInterval;
+
+    private int size;
+
+    private int next;
+
+    private int recordedSinceRefresh;
+
+    private long estimate;
+
+    LatencyTracker(int windowSize, double percentile) {
+        checkArgument(windowSize >= 1, "windowSize must be positive: %s", windowSize);
+        checkArgument((percentile > 0.0d) && (percentile <= 1.0d), "percentile must be in (0, 1]: %s", percentile);
+        this.window = new long[windowSize];
+        this.percentile = percentile;
+        this.refreshInterval = Math.max(1, windowSize / 16);
+    }
+
+    synchronized void record(long latencyNanos) {
+        window[next] = latencyNanos;
+        next = (next + 1) % window.length;
+        size = Math.min(size + 1, window.length);
+        if (++recordedSinceRefresh >= refreshInterval) {
+            refresh();
+        }
+    }
+
+    /**
+     * @return the number of latencies in the window
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the estimated percentile of the latencies in the window, in nanoseconds, or zero if there are none
+     */
+    synchronized long getPercentile() {
+        if ((recordedSinceRefresh > 0) && (size < window.length)) {
+            // the estimate of a filling window quickly goes stale
+            refresh();
+        }
+        return estimate;
+    }
+
+    private void refresh() {
+        recordedSinceRefresh = 0;
+        if (size == 0) {
+            estimate = 0L;
+            return;
+        }
+        long[] sorted = Arrays.copyOf(window, size);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * size) - 1;
+        estimate = sorted[Math.max(0, Math.min(size - 1, index))];
+    }
+
+}
@@ -0,0 +1,415 @@
+package com.amazonaws.geo.s2.internal;
+
+import com.amazonaws.geo.Geo;
+import com.amazonaws.geo.GeoConfig;
+import com.amazonaws.geo.model.GeoUpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.geometry.S2CellId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Buffers the locations reported by moving items and writes the latest location of each item once per flush, with
+ * the minimal update of
+ * {@link Geo#updateLocationRequest(UpdateItemRequest, double, double, Optional, int, String, long, List)}. The
+ * geohash each item was last written with is remembered, so that updates within the same cell leave the geo index
+ * alone.
+ *
+ * Locations are versioned, e.g. by the time of the fix: an older location never replaces a newer one, in the buffer
+ * or in the table. The remembered geohashes assume this buffer is the only writer of its items' locations; an update
+ * rejected as stale forgets the item's geohash so that the next one rewrites the geo attributes.
+ *
+ * The writes of a flush are sent concurrently when the buffer was built with a write executor.
+ */
+public class LocationUpdateBuffer implements Closeable {
+
+    public static final String METRIC_PREFIX = "geo.location.";
+
+    private static final Logger LOG = LoggerFactory.getLogger(LocationUpdateBuffer.class.getSimpleName());
+
+    private final AmazonDynamoDB dbClient;
+
+    private final Geo geo;
+
+    private final String tableName;
+
+    private final List<GeoConfig> configs;
+
+    private final String versionColumn;
+
+    private final int cellLevel;
+
+    private final ConcurrentMap<Map<String, AttributeValue>, Location> pending =
+            new ConcurrentHashMap<Map<String, AttributeValue>, Location>();
+
+    private final Cache<Map<String, AttributeValue>, Long> geohashes;
+
+    private final ExecutorService writeExecutorService;
+
+    private final ScheduledFuture<?> flushTask;
+
+    private final AtomicLong submitted = new AtomicLong();
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong geoKeyWrites = new AtomicLong();
+
+    private final AtomicLong stale = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private LocationUpdateBuffer(AmazonDynamoDB dbClient, Geo geo, String tableName, List<GeoConfig> configs,
+                                 String versionColumn, int cellLevel, int maxItems, ScheduledExecutorService executorService,
+                                 long flushIntervalMillis, ExecutorService writeExecutorService) {
+        checkArgument(dbClient != null, "dbClient must not be null");
+        checkArgument(geo != null, "geo must not be null");
+        checkArgument(tableName != null, "tableName must not be null");
+        checkArgument(configs != null, "configs must not be null");
+        for (GeoConfig config : configs) {
+            checkArgument(config != null, "configs must not contain null: %s", configs);
+            // rejected here rather than by the first flush, which would lose the updates it took from the buffer
+            checkArgument(!config.getHashKeyDecorator().isPresent() && !config.isTimeBucketed(),
+                    "Location updates do not support composite or time bucketed hash keys: %s", config.getGeoIndexName());
+        }
+        checkArgument(versionColumn != null, "versionColumn must not be null");
+        checkArgument((cellLevel >= 0) && (cellLevel <= S2CellId.MAX_LEVEL), "cellLevel must be between 0 and 30: %s", cellLevel);
+        checkArgument(maxItems >= 1, "maxItems must be positive: %s", maxItems);
+        checkArgument(flushIntervalMillis >= 1, "flushIntervalMillis must be positive: %s", flushIntervalMillis);
+        this.dbClient = dbClient;
+        this.geo = geo;
+        this.tableName = tableName;
+        this.configs = ImmutableList.copyOf(configs);
+        this.versionColumn = versionColumn;
+        this.cellLevel = cellLevel;
+        this.geohashes = CacheBuilder.newBuilder().maximumSize(maxItems).build();
+        this.writeExecutorService = writeExecutorService;
+        if (executorService == null) {
+            this.flushTask = null;
+        } else {
+            this.flushTask = executorService.scheduleWithFixedDelay(new Runnable() {
+                @Override public void run() {
+                    // an exception would cancel the scheduled flushes
+                    try {
+                        flush();
+                    } catch (RuntimeException e) {
+                        LOG.warn("Failed to flush location updates", e);
+                    }
+                }
+            }, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Buffers the location of an item until the next flush, replacing any older location of the item buffered since
+     * the last one.
+     *
+     * @param key       the primary key of the item
+     * @param latitude  the latitude of the item
+     * @param longitude the longitude of the item
+     * @param version   the version of the location, e.g. the time of the fix
+     */
+    public void submit(Map<String, AttributeValue> key, double latitude, double longitude, long version) {
+        submitted.incrementAndGet();
+        buffer(ImmutableMap.copyOf(key), new Location(latitude, longitude, version));
+    }
+
+    private void buffer(Map<String, AttributeValue> key, Location location) {
+        while (true) {
+            Location current = pending.putIfAbsent(key, location);
+            if ((current == null) || (current.version >= location.version) || pending.replace(key, current, location)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes the buffered location of every item, on the write executor if any. Called at the flush interval when the
+     * buffer was built with an executor; a failed write is buffered again unless a newer location arrived meanwhile.
+     * If the calling thread is interrupted the writes not yet started are left buffered.
+     *
+     * @return the number of items written
+     */
+    public synchronized int flush() {
+        int count = 0;
+        // locations buffered again by failed writes wait for the next flush
+        List<Map<String, AttributeValue>> keys = new ArrayList<Map<String, AttributeValue>>(pending.keySet());
+        if (writeExecutorService == null) {
+            for (Map<String, AttributeValue> key : keys) {
+                if (writePending(key)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+        List<Callable<Boolean>> writes = new ArrayList<Callable<Boolean>>();
+        for (final Map<String, AttributeValue> key : keys) {
+            writes.add(new Callable<Boolean>() {
+                @Override public Boolean call() {
+                    return writePending(key);
+                }
+            });
+        }
+        try {
+            for (Future<Boolean> future : writeExecutorService.invokeAll(writes)) {
+                if (future.get()) {
+                    count++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Location update failed", e.getCause());
+        }
+        return count;
+    }
+
+    /**
+     * Takes the location of an item from the buffer and writes it. The location is only taken by the write itself, so
+     * that a write which never runs leaves it buffered.
+     */
+    private boolean writePending(Map<String, AttributeValue> key) {
+        Location location = pending.remove(key);
+        return ((location != null) && write(key, location));
+    }
+
+    private boolean write(Map<String, AttributeValue> key, Location location) {
+        GeoUpdateItemRequest geoUpdateItemRequest;
+        try {
+            UpdateItemRequest updateItemRequest = new UpdateItemRequest().withTableName(tableName).withKey(key);
+            geoUpdateItemRequest = geo.updateLocationRequest(updateItemRequest, location.latitude, location.longitude,
+                    Optional.fromNullable(geohashes.getIfPresent(key)), cellLevel, versionColumn, location.version, configs);
+            dbClient.updateItem(geoUpdateItemRequest.getUpdateItemRequest());
+        } catch (ConditionalCheckFailedException e) {
+            // a newer location was written, possibly by another writer whose geohash is unknown
+            stale.incrementAndGet();
+            geohashes.invalidate(key);
+            return false;
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            geohashes.invalidate(key);
+            buffer(key, location);
+            return false;
+        }
+        geohashes.put(key, geoUpdateItemRequest.getGeohash());
+        written.incrementAndGet();
+        if (geoUpdateItemRequest.isGeoKeysUpdated()) {
+            geoKeyWrites.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Stops the scheduled flushes and writes the locations still buffered.
+     */
+    @Override public void close() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        flush();
+    }
+
+    /**
+     * @return the number of locations submitted
+     */
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    /**
+     * @return the number of updates written
+     */
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    /**
+     * @return the number of written updates which rewrote geo index attributes
+     */
+    public long getGeoKeyWriteCount() {
+        return geoKeyWrites.get();
+    }
+
+    /**
+     * @return the number of updates rejected because the table held a newer location
+     */
+    public long getStaleCount() {
+        return stale.get();
+    }
+
+    /**
+     * @return the number of updates which failed and were buffered again
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * @return the number of locations buffered
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return the counters of the buffer, keyed by metric name
+     */
+    public Map<String, Double> toMetrics() {
+        ImmutableMap.Builder<String, Double> metrics = ImmutableMap.builder();
+        metrics.put(METRIC_PREFIX + "submitted", (double) submitted.get());
+        metrics.put(METRIC_PREFIX + "written", (double) written.get());
+        metrics.put(METRIC_PREFIX + "geoKeyWrites", (double) geoKeyWrites.get());
+        metrics.put(METRIC_PREFIX + "stale", (double) stale.get());
+        metrics.put(METRIC_PREFIX + "failed", (double) failed.get());
+        metrics.put(METRIC_PREFIX + "pending", (double) pending.size());
+        return metrics.build();
+    }
+
+    /**
+     * A buffered location.
+     */
+    private static final class Location {
+
+        private final double latitude;
+
+        private final double longitude;
+
+        private final long version;
+
+        private Location(double latitude, double longitude, long version) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.version = version;
+        }
+
+    }
+
+    /**
+     * Builder to help with the construction of a <code>LocationUpdateBuffer</code>
+     */
+    public static class Builder {
+        private AmazonDynamoDB dbClient;
+        private Geo geo;
+        private String tableName;
+        private List<GeoConfig> configs;
+        private String versionColumn;
+        private int cellLevel = S2CellId.MAX_LEVEL;
+        private int maxItems = 100000;
+        private ScheduledExecutorService executorService;
+        private long flushIntervalMillis = 1000L;
+        private ExecutorService writeExecutorService;
+
+        public Builder() {
+
+        }
+
+        /**
+         * @param dbClient the db client to write the updates with
+         */
+        public Builder dbClient(AmazonDynamoDB dbClient) {
+            this.dbClient = dbClient;
+            return this;
+        }
+
+        /**
+         * @param geo the geo helper generating the updates
+         */
+        public Builder geo(Geo geo) {
+            this.geo = geo;
+            return this;
+        }
+
+        public Builder tableName(String tableName) {
+            this.tableName = tableName;
+            return this;
+        }
+
+        /**
+         * @param configs the geo indexes of the table, which must not use composite hash keys
+         */
+        public Builder configs(List<GeoConfig> configs) {
+            this.configs = configs;
+            return this;
+        }
+
+        /**
+         * @param versionColumn the column storing the version of the items' locations
+         */
+        public Builder versionColumn(String versionColumn) {
+            this.versionColumn = versionColumn;
+            return this;
+        }
+
+        /**
+         * @param cellLevel the level of the cells an item has to leave before its geohash is rewritten
+         */
+        public Builder cellLevel(int cellLevel) {
+            this.cellLevel = cellLevel;
+            return this;
+        }
+
+        /**
+         * @param maxItems the number of items whose last written geohash is remembered
+         */
+        public Builder maxItems(int maxItems) {
+            this.maxItems = maxItems;
+            return this;
+        }
+
+        /**
+         * @param executorService the executor running the scheduled flushes, or null to only flush on demand
+         */
+        public Builder executorService(ScheduledExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        /**
+         * @param flushIntervalMillis the time between the end of a scheduled flush and the start of the next
+         */
+        public Builder flushIntervalMillis(long flushIntervalMillis) {
+            this.flushIntervalMillis = flushIntervalMillis;
+            return this;
+        }
+
+        /**
+         * @param writeExecutorService the executor sending the writes of a flush concurrently, or null to send them one
+         *                             by one on the flushing thread
+         */
+        public Builder writeExecutorService(ExecutorService writeExecutorService) {
+            this.writeExecutorService = writeExecutorService;
+            return this;
+        }
+
+        public LocationUpdateBuffer build() {
+            return new LocationUpdateBuffer(dbClient, geo, tableName, configs, versionColumn, cellLevel, maxItems,
+                    executorService, flushIntervalMillis, writeExecutorService);
+        }
+
+    }
+
+}
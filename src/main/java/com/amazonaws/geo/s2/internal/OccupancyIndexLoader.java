@@ -0,0 +1,52 @@
+package com.amazonaws.geo.s2.internal;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.dashlabs.dash.geo.s2.internal.CellOccupancyIndex;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Rebuilds a {@link CellOccupancyIndex} from the items of a table, for a new index or one which has to forget the cells
+ * emptied since it was built.
+ */
+public final class OccupancyIndexLoader {
+
+    private OccupancyIndexLoader() {
+    }
+
+    /**
+     * Scans the geo index of a table and records the geohash of every item in <code>occupancyIndex</code>. Only the
+     * <code>geoHashColumn</code> is read.
+     *
+     * @param dbClient       the db client to scan with
+     * @param tableName      the table to scan
+     * @param geoIndexName   the geo index to scan, which only holds the items with geo attributes
+     * @param geoHashColumn  the column storing the items' geohash
+     * @param occupancyIndex the index to record the geohashes in
+     * @return the number of items recorded
+     */
+    public static long load(AmazonDynamoDB dbClient, String tableName, String geoIndexName, String geoHashColumn,
+                            CellOccupancyIndex occupancyIndex) {
+        ScanRequest scanRequest = new ScanRequest().withTableName(tableName).withIndexName(geoIndexName)
+                .withAttributesToGet(Collections.singletonList(geoHashColumn));
+        long loaded = 0;
+        ScanResult scanResult;
+        do {
+            scanResult = dbClient.scan(scanRequest);
+            for (Map<String, AttributeValue> item : scanResult.getItems()) {
+                AttributeValue geohash = item.get(geoHashColumn);
+                if ((geohash != null) && (geohash.getN() != null)) {
+                    occupancyIndex.add(Long.parseLong(geohash.getN()));
+                    loaded++;
+                }
+            }
+            scanRequest = scanRequest.withExclusiveStartKey(scanResult.getLastEvaluatedKey());
+        } while (scanResult.getLastEvaluatedKey() != null);
+        return loaded;
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.amazonaws.geo.s2.internal;
+
+import com.amazonaws.geo.model.ReindexCheckpoint;
+import com.google.common.base.Optional;
+
+/**
+ * Persists the progress of the segments of a {@link GeoReindexer} run, so that an interrupted run resumes where each
+ * segment left off. Checkpoints are only valid for the number of segments they were saved with.
+ */
+public interface ReindexCheckpointStore {
+
+    /**
+     * @param segment       the segment of the scan
+     * @param totalSegments the number of segments of the scan
+     * @return the last checkpoint saved for the segment, absent if it has not started
+     */
+    Optional<ReindexCheckpoint> load(int segment, int totalSegments);
+
+    /**
+     * Replaces the checkpoint of <code>checkpoint</code>'s segment.
+     */
+    void save(ReindexCheckpoint checkpoint);
+
+}
@@ -1,15 +1,30 @@
 package com.dashlabs.dash.geo;
 
+import com.dashlabs.dash.geo.model.GeoPlanReport;
 import com.dashlabs.dash.geo.model.GeohashRange;
+import com.dashlabs.dash.geo.s2.internal.CellOccupancyIndex;
 import com.dashlabs.dash.geo.s2.internal.S2Manager;
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.geometry.S1Interval;
+import com.google.common.geometry.S2Cell;
 import com.google.common.geometry.S2CellId;
 import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2LatLng;
 import com.google.common.geometry.S2LatLngRect;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.TreeSet;
 
 /**
  * User: blangel
@@ -22,10 +37,241 @@ public abstract class AbstractGeoQueryHelper {
 
     protected final S2Manager s2Manager;
 
+    private volatile GeoPlanListener planListener;
+
+    private volatile CellOccupancyIndex occupancyIndex;
+
     protected AbstractGeoQueryHelper(S2Manager s2Manager) {
         this.s2Manager = s2Manager;
     }
 
+    /**
+     * Sets the listener to receive a {@link GeoPlanReport} for every plan, or null to stop reporting. Reports are only
+     * computed while a listener is set.
+     */
+    public void setPlanListener(GeoPlanListener planListener) {
+        this.planListener = planListener;
+    }
+
+    /**
+     * Sets the index of occupied cells used to drop ranges which are definitely empty from plans, or null to keep every
+     * range. Plan reports describe the plan before ranges are dropped.
+     */
+    public void setOccupancyIndex(CellOccupancyIndex occupancyIndex) {
+        this.occupancyIndex = occupancyIndex;
+    }
+
+    /**
+     * Covers the union of the given boundingBoxes, merges the cells into ranges and splits those so that each lies
+     * within a single hash key. Reports the plan to the plan listener, if any.
+     *
+     * @param boundingBoxes the boundingBoxes {@link com.google.common.geometry.S2LatLngRect} of the query or batch of queries
+     * @param hashKeyLength the hash key length to split the ranges by
+     * @return ranges a list of <code>GeohashRange</code>, each within a single hash key
+     */
+    protected List<GeohashRange> getSplitGeoHashRanges(Collection<S2LatLngRect> boundingBoxes, int hashKeyLength) {
+        return Lists.newArrayList(iterateSplitGeoHashRanges(boundingBoxes, hashKeyLength));
+    }
+
+    /**
+     * Lazy variant of {@link #getSplitGeoHashRanges(Collection, int)}. Only the covering and its merged ranges are
+     * computed up front; every merged range is split by hash key as the iterator reaches it, so that a caller may start
+     * querying the first ranges while the rest are still to be produced and no range spanning many hash keys is ever
+     * held as a whole. Ranges the occupancy index, if any, knows to be empty are skipped. The plan is reported to the plan
+     * listener, if any, before the iterator is returned.
+     *
+     * @param boundingBoxes the boundingBoxes {@link com.google.common.geometry.S2LatLngRect} of the query or batch of queries
+     * @param hashKeyLength the hash key length to split the ranges by
+     * @return ranges an iterator of <code>GeohashRange</code>, each within a single hash key
+     */
+    protected Iterator<GeohashRange> iterateSplitGeoHashRanges(Collection<S2LatLngRect> boundingBoxes, final int hashKeyLength) {
+        S2CellUnion cells = findCellIds(boundingBoxes);
+        List<GeohashRange> outerRanges = (cells == null ? Collections.<GeohashRange>emptyList() : mergeCells(cells));
+        GeoPlanListener listener = planListener;
+        if (listener != null) {
+            listener.onPlan(createPlanReport(boundingBoxes, cells, outerRanges, hashKeyLength));
+        }
+        Iterator<GeohashRange> ranges = Iterators.concat(Iterators.transform(outerRanges.iterator(),
+                new Function<GeohashRange, Iterator<GeohashRange>>() {
+                    @Override public Iterator<GeohashRange> apply(GeohashRange outerRange) {
+                        return outerRange.iterateSplit(hashKeyLength, s2Manager);
+                    }
+                }));
+        final CellOccupancyIndex index = occupancyIndex;
+        if (index == null) {
+            return ranges;
+        }
+        return Iterators.filter(ranges, new Predicate<GeohashRange>() {
+            @Override public boolean apply(GeohashRange range) {
+                return index.mightBeOccupied(range);
+            }
+        });
+    }
+
+    /**
+     * Orders the given ranges by their distance from <code>center</code>, nearest first. The distance of a range is the
+     * distance to the bounds of the smallest cell containing it, hence never more than that of any point in the range.
+     *
+     * @param ranges the ranges to order
+     * @param center the point to order the ranges by
+     * @return ranges a new list of the given <code>GeohashRange</code>, nearest first
+     */
+    protected List<GeohashRange> sortByDistance(List<GeohashRange> ranges, S2LatLng center) {
+        final double[] distances = new double[ranges.size()];
+        Integer[] order = new Integer[ranges.size()];
+        for (int i = 0; i < distances.length; i++) {
+            distances[i] = getDistance(ranges.get(i), center);
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override public int compare(Integer left, Integer right) {
+                return Double.compare(distances[left], distances[right]);
+            }
+        });
+        List<GeohashRange> sorted = new ArrayList<GeohashRange>(ranges.size());
+        for (Integer index : order) {
+            sorted.add(ranges.get(index));
+        }
+        return sorted;
+    }
+
+    /**
+     * @return the distance in radians from <code>center</code> to the smallest cell containing <code>range</code>, or zero
+     * if the range spans faces
+     */
+    private static double getDistance(GeohashRange range, S2LatLng center) {
+        S2CellId min = new S2CellId(range.getRangeMin());
+        S2CellId max = new S2CellId(range.getRangeMax());
+        for (int level = S2CellId.MAX_LEVEL; level >= 0; level--) {
+            S2CellId parent = min.parent(level);
+            if (parent.equals(max.parent(level))) {
+                return new S2Cell(parent).getRectBound().getDistance(center).radians();
+            }
+        }
+        return 0.0d;
+    }
+
+    /**
+     * The split ranges and hash keys of the plan are counted from the merged ranges rather than from the split ranges
+     * themselves, so that lazily split plans can be reported without being produced. Merged ranges come in cell order,
+     * hence only consecutive ranges of geohashes of the same length may share a hash key.
+     */
+    private GeoPlanReport createPlanReport(Collection<S2LatLngRect> boundingBoxes, S2CellUnion cells, List<GeohashRange> outerRanges,
+                                           int hashKeyLength) {
+        double earthRadiusSquared = S2LatLng.EARTH_RADIUS_METERS * S2LatLng.EARTH_RADIUS_METERS;
+        double requestedArea = getUnionArea(boundingBoxes);
+        double coveredArea = 0.0d;
+        int[] cellLevelHistogram = new int[S2CellId.MAX_LEVEL + 1];
+        if (cells != null) {
+            for (S2CellId cellId : cells.cellIds()) {
+                coveredArea += new S2Cell(cellId).approxArea();
+                cellLevelHistogram[cellId.level()]++;
+            }
+        }
+        int splitRangeCount = 0;
+        int hashKeyCount = 0;
+        Long previousMaxHashKey = null;
+        for (GeohashRange outerRange : outerRanges) {
+            long minHashKey = s2Manager.generateHashKey(outerRange.getRangeMin(), hashKeyLength);
+            long maxHashKey = s2Manager.generateHashKey(outerRange.getRangeMax(), hashKeyLength);
+            // mirrors GeohashRange#iterateSplit, which yields nothing for a range crossing a change in geohash length
+            int splitCount = (minHashKey == maxHashKey ? 1 : (int) Math.max(0L, maxHashKey - minHashKey + 1));
+            if (splitCount == 0) {
+                continue;
+            }
+            splitRangeCount += splitCount;
+            hashKeyCount += splitCount;
+            if ((previousMaxHashKey != null) && (previousMaxHashKey == minHashKey)) {
+                hashKeyCount--;
+            }
+            previousMaxHashKey = maxHashKey;
+        }
+        return new GeoPlanReport(requestedArea * earthRadiusSquared, coveredArea * earthRadiusSquared, cellLevelHistogram,
+                outerRanges.size(), splitRangeCount, hashKeyLength, hashKeyCount);
+    }
+
+    /**
+     * Bounding boxes are products of a latitude and a longitude interval, so their union is exact when cut into bands
+     * between consecutive latitude bounds: within a band the union is the union of the longitude intervals of the boxes
+     * spanning it, and the area of a band is its longitude length times the difference of the sines of its bounds.
+     *
+     * @return the area of the union of the bounding boxes, in steradians, counting overlaps of a batch once
+     */
+    static double getUnionArea(Collection<S2LatLngRect> boundingBoxes) {
+        if (boundingBoxes.size() == 1) {
+            return boundingBoxes.iterator().next().area();
+        }
+        TreeSet<Double> latitudes = new TreeSet<Double>();
+        for (S2LatLngRect boundingBox : boundingBoxes) {
+            if (!boundingBox.isEmpty()) {
+                latitudes.add(boundingBox.lat().lo());
+                latitudes.add(boundingBox.lat().hi());
+            }
+        }
+        double area = 0.0d;
+        Double lo = null;
+        for (Double hi : latitudes) {
+            if (lo != null) {
+                List<double[]> longitudes = new ArrayList<double[]>();
+                for (S2LatLngRect boundingBox : boundingBoxes) {
+                    if (!boundingBox.isEmpty() && (boundingBox.lat().lo() <= lo) && (boundingBox.lat().hi() >= hi)) {
+                        addLongitudes(boundingBox.lng(), longitudes);
+                    }
+                }
+                area += getUnionLength(longitudes) * (Math.sin(hi) - Math.sin(lo));
+            }
+            lo = hi;
+        }
+        return area;
+    }
+
+    /**
+     * Adds the interval as one or, if it crosses the antimeridian, two non-wrapping intervals within [-pi, pi].
+     */
+    private static void addLongitudes(S1Interval lng, List<double[]> longitudes) {
+        if (lng.isFull()) {
+            longitudes.add(new double[] { -Math.PI, Math.PI });
+        } else if (lng.isInverted()) {
+            longitudes.add(new double[] { lng.lo(), Math.PI });
+            longitudes.add(new double[] { -Math.PI, lng.hi() });
+        } else {
+            longitudes.add(new double[] { lng.lo(), lng.hi() });
+        }
+    }
+
+    private static double getUnionLength(List<double[]> intervals) {
+        Collections.sort(intervals, new Comparator<double[]>() {
+            @Override public int compare(double[] left, double[] right) {
+                return Double.compare(left[0], right[0]);
+            }
+        });
+        double length = 0.0d;
+        double end = Double.NEGATIVE_INFINITY;
+        for (double[] interval : intervals) {
+            if (interval[1] > end) {
+                length += interval[1] - Math.max(interval[0], end);
+                end = interval[1];
+            }
+        }
+        return length;
+    }
+
+    private S2CellUnion findCellIds(Collection<S2LatLngRect> boundingBoxes) {
+        if (boundingBoxes.size() == 1) {
+            return s2Manager.findCellIds(boundingBoxes.iterator().next());
+        }
+        ArrayList<S2CellId> cellIds = new ArrayList<S2CellId>();
+        for (S2LatLngRect boundingBox : boundingBoxes) {
+            S2CellUnion cells = s2Manager.findCellIds(boundingBox);
+            if (cells != null) {
+                cellIds.addAll(cells.cellIds());
+            }
+        }
+        S2CellUnion cellUnion = new S2CellUnion();
+        cellUnion.initFromCellIds(cellIds); // This normalizes the cells, dropping cells contained by others.
+        return cellUnion;
+    }
+
     /**
      * Creates a collection of <code>GeohashRange</code> by processing each cell {@see com.google.common.geometry.S2CellId}
      * that is contained inside the given boundingBox
@@ -38,6 +284,18 @@ public abstract class AbstractGeoQueryHelper {
         return mergeCells(cells);
     }
 
+    /**
+     * Creates a collection of <code>GeohashRange</code> covering the union of the given boundingBoxes. Cells shared by
+     * overlapping bounding boxes are de-duplicated so that each range is only present once.
+     *
+     * @param boundingBoxes the boundingBoxes {@link com.google.common.geometry.S2LatLngRect} of a batch of queries
+     * @return ranges a list of <code>GeohashRange</code>
+     */
+    protected List<GeohashRange> getGeoHashRanges(Collection<S2LatLngRect> boundingBoxes) {
+        S2CellUnion cells = findCellIds(boundingBoxes);
+        return (cells == null ? new ArrayList<GeohashRange>(0) : mergeCells(cells));
+    }
+
     /**
      * Merge continuous cells in cellUnion and return a list of merged GeohashRanges.
      *
@@ -0,0 +1,13 @@
+package com.dashlabs.dash.geo;
+
+import com.dashlabs.dash.geo.model.GeoPlanReport;
+
+/**
+ * Receives a {@link GeoPlanReport} for every plan created by an {@link AbstractGeoQueryHelper}. Called on the planning
+ * thread, so implementations should be cheap and thread-safe (e.g. feed a metrics registry).
+ */
+public interface GeoPlanListener {
+
+    void onPlan(GeoPlanReport report);
+
+}
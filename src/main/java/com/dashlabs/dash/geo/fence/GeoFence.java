@@ -0,0 +1,55 @@
+package com.dashlabs.dash.geo.fence;
+
+import com.google.common.geometry.S2LatLng;
+import com.google.common.geometry.S2Loop;
+import com.google.common.geometry.S2Point;
+import com.google.common.geometry.S2Polygon;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A stored region, identified by <code>id</code>, which can be searched for the points it contains
+ * through a {@link GeoFenceIndex}.
+ */
+public class GeoFence {
+
+    private final String id;
+
+    private final S2Polygon polygon;
+
+    public GeoFence(String id, S2Polygon polygon) {
+        checkArgument(id != null, "id must not be null");
+        checkArgument(polygon != null, "polygon of fence must not be null: %s", id);
+        this.id = id;
+        this.polygon = polygon;
+    }
+
+    /**
+     * Factory method to create a fence from a single loop of vertices.
+     *
+     * @param id       the id of the fence
+     * @param vertices the vertices of the fence, in counter-clockwise order
+     * @return a new instance of the {@link GeoFence}
+     */
+    public static GeoFence fromVertices(String id, List<S2LatLng> vertices) {
+        List<S2Point> points = new ArrayList<S2Point>(vertices.size());
+        for (S2LatLng vertex : vertices) {
+            points.add(vertex.toPoint());
+        }
+        S2Loop loop = new S2Loop(points);
+        loop.normalize();
+        return new GeoFence(id, new S2Polygon(loop));
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public S2Polygon getPolygon() {
+        return polygon;
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.dashlabs.dash.geo.fence;
+
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+
+/**
+ * A single cell of the covering of a {@link GeoFence}. This is the unit which is persisted and loaded into a
+ * {@link GeoFenceIndex}; cells are stored with their <code>cellId</code> as the geohash so that they fit the existing
+ * geoHashKey/geohash key schemes.
+ */
+public class GeoFenceCell {
+
+    private final String fenceId;
+
+    private final long cellId;
+
+    /**
+     * Whether the cell lies entirely inside the fence, in which case points within the cell need no exact containment test.
+     */
+    private final boolean interior;
+
+    public GeoFenceCell(String fenceId, long cellId, boolean interior) {
+        this.fenceId = fenceId;
+        this.cellId = cellId;
+        this.interior = interior;
+    }
+
+    public String getFenceId() {
+        return fenceId;
+    }
+
+    public long getCellId() {
+        return cellId;
+    }
+
+    public boolean isInterior() {
+        return interior;
+    }
+
+    /**
+     * @param s2Manager     used to derive the hash key
+     * @param hashKeyLength the hash key length of the key scheme
+     * @return the geoHashKey under which this cell is stored
+     */
+    public long getGeoHashKey(S2Manager s2Manager, int hashKeyLength) {
+        return s2Manager.generateHashKey(cellId, hashKeyLength);
+    }
+
+}
@@ -0,0 +1,212 @@
+package com.dashlabs.dash.geo.fence;
+
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+import com.google.common.collect.ImmutableList;
+import com.google.common.geometry.S2Cell;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2LatLng;
+import com.google.common.geometry.S2Point;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable index answering which {@link GeoFence}s contain a given point.
+ *
+ * Each fence is covered with cells, and the cells of all fences are kept sorted by cell id (optionally off-heap).
+ * A point lookup binary searches for every ancestor of the point's leaf cell at the levels present in the index, and only
+ * the candidate fences whose cell is not entirely inside the fence are checked with an exact polygon containment test.
+ */
+public class GeoFenceIndex {
+
+    public static final int DEFAULT_MAX_LEVEL = 16;
+
+    public static final int DEFAULT_MAX_CELLS = 32;
+
+    private final LongBuffer cellIds;
+
+    /**
+     * The ordinal of the fence of each cell shifted left by one; the lowest bit is set for interior cells.
+     */
+    private final IntBuffer fenceRefs;
+
+    private final GeoFence[] fences;
+
+    /**
+     * Bit <code>n</code> is set when the index contains a cell of level <code>n</code>.
+     */
+    private final long levels;
+
+    private GeoFenceIndex(LongBuffer cellIds, IntBuffer fenceRefs, GeoFence[] fences, long levels) {
+        this.cellIds = cellIds;
+        this.fenceRefs = fenceRefs;
+        this.fences = fences;
+        this.levels = levels;
+    }
+
+    /**
+     * Loads an index from persisted fence cells.
+     *
+     * @param cells    the persisted cells of the fences
+     * @param fences   the fences referenced by <code>cells</code>
+     * @param offHeap  whether the sorted cell ids should be kept off-heap
+     * @return the index
+     */
+    public static GeoFenceIndex load(Collection<GeoFenceCell> cells, Collection<GeoFence> fences, boolean offHeap) {
+        Map<String, Integer> ordinals = new HashMap<String, Integer>(fences.size());
+        GeoFence[] fenceArray = new GeoFence[fences.size()];
+        int ordinal = 0;
+        for (GeoFence fence : fences) {
+            fenceArray[ordinal] = fence;
+            ordinals.put(fence.getId(), ordinal++);
+        }
+        List<GeoFenceCell> sorted = new ArrayList<GeoFenceCell>(cells);
+        Collections.sort(sorted, new Comparator<GeoFenceCell>() {
+            @Override public int compare(GeoFenceCell left, GeoFenceCell right) {
+                return Long.compare(left.getCellId(), right.getCellId());
+            }
+        });
+        LongBuffer cellIds = allocateLongs(sorted.size(), offHeap);
+        IntBuffer fenceRefs = allocateInts(sorted.size(), offHeap);
+        long levels = 0L;
+        for (GeoFenceCell cell : sorted) {
+            Integer fenceOrdinal = ordinals.get(cell.getFenceId());
+            if (fenceOrdinal == null) {
+                throw new IllegalArgumentException(String.format("Unknown fence [ %s ]", cell.getFenceId()));
+            }
+            cellIds.put(cell.getCellId());
+            fenceRefs.put((fenceOrdinal << 1) | (cell.isInterior() ? 1 : 0));
+            levels |= 1L << new S2CellId(cell.getCellId()).level();
+        }
+        cellIds.flip();
+        fenceRefs.flip();
+        return new GeoFenceIndex(cellIds, fenceRefs, fenceArray, levels);
+    }
+
+    /**
+     * @param latitude  the latitude of the point
+     * @param longitude the longitude of the point
+     * @return the ids of all fences containing the point
+     */
+    public List<String> findContainingFences(double latitude, double longitude) {
+        S2Point point = S2LatLng.fromDegrees(latitude, longitude).toPoint();
+        S2CellId leaf = S2CellId.fromPoint(point);
+        List<String> result = null;
+        for (int level = 0; level <= S2CellId.MAX_LEVEL; level++) {
+            if ((levels & (1L << level)) == 0L) {
+                continue;
+            }
+            long cellId = leaf.parent(level).id();
+            for (int i = lowerBound(cellId); (i < cellIds.limit()) && (cellIds.get(i) == cellId); i++) {
+                int fenceRef = fenceRefs.get(i);
+                GeoFence fence = fences[fenceRef >>> 1];
+                if (((fenceRef & 1) == 1) || fence.getPolygon().contains(point)) {
+                    if (result == null) {
+                        result = new ArrayList<String>(2);
+                    }
+                    result.add(fence.getId());
+                }
+            }
+        }
+        return (result == null ? Collections.<String>emptyList() : result);
+    }
+
+    /**
+     * @return the number of cells in the index
+     */
+    public int size() {
+        return cellIds.limit();
+    }
+
+    private int lowerBound(long cellId) {
+        int low = 0;
+        int high = cellIds.limit();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cellIds.get(mid) < cellId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static LongBuffer allocateLongs(int size, boolean offHeap) {
+        if (offHeap) {
+            return ByteBuffer.allocateDirect(size * 8).order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+        return LongBuffer.allocate(size);
+    }
+
+    private static IntBuffer allocateInts(int size, boolean offHeap) {
+        if (offHeap) {
+            return ByteBuffer.allocateDirect(size * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        return IntBuffer.allocate(size);
+    }
+
+    /**
+     * Builder to help with the construction of a <code>GeoFenceIndex</code> by covering each fence via {@link S2Manager}.
+     */
+    public static class Builder {
+        private final S2Manager s2Manager;
+        private final List<GeoFence> fences = new ArrayList<GeoFence>();
+        private final List<GeoFenceCell> cells = new ArrayList<GeoFenceCell>();
+        private int maxLevel = DEFAULT_MAX_LEVEL;
+        private int maxCells = DEFAULT_MAX_CELLS;
+        private boolean offHeap;
+
+        public Builder(S2Manager s2Manager) {
+            this.s2Manager = s2Manager;
+        }
+
+        public Builder maxLevel(int maxLevel) {
+            this.maxLevel = maxLevel;
+            return this;
+        }
+
+        public Builder maxCells(int maxCells) {
+            this.maxCells = maxCells;
+            return this;
+        }
+
+        public Builder offHeap(boolean offHeap) {
+            this.offHeap = offHeap;
+            return this;
+        }
+
+        public Builder add(GeoFence fence) {
+            S2CellUnion covering = s2Manager.getCovering(fence.getPolygon(), maxLevel, maxCells);
+            for (S2CellId cellId : covering.cellIds()) {
+                boolean interior = fence.getPolygon().contains(new S2Cell(cellId));
+                cells.add(new GeoFenceCell(fence.getId(), cellId.id(), interior));
+            }
+            fences.add(fence);
+            return this;
+        }
+
+        /**
+         * @return the cells of every added fence, e.g. to be persisted
+         */
+        public List<GeoFenceCell> getCells() {
+            return ImmutableList.copyOf(cells);
+        }
+
+        public GeoFenceIndex build() {
+            return load(cells, fences, offHeap);
+        }
+
+    }
+
+}
@@ -0,0 +1,179 @@
+package com.dashlabs.dash.geo.model;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Item counts keyed by S2 cell id, stored in two primitive arrays with open addressing rather than boxed map entries.
+ * Cell id 0, which is not a valid S2 cell, marks an empty slot. Not thread-safe; count concurrently into separate maps
+ * and {@link #addAll(CellCountMap)} them.
+ */
+public class CellCountMap {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] cellIds;
+
+    private long[] counts;
+
+    private int size;
+
+    public CellCountMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param expectedCells the number of cells expected, to size the arrays
+     */
+    public CellCountMap(int expectedCells) {
+        checkArgument(expectedCells >= 0, "expectedCells must not be negative: %s", expectedCells);
+        int capacity = Integer.highestOneBit(Math.max(DEFAULT_CAPACITY, expectedCells * 2 - 1)) << 1;
+        this.cellIds = new long[capacity];
+        this.counts = new long[capacity];
+    }
+
+    /**
+     * Adds <code>count</code> to the count of <code>cellId</code>.
+     */
+    public void add(long cellId, long count) {
+        if (cellId == 0) {
+            throw new IllegalArgumentException("0 is not a cell id");
+        }
+        int slot = slotOf(cellId);
+        if (cellIds[slot] == 0) {
+            cellIds[slot] = cellId;
+            size++;
+            if (size * 2 > cellIds.length) {
+                counts[slot] = count;
+                grow();
+                return;
+            }
+        }
+        counts[slot] += count;
+    }
+
+    /**
+     * Adds every count of <code>other</code> to this map.
+     */
+    public void addAll(CellCountMap other) {
+        for (int i = 0; i < other.cellIds.length; i++) {
+            if (other.cellIds[i] != 0) {
+                add(other.cellIds[i], other.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * @return the count of <code>cellId</code>, 0 if it has none
+     */
+    public long getCount(long cellId) {
+        if (cellId == 0) {
+            return 0L;
+        }
+        int slot = slotOf(cellId);
+        return (cellIds[slot] == cellId ? counts[slot] : 0L);
+    }
+
+    /**
+     * @return the ids of the cells with a count, in ascending order
+     */
+    public long[] getCellIds() {
+        long[] result = new long[size];
+        int index = 0;
+        for (long cellId : cellIds) {
+            if (cellId != 0) {
+                result[index++] = cellId;
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * @return the sum of all counts
+     */
+    public long getTotalCount() {
+        long total = 0L;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of cells with a count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the slot holding <code>cellId</code>, or the empty slot where it belongs
+     */
+    private int slotOf(long cellId) {
+        int mask = cellIds.length - 1;
+        // cell ids share their low bits at a given level, so mix them before masking
+        long hash = cellId * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while ((cellIds[slot] != 0) && (cellIds[slot] != cellId)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldCellIds = cellIds;
+        long[] oldCounts = counts;
+        cellIds = new long[oldCellIds.length * 2];
+        counts = new long[oldCounts.length * 2];
+        for (int i = 0; i < oldCellIds.length; i++) {
+            if (oldCellIds[i] != 0) {
+                int slot = slotOf(oldCellIds[i]);
+                cellIds[slot] = oldCellIds[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    @Override public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CellCountMap)) {
+            return false;
+        }
+        CellCountMap other = (CellCountMap) o;
+        if (size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < cellIds.length; i++) {
+            if ((cellIds[i] != 0) && (other.getCount(cellIds[i]) != counts[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override public int hashCode() {
+        int result = size;
+        for (int i = 0; i < cellIds.length; i++) {
+            if (cellIds[i] != 0) {
+                result += (int) (cellIds[i] ^ (cellIds[i] >>> 32)) ^ (int) counts[i];
+            }
+        }
+        return result;
+    }
+
+    @Override public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (long cellId : getCellIds()) {
+            if (builder.length() > 1) {
+                builder.append(", ");
+            }
+            builder.append(cellId).append('=').append(getCount(cellId));
+        }
+        return builder.append('}').toString();
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.dashlabs.dash.geo.model;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Describes how well a geo query plan fits the requested region: the area of the requested bounding boxes against the
+ * area of the cells covering them, the levels of those cells, and how many ranges and hash keys the plan reads.
+ */
+public class GeoPlanReport {
+
+    public static final String METRIC_PREFIX = "geo.plan.";
+
+    private final double requestedArea;
+
+    private final double coveredArea;
+
+    private final int[] cellLevelHistogram;
+
+    private final int cellCount;
+
+    private final int mergedRangeCount;
+
+    private final int splitRangeCount;
+
+    private final int hashKeyLength;
+
+    private final int distinctHashKeyCount;
+
+    /**
+     * @param requestedArea        the area of the union of the requested bounding boxes, in square meters
+     * @param coveredArea          the area of the covering cells, in square meters
+     * @param cellLevelHistogram   the number of covering cells per level, indexed by level
+     * @param mergedRangeCount     the number of ranges after merging adjacent cells
+     * @param splitRangeCount      the number of ranges after splitting by hash key, i.e. the number of queries
+     * @param hashKeyLength        the hash key length the ranges were split with
+     * @param distinctHashKeyCount the number of distinct hash keys the plan reads
+     */
+    public GeoPlanReport(double requestedArea, double coveredArea, int[] cellLevelHistogram, int mergedRangeCount,
+                         int splitRangeCount, int hashKeyLength, int distinctHashKeyCount) {
+        this.requestedArea = requestedArea;
+        this.coveredArea = coveredArea;
+        this.cellLevelHistogram = Arrays.copyOf(cellLevelHistogram, cellLevelHistogram.length);
+        int cells = 0;
+        for (int count : cellLevelHistogram) {
+            cells += count;
+        }
+        this.cellCount = cells;
+        this.mergedRangeCount = mergedRangeCount;
+        this.splitRangeCount = splitRangeCount;
+        this.hashKeyLength = hashKeyLength;
+        this.distinctHashKeyCount = distinctHashKeyCount;
+    }
+
+    public double getRequestedArea() {
+        return requestedArea;
+    }
+
+    public double getCoveredArea() {
+        return coveredArea;
+    }
+
+    /**
+     * @return the covered area per requested area; 1 is a perfect fit, larger values are read but filtered out
+     */
+    public double getOverfetchRatio() {
+        return (requestedArea == 0 ? 0.0d : coveredArea / requestedArea);
+    }
+
+    /**
+     * @return the number of covering cells at <code>level</code>
+     */
+    public int getCellCount(int level) {
+        return ((level < 0) || (level >= cellLevelHistogram.length) ? 0 : cellLevelHistogram[level]);
+    }
+
+    /**
+     * @return the number of covering cells, which is the number of ranges before merging
+     */
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    public int getMergedRangeCount() {
+        return mergedRangeCount;
+    }
+
+    public int getSplitRangeCount() {
+        return splitRangeCount;
+    }
+
+    public int getHashKeyLength() {
+        return hashKeyLength;
+    }
+
+    public int getDistinctHashKeyCount() {
+        return distinctHashKeyCount;
+    }
+
+    /**
+     * @return the report as metrics named <code>geo.plan.*</code>, with one <code>geo.plan.cells.level.N</code> metric
+     * per level which has cells
+     */
+    public Map<String, Double> toMetrics() {
+        ImmutableMap.Builder<String, Double> metrics = ImmutableMap.builder();
+        metrics.put(METRIC_PREFIX + "requestedArea", requestedArea);
+        metrics.put(METRIC_PREFIX + "coveredArea", coveredArea);
+        metrics.put(METRIC_PREFIX + "overfetchRatio", getOverfetchRatio());
+        metrics.put(METRIC_PREFIX + "cells", (double) cellCount);
+        metrics.put(METRIC_PREFIX + "mergedRanges", (double) mergedRangeCount);
+        metrics.put(METRIC_PREFIX + "splitRanges", (double) splitRangeCount);
+        metrics.put(METRIC_PREFIX + "hashKeys", (double) distinctHashKeyCount);
+        for (int level = 0; level < cellLevelHistogram.length; level++) {
+            if (cellLevelHistogram[level] > 0) {
+                metrics.put(METRIC_PREFIX + "cells.level." + level, (double) cellLevelHistogram[level]);
+            }
+        }
+        return metrics.build();
+    }
+
+    @Override public String toString() {
+        return String.format("GeoPlanReport [ requestedArea %.0f m2, coveredArea %.0f m2, overfetch %.2f, cells %d, merged %d, split %d, hashKeys %d ]",
+                requestedArea, coveredArea, getOverfetchRatio(), cellCount, mergedRangeCount, splitRangeCount, distinctHashKeyCount);
+    }
+
+}
@@ -1,8 +1,11 @@
 package com.dashlabs.dash.geo.model;
 
 import com.dashlabs.dash.geo.s2.internal.S2Manager;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 
-import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -85,28 +88,39 @@ public class GeohashRange {
      * max: -123456789
      */
     public List<GeohashRange> trySplit(int hashKeyLength, S2Manager s2Manager) {
-        List<GeohashRange> result = new ArrayList<GeohashRange>();
+        return Lists.newArrayList(iterateSplit(hashKeyLength, s2Manager));
+    }
 
-        long minHashKey = s2Manager.generateHashKey(rangeMin, hashKeyLength);
-        long maxHashKey = s2Manager.generateHashKey(rangeMax, hashKeyLength);
+    /**
+     * Lazily splits the range by hash key, producing the same ranges as {@link #trySplit(int, S2Manager)} one at a time
+     * so that a range spanning many hash keys is never held in memory as a whole.
+     */
+    public Iterator<GeohashRange> iterateSplit(int hashKeyLength, S2Manager s2Manager) {
+        final long minHashKey = s2Manager.generateHashKey(rangeMin, hashKeyLength);
+        final long maxHashKey = s2Manager.generateHashKey(rangeMax, hashKeyLength);
 
-        long denominator = (long) Math.pow(10, String.valueOf(rangeMin).length() - String.valueOf(minHashKey).length());
+        final long denominator = (long) Math.pow(10, String.valueOf(rangeMin).length() - String.valueOf(minHashKey).length());
 
         if (minHashKey == maxHashKey) {
-            result.add(this);
-        } else {
-            for (long l = minHashKey; l <= maxHashKey; l++) {
+            return Iterators.singletonIterator(this);
+        }
+        return new AbstractIterator<GeohashRange>() {
+            private long next = minHashKey;
+
+            @Override protected GeohashRange computeNext() {
+                if (next > maxHashKey) {
+                    return endOfData();
+                }
+                long l = next++;
                 if (l > 0) {
-                    result.add(new GeohashRange(l == minHashKey ? rangeMin : l * denominator,
-                            l == maxHashKey ? rangeMax : (l + 1) * denominator - 1));
+                    return new GeohashRange(l == minHashKey ? rangeMin : l * denominator,
+                            l == maxHashKey ? rangeMax : (l + 1) * denominator - 1);
                 } else {
-                    result.add(new GeohashRange(l == minHashKey ? rangeMin : (l - 1) * denominator + 1,
-                            l == maxHashKey ? rangeMax : l * denominator));
+                    return new GeohashRange(l == minHashKey ? rangeMin : (l - 1) * denominator + 1,
+                            l == maxHashKey ? rangeMax : l * denominator);
                 }
             }
-        }
-
-        return result;
+        };
     }
 
     public long getRangeMin() {
@@ -0,0 +1,35 @@
+package com.dashlabs.dash.geo.model.filters;
+
+import java.nio.DoubleBuffer;
+import java.util.BitSet;
+
+/**
+ * Represents a filter that is applied to columns of coordinates rather than to a collection of items.
+ * Bit <code>i</code> of a result refers to the coordinate at <code>offset + i</code>.
+ */
+public interface ColumnarGeoFilter {
+
+    /**
+     * @param latitudes  the latitude column
+     * @param longitudes the longitude column
+     * @param offset     the index of the first coordinate to filter
+     * @param length     the number of coordinates to filter
+     * @return the coordinates that did not get filtered
+     */
+    BitSet filter(double[] latitudes, double[] longitudes, int offset, int length);
+
+    /**
+     * @param latitudes  the latitude column
+     * @param longitudes the longitude column
+     * @param offset     the index, relative to each buffer's position, of the first coordinate to filter
+     * @param length     the number of coordinates to filter
+     * @return the coordinates that did not get filtered
+     */
+    BitSet filter(DoubleBuffer latitudes, DoubleBuffer longitudes, int offset, int length);
+
+    /**
+     * @return the indexes, relative to <code>offset</code>, of the coordinates that did not get filtered
+     */
+    int[] filterIndexes(double[] latitudes, double[] longitudes, int offset, int length);
+
+}
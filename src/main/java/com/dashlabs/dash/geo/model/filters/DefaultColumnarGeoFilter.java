@@ -0,0 +1,154 @@
+package com.dashlabs.dash.geo.model.filters;
+
+import java.nio.DoubleBuffer;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A {@link ColumnarGeoFilter} applying a {@link GeoPredicate}, the same math used by {@link RadiusGeoFilter} and
+ * {@link RectangleGeoFilter}. Columns longer than the chunk size are split into chunks filtered in parallel on a
+ * {@link ForkJoinPool}; chunks are aligned to 64 coordinates so every task owns whole words of the result.
+ */
+public class DefaultColumnarGeoFilter implements ColumnarGeoFilter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    private final GeoPredicate predicate;
+
+    private final ForkJoinPool pool;
+
+    private final int chunkSize;
+
+    public DefaultColumnarGeoFilter(GeoPredicate predicate) {
+        this(predicate, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public DefaultColumnarGeoFilter(GeoPredicate predicate, ForkJoinPool pool, int chunkSize) {
+        checkArgument(predicate != null, "predicate must not be null");
+        checkArgument(pool != null, "pool must not be null");
+        checkArgument((chunkSize >= 64) && ((chunkSize % 64) == 0), "chunkSize must be a positive multiple of 64: %s", chunkSize);
+        this.predicate = predicate;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override public BitSet filter(double[] latitudes, double[] longitudes, int offset, int length) {
+        checkBounds(latitudes.length, longitudes.length, offset, length);
+        return filter(new ArrayColumns(latitudes, longitudes, offset), length);
+    }
+
+    @Override public BitSet filter(DoubleBuffer latitudes, DoubleBuffer longitudes, int offset, int length) {
+        checkBounds(latitudes.remaining(), longitudes.remaining(), offset, length);
+        return filter(new BufferColumns(latitudes, longitudes, offset), length);
+    }
+
+    @Override public int[] filterIndexes(double[] latitudes, double[] longitudes, int offset, int length) {
+        BitSet matches = filter(latitudes, longitudes, offset, length);
+        int[] indexes = new int[matches.cardinality()];
+        for (int i = 0, index = matches.nextSetBit(0); index >= 0; index = matches.nextSetBit(index + 1)) {
+            indexes[i++] = index;
+        }
+        return indexes;
+    }
+
+    private BitSet filter(Columns columns, int length) {
+        long[] words = new long[(length + 63) >>> 6];
+        if (length <= chunkSize) {
+            filter(columns, words, 0, length);
+        } else {
+            pool.invoke(new FilterTask(columns, words, 0, length));
+        }
+        return BitSet.valueOf(words);
+    }
+
+    private void filter(Columns columns, long[] words, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (predicate.accept(columns.latitude(i), columns.longitude(i))) {
+                words[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    private static void checkBounds(int latitudes, int longitudes, int offset, int length) {
+        if ((offset < 0) || (length < 0) || (offset + length > latitudes) || (offset + length > longitudes)) {
+            throw new IndexOutOfBoundsException(String.format("offset [ %d ] length [ %d ]", offset, length));
+        }
+    }
+
+    private class FilterTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Columns columns;
+        private final long[] words;
+        private final int from;
+        private final int to;
+
+        private FilterTask(Columns columns, long[] words, int from, int to) {
+            this.columns = columns;
+            this.words = words;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override protected void compute() {
+            if (to - from <= chunkSize) {
+                filter(columns, words, from, to);
+                return;
+            }
+            int mid = from + ((((to - from) >>> 1) + 63) & ~63);
+            invokeAll(new FilterTask(columns, words, from, mid), new FilterTask(columns, words, mid, to));
+        }
+    }
+
+    private interface Columns {
+        double latitude(int index);
+        double longitude(int index);
+    }
+
+    private static class ArrayColumns implements Columns {
+        private final double[] latitudes;
+        private final double[] longitudes;
+        private final int offset;
+
+        private ArrayColumns(double[] latitudes, double[] longitudes, int offset) {
+            this.latitudes = latitudes;
+            this.longitudes = longitudes;
+            this.offset = offset;
+        }
+
+        @Override public double latitude(int index) {
+            return latitudes[offset + index];
+        }
+
+        @Override public double longitude(int index) {
+            return longitudes[offset + index];
+        }
+    }
+
+    private static class BufferColumns implements Columns {
+        private final DoubleBuffer latitudes;
+        private final DoubleBuffer longitudes;
+        private final int latitudeOffset;
+        private final int longitudeOffset;
+
+        private BufferColumns(DoubleBuffer latitudes, DoubleBuffer longitudes, int offset) {
+            this.latitudes = latitudes;
+            this.longitudes = longitudes;
+            this.latitudeOffset = latitudes.position() + offset;
+            this.longitudeOffset = longitudes.position() + offset;
+        }
+
+        @Override public double latitude(int index) {
+            return latitudes.get(latitudeOffset + index);
+        }
+
+        @Override public double longitude(int index) {
+            return longitudes.get(longitudeOffset + index);
+        }
+    }
+
+}
@@ -38,4 +38,48 @@ public class GeoFilters {
         return new RectangleGeoFilter<T>(extractor, latLngRect);
     }
 
+    /**
+     * Factory method to create the predicate of a radius filter, to be applied directly to lat/long pairs.
+     *
+     * @param centerLatLng  the lat/long of the center of the predicate's radius
+     * @param radiusInMeter the radius of the predicate in metres
+     * @return a new instance of the {@link RadiusGeoPredicate}
+     */
+    public static GeoPredicate newRadiusPredicate(S2LatLng centerLatLng, double radiusInMeter) {
+        return new RadiusGeoPredicate(centerLatLng, radiusInMeter);
+    }
+
+    /**
+     * Factory method to create the predicate of a rectangle filter, to be applied directly to lat/long pairs.
+     *
+     * @param latLngRect the bounding box for the predicate
+     * @return a new instance of the {@link RectangleGeoPredicate}
+     */
+    public static GeoPredicate newRectanglePredicate(S2LatLngRect latLngRect) {
+        return new RectangleGeoPredicate(latLngRect);
+    }
+
+    /**
+     * Factory method to create a columnar filter used by radius queries, which gives the same results as
+     * {@link #newRadiusFilter(GeoDataExtractor, S2LatLng, double)}.
+     *
+     * @param centerLatLng  the lat/long of the center of the filter's radius
+     * @param radiusInMeter the radius of the filter in metres
+     * @return a new instance of the {@link ColumnarGeoFilter}
+     */
+    public static ColumnarGeoFilter newColumnarRadiusFilter(S2LatLng centerLatLng, double radiusInMeter) {
+        return new DefaultColumnarGeoFilter(newRadiusPredicate(centerLatLng, radiusInMeter));
+    }
+
+    /**
+     * Factory method to create a columnar filter used by rectangle queries, which gives the same results as
+     * {@link #newRectangleFilter(GeoDataExtractor, S2LatLngRect)}.
+     *
+     * @param latLngRect the bounding box for the filter
+     * @return a new instance of the {@link ColumnarGeoFilter}
+     */
+    public static ColumnarGeoFilter newColumnarRectangleFilter(S2LatLngRect latLngRect) {
+        return new DefaultColumnarGeoFilter(newRectanglePredicate(latLngRect));
+    }
+
 }
@@ -0,0 +1,15 @@
+package com.dashlabs.dash.geo.model.filters;
+
+/**
+ * Represents the geometric test of a {@link GeoFilter}, applied directly to a lat/long pair.
+ */
+public interface GeoPredicate {
+
+    /**
+     * @param latitude  the latitude of the point, in degrees
+     * @param longitude the longitude of the point, in degrees
+     * @return true if the point is accepted by this predicate
+     */
+    boolean accept(double latitude, double longitude);
+
+}
@@ -21,23 +21,14 @@ public class RadiusGeoFilter<T> implements GeoFilter<T> {
 
     private final GeoDataExtractor<T> extractor;
 
-    /**
-     * Represents a center point as a lat/long - used by radius queries
-     */
-    private final S2LatLng centerLatLng;
-
-    /**
-     * Radius(in metres)
-     */
-    private final double radiusInMeter;
+    private final RadiusGeoPredicate predicate;
 
     public RadiusGeoFilter(GeoDataExtractor<T> extractor, S2LatLng centerLatLng, double radiusInMeter) {
         if ((extractor == null) || (centerLatLng == null) || (radiusInMeter <= 0)) {
             throw new IllegalArgumentException();
         }
         this.extractor = extractor;
-        this.centerLatLng = centerLatLng;
-        this.radiusInMeter = radiusInMeter;
+        this.predicate = new RadiusGeoPredicate(centerLatLng, radiusInMeter);
     }
 
     /**
@@ -51,11 +42,8 @@ public class RadiusGeoFilter<T> implements GeoFilter<T> {
         for (T item : items) {
             Optional<Double> latitude = extractor.extractLatitude(item);
             Optional<Double> longitude = extractor.extractLongitude(item);
-            if (latitude.isPresent() && longitude.isPresent()) {
-                S2LatLng latLng = S2LatLng.fromDegrees(latitude.get(), longitude.get());
-                if (centerLatLng.getEarthDistance(latLng) <= radiusInMeter) {
-                    result.add(item);
-                }
+            if (latitude.isPresent() && longitude.isPresent() && predicate.accept(latitude.get(), longitude.get())) {
+                result.add(item);
             }
         }
         return result;
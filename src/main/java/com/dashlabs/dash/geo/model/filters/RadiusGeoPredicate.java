@@ -0,0 +1,35 @@
+package com.dashlabs.dash.geo.model.filters;
+
+import com.google.common.geometry.S2LatLng;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Accepts points that are within the radius of a center point. This is the math shared by {@link RadiusGeoFilter}
+ * and the primitive geo indexes.
+ */
+public class RadiusGeoPredicate implements GeoPredicate {
+
+    /**
+     * Represents a center point as a lat/long - used by radius queries
+     */
+    private final S2LatLng centerLatLng;
+
+    /**
+     * Radius(in metres)
+     */
+    private final double radiusInMeter;
+
+    public RadiusGeoPredicate(S2LatLng centerLatLng, double radiusInMeter) {
+        checkArgument(centerLatLng != null, "centerLatLng must not be null");
+        checkArgument(radiusInMeter > 0, "radiusInMeter must be positive: %s", radiusInMeter);
+        this.centerLatLng = centerLatLng;
+        this.radiusInMeter = radiusInMeter;
+    }
+
+    @Override public boolean accept(double latitude, double longitude) {
+        S2LatLng latLng = S2LatLng.fromDegrees(latitude, longitude);
+        return centerLatLng.getEarthDistance(latLng) <= radiusInMeter;
+    }
+
+}
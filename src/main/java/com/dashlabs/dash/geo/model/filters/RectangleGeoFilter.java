@@ -1,6 +1,5 @@
 package com.dashlabs.dash.geo.model.filters;
 
-import com.google.common.geometry.S2LatLng;
 import com.google.common.geometry.S2LatLngRect;
 
 import java.util.ArrayList;
@@ -17,17 +16,14 @@ public class RectangleGeoFilter<T> implements GeoFilter<T> {
 
     private final GeoDataExtractor<T> extractor;
 
-    /**
-     * Bounding box for a rectangle query
-     */
-    private final S2LatLngRect latLngRect;
+    private final RectangleGeoPredicate predicate;
 
     public RectangleGeoFilter(GeoDataExtractor<T> extractor, S2LatLngRect latLngRect) {
         if ((extractor == null) || (latLngRect == null)) {
             throw new IllegalArgumentException();
         }
         this.extractor = extractor;
-        this.latLngRect = latLngRect;
+        this.predicate = new RectangleGeoPredicate(latLngRect);
     }
 
     /**
@@ -41,12 +37,8 @@ public class RectangleGeoFilter<T> implements GeoFilter<T> {
         for (T item : items) {
             Optional<Double> latitude = extractor.extractLatitude(item);
             Optional<Double> longitude = extractor.extractLongitude(item);
-            if (latitude.isPresent() && longitude.isPresent()) {
-                S2LatLng latLng = S2LatLng.fromDegrees(latitude.get(), longitude.get());
-                if (latLngRect.contains(latLng)) {
-                    result.add(item);
-                }
-
+            if (latitude.isPresent() && longitude.isPresent() && predicate.accept(latitude.get(), longitude.get())) {
+                result.add(item);
             }
         }
         return result;
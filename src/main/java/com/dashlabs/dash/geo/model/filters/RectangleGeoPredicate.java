@@ -0,0 +1,28 @@
+package com.dashlabs.dash.geo.model.filters;
+
+import com.google.common.geometry.S2LatLng;
+import com.google.common.geometry.S2LatLngRect;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Accepts points that are within a bounding box. This is the math shared by {@link RectangleGeoFilter}
+ * and the primitive geo indexes.
+ */
+public class RectangleGeoPredicate implements GeoPredicate {
+
+    /**
+     * Bounding box for a rectangle query
+     */
+    private final S2LatLngRect latLngRect;
+
+    public RectangleGeoPredicate(S2LatLngRect latLngRect) {
+        checkArgument(latLngRect != null, "latLngRect must not be null");
+        this.latLngRect = latLngRect;
+    }
+
+    @Override public boolean accept(double latitude, double longitude) {
+        return latLngRect.contains(S2LatLng.fromDegrees(latitude, longitude));
+    }
+
+}
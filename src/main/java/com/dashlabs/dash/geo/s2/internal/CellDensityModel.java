@@ -0,0 +1,16 @@
+package com.dashlabs.dash.geo.s2.internal;
+
+import com.google.common.geometry.S2CellId;
+
+/**
+ * Estimates how many items are stored within a cell, for {@link CostBasedS2Manager} to weigh reading a coarse cell
+ * against covering it with finer ones.
+ */
+public interface CellDensityModel {
+
+    /**
+     * @return the estimated number of items whose geohash lies within <code>cellId</code>
+     */
+    double estimateItems(S2CellId cellId);
+
+}
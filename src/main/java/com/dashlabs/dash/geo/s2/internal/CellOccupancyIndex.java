@@ -0,0 +1,164 @@
+package com.dashlabs.dash.geo.s2.internal;
+
+import com.dashlabs.dash.geo.model.GeohashRange;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2LatLng;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A Bloom filter of the cells at a fixed level which hold at least one item. A geohash range none of whose cells are in
+ * the filter is definitely empty and need not be queried; a range with a cell in the filter is populated, or a false
+ * positive at the configured rate. Items are never removed, so a cell which emptied is still queried until the index
+ * is rebuilt.
+ *
+ * Ranges spanning more than <code>maxProbes</code> cells are assumed populated rather than probed cell by cell, so the
+ * level should be fine enough that most ranges span a few cells and coarse enough that the filter stays small, e.g.
+ * level 12 (~2km cells) for city-scale queries.
+ */
+public class CellOccupancyIndex {
+
+    public static final int DEFAULT_MAX_PROBES = 64;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final int level;
+
+    private final int maxProbes;
+
+    private final BloomFilter<Long> cells;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param level                 the level of the cells recorded
+     * @param expectedOccupiedCells the number of occupied cells the filter is sized for
+     * @param falsePositiveRate     the rate at which an empty cell is reported occupied once the expected cells are
+     *                              recorded
+     */
+    public CellOccupancyIndex(int level, long expectedOccupiedCells, double falsePositiveRate) {
+        this(level, expectedOccupiedCells, falsePositiveRate, DEFAULT_MAX_PROBES);
+    }
+
+    /**
+     * @param level                 the level of the cells recorded
+     * @param expectedOccupiedCells the number of occupied cells the filter is sized for
+     * @param falsePositiveRate     the rate at which an empty cell is reported occupied once the expected cells are
+     *                              recorded
+     * @param maxProbes             the number of cells of a range probed before assuming it populated
+     */
+    public CellOccupancyIndex(int level, long expectedOccupiedCells, double falsePositiveRate, int maxProbes) {
+        this(level, maxProbes, BloomFilter.create(Funnels.longFunnel(), expectedOccupiedCells, falsePositiveRate));
+    }
+
+    private CellOccupancyIndex(int level, int maxProbes, BloomFilter<Long> cells) {
+        checkArgument((level >= 0) && (level <= S2CellId.MAX_LEVEL), "level must be between 0 and 30: %s", level);
+        checkArgument(maxProbes >= 1, "maxProbes must be positive: %s", maxProbes);
+        this.level = level;
+        this.maxProbes = maxProbes;
+        this.cells = cells;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Records the cell of an item at <code>geohash</code> as occupied.
+     */
+    public void add(long geohash) {
+        long cellId = new S2CellId(geohash).parent(level).id();
+        lock.writeLock().lock();
+        try {
+            cells.put(cellId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Records the cell of an item at the given lat/long as occupied.
+     */
+    public void add(double latitude, double longitude) {
+        add(S2CellId.fromLatLng(S2LatLng.fromDegrees(latitude, longitude)).id());
+    }
+
+    /**
+     * @return false if no item was recorded within <code>range</code>, true if one may have been
+     */
+    public boolean mightBeOccupied(GeohashRange range) {
+        S2CellId first = new S2CellId(range.getRangeMin()).parent(level);
+        S2CellId last = new S2CellId(range.getRangeMax()).parent(level);
+        if (first.compareTo(last) > 0) {
+            // not a range of cells, e.g. one wrapping from the last face to the first
+            return true;
+        }
+        lock.readLock().lock();
+        try {
+            S2CellId cellId = first;
+            for (int probes = 0; cellId.compareTo(last) <= 0; probes++) {
+                if ((probes >= maxProbes) || cells.mightContain(cellId.id())) {
+                    return true;
+                }
+                cellId = cellId.next();
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the estimated rate at which an empty cell is reported occupied, given the cells recorded so far
+     */
+    public double getFalsePositiveRate() {
+        lock.readLock().lock();
+        try {
+            return cells.expectedFpp();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes a snapshot of the index, which {@link #readFrom(InputStream)} restores. The stream is not closed.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(FORMAT_VERSION);
+        data.writeInt(level);
+        data.writeInt(maxProbes);
+        lock.readLock().lock();
+        try {
+            cells.writeTo(data);
+        } finally {
+            lock.readLock().unlock();
+        }
+        data.flush();
+    }
+
+    /**
+     * Restores an index from a snapshot written by {@link #writeTo(OutputStream)}. The stream is not closed.
+     */
+    public static CellOccupancyIndex readFrom(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int version = data.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException(String.format("Unsupported occupancy index format [ %d ]", version));
+        }
+        int level = data.readInt();
+        int maxProbes = data.readInt();
+        return new CellOccupancyIndex(level, maxProbes, BloomFilter.readFrom(data, Funnels.longFunnel()));
+    }
+
+}
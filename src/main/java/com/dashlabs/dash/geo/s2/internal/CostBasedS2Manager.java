@@ -0,0 +1,135 @@
+package com.dashlabs.dash.geo.s2.internal;
+
+import com.google.common.geometry.S2Cell;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2LatLngRect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * An {@link S2Manager} whose covering minimizes the estimated cost of the resulting queries instead of following the
+ * geometric 1-4 children rule of {@link S2Manager#findCellIds(S2LatLngRect)}.
+ *
+ * Reading a cell costs one request per hash key its geohash range spans, each charged <code>requestOverhead</code>
+ * plus the minimum of half a read unit, and half a read unit per 4KB of the items the {@link CellDensityModel}
+ * expects in it (eventually consistent reads). Every cell intersecting the bounding box is either accepted at that cost
+ * or replaced by its intersecting children, whichever is cheaper, down to <code>maxLevel</code>. Sparse areas are
+ * therefore read with a few coarse ranges and dense ones with tight ranges around the bounding box.
+ */
+public class CostBasedS2Manager extends S2Manager {
+
+    public static final double DEFAULT_ITEM_SIZE = 1024;
+
+    public static final double DEFAULT_REQUEST_OVERHEAD = 1.0d;
+
+    public static final int DEFAULT_MAX_LEVEL = 20;
+
+    private static final double READ_UNIT_SIZE = 4096;
+
+    private static final double MIN_REQUEST_READ_UNITS = 0.5d;
+
+    private final CellDensityModel densityModel;
+
+    private final int hashKeyLength;
+
+    private final double itemSize;
+
+    private final double requestOverhead;
+
+    private final int maxLevel;
+
+    public CostBasedS2Manager(CellDensityModel densityModel, int hashKeyLength) {
+        this(densityModel, hashKeyLength, DEFAULT_ITEM_SIZE, DEFAULT_REQUEST_OVERHEAD, DEFAULT_MAX_LEVEL);
+    }
+
+    /**
+     * @param densityModel    the estimate of items per cell
+     * @param hashKeyLength   the hash key length plans are split by, which determines the requests per cell
+     * @param itemSize        the average item size in bytes
+     * @param requestOverhead the cost of a request beyond the read units it consumes, in read units
+     * @param maxLevel        the finest cell level of the covering
+     */
+    public CostBasedS2Manager(CellDensityModel densityModel, int hashKeyLength, double itemSize, double requestOverhead, int maxLevel) {
+        checkArgument(densityModel != null, "densityModel must not be null");
+        checkArgument(hashKeyLength >= 1, "hashKeyLength must be positive: %s", hashKeyLength);
+        checkArgument(itemSize >= 0, "itemSize must not be negative: %s", itemSize);
+        checkArgument(requestOverhead >= 0, "requestOverhead must not be negative: %s", requestOverhead);
+        checkArgument((maxLevel >= 0) && (maxLevel <= S2CellId.MAX_LEVEL), "maxLevel must be between 0 and 30: %s", maxLevel);
+        this.densityModel = densityModel;
+        this.hashKeyLength = hashKeyLength;
+        this.itemSize = itemSize;
+        this.requestOverhead = requestOverhead;
+        this.maxLevel = maxLevel;
+    }
+
+    /**
+     * @return the cheapest covering of the bounding box, or null if no cell intersects it
+     */
+    @Override public S2CellUnion findCellIds(S2LatLngRect latLngRect) {
+        if (latLngRect == null) {
+            return null;
+        }
+        ArrayList<S2CellId> cellIds = new ArrayList<S2CellId>();
+        for (S2CellId c = S2CellId.begin(0); !c.equals(S2CellId.end(0)); c = c.next()) {
+            if (latLngRect.intersects(new S2Cell(c))) {
+                cover(c, latLngRect, cellIds);
+            }
+        }
+        if (cellIds.isEmpty()) {
+            return null;
+        }
+        S2CellUnion cellUnion = new S2CellUnion();
+        cellUnion.initFromCellIds(cellIds);
+        return cellUnion;
+    }
+
+    /**
+     * Adds the cheapest covering of the part of <code>cellId</code> within the bounding box to <code>cellIds</code>.
+     *
+     * @return the estimated cost of that covering
+     */
+    private double cover(S2CellId cellId, S2LatLngRect latLngRect, List<S2CellId> cellIds) {
+        double acceptCost = getCost(cellId);
+        boolean acceptable = !Double.isInfinite(acceptCost);
+        // no covering is cheaper than a single minimal request, nor does splitting a contained cell save any reads
+        if ((cellId.level() >= maxLevel) || (acceptCost <= requestOverhead + MIN_REQUEST_READ_UNITS)
+                || (acceptable && latLngRect.contains(new S2Cell(cellId)))) {
+            cellIds.add(cellId);
+            return acceptCost;
+        }
+        int mark = cellIds.size();
+        double descendCost = 0.0d;
+        for (S2CellId child = cellId.childBegin(); !child.equals(cellId.childEnd()) && (!acceptable || (descendCost < acceptCost));
+             child = child.next()) {
+            if (latLngRect.intersects(new S2Cell(child))) {
+                descendCost += cover(child, latLngRect, cellIds);
+            }
+        }
+        if (acceptable && (descendCost >= acceptCost)) {
+            cellIds.subList(mark, cellIds.size()).clear();
+            cellIds.add(cellId);
+            return acceptCost;
+        }
+        return descendCost;
+    }
+
+    /**
+     * @return the estimated cost, in read units, of reading every item within <code>cellId</code>, infinite if its range
+     * cannot be split by hash key
+     */
+    double getCost(S2CellId cellId) {
+        double requests = (double) generateHashKey(cellId.rangeMax().id(), hashKeyLength)
+                - (double) generateHashKey(cellId.rangeMin().id(), hashKeyLength) + 1;
+        if (requests < 1) {
+            // the range crosses a change in the number of digits of the geohash, which hash keys cannot express
+            return Double.POSITIVE_INFINITY;
+        }
+        double readUnits = (densityModel.estimateItems(cellId) * itemSize / READ_UNIT_SIZE) * MIN_REQUEST_READ_UNITS;
+        return (requests * (requestOverhead + MIN_REQUEST_READ_UNITS)) + readUnits;
+    }
+
+}
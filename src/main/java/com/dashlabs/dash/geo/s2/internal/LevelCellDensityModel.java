@@ -0,0 +1,114 @@
+package com.dashlabs.dash.geo.s2.internal;
+
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2LatLng;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A {@link CellDensityModel} built from item counts per cell at a fixed level. Cells at or above that level are
+ * estimated exactly with a binary search over prefix sums of the counts; finer cells get an even share of their
+ * ancestor's count.
+ */
+public class LevelCellDensityModel implements CellDensityModel {
+
+    private final int level;
+
+    /**
+     * The counted cell ids in ascending unsigned order, stored with their sign bit flipped so that signed comparison
+     * gives that order.
+     */
+    private final long[] cellIds;
+
+    /**
+     * <code>prefixCounts[i]</code> is the total count of <code>cellIds[0..i)</code>.
+     */
+    private final long[] prefixCounts;
+
+    private LevelCellDensityModel(int level, long[] cellIds, long[] prefixCounts) {
+        this.level = level;
+        this.cellIds = cellIds;
+        this.prefixCounts = prefixCounts;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    @Override public double estimateItems(S2CellId cellId) {
+        if (cellId.level() > level) {
+            long count = countBetween(cellId.parent(level).id(), cellId.parent(level).id());
+            return count / Math.pow(4, cellId.level() - level);
+        }
+        return countBetween(cellId.rangeMin().id(), cellId.rangeMax().id());
+    }
+
+    private long countBetween(long minCellId, long maxCellId) {
+        int from = lowerBound(minCellId ^ Long.MIN_VALUE);
+        int to = lowerBound((maxCellId ^ Long.MIN_VALUE) + 1);
+        return prefixCounts[to] - prefixCounts[from];
+    }
+
+    private int lowerBound(long key) {
+        int index = Arrays.binarySearch(cellIds, key);
+        return (index < 0 ? -(index + 1) : index);
+    }
+
+    /**
+     * Collects item counts per cell of the model's level.
+     */
+    public static class Builder {
+
+        private final int level;
+
+        private final Map<Long, Long> counts = new TreeMap<Long, Long>();
+
+        /**
+         * @param level the level of the counted cells; finer levels give better estimates for dense areas
+         */
+        public Builder(int level) {
+            checkArgument((level >= 0) && (level <= S2CellId.MAX_LEVEL), "level must be between 0 and 30: %s", level);
+            this.level = level;
+        }
+
+        /**
+         * Counts an item at the given location.
+         */
+        public Builder add(double latitude, double longitude) {
+            return addGeohash(S2CellId.fromLatLng(S2LatLng.fromDegrees(latitude, longitude)).id(), 1L);
+        }
+
+        /**
+         * Counts <code>count</code> items within the cell (at any level at least as fine as the model's) or geohash
+         * <code>geohash</code>.
+         */
+        public Builder addGeohash(long geohash, long count) {
+            S2CellId cellId = new S2CellId(geohash);
+            if (cellId.level() < level) {
+                throw new IllegalArgumentException(String.format("Cell [ %d ] is coarser than level [ %d ]", geohash, level));
+            }
+            long key = cellId.parent(level).id() ^ Long.MIN_VALUE;
+            Long existing = counts.get(key);
+            counts.put(key, (existing == null ? count : existing + count));
+            return this;
+        }
+
+        public LevelCellDensityModel build() {
+            long[] cellIds = new long[counts.size()];
+            long[] prefixCounts = new long[counts.size() + 1];
+            int i = 0;
+            for (Map.Entry<Long, Long> entry : counts.entrySet()) {
+                cellIds[i] = entry.getKey();
+                prefixCounts[i + 1] = prefixCounts[i] + entry.getValue();
+                i++;
+            }
+            return new LevelCellDensityModel(level, cellIds, prefixCounts);
+        }
+
+    }
+
+}
@@ -3,8 +3,13 @@ package com.dashlabs.dash.geo.s2.internal;
 import com.google.common.geometry.*;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static com.google.common.base.Preconditions.checkArgument;
 
 /**
  * User: blangel
@@ -16,7 +21,61 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  */
 public class S2Manager {
 
+    /**
+     * The area, in square meters, above which {@link #findCellIds(S2LatLngRect)} covers in parallel when a fork-join pool
+     * is configured (100,000 square kilometers, roughly a small country).
+     */
+    public static final double DEFAULT_PARALLEL_AREA_THRESHOLD = 1.0e11;
+
+    /**
+     * The cell level down to which the parallel covering forks tasks; subtrees below it are covered sequentially within
+     * their task.
+     */
+    private static final int PARALLEL_SPLIT_LEVEL = 6;
+
+    /**
+     * The area, relative to the bounding box, above which a cell whose 4 children all intersect the bounding box is
+     * traversed rather than added to the covering whole. Below it a single coarser cell is usually cheaper to query than
+     * the many ranges of a traversal; above it the cell spans far more hash keys than the box. This only happens when a
+     * small box straddles the corner shared by the children of a much larger cell, e.g. a pole. 1024 is the smallest
+     * power of 4 that leaves the coverings of 2,100 random radius queries of 50m to 50km between latitudes -60 and 60
+     * unchanged; at 256 some of them are already traversed.
+     */
+    private static final double MAX_PARENT_AREA_RATIO = 1024.0d;
+
+    private final ForkJoinPool forkJoinPool;
+
+    private final double parallelAreaThreshold;
+
+    public S2Manager() {
+        this(null, DEFAULT_PARALLEL_AREA_THRESHOLD);
+    }
+
+    public S2Manager(ForkJoinPool forkJoinPool) {
+        this(forkJoinPool, DEFAULT_PARALLEL_AREA_THRESHOLD);
+    }
+
+    /**
+     * @param forkJoinPool          the pool used to cover large regions in parallel, or null to always cover sequentially
+     * @param parallelAreaThreshold the area, in square meters, of the bounding box above which covering is parallel
+     */
+    public S2Manager(ForkJoinPool forkJoinPool, double parallelAreaThreshold) {
+        checkArgument(parallelAreaThreshold >= 0, "parallelAreaThreshold must not be negative: %s", parallelAreaThreshold);
+        this.forkJoinPool = forkJoinPool;
+        this.parallelAreaThreshold = parallelAreaThreshold;
+    }
+
+    /**
+     * Covers the bounding box with cells. Bounding boxes whose area exceeds the parallel area threshold are covered by
+     * fork-join tasks per face and top-level cell if a pool is configured; the resulting union is identical to the
+     * sequential covering.
+     *
+     * @return the normalized covering, or null if no cell intersects the bounding box
+     */
     public S2CellUnion findCellIds(S2LatLngRect latLngRect) {
+        if ((forkJoinPool != null) && (latLngRect != null) && (getArea(latLngRect) > parallelAreaThreshold)) {
+            return findCellIdsInParallel(latLngRect);
+        }
 
         ConcurrentLinkedQueue<S2CellId> queue = new ConcurrentLinkedQueue<S2CellId>();
         ArrayList<S2CellId> cellIds = new ArrayList<S2CellId>();
@@ -43,6 +102,45 @@ public class S2Manager {
         return null;
     }
 
+    /**
+     * Covers the bounding box in the fork-join pool, without regard to its area.
+     *
+     * @return the normalized covering, or null if no cell intersects the bounding box
+     */
+    public S2CellUnion findCellIdsInParallel(S2LatLngRect latLngRect) {
+        if (forkJoinPool == null) {
+            throw new IllegalStateException("No fork-join pool configured");
+        }
+        List<CoveringTask> tasks = new ArrayList<CoveringTask>(6);
+        for (S2CellId c = S2CellId.begin(0); !c.equals(S2CellId.end(0)); c = c.next()) {
+            if (containsGeodataToFind(c, latLngRect)) {
+                tasks.add(new CoveringTask(c, latLngRect));
+            }
+        }
+        ArrayList<S2CellId> cellIds = new ArrayList<S2CellId>();
+        for (CoveringTask task : tasks) {
+            forkJoinPool.execute(task);
+        }
+        for (CoveringTask task : tasks) {
+            cellIds.addAll(task.join());
+        }
+
+        if (cellIds.size() > 0) {
+            S2CellUnion cellUnion = new S2CellUnion();
+            cellUnion.initFromCellIds(cellIds); // This normalize the cells.
+            return cellUnion;
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the area of the bounding box in square meters
+     */
+    private static double getArea(S2LatLngRect latLngRect) {
+        return latLngRect.area() * S2LatLng.EARTH_RADIUS_METERS * S2LatLng.EARTH_RADIUS_METERS;
+    }
+
     private boolean containsGeodataToFind(S2CellId c, S2LatLngRect latLngRect) {
         if (latLngRect != null) {
             return latLngRect.intersects(new S2Cell(c));
@@ -64,7 +162,7 @@ public class S2Manager {
     }
 
     private void processChildren(S2CellId parent, S2LatLngRect latLngRect,
-                                 ConcurrentLinkedQueue<S2CellId> queue, ArrayList<S2CellId> cellIds) {
+                                 Collection<S2CellId> queue, ArrayList<S2CellId> cellIds) {
         List<S2CellId> children = new ArrayList<S2CellId>(4);
 
         for (S2CellId c = parent.childBegin(); !c.equals(parent.childEnd()); c = c.next()) {
@@ -79,7 +177,9 @@ public class S2Manager {
 		 * Current strategy:
 		 * 1 or 2 cells contain cellIdToFind: Traverse the children of the cell.
 		 * 3 cells contain cellIdToFind: Add 3 cells for result.
-		 * 4 cells contain cellIdToFind: Add the parent for result.
+		 * 4 cells contain cellIdToFind: Add the parent for result, unless the parent is far larger than the bounding
+		 * box, in which case the box merely contains the corner shared by the children (e.g. a pole or the center of
+		 * the face around 0/180) and they are traversed instead.
 		 *
 		 * ** All non-leaf cells contain 4 child cells.
 		 */
@@ -94,12 +194,85 @@ public class S2Manager {
         } else if (children.size() == 3) {
             cellIds.addAll(children);
         } else if (children.size() == 4) {
-            cellIds.add(parent);
+            if (isOversized(parent, latLngRect)) {
+                queue.addAll(children);
+            } else {
+                cellIds.add(parent);
+            }
         } else {
             assert false; // This should not happen.
         }
     }
 
+    /**
+     * @return true if the cell is more than {@link #MAX_PARENT_AREA_RATIO} times the area of the bounding box and not
+     * contained by it
+     */
+    private static boolean isOversized(S2CellId cellId, S2LatLngRect latLngRect) {
+        S2Cell cell = new S2Cell(cellId);
+        return (cell.approxArea() > MAX_PARENT_AREA_RATIO * latLngRect.area()) && !latLngRect.contains(cell);
+    }
+
+    /**
+     * Covers the subtree of a cell. Above {@link #PARALLEL_SPLIT_LEVEL} the cell's children are split exactly as
+     * {@link #processChildren} does and, where the traversal branches, each child to descend into is forked as its own
+     * task; at and below it the subtree is covered sequentially.
+     */
+    private class CoveringTask extends RecursiveTask<List<S2CellId>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final S2CellId cellId;
+
+        private final S2LatLngRect latLngRect;
+
+        private CoveringTask(S2CellId cellId, S2LatLngRect latLngRect) {
+            this.cellId = cellId;
+            this.latLngRect = latLngRect;
+        }
+
+        @Override protected List<S2CellId> compute() {
+            ArrayList<S2CellId> cellIds = new ArrayList<S2CellId>();
+            List<S2CellId> descend = new ArrayList<S2CellId>(4);
+            descend.add(cellId);
+            // follow single children within this task, fork once the traversal branches
+            while ((descend.size() == 1) && (descend.get(0).level() < PARALLEL_SPLIT_LEVEL)) {
+                S2CellId parent = descend.remove(0);
+                processChildren(parent, latLngRect, descend, cellIds);
+            }
+            if ((descend.size() == 1) || ((descend.size() > 1) && (descend.get(0).level() >= PARALLEL_SPLIT_LEVEL))) {
+                ConcurrentLinkedQueue<S2CellId> queue = new ConcurrentLinkedQueue<S2CellId>(descend);
+                processQueue(queue, cellIds, latLngRect);
+                return cellIds;
+            }
+            List<CoveringTask> subtasks = new ArrayList<CoveringTask>(descend.size());
+            for (S2CellId child : descend) {
+                subtasks.add(new CoveringTask(child, latLngRect));
+            }
+            invokeAll(subtasks);
+            for (CoveringTask subtask : subtasks) {
+                cellIds.addAll(subtask.join());
+            }
+            return cellIds;
+        }
+
+    }
+
+    /**
+     * Covers the given region with at most <code>maxCells</code> cells no finer than <code>maxLevel</code>.
+     *
+     * @param region   the region to cover
+     * @param maxLevel the finest cell level to use
+     * @param maxCells the maximum number of cells of the covering (a soft limit, see {@link S2RegionCoverer})
+     * @return the normalized covering
+     */
+    public S2CellUnion getCovering(S2Region region, int maxLevel, int maxCells) {
+        S2RegionCoverer coverer = new S2RegionCoverer();
+        coverer.setMaxLevel(maxLevel);
+        coverer.setMaxCells(maxCells);
+        return coverer.getCovering(region);
+    }
+
     public long generateGeohash(double latitude, double longitude) {
         S2LatLng latLng = S2LatLng.fromDegrees(latitude, longitude);
         S2Cell cell = new S2Cell(latLng);
@@ -124,7 +297,10 @@ public class S2Manager {
     }
 
     /**
-     * Creates a bounding box for a radius query
+     * Creates a bounding box for a radius query. The box is the exact bound of the spherical cap around the center
+     * rather than degree offsets from it: it spans all longitudes and is clamped at the pole when the cap contains one,
+     * and wraps across the antimeridian (an inverted longitude interval) when the cap crosses it, so that its covering
+     * tracks the area of the circle anywhere on the globe.
      *
      * @param latitude  the latitude of the radius center
      * @param longitude the longitude of the radius center
@@ -132,27 +308,18 @@ public class S2Manager {
      * @return the bounding box
      */
     public S2LatLngRect getBoundingBoxForRadiusQuery(double latitude, double longitude, double radius) {
-        S2LatLng centerLatLng = S2LatLng.fromDegrees(latitude, longitude);
-        double latReferenceUnit = latitude > 0.0 ? -1.0 : 1.0;
-        S2LatLng latReferenceLatLng = S2LatLng.fromDegrees(latitude + latReferenceUnit,
-                longitude);
-        double lngReferenceUnit = longitude > 0.0 ? -1.0 : 1.0;
-        S2LatLng lngReferenceLatLng = S2LatLng.fromDegrees(latitude, longitude
-                + lngReferenceUnit);
-
-        double latForRadius = radius / centerLatLng.getEarthDistance(latReferenceLatLng);
-        double lngForRadius = radius / centerLatLng.getEarthDistance(lngReferenceLatLng);
-
-        S2LatLng minLatLng = S2LatLng.fromDegrees(latitude - latForRadius,
-                longitude - lngForRadius);
-        S2LatLng maxLatLng = S2LatLng.fromDegrees(latitude + latForRadius,
-                longitude + lngForRadius);
-
-        return new S2LatLngRect(minLatLng, maxLatLng);
+        S2Point center = S2LatLng.fromDegrees(latitude, longitude).normalized().toPoint();
+        double angle = radius / S2LatLng.EARTH_RADIUS_METERS;
+        if (angle >= Math.PI) {
+            return S2LatLngRect.full();
+        }
+        return S2Cap.fromAxisAngle(center, S1Angle.radians(angle)).getRectBound();
     }
 
     /**
-     * Creates a bounding box for a rectangle query
+     * Creates a bounding box for a rectangle query. Latitudes are clamped to the poles and longitudes normalized to
+     * [-180, 180]; a <code>minLongitude</code> east of <code>maxLongitude</code> after normalization denotes a rectangle
+     * crossing the antimeridian, and a longitude span of 360 degrees or more covers all longitudes.
      *
      * @param minLatitude  the min latitude of the rectangle
      * @param minLongitude the min longitude of the rectangle
@@ -161,8 +328,11 @@ public class S2Manager {
      * @return the bounding box
      */
     public S2LatLngRect getBoundingBoxForRectangleQuery(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
-        S2LatLng minLatLng = S2LatLng.fromDegrees(minLatitude, minLongitude);
-        S2LatLng maxLatLng = S2LatLng.fromDegrees(maxLatitude, maxLongitude);
+        S2LatLng minLatLng = S2LatLng.fromDegrees(minLatitude, minLongitude).normalized();
+        S2LatLng maxLatLng = S2LatLng.fromDegrees(maxLatitude, maxLongitude).normalized();
+        if (maxLongitude - minLongitude >= 360.0d) {
+            return new S2LatLngRect(new R1Interval(minLatLng.latRadians(), maxLatLng.latRadians()), S1Interval.full());
+        }
         return new S2LatLngRect(minLatLng, maxLatLng);
     }
 
@@ -0,0 +1,28 @@
+package com.dashlabs.dash.geo.s2.internal;
+
+import com.google.common.geometry.S2Cell;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2LatLng;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A {@link CellDensityModel} assuming items are spread evenly over the earth's surface.
+ */
+public class UniformCellDensityModel implements CellDensityModel {
+
+    private final double itemsPerSquareMeter;
+
+    /**
+     * @param itemsPerSquareMeter the number of items per square meter
+     */
+    public UniformCellDensityModel(double itemsPerSquareMeter) {
+        checkArgument(itemsPerSquareMeter >= 0, "itemsPerSquareMeter must not be negative: %s", itemsPerSquareMeter);
+        this.itemsPerSquareMeter = itemsPerSquareMeter;
+    }
+
+    @Override public double estimateItems(S2CellId cellId) {
+        return S2Cell.averageArea(cellId.level()) * S2LatLng.EARTH_RADIUS_METERS * S2LatLng.EARTH_RADIUS_METERS * itemsPerSquareMeter;
+    }
+
+}
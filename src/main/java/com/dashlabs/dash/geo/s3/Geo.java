@@ -1,6 +1,7 @@
 package com.dashlabs.dash.geo.s3;
 
 import com.dashlabs.dash.geo.s3.model.GeoProperties;
+import com.dashlabs.dash.geo.s3.model.GeohashRangePlan;
 import com.dashlabs.dash.geo.model.filters.GeoFilter;
 import com.dashlabs.dash.geo.s2.internal.S2Manager;
 import com.dashlabs.dash.geo.s3.model.filters.GeoFilters;
@@ -51,6 +52,23 @@ public class Geo {
         return helper.generateGeoProperties(boundingBox, geoHashLength);
     }
 
+    /**
+     * @return the exact plan of the radius query, packed into primitive arrays
+     */
+    public GeohashRangePlan generatePlanForRadiusQuery(int geoHashLength, double latitude, double longitude, double radius) {
+        S2LatLngRect boundingBox = s2Manager.getBoundingBoxForRadiusQuery(latitude, longitude, radius);
+        return helper.generateGeohashRangePlan(boundingBox, geoHashLength);
+    }
+
+    /**
+     * @return the exact plan of the rectangle query, packed into primitive arrays
+     */
+    public GeohashRangePlan generatePlanForRectangleQuery(int geoHashLength, double minLatitude, double minLongitude,
+                                                          double maxLatitude, double maxLongitude) {
+        S2LatLngRect boundingBox = s2Manager.getBoundingBoxForRectangleQuery(minLatitude, minLongitude, maxLatitude, maxLongitude);
+        return helper.generateGeohashRangePlan(boundingBox, geoHashLength);
+    }
+
     public List<GeoProperties> filterByRadius(Collection<GeoProperties> properties, double latitude, double longitude, double radius) {
         S2LatLng centerLatLng = S2LatLng.fromDegrees(latitude, longitude);
         GeoFilter<GeoProperties> filter = GeoFilters.newRadiusFilter(centerLatLng, radius);
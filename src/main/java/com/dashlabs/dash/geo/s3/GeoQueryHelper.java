@@ -4,13 +4,17 @@ import com.dashlabs.dash.geo.AbstractGeoQueryHelper;
 import com.dashlabs.dash.geo.model.GeohashRange;
 import com.dashlabs.dash.geo.s2.internal.S2Manager;
 import com.dashlabs.dash.geo.s3.model.GeoProperties;
+import com.dashlabs.dash.geo.s3.model.GeohashRangePlan;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.geometry.S2CellUnion;
 import com.google.common.geometry.S2LatLngRect;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -29,22 +33,63 @@ public class GeoQueryHelper extends AbstractGeoQueryHelper {
      * For the given <code>QueryRequest</code> query and the boundingBox, this method creates a collection of queries
      * that are decorated with geo attributes to enable geo-spatial querying.
      *
+     * The range bounds are stored in the <code>double</code> coordinates of each {@linkplain GeoProperties}, which
+     * cannot represent cell ids above 2^53 exactly; {@link #generateGeohashRangePlan(S2LatLngRect, int)} keeps them exact.
+     *
      * @param boundingBox the bounding lat long rectangle of the geo query
      * @param hashKeyLength the hash key length for the geo query
      * @return an immutable collection of {@linkplain GeoProperties}
      */
     public List<GeoProperties> generateGeoProperties(S2LatLngRect boundingBox, int hashKeyLength) {
-        List<GeohashRange> outerRanges = getGeoHashRanges(boundingBox);
-        List<GeoProperties> queryRequests = new ArrayList<GeoProperties>(outerRanges.size());
-        //Create multiple queries based on the geo ranges derived from the bounding box
-        for (GeohashRange outerRange : outerRanges) {
-            List<GeohashRange> geohashRanges = outerRange.trySplit(hashKeyLength, s2Manager);
-            for (GeohashRange range : geohashRanges) {
-                long geoHashKey = s2Manager.generateHashKey(range.getRangeMin(), hashKeyLength);
-                queryRequests.add(new GeoProperties(hashKeyLength, geoHashKey, range.getRangeMin(), range.getRangeMax()));
-            }
+        List<GeohashRange> ranges = generateGeohashRanges(boundingBox, hashKeyLength);
+        List<GeoProperties> queryRequests = new ArrayList<GeoProperties>(ranges.size());
+        for (GeohashRange range : ranges) {
+            long geoHashKey = s2Manager.generateHashKey(range.getRangeMin(), hashKeyLength);
+            queryRequests.add(new GeoProperties(hashKeyLength, geoHashKey, range.getRangeMin(), range.getRangeMax()));
         }
         return ImmutableList.copyOf(queryRequests);
     }
 
+    /**
+     * Creates the same plan as {@link #generateGeoProperties(S2LatLngRect, int)} packed into primitive arrays, with the
+     * exact bounds and hash key of every range.
+     *
+     * @param boundingBox the bounding lat long rectangle of the geo query
+     * @param hashKeyLength the hash key length for the geo query
+     * @return the plan, its ranges in the order produced by the covering
+     */
+    public GeohashRangePlan generateGeohashRangePlan(S2LatLngRect boundingBox, int hashKeyLength) {
+        Iterator<GeohashRange> ranges = iterateSplitGeoHashRanges(Collections.singletonList(boundingBox), hashKeyLength);
+        long[] rangeMins = new long[16];
+        long[] rangeMaxs = new long[16];
+        long[] hashKeys = new long[16];
+        int size = 0;
+        while (ranges.hasNext()) {
+            GeohashRange range = ranges.next();
+            if (size == rangeMins.length) {
+                rangeMins = Arrays.copyOf(rangeMins, size * 2);
+                rangeMaxs = Arrays.copyOf(rangeMaxs, size * 2);
+                hashKeys = Arrays.copyOf(hashKeys, size * 2);
+            }
+            rangeMins[size] = range.getRangeMin();
+            rangeMaxs[size] = range.getRangeMax();
+            hashKeys[size] = s2Manager.generateHashKey(range.getRangeMin(), hashKeyLength);
+            size++;
+        }
+        return new GeohashRangePlan(hashKeyLength, Arrays.copyOf(rangeMins, size), Arrays.copyOf(rangeMaxs, size),
+                Arrays.copyOf(hashKeys, size));
+    }
+
+    /**
+     * Creates the same plan as {@link #generateGeoProperties(S2LatLngRect, int)} as exact geohash ranges, each of
+     * which lies within a single hash key.
+     *
+     * @param boundingBox the bounding lat long rectangle of the geo query
+     * @param hashKeyLength the hash key length for the geo query
+     * @return a list of {@linkplain GeohashRange} in the order produced by the covering
+     */
+    public List<GeohashRange> generateGeohashRanges(S2LatLngRect boundingBox, int hashKeyLength) {
+        return getSplitGeoHashRanges(Collections.singletonList(boundingBox), hashKeyLength);
+    }
+
 }
@@ -0,0 +1,271 @@
+package com.dashlabs.dash.geo.s3;
+
+import com.dashlabs.dash.geo.model.GeohashRange;
+import com.dashlabs.dash.geo.s3.model.GeohashRangePlan;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Converts ranges of geohashes (or any <code>long</code> keys) into the decimal string prefixes to list from an object
+ * store or a lexicographically sorted key value store whose keys start with <code>String.valueOf(key)</code>.
+ *
+ * Each range is first split into the minimal set of prefixes covering exactly the keys of the range with the same number
+ * of digits; a range like <code>[123456789, 125678912]</code> needs a few dozen. Sibling prefixes are then replaced by
+ * their common parent, cheapest first, as long as the keys covered beyond the range stay within
+ * <code>maxOverCoverage</code> times the size of the range. A prefix also matches longer keys (<code>"12"</code> matches
+ * <code>1200</code> as well as <code>12</code>), so listed keys must still be checked against the ranges.
+ */
+public class KeyPrefixPlanner {
+
+    public static final double DEFAULT_MAX_OVER_COVERAGE = 0.1d;
+
+    private static final int MAX_DIGITS = 19;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_DIGITS];
+
+    static {
+        POWERS_OF_TEN[0] = 1L;
+        for (int i = 1; i < MAX_DIGITS; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10L;
+        }
+    }
+
+    private final double maxOverCoverage;
+
+    public KeyPrefixPlanner() {
+        this(DEFAULT_MAX_OVER_COVERAGE);
+    }
+
+    /**
+     * @param maxOverCoverage the number of keys outside a range each range may cover, as a fraction of the size of the
+     *                        range; <code>0</code> gives the exact minimal prefixes
+     */
+    public KeyPrefixPlanner(double maxOverCoverage) {
+        checkArgument(maxOverCoverage >= 0d, "maxOverCoverage must not be negative: %s", maxOverCoverage);
+        this.maxOverCoverage = maxOverCoverage;
+    }
+
+    /**
+     * @return the sorted prefixes covering every range of the plan, none of which is a prefix of another
+     */
+    public List<String> generatePrefixes(GeohashRangePlan plan) {
+        TreeSet<String> prefixes = new TreeSet<String>();
+        for (int i = 0; i < plan.size(); i++) {
+            addPrefixes(plan.getRangeMin(i), plan.getRangeMax(i), prefixes);
+        }
+        return withoutNested(prefixes);
+    }
+
+    /**
+     * @return the sorted prefixes covering every range, none of which is a prefix of another
+     */
+    public List<String> generatePrefixes(List<GeohashRange> ranges) {
+        TreeSet<String> prefixes = new TreeSet<String>();
+        for (GeohashRange range : ranges) {
+            addPrefixes(range.getRangeMin(), range.getRangeMax(), prefixes);
+        }
+        return withoutNested(prefixes);
+    }
+
+    /**
+     * @return the sorted prefixes covering the keys <code>[rangeMin, rangeMax]</code>, none of which is a prefix of another
+     */
+    public List<String> generatePrefixes(long rangeMin, long rangeMax) {
+        TreeSet<String> prefixes = new TreeSet<String>();
+        addPrefixes(rangeMin, rangeMax, prefixes);
+        return withoutNested(prefixes);
+    }
+
+    private void addPrefixes(long rangeMin, long rangeMax, TreeSet<String> prefixes) {
+        if (rangeMin > rangeMax) {
+            throw new IllegalArgumentException(String.format("Empty range [ %d, %d ]", rangeMin, rangeMax));
+        }
+        List<Prefix> exact = new ArrayList<Prefix>();
+        if (rangeMin < 0L) {
+            if (rangeMin == Long.MIN_VALUE) {
+                // its magnitude is not a long
+                prefixes.add(String.valueOf(Long.MIN_VALUE));
+            }
+            long magnitudeMax = (rangeMin == Long.MIN_VALUE ? Long.MAX_VALUE : -rangeMin);
+            long magnitudeMin = -Math.min(rangeMax, -1L);
+            if (magnitudeMin <= magnitudeMax) {
+                addExactPrefixes(true, magnitudeMin, magnitudeMax, exact);
+            }
+        }
+        if (rangeMax >= 0L) {
+            addExactPrefixes(false, Math.max(rangeMin, 0L), rangeMax, exact);
+        }
+        double rangeSize = (double) rangeMax - (double) rangeMin + 1d;
+        for (Prefix prefix : coarsen(exact, maxOverCoverage * rangeSize)) {
+            prefixes.add(prefix.toString());
+        }
+    }
+
+    /**
+     * Adds the minimal prefixes which cover exactly the keys of <code>[min, max]</code> with the same number of digits.
+     */
+    private static void addExactPrefixes(boolean negative, long min, long max, List<Prefix> prefixes) {
+        for (int digits = digits(min); digits <= digits(max); digits++) {
+            long low = Math.max(min, (digits == 1 ? 0L : POWERS_OF_TEN[digits - 1]));
+            long high = Math.min(max, (digits == MAX_DIGITS ? Long.MAX_VALUE : POWERS_OF_TEN[digits] - 1L));
+            while (true) {
+                int exponent = 0;
+                while ((exponent + 1 < digits) && (low % POWERS_OF_TEN[exponent + 1] == 0L)
+                        && (high - low >= POWERS_OF_TEN[exponent + 1] - 1L)) {
+                    exponent++;
+                }
+                prefixes.add(new Prefix(negative, digits, low / POWERS_OF_TEN[exponent], exponent));
+                long last = low + (POWERS_OF_TEN[exponent] - 1L);
+                if (last >= high) {
+                    break;
+                }
+                low = last + 1L;
+            }
+        }
+    }
+
+    /**
+     * Repeatedly replaces the prefixes under a common ancestor by that ancestor, choosing the one which covers the fewest
+     * extra keys per prefix saved, until no ancestor fits within <code>budget</code> extra keys.
+     */
+    private static List<Prefix> coarsen(List<Prefix> prefixes, double budget) {
+        List<Prefix> current = new ArrayList<Prefix>(prefixes);
+        while (current.size() > 1) {
+            Map<Prefix, double[]> ancestors = new HashMap<Prefix, double[]>();
+            for (Prefix prefix : current) {
+                for (int levels = 1; prefix.exponent + levels < prefix.digits; levels++) {
+                    Prefix ancestor = prefix.getAncestor(levels);
+                    double[] covered = ancestors.get(ancestor);
+                    if (covered == null) {
+                        covered = new double[2];
+                        ancestors.put(ancestor, covered);
+                    }
+                    covered[0] += prefix.getSize();
+                    covered[1] += 1d;
+                }
+            }
+            Prefix best = null;
+            double bestCost = 0d;
+            double bestCostPerSaving = Double.MAX_VALUE;
+            for (Map.Entry<Prefix, double[]> entry : ancestors.entrySet()) {
+                double[] covered = entry.getValue();
+                if (covered[1] < 2d) {
+                    continue;
+                }
+                double cost = entry.getKey().getSize() - covered[0];
+                double costPerSaving = cost / (covered[1] - 1d);
+                if ((cost <= budget) && (costPerSaving < bestCostPerSaving)) {
+                    best = entry.getKey();
+                    bestCost = cost;
+                    bestCostPerSaving = costPerSaving;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            budget -= bestCost;
+            for (Iterator<Prefix> iterator = current.iterator(); iterator.hasNext(); ) {
+                if (best.contains(iterator.next())) {
+                    iterator.remove();
+                }
+            }
+            current.add(best);
+        }
+        return current;
+    }
+
+    private static List<String> withoutNested(TreeSet<String> prefixes) {
+        List<String> result = new ArrayList<String>(prefixes.size());
+        String last = null;
+        for (String prefix : prefixes) {
+            // a prefix sorts immediately before the strings it is a prefix of
+            if ((last == null) || !prefix.startsWith(last)) {
+                result.add(prefix);
+                last = prefix;
+            }
+        }
+        return result;
+    }
+
+    private static int digits(long value) {
+        int digits = 1;
+        while ((digits < MAX_DIGITS) && (value >= POWERS_OF_TEN[digits])) {
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * The keys with <code>digits</code> digits whose leading <code>digits - exponent</code> digits are <code>value</code>,
+     * i.e. <code>[value * 10^exponent, (value + 1) * 10^exponent - 1]</code>, or their negations.
+     */
+    private static final class Prefix {
+
+        private final boolean negative;
+
+        private final int digits;
+
+        private final long value;
+
+        private final int exponent;
+
+        private Prefix(boolean negative, int digits, long value, int exponent) {
+            this.negative = negative;
+            this.digits = digits;
+            this.value = value;
+            this.exponent = exponent;
+        }
+
+        private Prefix getAncestor(int levels) {
+            return new Prefix(negative, digits, value / POWERS_OF_TEN[levels], exponent + levels);
+        }
+
+        private boolean contains(Prefix other) {
+            return (negative == other.negative) && (digits == other.digits) && (exponent >= other.exponent)
+                    && (other.value / POWERS_OF_TEN[exponent - other.exponent] == value);
+        }
+
+        /**
+         * @return the number of keys of the prefix, excluding those beyond <code>Long.MAX_VALUE</code>
+         */
+        private double getSize() {
+            long first = value * POWERS_OF_TEN[exponent];
+            long last = (first > Long.MAX_VALUE - (POWERS_OF_TEN[exponent] - 1L) ? Long.MAX_VALUE
+                    : first + (POWERS_OF_TEN[exponent] - 1L));
+            return (double) (last - first) + 1d;
+        }
+
+        @Override public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Prefix)) {
+                return false;
+            }
+            Prefix other = (Prefix) o;
+            return (negative == other.negative) && (digits == other.digits) && (value == other.value)
+                    && (exponent == other.exponent);
+        }
+
+        @Override public int hashCode() {
+            int result = (negative ? 1 : 0);
+            result = 31 * result + digits;
+            result = 31 * result + (int) (value ^ (value >>> 32));
+            result = 31 * result + exponent;
+            return result;
+        }
+
+        @Override public String toString() {
+            return (negative ? "-" : "") + value;
+        }
+
+    }
+
+}
@@ -0,0 +1,294 @@
+package com.dashlabs.dash.geo.s3.index;
+
+import com.dashlabs.dash.geo.model.GeohashRange;
+import com.dashlabs.dash.geo.model.filters.GeoFilters;
+import com.dashlabs.dash.geo.model.filters.GeoPredicate;
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+import com.dashlabs.dash.geo.s3.GeoQueryHelper;
+import com.dashlabs.dash.geo.s3.model.GeohashRangePlan;
+import com.google.common.geometry.S2LatLng;
+import com.google.common.geometry.S2LatLngRect;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * An in-memory index of points for the S3 {@link com.dashlabs.dash.geo.s3.Geo} path, answering the radius and rectangle
+ * plans of {@link GeoQueryHelper#generateGeohashRangePlan(S2LatLngRect, int)} without a linear scan.
+ *
+ * Points are kept in a primitive <code>long[]</code> sorted by geohash with parallel coordinate and id arrays, so each
+ * range of a plan is a binary search followed by a contiguous scan. Inserts are appended to a small delta buffer which is
+ * scanned alongside the sorted arrays on every query and merged into them once full.
+ */
+public class LocalGeoIndex {
+
+    public static final int DEFAULT_DELTA_CAPACITY = 4096;
+
+    private static final long[] NO_IDS = new long[0];
+
+    private final S2Manager s2Manager;
+
+    private final GeoQueryHelper helper;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // sorted by geohash
+    private long[] geohashes = new long[0];
+    private double[] latitudes = new double[0];
+    private double[] longitudes = new double[0];
+    private long[] ids = new long[0];
+
+    // insertion ordered, merged into the sorted arrays when full
+    private final long[] deltaGeohashes;
+    private final double[] deltaLatitudes;
+    private final double[] deltaLongitudes;
+    private final long[] deltaIds;
+    private int deltaSize;
+
+    public LocalGeoIndex() {
+        this(new S2Manager());
+    }
+
+    public LocalGeoIndex(S2Manager s2Manager) {
+        this(s2Manager, new GeoQueryHelper(s2Manager), DEFAULT_DELTA_CAPACITY);
+    }
+
+    public LocalGeoIndex(S2Manager s2Manager, GeoQueryHelper helper, int deltaCapacity) {
+        checkArgument(deltaCapacity > 0, "deltaCapacity must be positive: %s", deltaCapacity);
+        this.s2Manager = s2Manager;
+        this.helper = helper;
+        this.deltaGeohashes = new long[deltaCapacity];
+        this.deltaLatitudes = new double[deltaCapacity];
+        this.deltaLongitudes = new double[deltaCapacity];
+        this.deltaIds = new long[deltaCapacity];
+    }
+
+    /**
+     * Adds a point to the index; it is visible to queries as soon as this method returns.
+     */
+    public void insert(long id, double latitude, double longitude) {
+        long geohash = s2Manager.generateGeohash(latitude, longitude);
+        lock.writeLock().lock();
+        try {
+            deltaGeohashes[deltaSize] = geohash;
+            deltaLatitudes[deltaSize] = latitude;
+            deltaLongitudes[deltaSize] = longitude;
+            deltaIds[deltaSize] = id;
+            if (++deltaSize == deltaGeohashes.length) {
+                merge(deltaGeohashes, deltaLatitudes, deltaLongitudes, deltaIds, deltaSize);
+                deltaSize = 0;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds all the given points to the index, merging them directly into the sorted arrays.
+     */
+    public void insertAll(long[] pointIds, double[] pointLatitudes, double[] pointLongitudes) {
+        if ((pointIds.length != pointLatitudes.length) || (pointIds.length != pointLongitudes.length)) {
+            throw new IllegalArgumentException("Point arrays must have the same length");
+        }
+        long[] pointGeohashes = new long[pointIds.length];
+        for (int i = 0; i < pointIds.length; i++) {
+            pointGeohashes[i] = s2Manager.generateGeohash(pointLatitudes[i], pointLongitudes[i]);
+        }
+        lock.writeLock().lock();
+        try {
+            merge(pointGeohashes, pointLatitudes, pointLongitudes, pointIds, pointIds.length);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of points in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return geohashes.length + deltaSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the ids of the points within <code>radius</code> metres of the given center
+     */
+    public long[] radiusQuery(int geoHashLength, double latitude, double longitude, double radius) {
+        S2LatLngRect boundingBox = s2Manager.getBoundingBoxForRadiusQuery(latitude, longitude, radius);
+        GeoPredicate predicate = GeoFilters.newRadiusPredicate(S2LatLng.fromDegrees(latitude, longitude), radius);
+        return query(helper.generateGeohashRangePlan(boundingBox, geoHashLength), predicate);
+    }
+
+    /**
+     * @return the ids of the points within the given rectangle
+     */
+    public long[] rectangleQuery(int geoHashLength, double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+        S2LatLngRect boundingBox = s2Manager.getBoundingBoxForRectangleQuery(minLatitude, minLongitude, maxLatitude, maxLongitude);
+        return query(helper.generateGeohashRangePlan(boundingBox, geoHashLength), GeoFilters.newRectanglePredicate(boundingBox));
+    }
+
+    /**
+     * Scans the given ranges and returns the ids of the points accepted by the <code>predicate</code>.
+     *
+     * @param ranges    the ranges of a query plan
+     * @param predicate the exact geometric test of the query
+     * @return the ids of the matching points
+     */
+    public long[] query(List<GeohashRange> ranges, GeoPredicate predicate) {
+        long[] rangeMins = new long[ranges.size()];
+        long[] rangeMaxs = new long[ranges.size()];
+        for (int i = 0; i < rangeMins.length; i++) {
+            rangeMins[i] = ranges.get(i).getRangeMin();
+            rangeMaxs[i] = ranges.get(i).getRangeMax();
+        }
+        return query(rangeMins, rangeMaxs, predicate);
+    }
+
+    /**
+     * Scans the ranges of the given plan and returns the ids of the points accepted by the <code>predicate</code>.
+     *
+     * @param plan      a query plan
+     * @param predicate the exact geometric test of the query
+     * @return the ids of the matching points
+     */
+    public long[] query(GeohashRangePlan plan, GeoPredicate predicate) {
+        long[] rangeMins = new long[plan.size()];
+        long[] rangeMaxs = new long[plan.size()];
+        for (int i = 0; i < rangeMins.length; i++) {
+            rangeMins[i] = plan.getRangeMin(i);
+            rangeMaxs[i] = plan.getRangeMax(i);
+        }
+        return query(rangeMins, rangeMaxs, predicate);
+    }
+
+    private long[] query(long[] rangeMins, long[] rangeMaxs, GeoPredicate predicate) {
+        long[] result = NO_IDS;
+        int resultSize = 0;
+        lock.readLock().lock();
+        try {
+            for (int range = 0; range < rangeMins.length; range++) {
+                for (int i = lowerBound(geohashes, geohashes.length, rangeMins[range]);
+                     (i < geohashes.length) && (geohashes[i] <= rangeMaxs[range]); i++) {
+                    if (predicate.accept(latitudes[i], longitudes[i])) {
+                        if (resultSize == result.length) {
+                            result = Arrays.copyOf(result, Math.max(16, resultSize * 2));
+                        }
+                        result[resultSize++] = ids[i];
+                    }
+                }
+            }
+            if (deltaSize > 0) {
+                int[] order = sortOrder(rangeMins, rangeMins.length);
+                long[] sortedMins = new long[order.length];
+                long[] sortedMaxs = new long[order.length];
+                for (int i = 0; i < order.length; i++) {
+                    sortedMins[i] = rangeMins[order[i]];
+                    sortedMaxs[i] = rangeMaxs[order[i]];
+                }
+                for (int i = 0; i < deltaSize; i++) {
+                    int range = lowerBound(sortedMaxs, sortedMaxs.length, deltaGeohashes[i]);
+                    if ((range < sortedMins.length) && (sortedMins[range] <= deltaGeohashes[i])
+                            && predicate.accept(deltaLatitudes[i], deltaLongitudes[i])) {
+                        if (resultSize == result.length) {
+                            result = Arrays.copyOf(result, Math.max(16, resultSize * 2));
+                        }
+                        result[resultSize++] = deltaIds[i];
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return (resultSize == result.length ? result : Arrays.copyOf(result, resultSize));
+    }
+
+    /**
+     * Merges the first <code>count</code> (unsorted) points of the given arrays into the sorted arrays.
+     * Must be called with the write lock held.
+     */
+    private void merge(long[] mergeGeohashes, double[] mergeLatitudes, double[] mergeLongitudes, long[] mergeIds, int count) {
+        int[] order = sortOrder(mergeGeohashes, count);
+        int size = geohashes.length + count;
+        long[] newGeohashes = new long[size];
+        double[] newLatitudes = new double[size];
+        double[] newLongitudes = new double[size];
+        long[] newIds = new long[size];
+        int left = 0;
+        int right = 0;
+        for (int i = 0; i < size; i++) {
+            if ((right == count) || ((left < geohashes.length) && (geohashes[left] <= mergeGeohashes[order[right]]))) {
+                newGeohashes[i] = geohashes[left];
+                newLatitudes[i] = latitudes[left];
+                newLongitudes[i] = longitudes[left];
+                newIds[i] = ids[left++];
+            } else {
+                int index = order[right++];
+                newGeohashes[i] = mergeGeohashes[index];
+                newLatitudes[i] = mergeLatitudes[index];
+                newLongitudes[i] = mergeLongitudes[index];
+                newIds[i] = mergeIds[index];
+            }
+        }
+        geohashes = newGeohashes;
+        latitudes = newLatitudes;
+        longitudes = newLongitudes;
+        ids = newIds;
+    }
+
+    /**
+     * @return the index of the first of the <code>size</code> sorted <code>values</code> which is not less than <code>value</code>
+     */
+    static int lowerBound(long[] values, int size, long value) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the permutation of the first <code>size</code> <code>keys</code> which sorts them, computed with a
+     *         stable bottom-up merge sort so no boxing is needed
+     */
+    static int[] sortOrder(long[] keys, int size) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        int[] buffer = new int[size];
+        for (int width = 1; width < size; width *= 2) {
+            for (int low = 0; low < size; low += 2 * width) {
+                int mid = Math.min(low + width, size);
+                int high = Math.min(low + 2 * width, size);
+                int left = low;
+                int right = mid;
+                for (int i = low; i < high; i++) {
+                    if ((right == high) || ((left < mid) && (keys[order[left]] <= keys[order[right]]))) {
+                        buffer[i] = order[left++];
+                    } else {
+                        buffer[i] = order[right++];
+                    }
+                }
+            }
+            int[] swap = order;
+            order = buffer;
+            buffer = swap;
+        }
+        return order;
+    }
+
+}
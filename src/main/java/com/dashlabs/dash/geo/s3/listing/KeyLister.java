@@ -0,0 +1,16 @@
+package com.dashlabs.dash.geo.s3.listing;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Lists the keys of an object store, or of any store whose keys are sorted lexicographically, by prefix.
+ */
+public interface KeyLister {
+
+    /**
+     * @return every key starting with <code>prefix</code>, sorted
+     */
+    List<String> list(String prefix) throws IOException;
+
+}
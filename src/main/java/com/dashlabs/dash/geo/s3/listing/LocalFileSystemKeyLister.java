@@ -0,0 +1,55 @@
+package com.dashlabs.dash.geo.s3.listing;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link KeyLister} over the regular files under a local directory, the key of a file being its path relative to the
+ * root with <code>/</code> separators. Directories which cannot hold a key with the prefix are not visited.
+ */
+public class LocalFileSystemKeyLister implements KeyLister {
+
+    private final Path root;
+
+    public LocalFileSystemKeyLister(Path root) {
+        this.root = root;
+    }
+
+    @Override public List<String> list(final String prefix) throws IOException {
+        int separator = prefix.lastIndexOf('/');
+        Path start = (separator < 0 ? root : root.resolve(prefix.substring(0, separator)));
+        if (!Files.isDirectory(start)) {
+            return Collections.emptyList();
+        }
+        final List<String> keys = new ArrayList<String>();
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                String key = getKey(dir) + "/";
+                return ((key.length() == 1) || key.startsWith(prefix) || prefix.startsWith(key)
+                        ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE);
+            }
+            @Override public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                String key = getKey(file);
+                if (attributes.isRegularFile() && key.startsWith(prefix)) {
+                    keys.add(key);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(keys);
+        return keys;
+    }
+
+    private String getKey(Path path) {
+        String key = root.relativize(path).toString();
+        return ("/".equals(path.getFileSystem().getSeparator()) ? key : key.replace(path.getFileSystem().getSeparator(), "/"));
+    }
+
+}
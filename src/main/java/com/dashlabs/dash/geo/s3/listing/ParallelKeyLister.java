@@ -0,0 +1,65 @@
+package com.dashlabs.dash.geo.s3.listing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Lists many prefixes at once, e.g. those of a {@link com.dashlabs.dash.geo.s3.KeyPrefixPlanner} plan, as one task per
+ * prefix on the executor.
+ */
+public class ParallelKeyLister {
+
+    private final KeyLister lister;
+
+    private final ExecutorService executorService;
+
+    public ParallelKeyLister(KeyLister lister, ExecutorService executorService) {
+        checkArgument(lister != null, "lister must not be null");
+        checkArgument(executorService != null, "executorService must not be null");
+        this.lister = lister;
+        this.executorService = executorService;
+    }
+
+    /**
+     * @return the sorted, distinct keys starting with any of the <code>prefixes</code>
+     * @throws IOException if listing any prefix failed; the other prefixes still run to completion
+     */
+    public List<String> list(Collection<String> prefixes) throws IOException, InterruptedException {
+        List<Callable<List<String>>> prefixCallables = new ArrayList<Callable<List<String>>>(prefixes.size());
+        for (final String prefix : prefixes) {
+            prefixCallables.add(new Callable<List<String>>() {
+                @Override public List<String> call() throws Exception {
+                    return lister.list(prefix);
+                }
+            });
+        }
+        List<Future<List<String>>> futures = executorService.invokeAll(prefixCallables);
+        TreeSet<String> keys = new TreeSet<String>();
+        Throwable failure = null;
+        for (Future<List<String>> future : futures) {
+            try {
+                keys.addAll(future.get());
+            } catch (ExecutionException e) {
+                failure = (failure == null ? e.getCause() : failure);
+            }
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw new IOException(failure);
+        }
+        return new ArrayList<String>(keys);
+    }
+
+}
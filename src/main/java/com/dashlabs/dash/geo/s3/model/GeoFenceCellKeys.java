@@ -0,0 +1,44 @@
+package com.dashlabs.dash.geo.s3.model;
+
+import com.dashlabs.dash.geo.fence.GeoFenceCell;
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+
+/**
+ * Converts {@link GeoFenceCell}s to and from object keys laid out as
+ * <code>hashKeyLength/geoHashKey/cellId/interior/fenceId</code>, so that fence cells sort and list by the same
+ * hash key scheme as {@link GeoProperties}.
+ */
+public class GeoFenceCellKeys {
+
+    private static final char SEPARATOR = '/';
+
+    /**
+     * @param cell          the fence cell
+     * @param hashKeyLength the hash key length of the key scheme
+     * @param s2Manager     used to derive the hash key
+     * @return the object key of the cell
+     */
+    public static String toKey(GeoFenceCell cell, int hashKeyLength, S2Manager s2Manager) {
+        return new StringBuilder()
+                .append(hashKeyLength).append(SEPARATOR)
+                .append(cell.getGeoHashKey(s2Manager, hashKeyLength)).append(SEPARATOR)
+                .append(cell.getCellId()).append(SEPARATOR)
+                .append(cell.isInterior() ? '1' : '0').append(SEPARATOR)
+                .append(cell.getFenceId())
+                .toString();
+    }
+
+    /**
+     * @param key an object key created by {@link #toKey(GeoFenceCell, int, S2Manager)}
+     * @return the fence cell
+     */
+    public static GeoFenceCell fromKey(String key) {
+        // the fence id is last so that it may itself contain the separator
+        String[] parts = key.split(String.valueOf(SEPARATOR), 5);
+        if (parts.length != 5) {
+            throw new IllegalArgumentException(String.format("Not a fence cell key [ %s ]", key));
+        }
+        return new GeoFenceCell(parts[4], Long.parseLong(parts[2]), "1".equals(parts[3]));
+    }
+
+}
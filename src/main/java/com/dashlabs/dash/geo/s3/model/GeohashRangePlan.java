@@ -0,0 +1,174 @@
+package com.dashlabs.dash.geo.s3.model;
+
+import com.dashlabs.dash.geo.model.GeohashRange;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A query plan of geohash ranges, each within a single hash key, packed into parallel primitive arrays. Unlike a list of
+ * {@link GeoProperties}, range bounds are exact 64-bit cell ids, and ranges are read by index without allocating.
+ *
+ * Plans serialize to a compact big-endian form for shipping to worker processes:
+ *
+ * <pre>
+ * magic:int version:int hashKeyLength:int size:int
+ * size x (rangeMin:long rangeMax:long hashKey:long)
+ * </pre>
+ */
+public final class GeohashRangePlan {
+
+    static final int MAGIC = 0x47504c4e; // GPLN
+
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 16;
+
+    private static final int RANGE_SIZE = 24;
+
+    private final int hashKeyLength;
+
+    private final long[] rangeMins;
+
+    private final long[] rangeMaxs;
+
+    private final long[] hashKeys;
+
+    /**
+     * Creates a plan backed by the given arrays, which are not copied and must not be modified afterwards.
+     *
+     * @param hashKeyLength the hash key length the plan was generated with
+     * @param rangeMins     the first geohash of every range
+     * @param rangeMaxs     the last geohash of every range
+     * @param hashKeys      the hash key of every range
+     */
+    public GeohashRangePlan(int hashKeyLength, long[] rangeMins, long[] rangeMaxs, long[] hashKeys) {
+        checkArgument(hashKeyLength >= 1, "hashKeyLength must be positive: %s", hashKeyLength);
+        checkArgument(rangeMins != null, "rangeMins must not be null");
+        checkArgument((rangeMaxs != null) && (rangeMaxs.length == rangeMins.length),
+                "rangeMaxs must have as many elements as rangeMins: %s", rangeMins.length);
+        checkArgument((hashKeys != null) && (hashKeys.length == rangeMins.length),
+                "hashKeys must have as many elements as rangeMins: %s", rangeMins.length);
+        this.hashKeyLength = hashKeyLength;
+        this.rangeMins = rangeMins;
+        this.rangeMaxs = rangeMaxs;
+        this.hashKeys = hashKeys;
+    }
+
+    public int getHashKeyLength() {
+        return hashKeyLength;
+    }
+
+    /**
+     * @return the number of ranges
+     */
+    public int size() {
+        return rangeMins.length;
+    }
+
+    public long getRangeMin(int index) {
+        return rangeMins[index];
+    }
+
+    public long getRangeMax(int index) {
+        return rangeMaxs[index];
+    }
+
+    public long getHashKey(int index) {
+        return hashKeys[index];
+    }
+
+    /**
+     * @return the ranges of the plan as {@link GeohashRange}s, in plan order
+     */
+    public List<GeohashRange> toGeohashRanges() {
+        List<GeohashRange> ranges = new ArrayList<GeohashRange>(rangeMins.length);
+        for (int i = 0; i < rangeMins.length; i++) {
+            ranges.add(new GeohashRange(rangeMins[i], rangeMaxs[i]));
+        }
+        return ranges;
+    }
+
+    /**
+     * @return the number of bytes written by {@link #writeTo(ByteBuffer)}
+     */
+    public int getSerializedSize() {
+        return HEADER_SIZE + (rangeMins.length * RANGE_SIZE);
+    }
+
+    /**
+     * Writes the plan at the position of <code>buffer</code>, advancing it by {@link #getSerializedSize()} bytes.
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(hashKeyLength).putInt(rangeMins.length);
+        for (int i = 0; i < rangeMins.length; i++) {
+            buffer.putLong(rangeMins[i]).putLong(rangeMaxs[i]).putLong(hashKeys[i]);
+        }
+    }
+
+    public byte[] toByteArray() {
+        ByteBuffer buffer = ByteBuffer.allocate(getSerializedSize());
+        writeTo(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Reads a plan written by {@link #writeTo(ByteBuffer)} at the position of <code>buffer</code>, advancing it past
+     * the plan.
+     *
+     * @throws IllegalArgumentException if the buffer does not hold a plan
+     */
+    public static GeohashRangePlan readFrom(ByteBuffer buffer) {
+        try {
+            if ((buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION)) {
+                throw new IllegalArgumentException("Not a geohash range plan");
+            }
+            int hashKeyLength = buffer.getInt();
+            int size = buffer.getInt();
+            if ((size < 0) || ((long) size * RANGE_SIZE > buffer.remaining())) {
+                throw new IllegalArgumentException(String.format("Truncated geohash range plan of [ %d ] ranges", size));
+            }
+            long[] rangeMins = new long[size];
+            long[] rangeMaxs = new long[size];
+            long[] hashKeys = new long[size];
+            for (int i = 0; i < size; i++) {
+                rangeMins[i] = buffer.getLong();
+                rangeMaxs[i] = buffer.getLong();
+                hashKeys[i] = buffer.getLong();
+            }
+            return new GeohashRangePlan(hashKeyLength, rangeMins, rangeMaxs, hashKeys);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated geohash range plan", e);
+        }
+    }
+
+    public static GeohashRangePlan fromByteArray(byte[] bytes) {
+        return readFrom(ByteBuffer.wrap(bytes));
+    }
+
+    @Override public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GeohashRangePlan)) {
+            return false;
+        }
+        GeohashRangePlan other = (GeohashRangePlan) o;
+        return (hashKeyLength == other.hashKeyLength) && Arrays.equals(rangeMins, other.rangeMins)
+                && Arrays.equals(rangeMaxs, other.rangeMaxs) && Arrays.equals(hashKeys, other.hashKeys);
+    }
+
+    @Override public int hashCode() {
+        int result = hashKeyLength;
+        result = 31 * result + Arrays.hashCode(rangeMins);
+        result = 31 * result + Arrays.hashCode(rangeMaxs);
+        result = 31 * result + Arrays.hashCode(hashKeys);
+        return result;
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.dashlabs.dash.geo.s3.segment;
+
+/**
+ * Layout of a geo segment file, which stores the points of a single geoHashKey sorted by geohash.
+ *
+ * <pre>
+ * header   magic:int version:int hashKeyLength:int blockSize:int geoHashKey:long recordCount:long
+ *          indexOffset:long payloadOffset:long
+ * records  recordCount x (geohash:long latitude:double longitude:double payloadOffset:long payloadLength:int pad:int)
+ * index    ceil(recordCount / blockSize) x (first geohash of the block:long)
+ * payload  the payload bytes of every record, in record order
+ * </pre>
+ *
+ * All values are big-endian. Record payload offsets are relative to the start of the payload section.
+ */
+final class GeoSegmentFormat {
+
+    static final int MAGIC = 0x47534547; // GSEG
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 48;
+
+    static final int RECORD_SIZE = 40;
+
+    static final int DEFAULT_BLOCK_SIZE = 128;
+
+    static final int GEOHASH_OFFSET = 0;
+
+    static final int LATITUDE_OFFSET = 8;
+
+    static final int LONGITUDE_OFFSET = 16;
+
+    static final int PAYLOAD_OFFSET_OFFSET = 24;
+
+    static final int PAYLOAD_LENGTH_OFFSET = 32;
+
+    private GeoSegmentFormat() { }
+
+}
@@ -0,0 +1,148 @@
+package com.dashlabs.dash.geo.s3.segment;
+
+import com.dashlabs.dash.geo.model.GeohashRange;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.dashlabs.dash.geo.s3.segment.GeoSegmentFormat.*;
+
+/**
+ * Reads a geo segment file (see {@link GeoSegmentFormat}) through a read-only memory mapping. A geohash range is
+ * located with a binary search of the sparse block index followed by a binary search within the block, and is returned
+ * as a zero-copy {@link GeoSegmentSlice} of the mapping.
+ *
+ * Segments are limited to 2GB, the maximum size of a single mapping.
+ */
+public class GeoSegmentReader implements Closeable {
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer mapped;
+
+    private final int hashKeyLength;
+
+    private final int blockSize;
+
+    private final long geoHashKey;
+
+    private final int recordCount;
+
+    private final int blockCount;
+
+    private final int indexOffset;
+
+    private final ByteBuffer payload;
+
+    private GeoSegmentReader(FileChannel channel, MappedByteBuffer mapped) throws IOException {
+        this.channel = channel;
+        this.mapped = mapped;
+        if ((mapped.limit() < HEADER_SIZE) || (mapped.getInt(0) != MAGIC)) {
+            throw new IOException("Not a geo segment");
+        }
+        if (mapped.getInt(4) != VERSION) {
+            throw new IOException(String.format("Unsupported geo segment version [ %d ]", mapped.getInt(4)));
+        }
+        this.hashKeyLength = mapped.getInt(8);
+        this.blockSize = mapped.getInt(12);
+        this.geoHashKey = mapped.getLong(16);
+        this.recordCount = (int) mapped.getLong(24);
+        this.indexOffset = (int) mapped.getLong(32);
+        int payloadOffset = (int) mapped.getLong(40);
+        this.blockCount = (recordCount + blockSize - 1) / blockSize;
+        ByteBuffer payloadView = mapped.duplicate();
+        payloadView.position(payloadOffset);
+        this.payload = payloadView.slice();
+    }
+
+    /**
+     * Opens and maps the segment at <code>path</code>.
+     */
+    public static GeoSegmentReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(String.format("Geo segment [ %s ] is larger than 2GB", path));
+            }
+            return new GeoSegmentReader(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getHashKeyLength() {
+        return hashKeyLength;
+    }
+
+    public long getGeoHashKey() {
+        return geoHashKey;
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return the records of the segment within the given range
+     */
+    public GeoSegmentSlice read(GeohashRange range) {
+        return read(range.getRangeMin(), range.getRangeMax());
+    }
+
+    /**
+     * @param rangeMin the smallest geohash to include
+     * @param rangeMax the largest geohash to include
+     * @return the records of the segment whose geohash is within [rangeMin, rangeMax]
+     */
+    public GeoSegmentSlice read(long rangeMin, long rangeMax) {
+        int from = lowerBound(rangeMin);
+        int to = (rangeMax == Long.MAX_VALUE ? recordCount : lowerBound(rangeMax + 1));
+        if (to <= from) {
+            return new GeoSegmentSlice(ByteBuffer.allocate(0), payload, 0);
+        }
+        ByteBuffer records = mapped.duplicate();
+        records.position(HEADER_SIZE + (from * RECORD_SIZE));
+        records.limit(HEADER_SIZE + (to * RECORD_SIZE));
+        return new GeoSegmentSlice(records.slice(), payload.duplicate(), to - from);
+    }
+
+    /**
+     * @return the index of the first record whose geohash is not less than <code>geohash</code>
+     */
+    private int lowerBound(long geohash) {
+        // find the last block starting before geohash, the first record not less than geohash is in it or starts the next
+        int low = 0;
+        int high = blockCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mapped.getLong(indexOffset + (mid * 8)) < geohash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int block = Math.max(0, low - 1);
+        low = block * blockSize;
+        high = Math.min(recordCount, low + blockSize);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mapped.getLong(HEADER_SIZE + (mid * RECORD_SIZE) + GEOHASH_OFFSET) < geohash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    @Override public void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.dashlabs.dash.geo.s3.segment;
+
+import com.dashlabs.dash.geo.scan.GeoRangeScanner;
+import com.dashlabs.dash.geo.scan.GeoScanPage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link GeoRangeScanner} over the memory-mapped segments of a {@link LocalGeoSegmentStore}. The items are read-only
+ * views of the record payloads and the cursor is the offset of the next record within the range, so a range whose
+ * segment is replaced between two pages may skip or repeat records.
+ */
+public class GeoSegmentScanner implements GeoRangeScanner<ByteBuffer, Integer> {
+
+    private final LocalGeoSegmentStore store;
+
+    private final int hashKeyLength;
+
+    /**
+     * @param hashKeyLength the hash key length of the segments, which must be that of the plans scanned
+     */
+    public GeoSegmentScanner(LocalGeoSegmentStore store, int hashKeyLength) {
+        this.store = store;
+        this.hashKeyLength = hashKeyLength;
+    }
+
+    @Override public GeoScanPage<ByteBuffer, Integer> scan(long geoHashKey, long rangeMin, long rangeMax, Integer cursor, int limit)
+            throws IOException {
+        GeoSegmentReader reader = store.getReader(hashKeyLength, geoHashKey);
+        if (reader == null) {
+            return new GeoScanPage<ByteBuffer, Integer>(Collections.<ByteBuffer>emptyList(), new double[0], new double[0], null);
+        }
+        GeoSegmentSlice slice = reader.read(rangeMin, rangeMax);
+        int from = (cursor == null ? 0 : cursor);
+        int to = (int) Math.min(slice.size(), (long) from + limit);
+        List<ByteBuffer> items = new ArrayList<ByteBuffer>(Math.max(0, to - from));
+        double[] latitudes = new double[Math.max(0, to - from)];
+        double[] longitudes = new double[latitudes.length];
+        for (int i = from; i < to; i++) {
+            items.add(slice.getPayload(i));
+            latitudes[i - from] = slice.getLatitude(i);
+            longitudes[i - from] = slice.getLongitude(i);
+        }
+        return new GeoScanPage<ByteBuffer, Integer>(items, latitudes, longitudes, (to < slice.size() ? Integer.valueOf(to) : null));
+    }
+
+}
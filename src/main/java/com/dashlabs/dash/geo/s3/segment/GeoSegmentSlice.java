@@ -0,0 +1,66 @@
+package com.dashlabs.dash.geo.s3.segment;
+
+import java.nio.ByteBuffer;
+
+import static com.dashlabs.dash.geo.s3.segment.GeoSegmentFormat.*;
+
+/**
+ * A contiguous run of records of a geo segment. The slice is a view of the segment's mapping; no record data is copied.
+ */
+public class GeoSegmentSlice {
+
+    private final ByteBuffer records;
+
+    private final ByteBuffer payload;
+
+    private final int size;
+
+    GeoSegmentSlice(ByteBuffer records, ByteBuffer payload, int size) {
+        this.records = records;
+        this.payload = payload;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getGeohash(int index) {
+        return records.getLong(offset(index) + GEOHASH_OFFSET);
+    }
+
+    public double getLatitude(int index) {
+        return records.getDouble(offset(index) + LATITUDE_OFFSET);
+    }
+
+    public double getLongitude(int index) {
+        return records.getDouble(offset(index) + LONGITUDE_OFFSET);
+    }
+
+    /**
+     * @return a read-only view of the payload of the record at <code>index</code>
+     */
+    public ByteBuffer getPayload(int index) {
+        int start = (int) records.getLong(offset(index) + PAYLOAD_OFFSET_OFFSET);
+        int length = records.getInt(offset(index) + PAYLOAD_LENGTH_OFFSET);
+        ByteBuffer view = payload.asReadOnlyBuffer();
+        view.position(start);
+        view.limit(start + length);
+        return view.slice();
+    }
+
+    /**
+     * @return a read-only view of the raw fixed-width records of this slice
+     */
+    public ByteBuffer getRecords() {
+        return records.asReadOnlyBuffer();
+    }
+
+    private int offset(int index) {
+        if ((index < 0) || (index >= size)) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        return index * RECORD_SIZE;
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.dashlabs.dash.geo.s3.segment;
+
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.dashlabs.dash.geo.s3.segment.GeoSegmentFormat.*;
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Collects the points of a single geoHashKey and writes them as a geo segment file (see {@link GeoSegmentFormat}).
+ */
+public class GeoSegmentWriter {
+
+    private static final byte[] NO_PAYLOAD = new byte[0];
+
+    private final S2Manager s2Manager;
+
+    private final int hashKeyLength;
+
+    private final long geoHashKey;
+
+    private final int blockSize;
+
+    private final List<Record> records = new ArrayList<Record>();
+
+    public GeoSegmentWriter(S2Manager s2Manager, int hashKeyLength, long geoHashKey) {
+        this(s2Manager, hashKeyLength, geoHashKey, DEFAULT_BLOCK_SIZE);
+    }
+
+    public GeoSegmentWriter(S2Manager s2Manager, int hashKeyLength, long geoHashKey, int blockSize) {
+        checkArgument(blockSize > 0, "blockSize must be positive: %s", blockSize);
+        this.s2Manager = s2Manager;
+        this.hashKeyLength = hashKeyLength;
+        this.geoHashKey = geoHashKey;
+        this.blockSize = blockSize;
+    }
+
+    public int getHashKeyLength() {
+        return hashKeyLength;
+    }
+
+    public long getGeoHashKey() {
+        return geoHashKey;
+    }
+
+    /**
+     * Adds a point to the segment.
+     *
+     * @param latitude  the latitude of the point
+     * @param longitude the longitude of the point
+     * @param payload   the bytes stored with the point, may be null
+     * @throws IllegalArgumentException if the point does not belong to this segment's geoHashKey
+     */
+    public void add(double latitude, double longitude, byte[] payload) {
+        long geohash = s2Manager.generateGeohash(latitude, longitude);
+        long pointGeoHashKey = s2Manager.generateHashKey(geohash, hashKeyLength);
+        if (pointGeoHashKey != geoHashKey) {
+            throw new IllegalArgumentException(String.format("Point [ %f, %f ] has geoHashKey [ %d ] not [ %d ]", latitude, longitude,
+                    pointGeoHashKey, geoHashKey));
+        }
+        records.add(new Record(geohash, latitude, longitude, (payload == null ? NO_PAYLOAD : payload)));
+    }
+
+    /**
+     * Writes the segment to <code>path</code>, replacing any existing file.
+     */
+    public void writeTo(Path path) throws IOException {
+        List<Record> sorted = new ArrayList<Record>(records);
+        Collections.sort(sorted, new Comparator<Record>() {
+            @Override public int compare(Record left, Record right) {
+                return Long.compare(left.geohash, right.geohash);
+            }
+        });
+        int blocks = (sorted.size() + blockSize - 1) / blockSize;
+        long indexOffset = HEADER_SIZE + ((long) sorted.size() * RECORD_SIZE);
+        long payloadOffset = indexOffset + ((long) blocks * 8);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(hashKeyLength).putInt(blockSize).putLong(geoHashKey)
+                    .putLong(sorted.size()).putLong(indexOffset).putLong(payloadOffset);
+            header.flip();
+            writeFully(channel, header);
+
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * blockSize);
+            long relativePayloadOffset = 0L;
+            for (Record record : sorted) {
+                buffer.putLong(record.geohash).putDouble(record.latitude).putDouble(record.longitude)
+                        .putLong(relativePayloadOffset).putInt(record.payload.length).putInt(0);
+                relativePayloadOffset += record.payload.length;
+                if (!buffer.hasRemaining()) {
+                    buffer.flip();
+                    writeFully(channel, buffer);
+                    buffer.clear();
+                }
+            }
+            buffer.flip();
+            writeFully(channel, buffer);
+
+            ByteBuffer index = ByteBuffer.allocate(blocks * 8);
+            for (int block = 0; block < blocks; block++) {
+                index.putLong(sorted.get(block * blockSize).geohash);
+            }
+            index.flip();
+            writeFully(channel, index);
+
+            for (Record record : sorted) {
+                writeFully(channel, ByteBuffer.wrap(record.payload));
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static class Record {
+        private final long geohash;
+        private final double latitude;
+        private final double longitude;
+        private final byte[] payload;
+
+        private Record(long geohash, double latitude, double longitude, byte[] payload) {
+            this.geohash = geohash;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.payload = payload;
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.dashlabs.dash.geo.s3.segment;
+
+import com.dashlabs.dash.geo.model.GeohashRange;
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+import com.dashlabs.dash.geo.s3.model.GeohashRangePlan;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Stores geo segments on the local filesystem as <code>root/hashKeyLength/geoHashKey.seg</code> and reads the ranges of
+ * a query plan from them.
+ */
+public class LocalGeoSegmentStore implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path root;
+
+    private final S2Manager s2Manager;
+
+    private final ConcurrentMap<Path, GeoSegmentReader> readers = new ConcurrentHashMap<Path, GeoSegmentReader>();
+
+    public LocalGeoSegmentStore(Path root, S2Manager s2Manager) {
+        this.root = root;
+        this.s2Manager = s2Manager;
+    }
+
+    /**
+     * Writes (or replaces) the segment of the writer's geoHashKey.
+     */
+    public void write(GeoSegmentWriter writer) throws IOException {
+        Path path = getPath(writer.getHashKeyLength(), writer.getGeoHashKey());
+        Files.createDirectories(path.getParent());
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        writer.writeTo(temporary);
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        GeoSegmentReader stale = readers.remove(path);
+        if (stale != null) {
+            stale.close();
+        }
+    }
+
+    /**
+     * Reads every range of a plan. Each range must lie within a single hash key, as is the case for the ranges of
+     * {@link com.dashlabs.dash.geo.s3.GeoQueryHelper#generateGeohashRanges(com.google.common.geometry.S2LatLngRect, int)}.
+     *
+     * @param hashKeyLength the hash key length the plan was generated with
+     * @param ranges        the ranges of the plan
+     * @return one slice per range which has a segment, in plan order
+     */
+    public List<GeoSegmentSlice> read(int hashKeyLength, List<GeohashRange> ranges) throws IOException {
+        List<GeoSegmentSlice> slices = new ArrayList<GeoSegmentSlice>(ranges.size());
+        for (GeohashRange range : ranges) {
+            GeoSegmentReader reader = getReader(hashKeyLength, s2Manager.generateHashKey(range.getRangeMin(), hashKeyLength));
+            if (reader != null) {
+                slices.add(reader.read(range));
+            }
+        }
+        return slices;
+    }
+
+    /**
+     * Reads every range of a packed plan, using the hash keys it carries.
+     *
+     * @param plan the plan
+     * @return one slice per range which has a segment, in plan order
+     */
+    public List<GeoSegmentSlice> read(GeohashRangePlan plan) throws IOException {
+        List<GeoSegmentSlice> slices = new ArrayList<GeoSegmentSlice>(plan.size());
+        for (int i = 0; i < plan.size(); i++) {
+            GeoSegmentReader reader = getReader(plan.getHashKeyLength(), plan.getHashKey(i));
+            if (reader != null) {
+                slices.add(reader.read(plan.getRangeMin(i), plan.getRangeMax(i)));
+            }
+        }
+        return slices;
+    }
+
+    /**
+     * @return the reader of the segment of <code>geoHashKey</code>, or null if there is no such segment
+     */
+    public GeoSegmentReader getReader(int hashKeyLength, long geoHashKey) throws IOException {
+        Path path = getPath(hashKeyLength, geoHashKey);
+        GeoSegmentReader reader = readers.get(path);
+        if ((reader != null) || !Files.exists(path)) {
+            return reader;
+        }
+        reader = GeoSegmentReader.open(path);
+        GeoSegmentReader existing = readers.putIfAbsent(path, reader);
+        if (existing != null) {
+            reader.close();
+            return existing;
+        }
+        return reader;
+    }
+
+    private Path getPath(int hashKeyLength, long geoHashKey) {
+        return root.resolve(String.valueOf(hashKeyLength)).resolve(geoHashKey + SEGMENT_SUFFIX);
+    }
+
+    @Override public void close() throws IOException {
+        for (GeoSegmentReader reader : readers.values()) {
+            reader.close();
+        }
+        readers.clear();
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.dashlabs.dash.geo.scan;
+
+import com.dashlabs.dash.geo.model.filters.GeoPredicate;
+import com.dashlabs.dash.geo.s3.model.GeohashRangePlan;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Executes a {@link GeohashRangePlan} over any {@link GeoRangeScanner}, e.g. DynamoDB, an embedded
+ * {@link SkipListGeoStore} or local geo segments. Every range of the plan is read page by page as a task on the executor
+ * and the items of each page are filtered by the exact geometric predicate of the query.
+ *
+ * @param <T> the type of the items
+ * @param <C> the type of the cursor of the scanner
+ */
+public class GeoRangeScanExecutor<T, C> {
+
+    public static final String METRIC_PREFIX = "geo.scan.";
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * The default maximum number of ranges of a limited execution read at a time
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 32;
+
+    private final GeoRangeScanner<T, C> scanner;
+
+    private final ExecutorService executorService;
+
+    private final int pageSize;
+
+    private final AtomicLong ranges = new AtomicLong();
+
+    private final AtomicLong pages = new AtomicLong();
+
+    private final AtomicLong scanned = new AtomicLong();
+
+    private final AtomicLong matched = new AtomicLong();
+
+    public GeoRangeScanExecutor(GeoRangeScanner<T, C> scanner, ExecutorService executorService) {
+        this(scanner, executorService, DEFAULT_PAGE_SIZE);
+    }
+
+    public GeoRangeScanExecutor(GeoRangeScanner<T, C> scanner, ExecutorService executorService, int pageSize) {
+        checkArgument(scanner != null, "scanner must not be null");
+        checkArgument(executorService != null, "executorService must not be null");
+        checkArgument(pageSize >= 1, "pageSize must be positive: %s", pageSize);
+        this.scanner = scanner;
+        this.executorService = executorService;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return an immutable collection of the items of the plan accepted by the <code>predicate</code>, in plan order
+     */
+    public List<T> execute(GeohashRangePlan plan, GeoPredicate predicate) throws InterruptedException, ExecutionException {
+        return execute(plan, predicate, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Executes the plan with at most {@link #DEFAULT_MAX_IN_FLIGHT} ranges read at a time until <code>limit</code> items
+     * are accepted by the <code>predicate</code>.
+     *
+     * @see #execute(GeohashRangePlan, GeoPredicate, int, int)
+     */
+    public List<T> execute(GeohashRangePlan plan, GeoPredicate predicate, int limit)
+            throws InterruptedException, ExecutionException {
+        return execute(plan, predicate, limit, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Executes the plan until the ranges completed first in plan order hold <code>limit</code> items accepted by the
+     * <code>predicate</code>, as {@link PlanOrderExecutor#execute} does.
+     *
+     * @param maxInFlight the maximum number of ranges read at a time
+     * @return an immutable collection of at most <code>limit</code> accepted items, the items of earlier ranges first
+     */
+    public List<T> execute(final GeohashRangePlan plan, final GeoPredicate predicate, final int limit, int maxInFlight)
+            throws InterruptedException, ExecutionException {
+        return PlanOrderExecutor.execute(executorService, plan.size(), new PlanOrderExecutor.RangeReader<T>() {
+            @Override public List<T> read(int index, PrefixCounts resultCounts) throws Exception {
+                return scanRange(plan.getHashKey(index), plan.getRangeMin(index), plan.getRangeMax(index), predicate, resultCounts,
+                        index, limit);
+            }
+        }, limit, maxInFlight);
+    }
+
+    private List<T> scanRange(long geoHashKey, long rangeMin, long rangeMax, GeoPredicate predicate, PrefixCounts resultCounts,
+                              int index, int limit) throws Exception {
+        ranges.incrementAndGet();
+        List<T> items = new ArrayList<T>();
+        C cursor = null;
+        do {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            GeoScanPage<T, C> page = scanner.scan(geoHashKey, rangeMin, rangeMax, cursor, pageSize);
+            pages.incrementAndGet();
+            scanned.addAndGet(page.size());
+            int accepted = 0;
+            for (int i = 0; i < page.size(); i++) {
+                if (predicate.accept(page.getLatitude(i), page.getLongitude(i))) {
+                    items.add(page.getItem(i));
+                    accepted++;
+                }
+            }
+            matched.addAndGet(accepted);
+            resultCounts.add(index, accepted);
+            cursor = page.getNextCursor();
+        } while ((cursor != null) && !PlanOrderExecutor.isComplete(resultCounts, index, limit));
+        return items;
+    }
+
+    /**
+     * @return the ranges, pages and items read and the items accepted since this executor was created
+     */
+    public Map<String, Double> toMetrics() {
+        ImmutableMap.Builder<String, Double> metrics = ImmutableMap.builder();
+        metrics.put(METRIC_PREFIX + "ranges", (double) ranges.get());
+        metrics.put(METRIC_PREFIX + "pages", (double) pages.get());
+        metrics.put(METRIC_PREFIX + "scanned", (double) scanned.get());
+        metrics.put(METRIC_PREFIX + "matched", (double) matched.get());
+        return metrics.build();
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.dashlabs.dash.geo.scan;
+
+import java.io.IOException;
+
+/**
+ * The storage backend of a {@link GeoRangeScanExecutor}: reads the items of one range of a query plan, a page at a time.
+ * Implementations only have to return the items stored under <code>geoHashKey</code> whose geohash is within
+ * <code>[rangeMin, rangeMax]</code>; filtering, batching, limits and metrics are left to the executor.
+ *
+ * @param <T> the type of the items
+ * @param <C> the type of the cursor resuming a range after a page, opaque to the executor
+ */
+public interface GeoRangeScanner<T, C> {
+
+    /**
+     * @param geoHashKey the hash key of the range
+     * @param rangeMin   the smallest geohash of the range
+     * @param rangeMax   the largest geohash of the range
+     * @param cursor     the cursor of the previous page of the range, or null for the first page
+     * @param limit      the maximum number of items to return
+     * @return the next page of the range; its cursor is null if it is the last page
+     */
+    GeoScanPage<T, C> scan(long geoHashKey, long rangeMin, long rangeMax, C cursor, int limit) throws IOException;
+
+}
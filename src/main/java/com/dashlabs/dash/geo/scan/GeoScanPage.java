@@ -0,0 +1,57 @@
+package com.dashlabs.dash.geo.scan;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A page of items read by a {@link GeoRangeScanner}, with the coordinates of every item in parallel primitive arrays so
+ * the executor can filter them without knowing the item type. Items without coordinates have <code>NaN</code> ones,
+ * which no predicate accepts.
+ *
+ * @param <T> the type of the items
+ * @param <C> the type of the cursor
+ */
+public class GeoScanPage<T, C> {
+
+    private final List<T> items;
+
+    private final double[] latitudes;
+
+    private final double[] longitudes;
+
+    private final C nextCursor;
+
+    public GeoScanPage(List<T> items, double[] latitudes, double[] longitudes, C nextCursor) {
+        checkArgument(latitudes.length == items.size(), "latitudes must have as many elements as items: %s", latitudes.length);
+        checkArgument(longitudes.length == items.size(), "longitudes must have as many elements as items: %s", longitudes.length);
+        this.items = items;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.nextCursor = nextCursor;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public T getItem(int index) {
+        return items.get(index);
+    }
+
+    public double getLatitude(int index) {
+        return latitudes[index];
+    }
+
+    public double getLongitude(int index) {
+        return longitudes[index];
+    }
+
+    /**
+     * @return the cursor of the next page, or null if this is the last page of the range
+     */
+    public C getNextCursor() {
+        return nextCursor;
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.dashlabs.dash.geo.scan;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Reads the ranges of a plan in plan order until the ranges completed first hold a given number of items, the engine of
+ * the limited executions of both {@link GeoRangeScanExecutor} and the DynamoDB query client.
+ */
+public final class PlanOrderExecutor {
+
+    private PlanOrderExecutor() { }
+
+    /**
+     * Reads one range of a plan.
+     *
+     * @param <T> the type of the items
+     */
+    public interface RangeReader<T> {
+
+        /**
+         * Reads the range at <code>index</code>, adding the items found by each page to <code>resultCounts</code> at
+         * <code>index</code>. A range stops paging once {@link #isComplete} holds for it.
+         *
+         * @return the items found in the range
+         */
+        List<T> read(int index, PrefixCounts resultCounts) throws Exception;
+
+    }
+
+    /**
+     * @return whether the range at <code>index</code> and the ranges before it have found <code>limit</code> items
+     */
+    public static boolean isComplete(PrefixCounts resultCounts, int index, int limit) {
+        return resultCounts.sumBefore(index + 1) >= limit;
+    }
+
+    /**
+     * Reads the <code>size</code> ranges of a plan with the <code>reader</code> until the ranges completed first in plan
+     * order hold <code>limit</code> items. Ranges are submitted in plan order with at most <code>maxInFlight</code> read
+     * at a time; one not yet started is skipped once the ranges before it have found <code>limit</code> items, and the
+     * ranges in flight after the completed prefix are then cancelled. A slow range near the start of the plan is thus read
+     * to the end even if later ranges complete first.
+     *
+     * @param maxInFlight the maximum number of ranges read at a time
+     * @return an immutable collection of at most <code>limit</code> items, the items of earlier ranges first
+     */
+    public static <T> List<T> execute(ExecutorService executorService, int size, final RangeReader<T> reader, int limit,
+                                      int maxInFlight) throws InterruptedException, ExecutionException {
+        checkArgument(limit >= 1, "limit must be positive: %s", limit);
+        checkArgument(maxInFlight >= 1, "maxInFlight must be positive: %s", maxInFlight);
+        // items found so far by each range, running or not, by which ranges decide whether to read further pages
+        final PrefixCounts resultCounts = new PrefixCounts(size);
+        CompletionService<List<T>> completionService = new ExecutorCompletionService<List<T>>(executorService);
+        Map<Future<List<T>>, Integer> inFlight = new HashMap<Future<List<T>>, Integer>(Math.min(maxInFlight, size));
+        List<List<T>> resultsByRange = new ArrayList<List<T>>(Collections.<List<T>>nCopies(size, null));
+        int next = 0;
+        // the number of leading ranges completed and the items they hold
+        int completedPrefix = 0;
+        int prefixCount = 0;
+        try {
+            while ((prefixCount < limit) && (completedPrefix < size)) {
+                while ((inFlight.size() < maxInFlight) && (next < size) && (resultCounts.sumBefore(next) < limit)) {
+                    final int index = next++;
+                    inFlight.put(completionService.submit(new Callable<List<T>>() {
+                        @Override public List<T> call() throws Exception {
+                            return reader.read(index, resultCounts);
+                        }
+                    }), index);
+                }
+                if (inFlight.isEmpty()) {
+                    break;
+                }
+                Future<List<T>> completed = completionService.take();
+                resultsByRange.set(inFlight.remove(completed), completed.get());
+                while ((completedPrefix < size) && (resultsByRange.get(completedPrefix) != null)) {
+                    prefixCount += resultsByRange.get(completedPrefix++).size();
+                }
+            }
+        } finally {
+            for (Future<List<T>> future : inFlight.keySet()) {
+                future.cancel(true);
+            }
+        }
+        ImmutableList.Builder<T> results = ImmutableList.builder();
+        int remaining = limit;
+        for (int i = 0; (i < completedPrefix) && (remaining > 0); i++) {
+            List<T> items = resultsByRange.get(i);
+            List<T> taken = items.subList(0, Math.min(remaining, items.size()));
+            results.addAll(taken);
+            remaining -= taken.size();
+        }
+        return results.build();
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.dashlabs.dash.geo.scan;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The number of items found so far by each query or range of a plan, kept as a Fenwick tree so that adding to one and
+ * summing those before one both take O(log n) rather than O(n). Counts only grow, hence a sum read while queries add to
+ * theirs lies between the sums at the start and at the end of the read.
+ */
+public final class PrefixCounts {
+
+    private final AtomicIntegerArray tree;
+
+    public PrefixCounts(int size) {
+        this.tree = new AtomicIntegerArray(size + 1);
+    }
+
+    /**
+     * Adds <code>count</code> items to the query at <code>index</code>.
+     */
+    public void add(int index, int count) {
+        if (count == 0) {
+            return;
+        }
+        for (int i = index + 1; i < tree.length(); i += (i & -i)) {
+            tree.addAndGet(i, count);
+        }
+    }
+
+    /**
+     * @return the number of items found so far by the queries before <code>index</code>
+     */
+    public int sumBefore(int index) {
+        int sum = 0;
+        for (int i = index; i > 0; i -= (i & -i)) {
+            sum += tree.get(i);
+        }
+        return sum;
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.dashlabs.dash.geo.scan;
+
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * An embedded geo store of items sorted by geohash in a {@link ConcurrentSkipListMap}, e.g. a local replica of the hot
+ * regions of a table. Reads never block and see every write completed before they started; writes of the same id must
+ * not run concurrently.
+ *
+ * @param <T> the type of the items
+ */
+public class SkipListGeoStore<T> implements GeoRangeScanner<T, SkipListGeoStore.Key> {
+
+    private final S2Manager s2Manager;
+
+    private final ConcurrentSkipListMap<Key, Entry<T>> entries = new ConcurrentSkipListMap<Key, Entry<T>>();
+
+    private final ConcurrentMap<Long, Key> keysById = new ConcurrentHashMap<Long, Key>();
+
+    public SkipListGeoStore() {
+        this(new S2Manager());
+    }
+
+    public SkipListGeoStore(S2Manager s2Manager) {
+        this.s2Manager = s2Manager;
+    }
+
+    /**
+     * Adds the item, replacing (and moving) any item previously stored under <code>id</code>.
+     */
+    public void put(long id, double latitude, double longitude, T item) {
+        Key key = new Key(s2Manager.generateGeohash(latitude, longitude), id);
+        entries.put(key, new Entry<T>(latitude, longitude, item));
+        Key previous = keysById.put(id, key);
+        if ((previous != null) && !previous.equals(key)) {
+            entries.remove(previous);
+        }
+    }
+
+    /**
+     * @return true if an item was stored under <code>id</code>
+     */
+    public boolean remove(long id) {
+        Key key = keysById.remove(id);
+        return (key != null) && (entries.remove(key) != null);
+    }
+
+    public int size() {
+        return keysById.size();
+    }
+
+    /**
+     * Ranges are contiguous in geohash order, so the hash key is not needed.
+     */
+    @Override public GeoScanPage<T, Key> scan(long geoHashKey, long rangeMin, long rangeMax, Key cursor, int limit) {
+        ConcurrentNavigableMap<Key, Entry<T>> range = (cursor == null
+                ? entries.subMap(new Key(rangeMin, Long.MIN_VALUE), true, new Key(rangeMax, Long.MAX_VALUE), true)
+                : entries.subMap(cursor, false, new Key(rangeMax, Long.MAX_VALUE), true));
+        List<T> items = new ArrayList<T>(Math.min(limit, 16));
+        double[] latitudes = new double[Math.min(limit, 16)];
+        double[] longitudes = new double[latitudes.length];
+        Key last = null;
+        Iterator<Map.Entry<Key, Entry<T>>> iterator = range.entrySet().iterator();
+        while ((items.size() < limit) && iterator.hasNext()) {
+            Map.Entry<Key, Entry<T>> entry = iterator.next();
+            if (items.size() == latitudes.length) {
+                latitudes = Arrays.copyOf(latitudes, latitudes.length * 2);
+                longitudes = Arrays.copyOf(longitudes, latitudes.length);
+            }
+            latitudes[items.size()] = entry.getValue().latitude;
+            longitudes[items.size()] = entry.getValue().longitude;
+            items.add(entry.getValue().item);
+            last = entry.getKey();
+        }
+        return new GeoScanPage<T, Key>(items, Arrays.copyOf(latitudes, items.size()),
+                Arrays.copyOf(longitudes, items.size()), (iterator.hasNext() ? last : null));
+    }
+
+    /**
+     * The position of an item in the store: its geohash, then its id.
+     */
+    public static final class Key implements Comparable<Key> {
+
+        private final long geohash;
+
+        private final long id;
+
+        private Key(long geohash, long id) {
+            this.geohash = geohash;
+            this.id = id;
+        }
+
+        public long getGeohash() {
+            return geohash;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        @Override public int compareTo(Key other) {
+            int result = Long.compare(geohash, other.geohash);
+            return (result != 0 ? result : Long.compare(id, other.id));
+        }
+
+        @Override public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return (geohash == other.geohash) && (id == other.id);
+        }
+
+        @Override public int hashCode() {
+            return 31 * (int) (geohash ^ (geohash >>> 32)) + (int) (id ^ (id >>> 32));
+        }
+
+    }
+
+    private static final class Entry<T> {
+
+        private final double latitude;
+
+        private final double longitude;
+
+        private final T item;
+
+        private Entry(double latitude, double longitude, T item) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.item = item;
+        }
+
+    }
+
+}
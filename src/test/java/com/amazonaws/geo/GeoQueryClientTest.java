@@ -1,23 +1,35 @@
 package com.amazonaws.geo;
 
+import com.amazonaws.geo.model.GeoBatchQueryRequest;
 import com.amazonaws.geo.model.GeoQueryRequest;
 import com.amazonaws.geo.s2.internal.GeoQueryClient;
+import com.amazonaws.geo.s2.internal.HedgingPolicy;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.QueryRequest;
 import com.amazonaws.services.dynamodbv2.model.QueryResult;
 import com.dashlabs.dash.geo.model.filters.GeoFilter;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -85,4 +97,140 @@ public class GeoQueryClientTest {
             executorService.shutdown();
         }
     }
+
+    @Test @SuppressWarnings("unchecked")
+    public void executeBatch() {
+        AmazonDynamoDBClient dbClient = mock(AmazonDynamoDBClient.class);
+        GeoFilter<Map<String, AttributeValue>> firstFilter = mock(GeoFilter.class);
+        GeoFilter<Map<String, AttributeValue>> secondFilter = mock(GeoFilter.class);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        GeoQueryClient geoQueryClient = new GeoQueryClient(dbClient, executorService);
+
+        QueryRequest query1 = new QueryRequest().withLimit(5);
+        QueryRequest query2 = new QueryRequest().withLimit(10);
+
+        Map<String, AttributeValue> item1 = new HashMap<String, AttributeValue>();
+        item1.put("title", new AttributeValue().withS("Milk Bar"));
+        Map<String, AttributeValue> item2 = new HashMap<String, AttributeValue>();
+        item2.put("title", new AttributeValue().withS("Chuko"));
+        List<Map<String, AttributeValue>> resultItems1 = Collections.singletonList(item1);
+        List<Map<String, AttributeValue>> resultItems2 = Collections.singletonList(item2);
+        when(dbClient.query(query1)).thenReturn(new QueryResult().withItems(resultItems1));
+        when(dbClient.query(query2)).thenReturn(new QueryResult().withItems(resultItems2));
+
+        // the first center accepts both items, the second only the item of the second query
+        when(firstFilter.filter(resultItems1)).thenReturn(resultItems1);
+        when(firstFilter.filter(resultItems2)).thenReturn(resultItems2);
+        when(secondFilter.filter(resultItems1)).thenReturn(Collections.<Map<String, AttributeValue>>emptyList());
+        when(secondFilter.filter(resultItems2)).thenReturn(resultItems2);
+
+        GeoBatchQueryRequest request = new GeoBatchQueryRequest(Arrays.asList(query1, query2), Arrays.asList(firstFilter, secondFilter));
+        try {
+            List<List<Map<String, AttributeValue>>> results = geoQueryClient.execute(request);
+            assertEquals(2, results.size());
+            assertEquals(2, results.get(0).size());
+            assertEquals(Collections.singletonList(item2), results.get(1));
+            verify(dbClient, times(1)).query(query1);
+            verify(dbClient, times(1)).query(query2);
+        } catch (InterruptedException | ExecutionException ie) {
+            fail("error occurred while executing the queries");
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void executeWithLimit() throws Exception {
+        AmazonDynamoDBClient dbClient = mock(AmazonDynamoDBClient.class);
+        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        GeoQueryClient geoQueryClient = new GeoQueryClient(dbClient, executorService);
+        final Map<String, AttributeValue> lastEvaluatedKey = Collections.singletonMap("id", new AttributeValue().withS("near1"));
+        final AtomicInteger nearPages = new AtomicInteger();
+        // the farther queries have found their items before the first page of the nearest one returns
+        final CountDownLatch fartherFiltered = new CountDownLatch(2);
+        // the nearest query has two pages, the farther ones complete at once with two items each
+        when(dbClient.query(any(QueryRequest.class))).thenAnswer(new Answer<QueryResult>() {
+            @Override public QueryResult answer(InvocationOnMock invocation) throws Throwable {
+                QueryRequest queryRequest = (QueryRequest) invocation.getArguments()[0];
+                String name = queryRequest.getTableName();
+                if (!"near".equals(name)) {
+                    return new QueryResult().withItems(Arrays.asList(item(name + "1"), item(name + "2")));
+                }
+                nearPages.incrementAndGet();
+                assertTrue(fartherFiltered.await(10, TimeUnit.SECONDS));
+                return (queryRequest.getExclusiveStartKey() == null
+                        ? new QueryResult().withItems(Collections.singletonList(item("near1"))).withLastEvaluatedKey(lastEvaluatedKey)
+                        : new QueryResult().withItems(Collections.singletonList(item("near2"))));
+            }
+        });
+        GeoFilter<Map<String, AttributeValue>> geoFilter = new GeoFilter<Map<String, AttributeValue>>() {
+            @Override public List<Map<String, AttributeValue>> filter(Collection<Map<String, AttributeValue>> items) {
+                if (!items.iterator().next().get("title").getS().startsWith("near")) {
+                    fartherFiltered.countDown();
+                }
+                return new ArrayList<Map<String, AttributeValue>>(items);
+            }
+        };
+        List<QueryRequest> queryRequests = Arrays.asList(new QueryRequest().withTableName("near"),
+                new QueryRequest().withTableName("middle"), new QueryRequest().withTableName("far"));
+        try {
+            List<Map<String, AttributeValue>> results = geoQueryClient.execute(new GeoQueryRequest(queryRequests, geoFilter), 2, 3);
+            // the farther queries completing first neither cancel nor stop the paging of the nearest
+            assertEquals(Arrays.asList(item("near1"), item("near2")), results);
+            assertEquals(2, nearPages.get());
+
+            results = geoQueryClient.execute(new GeoQueryRequest(queryRequests, geoFilter), 3, 3);
+            assertEquals(Arrays.asList(item("near1"), item("near2"), item("middle1")), results);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private static Map<String, AttributeValue> item(String title) {
+        return Collections.singletonMap("title", new AttributeValue().withS(title));
+    }
+
+    @Test @SuppressWarnings("unchecked")
+    public void executeHedged() throws Exception {
+        AmazonDynamoDBClient dbClient = mock(AmazonDynamoDBClient.class);
+        GeoFilter<Map<String, AttributeValue>> geoFilter = mock(GeoFilter.class);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        ExecutorService hedgeExecutorService = Executors.newCachedThreadPool();
+        HedgingPolicy hedgingPolicy = new HedgingPolicy.Builder().minSamples(0).minDelayMillis(20).maxHedgeRatio(1.0d).build();
+        GeoQueryClient geoQueryClient = new GeoQueryClient(dbClient, executorService, hedgeExecutorService, hedgingPolicy);
+
+        QueryRequest query = new QueryRequest().withLimit(5);
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("title", new AttributeValue().withS("Milk Bar"));
+        final List<Map<String, AttributeValue>> resultItems = Collections.singletonList(item);
+        // the first page stalls until the query has returned, its hedge returns at once
+        final CountDownLatch queryReturned = new CountDownLatch(1);
+        when(dbClient.query(query)).thenAnswer(new Answer<QueryResult>() {
+            private final AtomicBoolean first = new AtomicBoolean(true);
+
+            @Override public QueryResult answer(InvocationOnMock invocation) throws Throwable {
+                if (first.getAndSet(false)) {
+                    queryReturned.await();
+                }
+                return new QueryResult().withItems(resultItems);
+            }
+        });
+        when(geoFilter.filter(resultItems)).thenReturn(resultItems);
+
+        try {
+            List<Map<String, AttributeValue>> results = geoQueryClient.execute(new GeoQueryRequest(Collections.singletonList(query), geoFilter));
+            queryReturned.countDown();
+            assertEquals(resultItems, results);
+            assertEquals(1, hedgingPolicy.getRequestCount());
+            assertEquals(1, hedgingPolicy.getHedgeCount());
+            assertEquals(1, hedgingPolicy.getHedgeWinCount());
+            assertEquals(1.0d, hedgingPolicy.toMetrics().get(HedgingPolicy.METRIC_PREFIX + "hedgeRate"), 0.0d);
+            // the page won by the hedge is recorded as taking at least the hedge delay, so the delay does not drift down
+            assertTrue(hedgingPolicy.toMetrics().get(HedgingPolicy.METRIC_PREFIX + "delayMillis") > 20.0d);
+        } finally {
+            queryReturned.countDown();
+            executorService.shutdown();
+            hedgeExecutorService.shutdownNow();
+        }
+    }
 }
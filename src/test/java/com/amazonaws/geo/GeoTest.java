@@ -1,17 +1,32 @@
 package com.amazonaws.geo;
 
+import com.amazonaws.geo.model.GeoBatchQueryRequest;
+import com.amazonaws.geo.model.GeoHeatmapQueryRequest;
+import com.amazonaws.geo.model.GeoPointQueryRequest;
 import com.amazonaws.geo.model.GeoQueryRequest;
+import com.amazonaws.geo.model.GeoRadiusQuery;
+import com.amazonaws.geo.model.GeoUpdateItemRequest;
+import com.amazonaws.geo.model.StreamingGeoQueryRequest;
 import com.amazonaws.services.dynamodbv2.model.*;
+import com.dashlabs.dash.geo.GeoPlanListener;
+import com.dashlabs.dash.geo.model.GeoPlanReport;
 import com.dashlabs.dash.geo.s2.internal.S2Manager;
 import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2CellUnion;
 import com.google.common.geometry.S2LatLng;
 import com.google.common.geometry.S2LatLngRect;
+import com.google.common.geometry.S2RegionCoverer;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -187,6 +202,28 @@ public class GeoTest {
         verifyNoMoreInteractions(s2Manager);
     }
 
+    @Test
+    public void getItemsQuery() {
+        Geo geo = new Geo();
+        GeoConfig config = createTestConfig(false, null);
+        QueryRequest query = new QueryRequest().withTableName("TableWithSomeData");
+        List<S2LatLng> points = Arrays.asList(S2LatLng.fromDegrees(40.727526, -73.994451), S2LatLng.fromDegrees(40.727527, -73.994452),
+                S2LatLng.fromDegrees(40.727528, -73.994450), S2LatLng.fromDegrees(38.114560, -117.270763));
+
+        GeoPointQueryRequest pointQueryRequest = geo.getItemsQuery(query, points, config, Optional.<String>absent());
+        assertEquals(4, pointQueryRequest.getPointsByGeohash().size());
+        assertEquals(2, pointQueryRequest.getQueryRequests().size());
+        int betweenQueries = 0;
+        for (QueryRequest queryRequest : pointQueryRequest.getQueryRequests()) {
+            assertEquals(query.getTableName(), queryRequest.getTableName());
+            if (ComparisonOperator.BETWEEN.toString().equals(
+                    queryRequest.getKeyConditions().get(config.getGeoHashColumn()).getComparisonOperator())) {
+                betweenQueries++;
+            }
+        }
+        assertEquals(1, betweenQueries);
+    }
+
     @Test
     public void radiusQueryInvalidRadius() {
         Geo geo = new Geo();
@@ -225,6 +262,326 @@ public class GeoTest {
         verifyNoMoreInteractions(s2Manager, geoQueryHelper);
     }
 
+    @Test
+    public void batchRadiusQuery() {
+        Geo geo = new Geo();
+        GeoConfig config = createTestConfig(false, null);
+        QueryRequest query = new QueryRequest().withTableName("TableWithSomeData");
+        GeoRadiusQuery first = new GeoRadiusQuery(40.7275, -73.9944, 1000);
+        GeoRadiusQuery second = new GeoRadiusQuery(40.7280, -73.9950, 1000);
+
+        int firstQueries = geo.radiusQuery(query, first.getLatitude(), first.getLongitude(), first.getRadius(), config,
+                Optional.<String>absent()).getQueryRequests().size();
+        int secondQueries = geo.radiusQuery(query, second.getLatitude(), second.getLongitude(), second.getRadius(), config,
+                Optional.<String>absent()).getQueryRequests().size();
+        GeoBatchQueryRequest batch = geo.batchRadiusQuery(query, Arrays.asList(first, second), config, Optional.<String>absent());
+        assertEquals(2, batch.getResultFilters().size());
+        assertFalse(batch.getQueryRequests().isEmpty());
+        assertTrue(batch.getQueryRequests().size() < firstQueries + secondQueries);
+    }
+
+    @Test
+    public void planReport() {
+        S2Manager s2Manager = new S2Manager();
+        GeoQueryHelper geoQueryHelper = new GeoQueryHelper(s2Manager);
+        final List<GeoPlanReport> reports = new ArrayList<GeoPlanReport>();
+        geoQueryHelper.setPlanListener(new GeoPlanListener() {
+            @Override public void onPlan(GeoPlanReport report) {
+                reports.add(report);
+            }
+        });
+        Geo geo = new Geo(s2Manager, geoQueryHelper);
+        GeoConfig config = createTestConfig(false, null);
+        GeoQueryRequest request = geo.radiusQuery(new QueryRequest().withTableName("TableWithSomeData"), 40.7275, -73.9944, 5000,
+                config, Optional.<String>absent());
+
+        assertEquals(1, reports.size());
+        GeoPlanReport report = reports.get(0);
+        assertEquals(request.getQueryRequests().size(), report.getSplitRangeCount());
+        assertTrue(report.getMergedRangeCount() <= report.getCellCount());
+        assertTrue(report.getMergedRangeCount() <= report.getSplitRangeCount());
+        assertTrue(report.getDistinctHashKeyCount() <= report.getSplitRangeCount());
+        assertEquals(config.getGeoHashKeyLength(), report.getHashKeyLength());
+        Set<String> hashKeys = new HashSet<String>();
+        for (QueryRequest query : request.getQueryRequests()) {
+            hashKeys.add(query.getKeyConditions().get(config.getGeoHashKeyColumn()).getAttributeValueList().get(0).getN());
+        }
+        assertEquals(hashKeys.size(), report.getDistinctHashKeyCount());
+        // the covering contains the bounding box
+        assertTrue(report.getOverfetchRatio() >= 0.99d);
+        int cells = 0;
+        for (int level = 0; level <= 30; level++) {
+            cells += report.getCellCount(level);
+        }
+        assertEquals(report.getCellCount(), cells);
+        assertEquals(Double.valueOf(report.getSplitRangeCount()), report.toMetrics().get(GeoPlanReport.METRIC_PREFIX + "splitRanges"));
+
+        geoQueryHelper.setPlanListener(null);
+        geo.radiusQuery(new QueryRequest().withTableName("TableWithSomeData"), 40.7275, -73.9944, 5000, config, Optional.<String>absent());
+        assertEquals(1, reports.size());
+    }
+
+    @Test
+    public void batchPlanReport() {
+        S2Manager s2Manager = new S2Manager();
+        GeoQueryHelper geoQueryHelper = new GeoQueryHelper(s2Manager);
+        final List<GeoPlanReport> reports = new ArrayList<GeoPlanReport>();
+        geoQueryHelper.setPlanListener(new GeoPlanListener() {
+            @Override public void onPlan(GeoPlanReport report) {
+                reports.add(report);
+            }
+        });
+        Geo geo = new Geo(s2Manager, geoQueryHelper);
+        GeoConfig config = createTestConfig(false, null);
+        QueryRequest query = new QueryRequest().withTableName("TableWithSomeData");
+        GeoRadiusQuery first = new GeoRadiusQuery(40.7275, -73.9944, 1000);
+        GeoRadiusQuery second = new GeoRadiusQuery(40.7280, -73.9950, 1000);
+        geo.radiusQuery(query, first.getLatitude(), first.getLongitude(), first.getRadius(), config, Optional.<String>absent());
+        geo.radiusQuery(query, second.getLatitude(), second.getLongitude(), second.getRadius(), config, Optional.<String>absent());
+        geo.batchRadiusQuery(query, Arrays.asList(first, first), config, Optional.<String>absent());
+        geo.batchRadiusQuery(query, Arrays.asList(first, second), config, Optional.<String>absent());
+
+        assertEquals(4, reports.size());
+        // a box requested twice is requested once, so the batch fits exactly as well as the single query
+        assertEquals(reports.get(0).getRequestedArea(), reports.get(2).getRequestedArea(), 1.0d);
+        assertEquals(reports.get(0).getOverfetchRatio(), reports.get(2).getOverfetchRatio(), 1.0e-9d);
+        // overlapping boxes count their intersection once
+        double sum = reports.get(0).getRequestedArea() + reports.get(1).getRequestedArea();
+        double union = reports.get(3).getRequestedArea();
+        assertTrue(union > Math.max(reports.get(0).getRequestedArea(), reports.get(1).getRequestedArea()));
+        assertTrue(union < 0.9d * sum);
+        assertTrue(reports.get(3).getOverfetchRatio() >= 0.99d);
+    }
+
+    @Test
+    public void nearestRadiusQuery() {
+        Geo geo = new Geo();
+        GeoConfig config = createTestConfig(false, null);
+        QueryRequest query = new QueryRequest().withTableName("TableWithSomeData");
+        GeoQueryRequest radius = geo.radiusQuery(query, 40.7275, -73.9944, 20000, config, Optional.<String>absent());
+        GeoQueryRequest nearest = geo.nearestRadiusQuery(query, 40.7275, -73.9944, 20000, config, Optional.<String>absent());
+        assertEquals(radius.getQueryRequests().size(), nearest.getQueryRequests().size());
+        assertEquals(new HashSet<QueryRequest>(radius.getQueryRequests()), new HashSet<QueryRequest>(nearest.getQueryRequests()));
+        assertNotNull(nearest.getResultFilter());
+    }
+
+    @Test
+    public void streamingQueries() {
+        Geo geo = new Geo();
+        GeoConfig config = createTestConfig(false, null);
+        QueryRequest query = new QueryRequest().withTableName("TableWithSomeData");
+        GeoQueryRequest radius = geo.radiusQuery(query, 40.7275, -73.9944, 50000, config, Optional.<String>absent());
+        StreamingGeoQueryRequest streamingRadius = geo.streamingRadiusQuery(query, 40.7275, -73.9944, 50000, config,
+                Optional.<String>absent());
+        assertEquals(radius.getQueryRequests(), Lists.newArrayList(streamingRadius.getQueryRequests()));
+        assertNotNull(streamingRadius.getResultFilter());
+
+        GeoQueryRequest rectangle = geo.rectangleQuery(query, 40.0, -74.5, 41.0, -73.0, config, Optional.<String>absent());
+        StreamingGeoQueryRequest streamingRectangle = geo.streamingRectangleQuery(query, 40.0, -74.5, 41.0, -73.0, config,
+                Optional.<String>absent());
+        assertEquals(rectangle.getQueryRequests(), Lists.newArrayList(streamingRectangle.getQueryRequests()));
+    }
+
+    @Test
+    public void timeBucketedRadiusQuery() {
+        Geo geo = new Geo();
+        GeoConfig config = new GeoConfig.Builder().geoIndexName("EventGeoIndex").geoHashKeyLength(3).geoHashKeyColumn("geoHashKey")
+                .geoHashColumn("geohash").timestampColumn(Optional.of("eventTime")).timeBucketMillis(600000L).build();
+        QueryRequest query = new QueryRequest().withTableName("Events");
+        GeoQueryRequest spatial = geo.radiusQuery(query, 40.7275, -73.9944, 2000, createTestConfig(false, null), Optional.<String>absent());
+        // 15 minutes from the middle of bucket 10 to the end of bucket 11
+        GeoQueryRequest request = geo.radiusQuery(query, 40.7275, -73.9944, 2000, 6300000L, 7199999L, config, Optional.<String>absent());
+        List<QueryRequest> queries = request.getQueryRequests();
+        int ranges = spatial.getQueryRequests().size();
+        assertEquals(2 * ranges, queries.size());
+        for (int i = 0; i < queries.size(); i++) {
+            QueryRequest queryRequest = queries.get(i);
+            String spatialHashKey = spatial.getQueryRequests().get(i % ranges).getKeyConditions().get("geoHashKey")
+                    .getAttributeValueList().get(0).getN();
+            if (i < ranges) {
+                // the newest bucket is fully covered
+                assertEquals(spatialHashKey + ":11",
+                        queryRequest.getKeyConditions().get("geoHashKey").getAttributeValueList().get(0).getS());
+                assertNull(queryRequest.getFilterExpression());
+                assertNull(queryRequest.getKeyConditionExpression());
+            } else {
+                // the filter is an expression, so the key condition must be one too
+                assertNull(queryRequest.getKeyConditions());
+                assertTrue(queryRequest.getKeyConditionExpression().startsWith("#geo_hash_key = :geo_hash_key AND #geo_hash "));
+                assertEquals("geoHashKey", queryRequest.getExpressionAttributeNames().get("#geo_hash_key"));
+                assertEquals(spatialHashKey + ":10",
+                        queryRequest.getExpressionAttributeValues().get(GeoQueryHelper.HASH_KEY_VALUE).getS());
+                assertEquals("#geo_time BETWEEN :geo_time_from AND :geo_time_to", queryRequest.getFilterExpression());
+                assertEquals("eventTime", queryRequest.getExpressionAttributeNames().get("#geo_time"));
+                assertEquals("6300000", queryRequest.getExpressionAttributeValues().get(":geo_time_from").getN());
+            }
+        }
+
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("eventTime", new AttributeValue().withN("6300000"));
+        geo.updateAttributeValues(item, 40.7275, -73.9944, Arrays.asList(config));
+        assertTrue(item.get("geoHashKey").getS().endsWith(":10"));
+        try {
+            geo.radiusQuery(query, 40.7275, -73.9944, 2000, config, Optional.<String>absent());
+            fail("Should have failed as the time bucketed index needs a time range");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void timeBucketedQueryBoundsBuckets() {
+        Geo geo = new Geo();
+        GeoConfig config = new GeoConfig.Builder().geoIndexName("EventGeoIndex").geoHashKeyLength(3).geoHashKeyColumn("geoHashKey")
+                .geoHashColumn("geohash").timestampColumn(Optional.of("eventTime")).timeBucketMillis(600000L).build();
+        QueryRequest query = new QueryRequest().withTableName("Events");
+        int ranges = geo.radiusQuery(query, 40.7275, -73.9944, 100, createTestConfig(false, null), Optional.<String>absent())
+                .getQueryRequests().size();
+        long maxMillis = GeoQueryHelper.MAX_TIME_BUCKETS * 600000L - 1;
+        assertEquals(GeoQueryHelper.MAX_TIME_BUCKETS * ranges,
+                geo.radiusQuery(query, 40.7275, -73.9944, 100, 0L, maxMillis, config, Optional.<String>absent()).getQueryRequests().size());
+        try {
+            geo.radiusQuery(query, 40.7275, -73.9944, 100, 0L, maxMillis + 1, config, Optional.<String>absent());
+            fail("Should have failed as the time range spans too many buckets");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Time range spans more than 1000 time buckets: 0 to 600000000", e.getMessage());
+        }
+        try {
+            geo.radiusQuery(query, 40.7275, -73.9944, 100, Long.MIN_VALUE, Long.MAX_VALUE, config, Optional.<String>absent());
+            fail("Should have failed as the time range spans too many buckets");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void heatmapQueryMergesContainedCells() {
+        // a covering of cells finer than the heatmap's, most of them contained in the rectangle
+        S2Manager fineCovering = new S2Manager() {
+            @Override public S2CellUnion findCellIds(S2LatLngRect latLngRect) {
+                S2RegionCoverer coverer = new S2RegionCoverer();
+                coverer.setMinLevel(16);
+                coverer.setMaxLevel(16);
+                coverer.setMaxCells(Integer.MAX_VALUE);
+                ArrayList<S2CellId> cellIds = new ArrayList<S2CellId>();
+                coverer.getCovering(latLngRect, cellIds);
+                S2CellUnion cellUnion = new S2CellUnion();
+                cellUnion.initRawCellIds(cellIds);
+                return cellUnion;
+            }
+        };
+        S2LatLngRect boundingBox = S2LatLngRect.fromPointPair(S2LatLng.fromDegrees(40.74, -73.99), S2LatLng.fromDegrees(40.76, -73.97));
+        GeoHeatmapQueryRequest request = new GeoQueryHelper(fineCovering).generateHeatmapQueries(new QueryRequest().withTableName("Venues"),
+                boundingBox, 13, Geo.DEFAULT_MAX_HEATMAP_CELLS, createTestConfig(false, null), Optional.<String>absent());
+        // one range per cell of level 13, or two where a hash key boundary splits it
+        Set<Long> countCellIds = new HashSet<Long>(request.getCountCellIds());
+        assertFalse(countCellIds.isEmpty());
+        assertTrue(request.getCountQueryRequests().size() <= 2 * countCellIds.size());
+        for (QueryRequest countQuery : request.getCountQueryRequests()) {
+            assertEquals(Select.COUNT.toString(), countQuery.getSelect());
+        }
+    }
+
+    @Test
+    public void heatmapQueryBoundsCells() {
+        Geo geo = new Geo();
+        QueryRequest query = new QueryRequest().withTableName("Venues");
+        GeoConfig config = createTestConfig(false, null);
+        try {
+            geo.heatmapQuery(query, 40.70, -74.02, 40.80, -73.92, 16, config, Optional.<String>absent());
+            fail("Should have failed as the rectangle intersects more than the default maximum of cells");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+        assertFalse(geo.heatmapQuery(query, 40.70, -74.02, 40.80, -73.92, 16, 100000, config, Optional.<String>absent())
+                .getCountQueryRequests().isEmpty());
+        try {
+            geo.heatmapQuery(query, 40.70, -74.02, 40.80, -73.92, 10, 2, config, Optional.<String>absent());
+            fail("Should have failed as the rectangle intersects more than 2 cells");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void updateLocationRequest() {
+        Geo geo = new Geo();
+        S2Manager s2Manager = new S2Manager();
+        GeoConfig config = createTestConfig(false, null);
+        List<GeoConfig> configs = Arrays.asList(config);
+        Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+        key.put("id", new AttributeValue().withS("truck-1"));
+
+        GeoUpdateItemRequest first = geo.updateLocationRequest(new UpdateItemRequest().withKey(key), 40.7275, -73.9944,
+                Optional.<Long>absent(), 20, "version", 1L, configs);
+        UpdateItemRequest request = first.getUpdateItemRequest();
+        assertTrue(first.isGeoKeysUpdated());
+        assertEquals(s2Manager.generateGeohash(40.7275, -73.9944), first.getGeohash());
+        assertTrue(request.getExpressionAttributeNames().containsValue(config.getGeoHashColumn()));
+        assertTrue(request.getExpressionAttributeNames().containsValue(config.getGeoHashKeyColumn()));
+        assertEquals("1", request.getExpressionAttributeValues().get(":geo_version").getN());
+        assertTrue(request.getConditionExpression().contains("#geo_version < :geo_version"));
+
+        // a few centimeters away, within the same level 20 cell
+        GeoUpdateItemRequest sameCell = geo.updateLocationRequest(new UpdateItemRequest().withKey(key), 40.7275001, -73.9944001,
+                Optional.of(first.getGeohash()), 20, "version", 2L, configs);
+        assertFalse(sameCell.isGeoKeysUpdated());
+        assertEquals(first.getGeohash(), sameCell.getGeohash());
+        assertFalse(sameCell.getUpdateItemRequest().getExpressionAttributeNames().containsValue(config.getGeoHashColumn()));
+        assertFalse(sameCell.getUpdateItemRequest().getExpressionAttributeNames().containsValue(config.getGeoHashKeyColumn()));
+        assertEquals("40.7275001", sameCell.getUpdateItemRequest().getExpressionAttributeValues().get(":geo_latitude").getN());
+
+        // a kilometer away, within the same hash key
+        GeoUpdateItemRequest sameHashKey = geo.updateLocationRequest(new UpdateItemRequest().withKey(key), 40.7365, -73.9944,
+                Optional.of(first.getGeohash()), 20, "version", 3L, configs);
+        assertTrue(sameHashKey.isGeoKeysUpdated());
+        assertEquals(s2Manager.generateHashKey(first.getGeohash(), config.getGeoHashKeyLength()),
+                s2Manager.generateHashKey(sameHashKey.getGeohash(), config.getGeoHashKeyLength()));
+        assertTrue(sameHashKey.getUpdateItemRequest().getExpressionAttributeNames().containsValue(config.getGeoHashColumn()));
+        assertFalse(sameHashKey.getUpdateItemRequest().getExpressionAttributeNames().containsValue(config.getGeoHashKeyColumn()));
+
+        // the caller's own update and condition are kept
+        UpdateItemRequest withStatus = new UpdateItemRequest().withKey(key).withUpdateExpression("SET #status = :status")
+                .withConditionExpression("attribute_exists(id)")
+                .addExpressionAttributeNamesEntry("#status", "status")
+                .addExpressionAttributeValuesEntry(":status", new AttributeValue().withS("moving"));
+        geo.updateLocationRequest(withStatus, 34.05, -118.24, Optional.of(first.getGeohash()), 20, "version", 4L, configs);
+        assertTrue(withStatus.getUpdateExpression().startsWith("SET "));
+        assertTrue(withStatus.getUpdateExpression().endsWith(", #status = :status"));
+        assertTrue(withStatus.getConditionExpression().startsWith("(attribute_exists(id)) AND "));
+        assertEquals("status", withStatus.getExpressionAttributeNames().get("#status"));
+        assertTrue(withStatus.getExpressionAttributeNames().containsValue(config.getGeoHashKeyColumn()));
+
+        try {
+            geo.updateLocationRequest(new UpdateItemRequest().withKey(key), 40.7275, -73.9944, Optional.<Long>absent(), 20,
+                    "version", 5L, Arrays.asList(createTestConfig(true, "category")));
+            fail("Should have failed as composite hash keys are not supported");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void updateLocationRequestMergesSetClause() {
+        Geo geo = new Geo();
+        List<GeoConfig> configs = Arrays.asList(createTestConfig(false, null));
+        Map<String, AttributeValue> key = new HashMap<String, AttributeValue>();
+        key.put("id", new AttributeValue().withS("truck-1"));
+
+        UpdateItemRequest removeAndSet = new UpdateItemRequest().withKey(key)
+                .withUpdateExpression("REMOVE #set set #status = :set");
+        geo.updateLocationRequest(removeAndSet, 40.7275, -73.9944, Optional.<Long>absent(), 20, "version", 1L, configs);
+        String expression = removeAndSet.getUpdateExpression();
+        assertTrue(expression, expression.startsWith("REMOVE #set set #geo_latitude = :geo_latitude, "));
+        assertTrue(expression, expression.endsWith(", #status = :set"));
+        assertEquals(expression, expression.toUpperCase().indexOf("SET #"), expression.toUpperCase().lastIndexOf("SET #"));
+
+        UpdateItemRequest remove = new UpdateItemRequest().withKey(key).withUpdateExpression("REMOVE #note");
+        geo.updateLocationRequest(remove, 40.7275, -73.9944, Optional.<Long>absent(), 20, "version", 2L, configs);
+        assertTrue(remove.getUpdateExpression(), remove.getUpdateExpression().startsWith("SET #geo_latitude = :geo_latitude, "));
+        assertTrue(remove.getUpdateExpression(), remove.getUpdateExpression().endsWith(" REMOVE #note"));
+    }
+
     @Test
     public void rectangleQueryInvalidFields() {
         Geo geo = new Geo();
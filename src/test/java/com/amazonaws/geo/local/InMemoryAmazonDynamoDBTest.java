@@ -0,0 +1,294 @@
+package com.amazonaws.geo.local;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.geo.Geo;
+import com.amazonaws.geo.GeoConfig;
+import com.amazonaws.geo.model.GeoHeatmapQueryRequest;
+import com.amazonaws.geo.model.GeoQueryRequest;
+import com.amazonaws.geo.model.StreamingGeoQueryRequest;
+import com.amazonaws.geo.s2.internal.GeoQueryClient;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.dashlabs.dash.geo.model.CellCountMap;
+import com.google.common.base.Optional;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2LatLng;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.amazonaws.geo.local.PlacesTable.CONFIG;
+import static com.amazonaws.geo.local.PlacesTable.TABLE;
+import static com.amazonaws.geo.local.PlacesTable.loadItems;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the in-memory DynamoDB stand-in and drives a radius query through it end to end.
+ */
+public class InMemoryAmazonDynamoDBTest {
+
+    private InMemoryAmazonDynamoDB dynamoDB;
+
+    @Before
+    public void setUp() {
+        dynamoDB = new InMemoryAmazonDynamoDB();
+        PlacesTable.create(dynamoDB);
+    }
+
+    @Test
+    public void queryPages() {
+        for (int i = 0; i < 10; i++) {
+            Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+            item.put("id", new AttributeValue().withS("item" + i));
+            item.put("geoHashKey", new AttributeValue().withN("1"));
+            // two items per geohash so that pages have to resume within equal index keys
+            item.put("geohash", new AttributeValue().withN(String.valueOf(100 + (i / 2))));
+            dynamoDB.putItem(new PutItemRequest().withTableName(TABLE).withItem(item));
+        }
+        Map<String, Condition> keyConditions = new HashMap<String, Condition>();
+        keyConditions.put("geoHashKey", new Condition().withComparisonOperator(ComparisonOperator.EQ)
+                .withAttributeValueList(new AttributeValue().withN("1")));
+        keyConditions.put("geohash", new Condition().withComparisonOperator(ComparisonOperator.BETWEEN)
+                .withAttributeValueList(new AttributeValue().withN("101"), new AttributeValue().withN("103")));
+        QueryRequest query = new QueryRequest().withTableName(TABLE).withIndexName("geo-index").withKeyConditions(keyConditions)
+                .withLimit(4);
+
+        QueryResult first = dynamoDB.query(query);
+        assertEquals(4, first.getItems().size());
+        assertNotNull(first.getLastEvaluatedKey());
+        assertEquals(3, first.getLastEvaluatedKey().size());
+        QueryResult second = dynamoDB.query(query.withExclusiveStartKey(first.getLastEvaluatedKey()));
+        assertEquals(2, second.getItems().size());
+        assertNull(second.getLastEvaluatedKey());
+
+        Set<String> ids = new HashSet<String>();
+        for (Map<String, AttributeValue> item : first.getItems()) {
+            ids.add(item.get("id").getS());
+        }
+        for (Map<String, AttributeValue> item : second.getItems()) {
+            ids.add(item.get("id").getS());
+        }
+        assertEquals(6, ids.size());
+        // two eventually consistent pages of less than 4KB each
+        assertEquals(1.0d, dynamoDB.getConsumedReadCapacityUnits(), 0.0d);
+    }
+
+    @Test
+    public void mixedParameters() {
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("id", new AttributeValue().withS("item"));
+        item.put("geoHashKey", new AttributeValue().withN("1"));
+        item.put("geohash", new AttributeValue().withN("100"));
+        dynamoDB.putItem(new PutItemRequest().withTableName(TABLE).withItem(item));
+        Map<String, Condition> keyConditions = new HashMap<String, Condition>();
+        keyConditions.put("geoHashKey", new Condition().withComparisonOperator(ComparisonOperator.EQ)
+                .withAttributeValueList(new AttributeValue().withN("1")));
+        Map<String, String> names = Collections.singletonMap("#id", "id");
+        Map<String, AttributeValue> values = new HashMap<String, AttributeValue>();
+        values.put(":hashKey", new AttributeValue().withN("1"));
+        values.put(":id", new AttributeValue().withS("item"));
+
+        // the same query in either form
+        QueryRequest legacy = new QueryRequest().withTableName(TABLE).withIndexName("geo-index").withKeyConditions(keyConditions)
+                .withAttributesToGet("id");
+        assertEquals(1, dynamoDB.query(legacy).getCount().intValue());
+        QueryRequest expressions = new QueryRequest().withTableName(TABLE).withIndexName("geo-index")
+                .withKeyConditionExpression("geoHashKey = :hashKey").withFilterExpression("#id = :id").withProjectionExpression("#id")
+                .withExpressionAttributeNames(names).withExpressionAttributeValues(values);
+        assertEquals(Collections.singletonMap("id", item.get("id")), dynamoDB.query(expressions).getItems().get(0));
+
+        assertValidationException(new Runnable() {
+            @Override public void run() {
+                dynamoDB.query(new QueryRequest().withTableName(TABLE).withIndexName("geo-index").withKeyConditions(keyConditions)
+                        .withFilterExpression("#id = :id").withExpressionAttributeNames(names).withExpressionAttributeValues(values));
+            }
+        });
+        assertValidationException(new Runnable() {
+            @Override public void run() {
+                dynamoDB.query(new QueryRequest().withTableName(TABLE).withIndexName("geo-index")
+                        .withKeyConditionExpression("geoHashKey = :hashKey").withExpressionAttributeValues(values)
+                        .withAttributesToGet("id"));
+            }
+        });
+        assertValidationException(new Runnable() {
+            @Override public void run() {
+                dynamoDB.scan(new ScanRequest().withTableName(TABLE).withAttributesToGet("id").withProjectionExpression("#id")
+                        .withExpressionAttributeNames(names));
+            }
+        });
+        assertValidationException(new Runnable() {
+            @Override public void run() {
+                dynamoDB.updateItem(new UpdateItemRequest().withTableName(TABLE).withKey(Collections.singletonMap("id", item.get("id")))
+                        .withExpected(Collections.singletonMap("id", new ExpectedAttributeValue(true).withValue(item.get("id"))))
+                        .withUpdateExpression("SET #id = :id").withExpressionAttributeNames(names)
+                        .withExpressionAttributeValues(Collections.singletonMap(":id", item.get("id"))));
+            }
+        });
+    }
+
+    @Test
+    public void radiusQuery() throws Exception {
+        Geo geo = new Geo();
+        S2LatLng center = S2LatLng.fromDegrees(40.7527, -73.9772);
+        int expected = loadItems(dynamoDB, geo, center, 2000);
+
+        GeoQueryRequest request = geo.radiusQuery(new QueryRequest().withTableName(TABLE).withLimit(10), 40.7527, -73.9772, 2000,
+                CONFIG, Optional.<String>absent());
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            GeoQueryClient geoQueryClient = new GeoQueryClient(dynamoDB, executorService);
+            long requestsBefore = dynamoDB.getRequestCount();
+            List<Map<String, AttributeValue>> results = geoQueryClient.execute(request);
+            long requests = dynamoDB.getRequestCount() - requestsBefore;
+            assertEquals(expected, results.size());
+            StreamingGeoQueryRequest streamingRequest = geo.streamingRadiusQuery(new QueryRequest().withTableName(TABLE).withLimit(10),
+                    40.7527, -73.9772, 2000, CONFIG, Optional.<String>absent());
+            assertEquals(expected, geoQueryClient.execute(streamingRequest, 2).size());
+
+            GeoQueryRequest nearestRequest = geo.nearestRadiusQuery(new QueryRequest().withTableName(TABLE).withLimit(10), 40.7527,
+                    -73.9772, 2000, CONFIG, Optional.<String>absent());
+            requestsBefore = dynamoDB.getRequestCount();
+            List<Map<String, AttributeValue>> nearest = geoQueryClient.execute(nearestRequest, 5, 1);
+            assertEquals(5, nearest.size());
+            for (Map<String, AttributeValue> item : nearest) {
+                S2LatLng point = S2LatLng.fromDegrees(Double.parseDouble(item.get("latitude").getN()),
+                        Double.parseDouble(item.get("longitude").getN()));
+                assertTrue(center.getEarthDistance(point) <= 2000);
+            }
+            // the remaining pages are skipped once enough items are found
+            assertTrue(dynamoDB.getRequestCount() - requestsBefore < requests);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void timeBucketedQuery() throws Exception {
+        GeoConfig config = new GeoConfig.Builder().geoIndexName("geo-index").geoHashKeyColumn("geoHashKey").geoHashColumn("geohash")
+                .geoHashKeyLength(6).timestampColumn(Optional.of("eventTime")).timeBucketMillis(300000L).build();
+        dynamoDB.createTable(new CreateTableRequest().withTableName("events")
+                .withKeySchema(new KeySchemaElement("id", KeyType.HASH))
+                .withAttributeDefinitions(new AttributeDefinition("id", ScalarAttributeType.S),
+                        new AttributeDefinition("geoHashKey", ScalarAttributeType.S),
+                        new AttributeDefinition("geohash", ScalarAttributeType.N))
+                .withGlobalSecondaryIndexes(new GlobalSecondaryIndex().withIndexName("geo-index")
+                        .withKeySchema(new KeySchemaElement("geoHashKey", KeyType.HASH), new KeySchemaElement("geohash", KeyType.RANGE))
+                        .withProjection(new Projection().withProjectionType(ProjectionType.ALL))));
+        Geo geo = new Geo();
+        long now = 24L * 3600000L;
+        // a day of events, one a minute, at the same corner
+        int expected = 0;
+        for (int i = 0; i < 1440; i++) {
+            long eventTime = now - i * 60000L;
+            if (eventTime >= now - 900000L) {
+                expected++;
+            }
+            Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+            item.put("id", new AttributeValue().withS("event" + i));
+            item.put("latitude", new AttributeValue().withN("40.7527"));
+            item.put("longitude", new AttributeValue().withN("-73.9772"));
+            item.put("eventTime", new AttributeValue().withN(Long.toString(eventTime)));
+            geo.updateAttributeValues(item, 40.7527, -73.9772, Collections.singletonList(config));
+            dynamoDB.putItem(new PutItemRequest().withTableName("events").withItem(item));
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            GeoQueryClient geoQueryClient = new GeoQueryClient(dynamoDB, executorService);
+            double unitsBefore = dynamoDB.getConsumedReadCapacityUnits();
+            List<Map<String, AttributeValue>> results = geoQueryClient.execute(geo.radiusQuery(new QueryRequest().withTableName("events"),
+                    40.7527, -73.9772, 500, now - 900000L, now, config, Optional.<String>absent()));
+            assertEquals(expected, results.size());
+            for (Map<String, AttributeValue> item : results) {
+                assertTrue(Long.parseLong(item.get("eventTime").getN()) >= now - 900000L);
+            }
+            // only the four buckets overlapping the last 15 minutes were read, not the day
+            assertTrue(dynamoDB.getConsumedReadCapacityUnits() - unitsBefore < 10.0d);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void heatmapQuery() throws Exception {
+        Geo geo = new Geo();
+        loadItems(dynamoDB, geo, S2LatLng.fromDegrees(40.75, -73.98), 0);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            GeoQueryClient geoQueryClient = new GeoQueryClient(dynamoDB, executorService);
+            GeoHeatmapQueryRequest request = geo.heatmapQuery(new QueryRequest().withTableName(TABLE), 40.71, -74.02, 40.79, -73.94,
+                    13, CONFIG, Optional.<String>absent());
+            assertTrue(request.getCountQueryRequests().size() > 0);
+            assertTrue(request.getBoundaryQueryRequests().size() > 0);
+            CellCountMap counts = geoQueryClient.execute(request);
+
+            // the same counts as fetching every item of the rectangle
+            CellCountMap expected = new CellCountMap();
+            for (Map<String, AttributeValue> item : geoQueryClient.execute(geo.rectangleQuery(new QueryRequest().withTableName(TABLE),
+                    40.71, -74.02, 40.79, -73.94, CONFIG, Optional.<String>absent()))) {
+                S2LatLng latLng = S2LatLng.fromDegrees(Double.parseDouble(item.get("latitude").getN()),
+                        Double.parseDouble(item.get("longitude").getN()));
+                expected.add(S2CellId.fromLatLng(latLng).parent(13).id(), 1L);
+            }
+            assertEquals(expected, counts);
+
+            // boundary items only carry their coordinates, projected with expressions only
+            assertNull(request.getBoundaryQueryRequests().get(0).getKeyConditions());
+            assertNull(request.getBoundaryQueryRequests().get(0).getAttributesToGet());
+            QueryResult boundaryPage = dynamoDB.query(request.getBoundaryQueryRequests().get(0));
+            for (Map<String, AttributeValue> item : boundaryPage.getItems()) {
+                assertEquals(2, item.size());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void throttling() {
+        InMemoryAmazonDynamoDB throttled = new InMemoryAmazonDynamoDB(0L, 0L, 1.0d, 0.0d);
+        try {
+            throttled.query(new QueryRequest().withTableName(TABLE));
+            fail("Expected a throttling error");
+        } catch (ProvisionedThroughputExceededException e) {
+            assertEquals(1, throttled.getThrottledRequestCount());
+        }
+    }
+
+    private static void assertValidationException(Runnable request) {
+        try {
+            request.run();
+            fail("Expected a validation error");
+        } catch (AmazonServiceException e) {
+            assertEquals("ValidationException", e.getErrorCode());
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.amazonaws.geo.local;
+
+import com.amazonaws.geo.Geo;
+import com.amazonaws.geo.GeoConfig;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.geometry.S2LatLng;
+import org.junit.rules.ExternalResource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * A table of places in Manhattan for tests running geo queries end to end against the {@link InMemoryAmazonDynamoDB}
+ * stand-in, keyed by <code>id</code> with a geo index for {@link #CONFIG} and one for {@link #SHORT_KEYS_CONFIG}.
+ * <p>
+ * As a JUnit rule it creates the table in a fresh stand-in before each test and shuts down the test's executor after it.
+ */
+public final class PlacesTable extends ExternalResource {
+
+    public static final String TABLE = "places";
+
+    public static final GeoConfig CONFIG = new GeoConfig.Builder().geoIndexName("geo-index").geoHashKeyColumn("geoHashKey")
+            .geoHashColumn("geohash").geoHashKeyLength(6).build();
+
+    public static final GeoConfig SHORT_KEYS_CONFIG = new GeoConfig.Builder().geoIndexName("geo-index-4")
+            .geoHashKeyColumn("geoHashKey4").geoHashColumn("geohash").geoHashKeyLength(4).build();
+
+    private final InMemoryAmazonDynamoDB dynamoDB;
+
+    private ScheduledExecutorService executorService;
+
+    public PlacesTable() {
+        this(new InMemoryAmazonDynamoDB());
+    }
+
+    /**
+     * @param dynamoDB the stand-in to create the table in, for tests that need one configured or overridden
+     */
+    public PlacesTable(InMemoryAmazonDynamoDB dynamoDB) {
+        this.dynamoDB = dynamoDB;
+    }
+
+    @Override
+    protected void before() {
+        create(dynamoDB);
+    }
+
+    @Override
+    protected void after() {
+        if (executorService != null) {
+            executorService.shutdownNow();
+        }
+    }
+
+    public InMemoryAmazonDynamoDB getDynamoDB() {
+        return dynamoDB;
+    }
+
+    /**
+     * @return a pool of four threads, shut down after the test
+     */
+    public ScheduledExecutorService getExecutorService() {
+        if (executorService == null) {
+            executorService = Executors.newScheduledThreadPool(4);
+        }
+        return executorService;
+    }
+
+    /**
+     * Loads the places of {@link #loadItems(InMemoryAmazonDynamoDB, Geo, S2LatLng, double)} into this table.
+     *
+     * @return the number of items within <code>radius</code> of <code>center</code>
+     */
+    public int loadItems(Geo geo, S2LatLng center, double radius) {
+        return loadItems(dynamoDB, geo, center, radius);
+    }
+
+    public static void create(InMemoryAmazonDynamoDB dynamoDB) {
+        dynamoDB.createTable(new CreateTableRequest().withTableName(TABLE)
+                .withKeySchema(new KeySchemaElement("id", KeyType.HASH))
+                .withAttributeDefinitions(new AttributeDefinition("id", ScalarAttributeType.S),
+                        new AttributeDefinition("geoHashKey", ScalarAttributeType.N),
+                        new AttributeDefinition("geoHashKey4", ScalarAttributeType.N),
+                        new AttributeDefinition("geohash", ScalarAttributeType.N))
+                .withGlobalSecondaryIndexes(new GlobalSecondaryIndex().withIndexName("geo-index")
+                        .withKeySchema(new KeySchemaElement("geoHashKey", KeyType.HASH), new KeySchemaElement("geohash", KeyType.RANGE))
+                        .withProjection(new Projection().withProjectionType(ProjectionType.ALL)),
+                        new GlobalSecondaryIndex().withIndexName("geo-index-4")
+                        .withKeySchema(new KeySchemaElement("geoHashKey4", KeyType.HASH), new KeySchemaElement("geohash", KeyType.RANGE))
+                        .withProjection(new Projection().withProjectionType(ProjectionType.ALL))));
+    }
+
+    /**
+     * Loads 500 items <code>item0</code> to <code>item499</code> at random points around <code>center</code>, decorated
+     * for {@link #CONFIG} only.
+     *
+     * @return the number of items within <code>radius</code> of <code>center</code>
+     */
+    public static int loadItems(InMemoryAmazonDynamoDB dynamoDB, Geo geo, S2LatLng center, double radius) {
+        Random random = new Random(7);
+        List<WriteRequest> writes = new ArrayList<WriteRequest>();
+        int expected = 0;
+        for (int i = 0; i < 500; i++) {
+            double latitude = 40.70 + random.nextDouble() * 0.1;
+            double longitude = -74.03 + random.nextDouble() * 0.1;
+            if (center.getEarthDistance(S2LatLng.fromDegrees(latitude, longitude)) <= radius) {
+                expected++;
+            }
+            Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+            item.put("id", new AttributeValue().withS("item" + i));
+            item.put("latitude", new AttributeValue().withN(Double.toString(latitude)));
+            item.put("longitude", new AttributeValue().withN(Double.toString(longitude)));
+            geo.updateAttributeValues(item, latitude, longitude, Collections.singletonList(CONFIG));
+            writes.add(new WriteRequest().withPutRequest(new PutRequest().withItem(item)));
+            if (writes.size() == 25) {
+                dynamoDB.batchWriteItem(new BatchWriteItemRequest().addRequestItemsEntry(TABLE, writes));
+                writes = new ArrayList<WriteRequest>();
+            }
+        }
+        assertEquals(500, dynamoDB.getItemCount(TABLE));
+        return expected;
+    }
+
+}
@@ -0,0 +1,147 @@
+package com.amazonaws.geo.s2.internal;
+
+import com.amazonaws.geo.Geo;
+import com.amazonaws.geo.local.PlacesTable;
+import com.amazonaws.geo.model.GeoHeatmapQueryRequest;
+import com.amazonaws.geo.model.GeoQueryRequest;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.dashlabs.dash.geo.model.CellCountMap;
+import com.google.common.base.Optional;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2LatLng;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.amazonaws.geo.local.PlacesTable.CONFIG;
+import static com.amazonaws.geo.local.PlacesTable.TABLE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link AdaptivePagingPolicy} through a {@link GeoQueryClient} against the in-memory DynamoDB stand-in.
+ */
+public class AdaptivePagingPolicyTest {
+
+    private static final S2LatLng CENTER = S2LatLng.fromDegrees(40.7527, -73.9772);
+
+    private static final double RADIUS = 2000;
+
+    @Rule
+    public final PlacesTable places = new PlacesTable();
+
+    private final Geo geo = new Geo();
+
+    private GeoQueryClient geoQueryClient;
+
+    private int expected;
+
+    @Before
+    public void setUp() {
+        expected = places.loadItems(geo, CENTER, RADIUS);
+        geoQueryClient = new GeoQueryClient(places.getDynamoDB(), places.getExecutorService());
+    }
+
+    @Test
+    public void returnsEveryItemInRange() throws Exception {
+        geoQueryClient.setPagingPolicy(newPolicy());
+        assertEquals(expected, geoQueryClient.execute(radiusQuery()).size());
+        assertEquals(expected, geoQueryClient.execute(radiusQuery()).size());
+    }
+
+    @Test
+    public void needsFewerRequestsThanTinyFixedPages() throws Exception {
+        // tiny pages cost a round trip per two items
+        long fixedRequests = countRequests(radiusQuery());
+        geoQueryClient.setPagingPolicy(newPolicy());
+        assertTrue(countRequests(radiusQuery()) < fixedRequests);
+        assertTrue(countRequests(radiusQuery()) < fixedRequests);
+    }
+
+    @Test
+    public void leavesCallerLimitsUnchanged() throws Exception {
+        geoQueryClient.setPagingPolicy(newPolicy());
+        for (int i = 0; i < 2; i++) {
+            GeoQueryRequest request = radiusQuery();
+            geoQueryClient.execute(request);
+            for (QueryRequest query : request.getQueryRequests()) {
+                assertEquals(Integer.valueOf(2), query.getLimit());
+            }
+        }
+    }
+
+    @Test
+    public void sendsCountPagesWithTheirOwnLimit() throws Exception {
+        GeoHeatmapQueryRequest heatmap = geo.heatmapQuery(new QueryRequest().withTableName(TABLE), 40.71, -74.02, 40.79, -73.94, 13,
+                CONFIG, Optional.<String>absent());
+        GeoHeatmapQueryRequest counts = new GeoHeatmapQueryRequest(heatmap.getCountQueryRequests(), heatmap.getCountCellIds(),
+                Collections.<QueryRequest>emptyList(), heatmap.getResultFilter(), heatmap.getLevel());
+        CellCountMap expected = geoQueryClient.execute(counts);
+        geoQueryClient.setPagingPolicy(new AdaptivePagingPolicy.Builder(CONFIG).minPageItems(2).maxPageItems(2).build());
+
+        long requestsBefore = places.getDynamoDB().getRequestCount();
+        assertEquals(expected, geoQueryClient.execute(counts));
+        assertEquals(counts.getCountQueryRequests().size(), places.getDynamoDB().getRequestCount() - requestsBefore);
+        for (QueryRequest query : counts.getCountQueryRequests()) {
+            assertNull(query.getLimit());
+        }
+    }
+
+    @Test
+    public void limitsPagesByObservedDensity() {
+        AdaptivePagingPolicy policy = new AdaptivePagingPolicy.Builder(CONFIG).minPageItems(2).maxPageItems(100).headroom(1.0d)
+                .decay(1.0d).build();
+        // geohashes are 64 bit cell ids, far beyond the integers a double represents exactly
+        long min = S2CellId.fromLatLng(CENTER).id();
+        policy.record(page("1", min, min + 999999), 10000);
+        policy.record(page("2", min, min + 999999), 1000000);
+
+        assertEquals(10, policy.getLimit(page("1", min, min + 999), 0));
+        assertEquals(6, policy.getLimit(page("1", min, min + 999), 4));
+        assertEquals(2, policy.getLimit(page("1", min, min + 9), 0));
+        assertEquals(100, policy.getLimit(page("2", min, min + 999), 0));
+        assertEquals(100, policy.getLimit(page("3", min, min + 999), 0));
+    }
+
+    @Test
+    public void spansRangesOfAllSixtyFourBits() {
+        AdaptivePagingPolicy policy = new AdaptivePagingPolicy.Builder(CONFIG).minPageItems(1).maxPageItems(100).headroom(1.0d)
+                .decay(1.0d).build();
+        policy.record(page("1", Long.MIN_VALUE, Long.MAX_VALUE), 1);
+        assertEquals(Math.pow(2.0d, -64.0d), policy.getDensity("1"), 0.0d);
+    }
+
+    private long countRequests(GeoQueryRequest request) throws Exception {
+        long requestsBefore = places.getDynamoDB().getRequestCount();
+        geoQueryClient.execute(request);
+        return places.getDynamoDB().getRequestCount() - requestsBefore;
+    }
+
+    private GeoQueryRequest radiusQuery() {
+        return geo.radiusQuery(new QueryRequest().withTableName(TABLE).withLimit(2), CENTER.latDegrees(), CENTER.lngDegrees(), RADIUS,
+                CONFIG, Optional.<String>absent());
+    }
+
+    private static QueryRequest page(String hashKey, long minGeoHash, long maxGeoHash) {
+        Map<String, Condition> keyConditions = new HashMap<String, Condition>();
+        keyConditions.put(CONFIG.getGeoHashKeyColumn(), new Condition().withComparisonOperator(ComparisonOperator.EQ)
+                .withAttributeValueList(new AttributeValue().withN(hashKey)));
+        keyConditions.put(CONFIG.getGeoHashColumn(), new Condition().withComparisonOperator(ComparisonOperator.BETWEEN)
+                .withAttributeValueList(new AttributeValue().withN(Long.toString(minGeoHash)),
+                        new AttributeValue().withN(Long.toString(maxGeoHash))));
+        return new QueryRequest().withTableName(TABLE).withKeyConditions(keyConditions);
+    }
+
+    private static AdaptivePagingPolicy newPolicy() {
+        return new AdaptivePagingPolicy.Builder(CONFIG).minPageItems(2).maxPageItems(20).build();
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.amazonaws.geo.s2.internal;
+
+import com.amazonaws.geo.Geo;
+import com.amazonaws.geo.GeoQueryHelper;
+import com.amazonaws.geo.local.PlacesTable;
+import com.amazonaws.geo.model.GeoQueryRequest;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.dashlabs.dash.geo.model.filters.GeoFilters;
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+import com.dashlabs.dash.geo.s3.model.GeohashRangePlan;
+import com.dashlabs.dash.geo.scan.GeoRangeScanExecutor;
+import com.google.common.base.Optional;
+import com.google.common.geometry.S2LatLng;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static com.amazonaws.geo.local.PlacesTable.CONFIG;
+import static com.amazonaws.geo.local.PlacesTable.TABLE;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests a {@link GeoRangeScanExecutor} over a {@link DynamoDBGeoRangeScanner} against the in-memory DynamoDB stand-in.
+ */
+public class DynamoDBGeoRangeScannerTest {
+
+    private static final S2LatLng CENTER = S2LatLng.fromDegrees(40.7527, -73.9772);
+
+    @Rule
+    public final PlacesTable places = new PlacesTable();
+
+    private final Geo geo = new Geo();
+
+    private int expected;
+
+    private GeohashRangePlan plan;
+
+    private GeoRangeScanExecutor<Map<String, AttributeValue>, Map<String, AttributeValue>> executor;
+
+    @Before
+    public void setUp() {
+        expected = places.loadItems(geo, CENTER, 2000);
+        plan = new com.dashlabs.dash.geo.s3.Geo().generatePlanForRadiusQuery(CONFIG.getGeoHashKeyLength(), CENTER.latDegrees(),
+                CENTER.lngDegrees(), 2000);
+        DynamoDBGeoRangeScanner scanner = new DynamoDBGeoRangeScanner(places.getDynamoDB(), new GeoQueryHelper(new S2Manager()),
+                new QueryRequest().withTableName(TABLE), CONFIG, Optional.<String>absent());
+        executor = new GeoRangeScanExecutor<Map<String, AttributeValue>, Map<String, AttributeValue>>(scanner,
+                places.getExecutorService(), 10);
+    }
+
+    @Test
+    public void returnsEveryItemInRange() throws Exception {
+        assertEquals(expected, executor.execute(plan, GeoFilters.newRadiusPredicate(CENTER, 2000)).size());
+    }
+
+    @Test
+    public void plansTheRangesOfTheRadiusQuery() {
+        assertEquals(radiusQuery().getQueryRequests().size(), plan.size());
+    }
+
+    @Test
+    public void matchesGeoQueryClient() throws Exception {
+        assertEquals(new GeoQueryClient(places.getDynamoDB(), places.getExecutorService()).execute(radiusQuery()),
+                executor.execute(plan, GeoFilters.newRadiusPredicate(CENTER, 2000)));
+    }
+
+    @Test
+    public void matchesGeoQueryClientWithALimit() throws Exception {
+        assertEquals(new GeoQueryClient(places.getDynamoDB(), places.getExecutorService()).execute(radiusQuery(), 25, 4),
+                executor.execute(plan, GeoFilters.newRadiusPredicate(CENTER, 2000), 25, 4));
+    }
+
+    private GeoQueryRequest radiusQuery() {
+        return geo.radiusQuery(new QueryRequest().withTableName(TABLE), CENTER.latDegrees(), CENTER.lngDegrees(), 2000, CONFIG,
+                Optional.<String>absent());
+    }
+
+}
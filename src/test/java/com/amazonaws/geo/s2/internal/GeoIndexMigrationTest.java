@@ -0,0 +1,153 @@
+package com.amazonaws.geo.s2.internal;
+
+import com.amazonaws.geo.Geo;
+import com.amazonaws.geo.GeoConfig;
+import com.amazonaws.geo.local.PlacesTable;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.google.common.base.Optional;
+import com.google.common.geometry.S2LatLng;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.amazonaws.geo.local.PlacesTable.CONFIG;
+import static com.amazonaws.geo.local.PlacesTable.SHORT_KEYS_CONFIG;
+import static com.amazonaws.geo.local.PlacesTable.TABLE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests a {@link GeoIndexMigration} through its phases against the in-memory DynamoDB stand-in.
+ */
+public class GeoIndexMigrationTest {
+
+    @Rule
+    public final PlacesTable places = new PlacesTable();
+
+    private final Geo geo = new Geo();
+
+    private GeoQueryClient geoQueryClient;
+
+    private GeoIndexMigration migration;
+
+    private int expected;
+
+    @Before
+    public void setUp() throws Exception {
+        places.loadItems(geo, S2LatLng.fromDegrees(40.75, -73.98), 0);
+        geoQueryClient = new GeoQueryClient(places.getDynamoDB(), places.getExecutorService());
+        migration = newMigration(SHORT_KEYS_CONFIG);
+        // writes from now on carry both indexes
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("id", new AttributeValue().withS("dual"));
+        item.put("latitude", new AttributeValue().withN("40.75"));
+        item.put("longitude", new AttributeValue().withN("-73.98"));
+        places.getDynamoDB().putItem(migration.putItemRequest(new PutItemRequest().withTableName(TABLE).withItem(item), 40.75, -73.98));
+        expected = geoQueryClient.execute(geo.radiusQuery(newQuery(), 40.75, -73.98, 3000, CONFIG, Optional.<String>absent())).size();
+    }
+
+    @Test
+    public void readsTheOldIndexUntilBackfilled() throws Exception {
+        assertEquals(expected, migration.radiusQuery(newQuery(), 40.75, -73.98, 3000, Optional.<String>absent()).size());
+        // the new index only holds the dual written item
+        assertEquals(1, geoQueryClient.execute(geo.radiusQuery(newQuery(), 40.75, -73.98, 3000, SHORT_KEYS_CONFIG,
+                Optional.<String>absent())).size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refusesCutoverBeforeBackfill() {
+        migration.cutover();
+    }
+
+    @Test
+    public void shadowReadsOnceBackfilled() throws Exception {
+        GeoReindexer reindexer = new GeoReindexer.Builder().dbClient(places.getDynamoDB()).geo(geo).tableName(TABLE)
+                .keyColumns(Collections.singletonList("id")).configs(migration.getWriteConfigs())
+                .executorService(places.getExecutorService()).build();
+        assertEquals(GeoIndexMigration.Phase.DUAL_WRITE, migration.advanceBackfillWatermark(500L));
+        assertEquals(500L, reindexer.run());
+        assertEquals(GeoIndexMigration.Phase.SHADOW_READ, migration.advanceBackfillWatermark(1000L));
+    }
+
+    @Test
+    public void shadowReadsMatch() throws Exception {
+        backfill();
+        int expectedInRectangle = geoQueryClient.execute(geo.rectangleQuery(newQuery(), 40.73, -74.0, 40.77, -73.96, CONFIG,
+                Optional.<String>absent())).size();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(expectedInRectangle, migration.rectangleQuery(newQuery(), 40.73, -74.0, 40.77, -73.96,
+                    Optional.<String>absent()).size());
+            assertEquals(expected, migration.radiusQuery(newQuery(), 40.75, -73.98, 3000, Optional.<String>absent()).size());
+        }
+        assertEquals(10L, migration.getShadowReadCount());
+        assertEquals(0L, migration.getMismatchCount());
+    }
+
+    @Test
+    public void comparesTheQueriesOfBothIndexes() throws Exception {
+        backfill();
+        migration.radiusQuery(newQuery(), 40.75, -73.98, 3000, Optional.<String>absent());
+        Map<String, Double> metrics = migration.toMetrics();
+        // shorter hash keys read the same items with fewer queries
+        assertTrue(metrics.get(GeoIndexMigration.METRIC_PREFIX + "new.queries")
+                < metrics.get(GeoIndexMigration.METRIC_PREFIX + "old.queries"));
+    }
+
+    @Test
+    public void readsOnlyTheNewIndexAfterCutover() throws Exception {
+        backfill();
+        migration.cutover();
+        assertEquals(GeoIndexMigration.Phase.CUTOVER, migration.getPhase());
+        long requestsBefore = places.getDynamoDB().getRequestCount();
+        assertEquals(expected, migration.radiusQuery(newQuery(), 40.75, -73.98, 3000, Optional.<String>absent()).size());
+        assertEquals(geo.radiusQuery(newQuery(), 40.75, -73.98, 3000, SHORT_KEYS_CONFIG, Optional.<String>absent())
+                .getQueryRequests().size(), places.getDynamoDB().getRequestCount() - requestsBefore);
+    }
+
+    @Test
+    public void rollsBackToShadowReads() throws Exception {
+        backfill();
+        migration.cutover();
+        migration.rollback();
+        assertEquals(GeoIndexMigration.Phase.SHADOW_READ, migration.getPhase());
+    }
+
+    @Test
+    public void recordsNeitherSideOfFailedShadowReads() throws Exception {
+        GeoConfig missingConfig = new GeoConfig.Builder().geoIndexName("missing-index").geoHashKeyColumn("geoHashKey4")
+                .geoHashColumn("geohash").geoHashKeyLength(4).build();
+        GeoIndexMigration failing = newMigration(missingConfig);
+        failing.advanceBackfillWatermark(1000L);
+        assertEquals(expected, failing.radiusQuery(newQuery(), 40.75, -73.98, 3000, Optional.<String>absent()).size());
+        assertEquals(1L, failing.getShadowFailureCount());
+        Map<String, Double> metrics = failing.toMetrics();
+        assertEquals(1.0d, metrics.get(GeoIndexMigration.METRIC_PREFIX + "sampledReads"), 0.0d);
+        assertEquals(0.0d, metrics.get(GeoIndexMigration.METRIC_PREFIX + "old.queries"), 0.0d);
+        assertEquals(0.0d, metrics.get(GeoIndexMigration.METRIC_PREFIX + "old.meanLatencyMillis"), 0.0d);
+    }
+
+    /**
+     * Writes the new index to every item and moves the migration to shadow reads.
+     */
+    private void backfill() throws Exception {
+        new GeoReindexer.Builder().dbClient(places.getDynamoDB()).geo(geo).tableName(TABLE).keyColumns(Collections.singletonList("id"))
+                .configs(migration.getWriteConfigs()).executorService(places.getExecutorService()).build().run();
+        migration.advanceBackfillWatermark(1000L);
+    }
+
+    private GeoIndexMigration newMigration(GeoConfig newConfig) {
+        return new GeoIndexMigration.Builder().geo(geo).oldConfig(CONFIG).newConfig(newConfig).keyColumns(Collections.singletonList("id"))
+                .geoQueryClient(geoQueryClient).dualWriteStartMillis(1000L).build();
+    }
+
+    private static QueryRequest newQuery() {
+        return new QueryRequest().withTableName(TABLE);
+    }
+
+}
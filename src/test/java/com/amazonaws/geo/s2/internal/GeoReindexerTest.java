@@ -0,0 +1,130 @@
+package com.amazonaws.geo.s2.internal;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.geo.Geo;
+import com.amazonaws.geo.local.InMemoryAmazonDynamoDB;
+import com.amazonaws.geo.local.PlacesTable;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+import com.google.common.geometry.S2LatLng;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.amazonaws.geo.local.PlacesTable.CONFIG;
+import static com.amazonaws.geo.local.PlacesTable.SHORT_KEYS_CONFIG;
+import static com.amazonaws.geo.local.PlacesTable.TABLE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the {@link GeoReindexer} resuming from its checkpoints against the in-memory DynamoDB stand-in.
+ */
+public class GeoReindexerTest {
+
+    private static final int PAGE_SIZE = 20;
+
+    // every 37th update fails, interrupting the run
+    private final AtomicInteger updates = new AtomicInteger();
+
+    @Rule
+    public final PlacesTable places = new PlacesTable(new InMemoryAmazonDynamoDB() {
+        @Override public UpdateItemResult updateItem(UpdateItemRequest request) {
+            if (updates.incrementAndGet() % 37 == 0) {
+                throw new AmazonServiceException("Service unavailable");
+            }
+            return super.updateItem(request);
+        }
+    });
+
+    private GeoReindexer reindexer;
+
+    @Before
+    public void setUp() {
+        InMemoryAmazonDynamoDB dynamoDB = places.getDynamoDB();
+        dynamoDB.createTable(new CreateTableRequest().withTableName("checkpoints")
+                .withKeySchema(new KeySchemaElement(DynamoDBReindexCheckpointStore.ID_COLUMN, KeyType.HASH))
+                .withAttributeDefinitions(new AttributeDefinition(DynamoDBReindexCheckpointStore.ID_COLUMN, ScalarAttributeType.S)));
+        Geo geo = new Geo();
+        places.loadItems(geo, S2LatLng.fromDegrees(40.75, -73.98), 0);
+        Map<String, AttributeValue> unlocated = new HashMap<String, AttributeValue>();
+        unlocated.put("id", new AttributeValue().withS("unlocated"));
+        dynamoDB.putItem(new PutItemRequest().withTableName(TABLE).withItem(unlocated));
+        reindexer = new GeoReindexer.Builder().dbClient(dynamoDB).geo(geo).tableName(TABLE)
+                .keyColumns(Collections.singletonList("id")).configs(Arrays.asList(CONFIG, SHORT_KEYS_CONFIG)).pageSize(PAGE_SIZE)
+                .writeUnitsPerSecond(100000).executorService(places.getExecutorService())
+                .checkpointStore(new DynamoDBReindexCheckpointStore(dynamoDB, "checkpoints", "short-keys")).build();
+    }
+
+    @Test
+    public void resumesFailedRunsToCompletion() throws Exception {
+        assertTrue(runToCompletion() > 1);
+    }
+
+    @Test
+    public void updatesEveryLocatedItemOnce() throws Exception {
+        runToCompletion();
+        assertEquals(500L, reindexer.getUpdatedCount());
+        assertTrue(reindexer.getSkippedCount() >= 1);
+        assertEquals(0L, reindexer.getConflictCount());
+    }
+
+    @Test
+    public void rescansAtMostAPagePerSegmentAfterAFailedRun() throws Exception {
+        int runs = runToCompletion();
+        assertTrue(reindexer.getScannedCount() <= 501 + (runs - 1) * 4 * PAGE_SIZE);
+    }
+
+    @Test
+    public void writesTheNewHashKeys() throws Exception {
+        runToCompletion();
+        S2Manager s2Manager = new S2Manager();
+        for (int i = 0; i < 500; i++) {
+            Map<String, AttributeValue> item = places.getDynamoDB().getItem(new GetItemRequest().withTableName(TABLE)
+                    .withKey(Collections.singletonMap("id", new AttributeValue().withS("item" + i)))).getItem();
+            long geohash = Long.parseLong(item.get("geohash").getN());
+            assertEquals(Long.toString(s2Manager.generateHashKey(geohash, 4)), item.get("geoHashKey4").getN());
+        }
+    }
+
+    @Test
+    public void doesNothingOnceComplete() throws Exception {
+        runToCompletion();
+        long requests = places.getDynamoDB().getRequestCount();
+        assertEquals(0L, reindexer.run());
+        assertEquals(4L, places.getDynamoDB().getRequestCount() - requests);
+    }
+
+    /**
+     * @return the number of runs it took
+     */
+    private int runToCompletion() throws InterruptedException {
+        int runs = 0;
+        while (true) {
+            runs++;
+            try {
+                reindexer.run();
+                return runs;
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof AmazonServiceException);
+            }
+        }
+    }
+
+}
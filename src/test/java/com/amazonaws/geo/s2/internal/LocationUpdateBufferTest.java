@@ -0,0 +1,196 @@
+package com.amazonaws.geo.s2.internal;
+
+import com.amazonaws.geo.DefaultHashKeyDecorator;
+import com.amazonaws.geo.Geo;
+import com.amazonaws.geo.GeoConfig;
+import com.amazonaws.geo.HashKeyDecorator;
+import com.amazonaws.geo.local.InMemoryAmazonDynamoDB;
+import com.amazonaws.geo.local.PlacesTable;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.google.common.base.Optional;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.amazonaws.geo.local.PlacesTable.CONFIG;
+import static com.amazonaws.geo.local.PlacesTable.TABLE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the {@link LocationUpdateBuffer} against the in-memory DynamoDB stand-in.
+ */
+public class LocationUpdateBufferTest {
+
+    private static final Map<String, AttributeValue> KEY = Collections.singletonMap("id", new AttributeValue().withS("truck"));
+
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+
+    private volatile CountDownLatch concurrentWrites;
+
+    @Rule
+    public final PlacesTable places = new PlacesTable(new InMemoryAmazonDynamoDB() {
+        @Override public UpdateItemResult updateItem(UpdateItemRequest request) {
+            if (failuresLeft.getAndDecrement() > 0) {
+                throw new IllegalStateException("Injected failure");
+            }
+            CountDownLatch latch = concurrentWrites;
+            if (latch != null) {
+                latch.countDown();
+                try {
+                    if (!latch.await(10, TimeUnit.SECONDS)) {
+                        throw new IllegalStateException("Writes were not concurrent");
+                    }
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return super.updateItem(request);
+        }
+    });
+
+    private final Geo geo = new Geo();
+
+    @Test
+    public void coalescesUpdatesBetweenFlushes() {
+        LocationUpdateBuffer buffer = newBuffer();
+        // a late ping does not replace a newer one
+        buffer.submit(KEY, 40.7500, -73.9800, 1L);
+        buffer.submit(KEY, 40.7501, -73.9801, 3L);
+        buffer.submit(KEY, 40.7600, -73.9900, 2L);
+        assertEquals(1, buffer.flush());
+        assertEquals(1, places.getDynamoDB().getItemCount(TABLE));
+        assertEquals("40.7501", getItem().get("latitude").getN());
+        assertEquals(1, buffer.getGeoKeyWriteCount());
+    }
+
+    @Test
+    public void movesOnlyCoordinatesWithinTheCell() {
+        LocationUpdateBuffer buffer = newBuffer();
+        buffer.submit(KEY, 40.7501, -73.9801, 3L);
+        buffer.flush();
+        // a few centimeters
+        buffer.submit(KEY, 40.7501001, -73.9801001, 4L);
+        assertEquals(1, buffer.flush());
+        assertEquals(1, buffer.getGeoKeyWriteCount());
+        assertEquals("4", getItem().get("fixTime").getN());
+        assertEquals(geo.updateLocationRequest(new UpdateItemRequest(), 40.7501, -73.9801, Optional.<Long>absent(), 20, "fixTime", 0L,
+                Collections.singletonList(CONFIG)).getGeohash(), Long.parseLong(getItem().get("geohash").getN()));
+    }
+
+    @Test
+    public void movesItemsLeavingTheirCellInTheGeoIndex() throws Exception {
+        LocationUpdateBuffer buffer = newBuffer();
+        buffer.submit(KEY, 40.7501, -73.9801, 3L);
+        buffer.flush();
+        buffer.submit(KEY, 40.7800, -73.9500, 5L);
+        buffer.close();
+        assertEquals(2, buffer.getGeoKeyWriteCount());
+        assertEquals(1, radiusQuery(40.7800, -73.9500).size());
+        assertTrue(radiusQuery(40.7501, -73.9801).isEmpty());
+    }
+
+    @Test
+    public void rejectsOlderLocationsOfOtherWriters() {
+        LocationUpdateBuffer buffer = newBuffer();
+        buffer.submit(KEY, 40.7800, -73.9500, 5L);
+        buffer.flush();
+
+        LocationUpdateBuffer other = newBuffer();
+        other.submit(KEY, 40.7000, -74.0000, 4L);
+        assertEquals(0, other.flush());
+        assertEquals(1, other.getStaleCount());
+        assertEquals("40.78", getItem().get("latitude").getN());
+    }
+
+    @Test
+    public void buffersFailedWritesAgain() {
+        LocationUpdateBuffer buffer = newBuffer();
+        failuresLeft.set(1);
+        buffer.submit(KEY, 40.7501, -73.9801, 3L);
+        assertEquals(0, buffer.flush());
+        assertEquals(1, buffer.getFailedCount());
+        assertEquals(1, buffer.getPendingCount());
+        assertEquals(1, buffer.flush());
+        assertEquals("40.7501", getItem().get("latitude").getN());
+    }
+
+    @Test
+    public void keepsFlushingAfterAFailure() throws Exception {
+        LocationUpdateBuffer buffer = newBuilder().executorService(places.getExecutorService()).flushIntervalMillis(10L).build();
+        failuresLeft.set(3);
+        buffer.submit(KEY, 40.7501, -73.9801, 3L);
+        long deadline = System.currentTimeMillis() + 10000L;
+        while ((buffer.getWrittenCount() == 0) && (System.currentTimeMillis() < deadline)) {
+            Thread.sleep(10L);
+        }
+        buffer.close();
+        assertEquals(1, buffer.getWrittenCount());
+        assertEquals(3, buffer.getFailedCount());
+    }
+
+    @Test
+    public void sendsTheWritesOfAFlushConcurrently() {
+        LocationUpdateBuffer buffer = newBuilder().writeExecutorService(places.getExecutorService()).build();
+        concurrentWrites = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            buffer.submit(Collections.singletonMap("id", new AttributeValue().withS("truck" + i)), 40.75 + i * 0.01, -73.98, 1L);
+        }
+        assertEquals(4, buffer.flush());
+        assertEquals(4, places.getDynamoDB().getItemCount(TABLE));
+    }
+
+    @Test
+    public void rejectsCompositeHashKeys() {
+        GeoConfig composite = new GeoConfig.Builder().geoIndexName("geo-index").geoHashKeyColumn("geoHashKey").geoHashColumn("geohash")
+                .geoHashKeyLength(6).hashKeyDecorator(Optional.<HashKeyDecorator>of(new DefaultHashKeyDecorator()))
+                .compositeHashKeyColumn(Optional.of("category")).build();
+        try {
+            newBuilder().configs(Collections.singletonList(composite)).build();
+            fail("Should have failed as composite hash keys are not supported");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith(": geo-index"));
+        }
+    }
+
+    @Test
+    public void rejectsTimeBucketedHashKeys() {
+        GeoConfig timeBucketed = new GeoConfig.Builder().geoIndexName("geo-index").geoHashKeyColumn("geoHashKey").geoHashColumn("geohash")
+                .geoHashKeyLength(6).timestampColumn(Optional.of("fixTime")).timeBucketMillis(3600000L).build();
+        try {
+            newBuilder().configs(Collections.singletonList(timeBucketed)).build();
+            fail("Should have failed as time bucketed hash keys are not supported");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith(": geo-index"));
+        }
+    }
+
+    private LocationUpdateBuffer newBuffer() {
+        return newBuilder().build();
+    }
+
+    private LocationUpdateBuffer.Builder newBuilder() {
+        return new LocationUpdateBuffer.Builder().dbClient(places.getDynamoDB()).geo(geo).tableName(TABLE)
+                .configs(Collections.singletonList(CONFIG)).versionColumn("fixTime").cellLevel(20);
+    }
+
+    private Map<String, AttributeValue> getItem() {
+        return places.getDynamoDB().getItem(TABLE, KEY).getItem();
+    }
+
+    private List<Map<String, AttributeValue>> radiusQuery(double latitude, double longitude) throws Exception {
+        return new GeoQueryClient(places.getDynamoDB(), places.getExecutorService()).execute(geo.radiusQuery(
+                new QueryRequest().withTableName(TABLE), latitude, longitude, 100, CONFIG, Optional.<String>absent()));
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.amazonaws.geo.s2.internal;
+
+import com.amazonaws.geo.Geo;
+import com.amazonaws.geo.local.PlacesTable;
+import com.amazonaws.geo.model.GeoQueryRequest;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.dashlabs.dash.geo.s2.internal.CellOccupancyIndex;
+import com.google.common.base.Optional;
+import com.google.common.geometry.S2LatLng;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.amazonaws.geo.local.PlacesTable.CONFIG;
+import static com.amazonaws.geo.local.PlacesTable.TABLE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests loading a {@link CellOccupancyIndex} with the {@link OccupancyIndexLoader} and pruning queries with it, against
+ * the in-memory DynamoDB stand-in.
+ */
+public class OccupancyIndexLoaderTest {
+
+    private static final S2LatLng CENTER = S2LatLng.fromDegrees(40.7527, -73.9772);
+
+    // out in the bay, where no item was loaded
+    private static final S2LatLng BAY = S2LatLng.fromDegrees(40.55, -73.90);
+
+    @Rule
+    public final PlacesTable places = new PlacesTable();
+
+    private final Geo geo = new Geo();
+
+    private final CellOccupancyIndex occupancyIndex = new CellOccupancyIndex(13, 10000, 0.001d);
+
+    private int expected;
+
+    private GeoQueryClient geoQueryClient;
+
+    @Before
+    public void setUp() {
+        expected = places.loadItems(geo, CENTER, 2000);
+        geoQueryClient = new GeoQueryClient(places.getDynamoDB(), places.getExecutorService());
+    }
+
+    @Test
+    public void loadsEveryItem() {
+        assertEquals(500, OccupancyIndexLoader.load(places.getDynamoDB(), TABLE, "geo-index", "geohash", occupancyIndex));
+    }
+
+    @Test
+    public void keepsOccupiedCells() throws Exception {
+        loadOccupancyIndex();
+        assertEquals(expected, geoQueryClient.execute(radiusQuery(CENTER)).size());
+    }
+
+    @Test
+    public void prunesEmptyCells() {
+        loadOccupancyIndex();
+        assertTrue(radiusQuery(BAY).getQueryRequests().isEmpty());
+    }
+
+    @Test
+    public void recordsItemsDecoratedAfterLoading() throws Exception {
+        loadOccupancyIndex();
+        Map<String, AttributeValue> item = new HashMap<String, AttributeValue>();
+        item.put("id", new AttributeValue().withS("bay"));
+        item.put("latitude", new AttributeValue().withN(Double.toString(BAY.latDegrees())));
+        item.put("longitude", new AttributeValue().withN(Double.toString(BAY.lngDegrees())));
+        geo.updateAttributeValues(item, BAY.latDegrees(), BAY.lngDegrees(), Collections.singletonList(CONFIG));
+        places.getDynamoDB().putItem(new PutItemRequest().withTableName(TABLE).withItem(item));
+        assertEquals(1, geoQueryClient.execute(radiusQuery(BAY)).size());
+    }
+
+    private void loadOccupancyIndex() {
+        OccupancyIndexLoader.load(places.getDynamoDB(), TABLE, "geo-index", "geohash", occupancyIndex);
+        geo.setOccupancyIndex(occupancyIndex);
+    }
+
+    private GeoQueryRequest radiusQuery(S2LatLng center) {
+        return geo.radiusQuery(new QueryRequest().withTableName(TABLE), center.latDegrees(), center.lngDegrees(), 2000, CONFIG,
+                Optional.<String>absent());
+    }
+
+}
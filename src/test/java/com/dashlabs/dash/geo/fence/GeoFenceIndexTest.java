@@ -0,0 +1,57 @@
+package com.dashlabs.dash.geo.fence;
+
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+import com.dashlabs.dash.geo.s3.model.GeoFenceCellKeys;
+import com.google.common.geometry.S2LatLng;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeoFenceIndexTest {
+
+    private static final GeoFence MANHATTAN = GeoFence.fromVertices("manhattan", Arrays.asList(
+            S2LatLng.fromDegrees(40.70, -74.02), S2LatLng.fromDegrees(40.70, -73.97),
+            S2LatLng.fromDegrees(40.80, -73.93), S2LatLng.fromDegrees(40.88, -73.93),
+            S2LatLng.fromDegrees(40.75, -74.02)));
+
+    private static final GeoFence MIDTOWN = GeoFence.fromVertices("midtown", Arrays.asList(
+            S2LatLng.fromDegrees(40.74, -74.00), S2LatLng.fromDegrees(40.74, -73.97),
+            S2LatLng.fromDegrees(40.77, -73.97), S2LatLng.fromDegrees(40.77, -74.00)));
+
+    @Test
+    public void findContainingFences() {
+        for (boolean offHeap : new boolean[] { false, true }) {
+            GeoFenceIndex index = new GeoFenceIndex.Builder(new S2Manager()).offHeap(offHeap).add(MANHATTAN).add(MIDTOWN).build();
+            assertFences(index);
+        }
+    }
+
+    @Test
+    public void loadFromPersistedCells() {
+        S2Manager s2Manager = new S2Manager();
+        GeoFenceIndex.Builder builder = new GeoFenceIndex.Builder(s2Manager).add(MANHATTAN).add(MIDTOWN);
+        List<GeoFenceCell> cells = new ArrayList<GeoFenceCell>();
+        for (GeoFenceCell cell : builder.getCells()) {
+            cells.add(GeoFenceCellKeys.fromKey(GeoFenceCellKeys.toKey(cell, 6, s2Manager)));
+        }
+        GeoFenceIndex index = GeoFenceIndex.load(cells, Arrays.asList(MANHATTAN, MIDTOWN), false);
+        assertEquals(builder.getCells().size(), index.size());
+        assertFences(index);
+    }
+
+    private void assertFences(GeoFenceIndex index) {
+        List<String> fences = new ArrayList<String>(index.findContainingFences(40.7580, -73.9855));
+        Collections.sort(fences);
+        assertEquals(Arrays.asList("manhattan", "midtown"), fences);
+        assertEquals(Collections.singletonList("manhattan"), index.findContainingFences(40.7075, -74.0050));
+        assertTrue(index.findContainingFences(40.6782, -73.9442).isEmpty());
+        assertTrue(index.findContainingFences(-33.8688, 151.2093).isEmpty());
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.dashlabs.dash.geo.model;
+
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2LatLng;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests counting, growth and merging of cell count maps against a boxed map.
+ */
+public class CellCountMapTest {
+
+    @Test
+    public void countsCells() {
+        Random random = new Random(11);
+        CellCountMap counts = new CellCountMap();
+        CellCountMap other = new CellCountMap(4);
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        for (int i = 0; i < 5000; i++) {
+            long cellId = S2CellId.fromLatLng(S2LatLng.fromDegrees(40.0 + random.nextDouble(), -74.0 + random.nextDouble()))
+                    .parent(10).id();
+            CellCountMap target = (i % 2 == 0 ? counts : other);
+            target.add(cellId, 2L);
+            Long count = expected.get(cellId);
+            expected.put(cellId, (count == null ? 2L : count + 2L));
+        }
+        counts.addAll(other);
+        assertEquals(expected.size(), counts.size());
+        assertEquals(10000L, counts.getTotalCount());
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue().longValue(), counts.getCount(entry.getKey()));
+        }
+        assertEquals(0L, counts.getCount(S2CellId.fromLatLng(S2LatLng.fromDegrees(-33.8688, 151.2093)).parent(10).id()));
+        long[] cellIds = counts.getCellIds();
+        for (int i = 1; i < cellIds.length; i++) {
+            assertEquals(true, cellIds[i - 1] < cellIds[i]);
+        }
+
+        CellCountMap copy = new CellCountMap();
+        copy.addAll(counts);
+        assertEquals(counts, copy);
+        assertArrayEquals(cellIds, copy.getCellIds());
+    }
+
+}
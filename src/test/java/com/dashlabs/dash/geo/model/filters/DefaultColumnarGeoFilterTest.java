@@ -0,0 +1,68 @@
+package com.dashlabs.dash.geo.model.filters;
+
+import com.dashlabs.dash.geo.s3.model.GeoProperties;
+import com.google.common.geometry.S2LatLng;
+import com.google.common.geometry.S2LatLngRect;
+import org.junit.Test;
+
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class DefaultColumnarGeoFilterTest {
+
+    @Test
+    public void matchesItemFilters() {
+        int size = 20000;
+        int offset = 77;
+        Random random = new Random(11);
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        List<GeoProperties> properties = new ArrayList<GeoProperties>(size - offset);
+        Map<GeoProperties, Integer> indexes = new IdentityHashMap<GeoProperties, Integer>();
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = 40.70 + random.nextDouble() * 0.1;
+            longitudes[i] = -74.02 + random.nextDouble() * 0.1;
+            if (i >= offset) {
+                GeoProperties point = new GeoProperties(6, 0L, latitudes[i], longitudes[i]);
+                properties.add(point);
+                indexes.put(point, i - offset);
+            }
+        }
+        S2LatLng center = S2LatLng.fromDegrees(40.75, -73.97);
+        S2LatLngRect rect = S2LatLngRect.fromPointPair(S2LatLng.fromDegrees(40.72, -74.00), S2LatLng.fromDegrees(40.74, -73.98));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ColumnarGeoFilter radius = new DefaultColumnarGeoFilter(GeoFilters.newRadiusPredicate(center, 2000), pool, 128);
+            BitSet expected = toBitSet(com.dashlabs.dash.geo.s3.model.filters.GeoFilters.newRadiusFilter(center, 2000).filter(properties), indexes);
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, radius.filter(latitudes, longitudes, offset, size - offset));
+            assertEquals(expected, radius.filter(DoubleBuffer.wrap(latitudes), DoubleBuffer.wrap(longitudes), offset, size - offset));
+            assertEquals(expected.cardinality(), radius.filterIndexes(latitudes, longitudes, offset, size - offset).length);
+
+            ColumnarGeoFilter rectangle = GeoFilters.newColumnarRectangleFilter(rect);
+            expected = toBitSet(com.dashlabs.dash.geo.s3.model.filters.GeoFilters.newRectangleFilter(rect).filter(properties), indexes);
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, rectangle.filter(latitudes, longitudes, offset, size - offset));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static BitSet toBitSet(List<GeoProperties> matches, Map<GeoProperties, Integer> indexes) {
+        BitSet bits = new BitSet();
+        for (GeoProperties match : matches) {
+            bits.set(indexes.get(match));
+        }
+        return bits;
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.dashlabs.dash.geo.s2.internal;
+
+import com.dashlabs.dash.geo.model.GeohashRange;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2LatLng;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests probing and snapshots of the cell occupancy index.
+ */
+public class CellOccupancyIndexTest {
+
+    @Test
+    public void mightBeOccupied() throws Exception {
+        CellOccupancyIndex index = new CellOccupancyIndex(12, 1000, 0.0001d);
+        index.add(40.7527, -73.9772);
+        S2CellId manhattan = S2CellId.fromLatLng(S2LatLng.fromDegrees(40.7527, -73.9772));
+        S2CellId sydney = S2CellId.fromLatLng(S2LatLng.fromDegrees(-33.8688, 151.2093));
+
+        assertTrue(index.mightBeOccupied(range(manhattan.parent(14))));
+        assertTrue(index.mightBeOccupied(range(manhattan.parent(10))));
+        assertFalse(index.mightBeOccupied(range(sydney.parent(12))));
+        // ranges spanning more cells than are probed are assumed populated
+        assertTrue(index.mightBeOccupied(range(sydney.parent(6))));
+
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        index.writeTo(snapshot);
+        CellOccupancyIndex restored = CellOccupancyIndex.readFrom(new ByteArrayInputStream(snapshot.toByteArray()));
+        assertEquals(12, restored.getLevel());
+        assertTrue(restored.mightBeOccupied(range(manhattan.parent(14))));
+        assertFalse(restored.mightBeOccupied(range(sydney.parent(12))));
+    }
+
+    private static GeohashRange range(S2CellId cellId) {
+        return new GeohashRange(cellId.rangeMin().id(), cellId.rangeMax().id());
+    }
+
+}
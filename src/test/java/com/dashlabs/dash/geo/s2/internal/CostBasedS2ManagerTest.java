@@ -0,0 +1,56 @@
+package com.dashlabs.dash.geo.s2.internal;
+
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2LatLng;
+import com.google.common.geometry.S2LatLngRect;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the cost-based covering and the density models driving it.
+ */
+public class CostBasedS2ManagerTest {
+
+    @Test
+    public void levelDensityModel() {
+        LevelCellDensityModel model = new LevelCellDensityModel.Builder(10)
+                .add(40.7527, -73.9772).add(40.7527, -73.9772).add(40.7530, -73.9770).add(-33.8688, 151.2093).build();
+        S2CellId manhattan = S2CellId.fromLatLng(S2LatLng.fromDegrees(40.7527, -73.9772));
+        assertEquals(3.0d, model.estimateItems(manhattan.parent(10)), 0.0d);
+        assertEquals(3.0d, model.estimateItems(manhattan.parent(2)), 0.0d);
+        assertEquals(3.0d / 16, model.estimateItems(manhattan.parent(12)), 0.0d);
+        S2CellId sydney = S2CellId.fromLatLng(S2LatLng.fromDegrees(-33.8688, 151.2093));
+        assertEquals(1.0d, model.estimateItems(sydney.parent(0)), 0.0d);
+    }
+
+    @Test
+    public void coveringContainsBoundingBox() {
+        Random random = new Random(3);
+        LevelCellDensityModel.Builder builder = new LevelCellDensityModel.Builder(14);
+        for (int i = 0; i < 10000; i++) {
+            builder.add(40.74 + (random.nextGaussian() * 0.01), -73.99 + (random.nextGaussian() * 0.01));
+        }
+        S2Manager s2Manager = new CostBasedS2Manager(builder.build(), 6);
+        S2LatLngRect boundingBox = s2Manager.getBoundingBoxForRectangleQuery(40.70, -74.05, 40.80, -73.90);
+        S2CellUnion cells = s2Manager.findCellIds(boundingBox);
+        for (int i = 0; i < 1000; i++) {
+            S2LatLng point = S2LatLng.fromDegrees(40.70 + (random.nextDouble() * 0.1), -74.05 + (random.nextDouble() * 0.15));
+            assertTrue(cells.contains(S2CellId.fromLatLng(point)));
+        }
+    }
+
+    @Test
+    public void sparseAreasUseCoarserCells() {
+        S2LatLngRect boundingBox = new S2Manager().getBoundingBoxForRadiusQuery(44.0, -103.0, 20000);
+        S2CellUnion sparse = new CostBasedS2Manager(new UniformCellDensityModel(1.0e-9), 6).findCellIds(boundingBox);
+        S2CellUnion dense = new CostBasedS2Manager(new UniformCellDensityModel(1.0e-2), 6).findCellIds(boundingBox);
+        assertTrue(sparse.size() < dense.size());
+        assertTrue(sparse.leafCellsCovered() > dense.leafCellsCovered());
+    }
+
+}
@@ -1,8 +1,18 @@
 package com.dashlabs.dash.geo.s2.internal;
 
+import com.dashlabs.dash.geo.model.GeohashRange;
+import com.google.common.geometry.S2Cell;
+import com.google.common.geometry.S2CellId;
+import com.google.common.geometry.S2CellUnion;
+import com.google.common.geometry.S2LatLng;
+import com.google.common.geometry.S2LatLngRect;
 import org.junit.Test;
 
+import java.util.concurrent.ForkJoinPool;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 
 /**
@@ -17,4 +27,132 @@ public class S2ManagerTest {
         assertEquals(-123, s2Manager.generateHashKey(-12345678, 3));
         assertEquals(12345678, s2Manager.generateHashKey(12345678, 10));
     }
+
+    @Test
+    public void testFindCellIdsInParallel() {
+        S2Manager sequential = new S2Manager();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            S2Manager parallel = new S2Manager(pool, 0.0d);
+            double[][] rectangles = {
+                    { 40.70, -74.02, 40.80, -73.92 },  // city
+                    { 36.0, -80.0, 42.0, -72.0 },      // region
+                    { 25.0, -125.0, 49.0, -67.0 },     // country
+                    { -10.0, -30.0, 10.0, 30.0 },      // across the equator and prime meridian
+                    { 60.0, 100.0, 80.0, 170.0 }       // high latitudes
+            };
+            for (double[] rectangle : rectangles) {
+                S2LatLngRect latLngRect = sequential.getBoundingBoxForRectangleQuery(rectangle[0], rectangle[1], rectangle[2],
+                        rectangle[3]);
+                S2CellUnion expected = sequential.findCellIds(latLngRect);
+                S2CellUnion actual = parallel.findCellIds(latLngRect);
+                assertEquals(expected.cellIds(), actual.cellIds());
+            }
+            assertNull(parallel.findCellIds(S2LatLngRect.empty()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testRadiusBoundingBoxAtEdges() {
+        S2Manager s2Manager = new S2Manager();
+        double radius = 10000;
+        double circleArea = Math.PI * radius * radius;
+        double[][] centers = {
+                { 40.75, -73.98 },    // mid-latitude
+                { 0.0, 179.95 },      // across the antimeridian
+                { -16.0, -179.99 },   // across the antimeridian, west of it
+                { 89.95, 45.0 },      // around the north pole
+                { -89.99, -120.0 },   // around the south pole
+                { 89.5, 179.9 }       // near the pole and the antimeridian
+        };
+        for (double[] center : centers) {
+            S2LatLng centerLatLng = S2LatLng.fromDegrees(center[0], center[1]);
+            S2LatLngRect boundingBox = s2Manager.getBoundingBoxForRadiusQuery(center[0], center[1], radius);
+            assertTrue(boundingBox.isValid());
+            S2CellUnion cells = s2Manager.findCellIds(boundingBox);
+            double coveredArea = 0.0d;
+            for (S2CellId cellId : cells.cellIds()) {
+                coveredArea += new S2Cell(cellId).approxArea() * S2LatLng.EARTH_RADIUS_METERS * S2LatLng.EARTH_RADIUS_METERS;
+            }
+            // the plan tracks the area of the circle rather than spanning the globe
+            assertTrue(coveredArea < 20 * circleArea);
+            assertTrue(cells.size() < 200);
+            // every point of the circle is covered
+            for (int bearing = 0; bearing < 360; bearing += 10) {
+                S2LatLng point = destination(centerLatLng, bearing, radius * 0.999);
+                assertTrue(boundingBox.contains(point));
+                assertTrue(cells.contains(S2CellId.fromLatLng(point)));
+            }
+        }
+        assertTrue(s2Manager.getBoundingBoxForRadiusQuery(0.0, 0.0, 3.0e7).isFull());
+    }
+
+    @Test
+    public void testMidLatitudeCoverings() {
+        S2Manager s2Manager = new S2Manager();
+        double[][] centers = {
+                { 40.75, -73.98 },    // New York
+                { 48.85, 2.35 },      // Paris
+                { -33.87, 151.21 },   // Sydney
+                { 37.77, -122.42 },   // San Francisco
+                { 35.68, 139.69 }     // Tokyo
+        };
+        double[] radii = { 100, 1000, 10000 };
+        // the cells and hash key ranges of each radius, as covered before large parent cells were traversed
+        int[][][] expected = {
+                { { 45, 45 }, { 1, 2 }, { 8, 9 } },
+                { { 3, 3 }, { 29, 29 }, { 108, 111 } },
+                { { 3, 3 }, { 1, 1 }, { 1, 5 } },
+                { { 7, 7 }, { 78, 78 }, { 5, 7 } },
+                { { 21, 21 }, { 52, 52 }, { 58, 61 } }
+        };
+        for (int i = 0; i < centers.length; i++) {
+            for (int j = 0; j < radii.length; j++) {
+                S2CellUnion cells = s2Manager.findCellIds(s2Manager.getBoundingBoxForRadiusQuery(centers[i][0], centers[i][1],
+                        radii[j]));
+                int ranges = 0;
+                for (S2CellId cellId : cells.cellIds()) {
+                    ranges += new GeohashRange(cellId.rangeMin().id(), cellId.rangeMax().id()).trySplit(6, s2Manager).size();
+                }
+                assertEquals(expected[i][j][0], cells.size());
+                assertEquals(expected[i][j][1], ranges);
+            }
+        }
+    }
+
+    @Test
+    public void testRectangleBoundingBoxAcrossAntimeridian() {
+        S2Manager s2Manager = new S2Manager();
+        S2LatLngRect expected = s2Manager.getBoundingBoxForRectangleQuery(-1.0, -1.0, 1.0, 1.0);
+        S2LatLngRect wrapped = s2Manager.getBoundingBoxForRectangleQuery(-1.0, 179.0, 1.0, -179.0);
+        S2LatLngRect unnormalized = s2Manager.getBoundingBoxForRectangleQuery(-1.0, 179.0, 1.0, 181.0);
+        assertTrue(wrapped.lng().isInverted());
+        assertEquals(expected.area(), wrapped.area(), 1e-12);
+        assertTrue(wrapped.approxEquals(unnormalized));
+        assertTrue(wrapped.contains(S2LatLng.fromDegrees(0.0, 180.0)));
+        assertTrue(!wrapped.contains(S2LatLng.fromDegrees(0.0, 0.0)));
+        assertEquals(s2Manager.findCellIds(wrapped).cellIds().size(), s2Manager.findCellIds(unnormalized).cellIds().size());
+
+        S2LatLngRect polar = s2Manager.getBoundingBoxForRectangleQuery(85.0, -200.0, 95.0, 200.0);
+        assertTrue(polar.isValid());
+        assertTrue(polar.lng().isFull());
+        assertEquals(90.0, polar.latHi().degrees(), 1e-9);
+    }
+
+    /**
+     * @return the point <code>distance</code> meters from <code>origin</code> along the initial <code>bearing</code> in
+     * degrees
+     */
+    private static S2LatLng destination(S2LatLng origin, double bearing, double distance) {
+        double angle = distance / S2LatLng.EARTH_RADIUS_METERS;
+        double lat = origin.latRadians();
+        double theta = Math.toRadians(bearing);
+        double destinationLat = Math.asin(Math.sin(lat) * Math.cos(angle) + Math.cos(lat) * Math.sin(angle) * Math.cos(theta));
+        double destinationLng = origin.lngRadians() + Math.atan2(Math.sin(theta) * Math.sin(angle) * Math.cos(lat),
+                Math.cos(angle) - Math.sin(lat) * Math.sin(destinationLat));
+        return S2LatLng.fromRadians(destinationLat, destinationLng).normalized();
+    }
+
 }
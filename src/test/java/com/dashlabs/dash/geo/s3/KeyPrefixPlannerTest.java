@@ -0,0 +1,71 @@
+package com.dashlabs.dash.geo.s3;
+
+import com.dashlabs.dash.geo.model.GeohashRange;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class KeyPrefixPlannerTest {
+
+    @Test
+    public void exactPrefixes() {
+        KeyPrefixPlanner planner = new KeyPrefixPlanner(0d);
+        assertEquals(Arrays.asList("12", "130", "1310"), planner.generatePrefixes(1200L, 1310L));
+        // 130-139 of the three digit keys already cover 1300-1310
+        assertEquals(Arrays.asList("10", "11", "12", "13", "14"), planner.generatePrefixes(120L, 1310L).subList(0, 5));
+        assertEquals(Arrays.asList("1", "2", "3"), planner.generatePrefixes(10L, 39L));
+        assertEquals(Arrays.asList("-1", "-2", "1", "2"),
+                planner.generatePrefixes(Arrays.asList(new GeohashRange(-29L, -10L), new GeohashRange(10L, 29L))));
+        assertEquals(Arrays.asList(String.valueOf(Long.MAX_VALUE)), planner.generatePrefixes(Long.MAX_VALUE, Long.MAX_VALUE));
+
+        Random random = new Random(11);
+        for (int i = 0; i < 200; i++) {
+            long min = 100000L + random.nextInt(800000);
+            long max = Math.min(999999L, min + random.nextInt(100000));
+            List<String> prefixes = planner.generatePrefixes(min, max);
+            for (long key = 100000L; key <= 999999L; key += 1 + random.nextInt(50)) {
+                assertEquals(key + " in [" + min + ", " + max + "]", (key >= min) && (key <= max), matches(prefixes, key));
+            }
+            assertTrue(matches(prefixes, min));
+            assertTrue(matches(prefixes, max));
+        }
+    }
+
+    @Test
+    public void overCoverageCap() {
+        long min = 123456789L;
+        long max = 125678912L;
+        List<String> exact = new KeyPrefixPlanner(0d).generatePrefixes(min, max);
+        for (double maxOverCoverage : new double[] {0.01d, 0.1d, 1d}) {
+            List<String> prefixes = new KeyPrefixPlanner(maxOverCoverage).generatePrefixes(min, max);
+            assertTrue(prefixes.size() < exact.size());
+            long covered = 0L;
+            for (String prefix : prefixes) {
+                covered += (long) Math.pow(10, 9 - prefix.length());
+            }
+            assertTrue(covered - (max - min + 1) <= maxOverCoverage * (max - min + 1));
+            for (long key = min; key <= max; key += 997) {
+                assertTrue(matches(prefixes, key));
+            }
+        }
+        assertEquals(Arrays.asList("12"), new KeyPrefixPlanner(100d).generatePrefixes(min, max));
+        assertFalse(matches(exact, 123456788L));
+    }
+
+    private static boolean matches(List<String> prefixes, long key) {
+        String string = String.valueOf(key);
+        for (String prefix : prefixes) {
+            if (string.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
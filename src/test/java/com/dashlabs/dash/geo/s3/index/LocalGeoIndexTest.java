@@ -0,0 +1,79 @@
+package com.dashlabs.dash.geo.s3.index;
+
+import com.dashlabs.dash.geo.model.filters.GeoFilters;
+import com.dashlabs.dash.geo.model.filters.GeoPredicate;
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+import com.dashlabs.dash.geo.s3.Geo;
+import com.dashlabs.dash.geo.s3.GeoQueryHelper;
+import com.dashlabs.dash.geo.s3.model.GeoProperties;
+import com.dashlabs.dash.geo.s3.model.GeohashRangePlan;
+import com.google.common.geometry.S2LatLng;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LocalGeoIndexTest {
+
+    @Test
+    public void matchesLinearScan() {
+        S2Manager s2Manager = new S2Manager();
+        Geo geo = new Geo();
+        LocalGeoIndex index = new LocalGeoIndex(s2Manager, new GeoQueryHelper(s2Manager), 100);
+        Random random = new Random(42);
+        int bulk = 2000;
+        long[] ids = new long[bulk];
+        double[] latitudes = new double[bulk];
+        double[] longitudes = new double[bulk];
+        List<GeoProperties> properties = new ArrayList<GeoProperties>();
+        for (int i = 0; i < bulk; i++) {
+            ids[i] = i;
+            latitudes[i] = 40.70 + random.nextDouble() * 0.1;
+            longitudes[i] = -74.02 + random.nextDouble() * 0.1;
+            properties.add(geo.getGeoProperties(6, latitudes[i], longitudes[i]));
+        }
+        index.insertAll(ids, latitudes, longitudes);
+        // incremental inserts, some merged and some still in the delta buffer
+        for (int i = bulk; i < bulk + 250; i++) {
+            double latitude = 40.70 + random.nextDouble() * 0.1;
+            double longitude = -74.02 + random.nextDouble() * 0.1;
+            index.insert(i, latitude, longitude);
+            properties.add(geo.getGeoProperties(6, latitude, longitude));
+        }
+        assertEquals(properties.size(), index.size());
+
+        long[] radiusIds = index.radiusQuery(6, 40.75, -73.97, 2000);
+        assertArrayEquals(expectedIds(properties, geo.filterByRadius(properties, 40.75, -73.97, 2000)), sorted(radiusIds));
+        assertTrue(radiusIds.length > 0);
+
+        long[] rectangleIds = index.rectangleQuery(6, 40.72, -74.00, 40.74, -73.98);
+        assertArrayEquals(expectedIds(properties, geo.filterByRectangle(properties, 40.72, -74.00, 40.74, -73.98)), sorted(rectangleIds));
+        assertTrue(rectangleIds.length > 0);
+
+        GeohashRangePlan plan = geo.generatePlanForRadiusQuery(6, 40.75, -73.97, 2000);
+        GeoPredicate predicate = GeoFilters.newRadiusPredicate(S2LatLng.fromDegrees(40.75, -73.97), 2000);
+        assertArrayEquals(sorted(radiusIds), sorted(index.query(plan, predicate)));
+        assertArrayEquals(sorted(radiusIds), sorted(index.query(plan.toGeohashRanges(), predicate)));
+    }
+
+    private static long[] expectedIds(List<GeoProperties> all, List<GeoProperties> matching) {
+        long[] ids = new long[matching.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = all.indexOf(matching.get(i));
+        }
+        return sorted(ids);
+    }
+
+    private static long[] sorted(long[] ids) {
+        long[] copy = ids.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.dashlabs.dash.geo.s3.listing;
+
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+import com.dashlabs.dash.geo.s3.Geo;
+import com.dashlabs.dash.geo.s3.KeyPrefixPlanner;
+import com.dashlabs.dash.geo.s3.model.GeohashRangePlan;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelKeyListerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void listPlan() throws Exception {
+        S2Manager s2Manager = new S2Manager();
+        Geo geo = new Geo();
+        GeohashRangePlan plan = geo.generatePlanForRadiusQuery(6, 40.75, -73.97, 2000);
+        Path points = folder.getRoot().toPath().resolve("points");
+        Files.createDirectories(points);
+        Files.createDirectories(folder.getRoot().toPath().resolve("other"));
+        Random random = new Random(3);
+        TreeSet<String> expected = new TreeSet<String>();
+        int total = 2000;
+        for (int i = 0; i < total; i++) {
+            long geohash = s2Manager.generateGeohash(40.70 + random.nextDouble() * 0.1, -74.02 + random.nextDouble() * 0.1);
+            Files.createFile(points.resolve(geohash + ".point"));
+            if (inPlan(plan, geohash)) {
+                expected.add("points/" + geohash + ".point");
+            }
+        }
+
+        List<String> prefixes = new ArrayList<String>();
+        for (String prefix : new KeyPrefixPlanner().generatePrefixes(plan)) {
+            prefixes.add("points/" + prefix);
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<String> listed = new ParallelKeyLister(new LocalFileSystemKeyLister(folder.getRoot().toPath()),
+                    executorService).list(prefixes);
+            assertTrue(listed.size() < total);
+            List<String> actual = new ArrayList<String>();
+            for (String key : listed) {
+                long geohash = Long.parseLong(key.substring("points/".length(), key.length() - ".point".length()));
+                if (inPlan(plan, geohash)) {
+                    actual.add(key);
+                }
+            }
+            assertFalse(expected.isEmpty());
+            assertEquals(new ArrayList<String>(expected), actual);
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private static boolean inPlan(GeohashRangePlan plan, long geohash) {
+        for (int i = 0; i < plan.size(); i++) {
+            if ((geohash >= plan.getRangeMin(i)) && (geohash <= plan.getRangeMax(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
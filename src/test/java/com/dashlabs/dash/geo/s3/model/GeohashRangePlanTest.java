@@ -0,0 +1,84 @@
+package com.dashlabs.dash.geo.s3.model;
+
+import com.dashlabs.dash.geo.model.GeohashRange;
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+import com.dashlabs.dash.geo.s3.GeoQueryHelper;
+import com.google.common.geometry.S2LatLngRect;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GeohashRangePlanTest {
+
+    @Test
+    public void matchesGeohashRanges() {
+        S2Manager s2Manager = new S2Manager();
+        GeoQueryHelper helper = new GeoQueryHelper(s2Manager);
+        S2LatLngRect boundingBox = s2Manager.getBoundingBoxForRadiusQuery(40.75, -73.97, 5000);
+        List<GeohashRange> ranges = helper.generateGeohashRanges(boundingBox, 6);
+        GeohashRangePlan plan = helper.generateGeohashRangePlan(boundingBox, 6);
+
+        assertEquals(6, plan.getHashKeyLength());
+        assertEquals(ranges.size(), plan.size());
+        boolean inexact = false;
+        for (int i = 0; i < plan.size(); i++) {
+            assertEquals(ranges.get(i).getRangeMin(), plan.getRangeMin(i));
+            assertEquals(ranges.get(i).getRangeMax(), plan.getRangeMax(i));
+            assertEquals(s2Manager.generateHashKey(plan.getRangeMin(i), 6), plan.getHashKey(i));
+            inexact |= ((long) (double) plan.getRangeMin(i) != plan.getRangeMin(i));
+        }
+        // the reason for the plan: these cell ids do not survive a round trip through double
+        assertTrue(inexact);
+        assertEquals(ranges.size(), plan.toGeohashRanges().size());
+        assertEquals(ranges.get(0).getRangeMax(), plan.toGeohashRanges().get(0).getRangeMax());
+    }
+
+    @Test
+    public void serialization() {
+        GeohashRangePlan plan = new GeohashRangePlan(6,
+                new long[] {(1L << 53) + 1, -8070450532247928832L},
+                new long[] {(1L << 53) + 3, Long.MAX_VALUE},
+                new long[] {(1L << 53) / 1000, -807045L});
+
+        byte[] bytes = plan.toByteArray();
+        assertEquals(plan.getSerializedSize(), bytes.length);
+        GeohashRangePlan read = GeohashRangePlan.fromByteArray(bytes);
+        assertEquals(plan, read);
+        assertEquals(plan.hashCode(), read.hashCode());
+        assertEquals((1L << 53) + 1, read.getRangeMin(0));
+        assertEquals(Long.MAX_VALUE, read.getRangeMax(1));
+
+        // plans can be framed back to back in one buffer
+        ByteBuffer buffer = ByteBuffer.allocate(2 * plan.getSerializedSize());
+        plan.writeTo(buffer);
+        new GeohashRangePlan(1, new long[0], new long[0], new long[0]).writeTo(buffer);
+        buffer.flip();
+        assertEquals(plan, GeohashRangePlan.readFrom(buffer));
+        assertEquals(0, GeohashRangePlan.readFrom(buffer).size());
+    }
+
+    @Test
+    public void rejectsMalformedBytes() {
+        byte[] bytes = new GeohashRangePlan(6, new long[] {1L}, new long[] {2L}, new long[] {0L}).toByteArray();
+        try {
+            GeohashRangePlan.fromByteArray(Arrays.copyOf(bytes, bytes.length - 1));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        bytes[0] ^= 1;
+        try {
+            GeohashRangePlan.fromByteArray(bytes);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.dashlabs.dash.geo.s3.segment;
+
+import com.dashlabs.dash.geo.model.filters.GeoFilters;
+import com.dashlabs.dash.geo.model.filters.GeoPredicate;
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+import com.dashlabs.dash.geo.s3.GeoQueryHelper;
+import com.google.common.geometry.S2LatLng;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class LocalGeoSegmentStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readPlan() throws Exception {
+        S2Manager s2Manager = new S2Manager();
+        int hashKeyLength = 6;
+        Random random = new Random(7);
+        Map<Long, GeoSegmentWriter> writers = new HashMap<Long, GeoSegmentWriter>();
+        GeoPredicate predicate = GeoFilters.newRadiusPredicate(S2LatLng.fromDegrees(40.75, -73.97), 2000);
+        Set<String> expected = new HashSet<String>();
+        for (int i = 0; i < 3000; i++) {
+            double latitude = 40.70 + random.nextDouble() * 0.1;
+            double longitude = -74.02 + random.nextDouble() * 0.1;
+            long geoHashKey = s2Manager.generateHashKey(s2Manager.generateGeohash(latitude, longitude), hashKeyLength);
+            GeoSegmentWriter writer = writers.get(geoHashKey);
+            if (writer == null) {
+                writer = new GeoSegmentWriter(s2Manager, hashKeyLength, geoHashKey, 4);
+                writers.put(geoHashKey, writer);
+            }
+            writer.add(latitude, longitude, ("point-" + i).getBytes(StandardCharsets.UTF_8));
+            if (predicate.accept(latitude, longitude)) {
+                expected.add("point-" + i);
+            }
+        }
+        try (LocalGeoSegmentStore store = new LocalGeoSegmentStore(folder.getRoot().toPath(), s2Manager)) {
+            for (GeoSegmentWriter writer : writers.values()) {
+                store.write(writer);
+            }
+            GeoQueryHelper helper = new GeoQueryHelper(s2Manager);
+            Set<String> actual = new HashSet<String>();
+            for (GeoSegmentSlice slice : store.read(hashKeyLength,
+                    helper.generateGeohashRanges(s2Manager.getBoundingBoxForRadiusQuery(40.75, -73.97, 2000), hashKeyLength))) {
+                for (int i = 0; i < slice.size(); i++) {
+                    if (predicate.accept(slice.getLatitude(i), slice.getLongitude(i))) {
+                        ByteBuffer payload = slice.getPayload(i);
+                        byte[] bytes = new byte[payload.remaining()];
+                        payload.get(bytes);
+                        actual.add(new String(bytes, StandardCharsets.UTF_8));
+                    }
+                }
+            }
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, actual);
+
+            Set<String> planned = new HashSet<String>();
+            for (GeoSegmentSlice slice : store.read(
+                    helper.generateGeohashRangePlan(s2Manager.getBoundingBoxForRadiusQuery(40.75, -73.97, 2000), hashKeyLength))) {
+                for (int i = 0; i < slice.size(); i++) {
+                    if (predicate.accept(slice.getLatitude(i), slice.getLongitude(i))) {
+                        ByteBuffer payload = slice.getPayload(i);
+                        byte[] bytes = new byte[payload.remaining()];
+                        payload.get(bytes);
+                        planned.add(new String(bytes, StandardCharsets.UTF_8));
+                    }
+                }
+            }
+            assertEquals(expected, planned);
+        }
+    }
+
+}
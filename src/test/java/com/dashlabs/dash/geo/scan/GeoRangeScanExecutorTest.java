@@ -0,0 +1,122 @@
+package com.dashlabs.dash.geo.scan;
+
+import com.dashlabs.dash.geo.model.filters.GeoFilters;
+import com.dashlabs.dash.geo.model.filters.GeoPredicate;
+import com.dashlabs.dash.geo.s2.internal.S2Manager;
+import com.dashlabs.dash.geo.s3.Geo;
+import com.dashlabs.dash.geo.s3.model.GeohashRangePlan;
+import com.dashlabs.dash.geo.s3.segment.GeoSegmentScanner;
+import com.dashlabs.dash.geo.s3.segment.GeoSegmentWriter;
+import com.dashlabs.dash.geo.s3.segment.LocalGeoSegmentStore;
+import com.google.common.geometry.S2LatLng;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GeoRangeScanExecutorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void backendsMatch() throws Exception {
+        S2Manager s2Manager = new S2Manager();
+        int hashKeyLength = 6;
+        GeohashRangePlan plan = new Geo().generatePlanForRadiusQuery(hashKeyLength, 40.75, -73.97, 2000);
+        GeoPredicate predicate = GeoFilters.newRadiusPredicate(S2LatLng.fromDegrees(40.75, -73.97), 2000);
+
+        SkipListGeoStore<Long> skipListStore = new SkipListGeoStore<Long>(s2Manager);
+        Map<Long, GeoSegmentWriter> writers = new HashMap<Long, GeoSegmentWriter>();
+        Set<Long> expected = new HashSet<Long>();
+        Random random = new Random(5);
+        for (long id = 0; id < 3000; id++) {
+            double latitude = 40.70 + random.nextDouble() * 0.1;
+            double longitude = -74.02 + random.nextDouble() * 0.1;
+            skipListStore.put(id, latitude, longitude, id);
+            long geoHashKey = s2Manager.generateHashKey(s2Manager.generateGeohash(latitude, longitude), hashKeyLength);
+            GeoSegmentWriter writer = writers.get(geoHashKey);
+            if (writer == null) {
+                writer = new GeoSegmentWriter(s2Manager, hashKeyLength, geoHashKey, 4);
+                writers.put(geoHashKey, writer);
+            }
+            writer.add(latitude, longitude, ByteBuffer.allocate(8).putLong(0, id).array());
+            if (predicate.accept(latitude, longitude)) {
+                expected.add(id);
+            }
+        }
+        // moving an item takes it out of its old range
+        Long moved = expected.iterator().next();
+        skipListStore.put(moved, 40.70, -74.02, moved);
+        assertEquals(3000, skipListStore.size());
+
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try (LocalGeoSegmentStore segmentStore = new LocalGeoSegmentStore(folder.getRoot().toPath(), s2Manager)) {
+            for (GeoSegmentWriter writer : writers.values()) {
+                segmentStore.write(writer);
+            }
+            GeoRangeScanExecutor<ByteBuffer, Integer> segmentExecutor = new GeoRangeScanExecutor<ByteBuffer, Integer>(
+                    new GeoSegmentScanner(segmentStore, hashKeyLength), executorService, 7);
+            Set<Long> segmentIds = new HashSet<Long>();
+            for (ByteBuffer payload : segmentExecutor.execute(plan, predicate)) {
+                segmentIds.add(payload.getLong(0));
+            }
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, segmentIds);
+            Map<String, Double> metrics = segmentExecutor.toMetrics();
+            assertEquals((double) plan.size(), metrics.get(GeoRangeScanExecutor.METRIC_PREFIX + "ranges"), 0.0d);
+            assertEquals((double) expected.size(), metrics.get(GeoRangeScanExecutor.METRIC_PREFIX + "matched"), 0.0d);
+            assertTrue(metrics.get(GeoRangeScanExecutor.METRIC_PREFIX + "pages") > plan.size());
+
+            expected.remove(moved);
+            GeoRangeScanExecutor<Long, SkipListGeoStore.Key> skipListExecutor =
+                    new GeoRangeScanExecutor<Long, SkipListGeoStore.Key>(skipListStore, executorService, 7);
+            assertEquals(expected, new HashSet<Long>(skipListExecutor.execute(plan, predicate)));
+
+            List<Long> limited = skipListExecutor.execute(plan, predicate, 5);
+            assertEquals(5, limited.size());
+            assertTrue(expected.containsAll(limited));
+            assertTrue(skipListStore.remove(moved));
+            assertFalse(skipListStore.remove(moved));
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void limitedExecution() throws Exception {
+        GeohashRangePlan plan = new Geo().generatePlanForRadiusQuery(10, 40.75, -73.97, 2000);
+        GeoPredicate predicate = GeoFilters.newRadiusPredicate(S2LatLng.fromDegrees(40.75, -73.97), 2000);
+        SkipListGeoStore<Long> store = new SkipListGeoStore<Long>();
+        Random random = new Random(5);
+        for (long id = 0; id < 3000; id++) {
+            store.put(id, 40.70 + random.nextDouble() * 0.1, -74.02 + random.nextDouble() * 0.1, id);
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Long> all = new GeoRangeScanExecutor<Long, SkipListGeoStore.Key>(store, executorService, 7).execute(plan, predicate);
+            GeoRangeScanExecutor<Long, SkipListGeoStore.Key> executor =
+                    new GeoRangeScanExecutor<Long, SkipListGeoStore.Key>(store, executorService, 7);
+            assertEquals(all.subList(0, 5), executor.execute(plan, predicate, 5, 2));
+            // only the ranges up to the first five items, and at most two more in flight, are read
+            assertTrue(plan.size() > 10);
+            assertTrue(executor.toMetrics().get(GeoRangeScanExecutor.METRIC_PREFIX + "ranges") < plan.size());
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+}